@@ -22,8 +22,11 @@ import org.ros.address.AdvertiseAddress;
 import org.ros.address.BindAddress;
 import org.ros.internal.node.server.ParameterServer;
 import org.ros.internal.node.server.master.MasterServer;
+import org.ros.internal.node.server.master.MasterStandby;
+import org.ros.internal.node.server.master.RegistrationJournal;
 import org.ros.internal.transport.tcp.TcpRosServer;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +48,7 @@ public class RosCore {
   private static final Log log = LogFactory.getLog(RosCore.class);
   private MasterServer masterServer = null;
   private ParameterServer parameterServer = null;
+  private MasterStandby standby = null;
 
   public static RosCore newPublic(String host, int port) {
     return new RosCore(BindAddress.newPublic(port), new AdvertiseAddress(host, port));
@@ -75,6 +79,48 @@ public class RosCore {
   public void start() {
     masterServer.start();
     parameterServer.start();
+    if (standby != null) {
+      try {
+        standby.start();
+      } catch (IOException e) {
+        log.error("RosCore can not follow primary due to " + e, e);
+      }
+    }
+  }
+
+  /**
+   * Run as a warm standby of another core, keeping a copy of its registrations
+   * and parameters and taking over when it goes away. Call before
+   * {@link #start()}.
+   * 
+   * @param primary
+   *          the address of the primary master
+   * @return the {@link MasterStandby}, to set the takeover delay
+   */
+  public MasterStandby setStandbyOf(InetSocketAddress primary) {
+    standby = new MasterStandby(masterServer, parameterServer, primary);
+    return standby;
+  }
+
+  /**
+   * Keep the master's registrations in a journal in the directory, so a
+   * restart keeps the graph. Call before {@link #start()}.
+   * 
+   * @param directory
+   *          where the journal is kept
+   * @return the {@link RegistrationJournal}, to configure compaction and syncing
+   * @throws IOException
+   *           if the directory can not be used
+   */
+  public RegistrationJournal setJournal(File directory) throws IOException {
+    return masterServer.enableJournal(directory);
+  }
+
+  /**
+   * @return the {@link MasterStandby} following the primary, null if we are not a standby
+   */
+  public MasterStandby getStandby() {
+    return standby;
   }
 
   public InetSocketAddress getUri() {
@@ -93,6 +139,9 @@ public class RosCore {
   }
 
   public void shutdown() {
+    if (standby != null) {
+      standby.stop();
+    }
     try {
     	parameterServer.shutdown();
 		masterServer.shutdown();
@@ -110,8 +159,36 @@ public class RosCore {
     return masterServer;
   }
   
+  /**
+   * Start a master, on port 8090 unless given another.
+   * <pre>
+   * RosCore [-port port] [-standby host:port] [journal directory]
+   * </pre>
+   * The journal directory keeps the registrations so a restart keeps the graph. A standby
+   * follows the master at host:port and takes over when it goes away, its port must be
+   * two or more away from the primary's as each uses the port above its own for parameters.
+   * @param args
+   * @throws Exception
+   */
   public static void main(String[] args) throws Exception {
-	   RosCore rosCore = RosCore.newPublic(8090);
+	   int port = 8090;
+	   InetSocketAddress primary = null;
+	   File journal = null;
+	   for(int i = 0; i < args.length; i++) {
+		   if( args[i].equals("-port") ) {
+			   port = Integer.parseInt(args[++i]);
+		   } else if( args[i].equals("-standby") ) {
+			   String[] hostPort = args[++i].split(":");
+			   primary = new InetSocketAddress(hostPort[0], hostPort.length > 1 ? Integer.parseInt(hostPort[1]) : 8090);
+		   } else {
+			   journal = new File(args[i]);
+		   }
+	   }
+	   RosCore rosCore = RosCore.newPublic(port);
+	   if( journal != null )
+		   rosCore.setJournal(journal);
+	   if( primary != null )
+		   rosCore.setStandbyOf(primary);
 	   rosCore.start();
 	   rosCore.awaitStart(1, TimeUnit.SECONDS);
 	   log.info("RosLite Master started @ address "+rosCore.getUri());
@@ -26,7 +26,7 @@ import java.util.NoSuchElementException;
  * 
  * @author damonkohler@google.com (Damon Kohler)
  */
-public class CircularBlockingDeque<T> implements Iterable<T> {
+public class CircularBlockingDeque<T> implements CircularBlockingQueue<T>, Iterable<T> {
 
   private final T[] deque;
   private final Object mutex;
@@ -68,6 +68,7 @@ public class CircularBlockingDeque<T> implements Iterable<T> {
    *          the entry to add
    * @return {@code true}
    */
+  @Override
   public boolean addLast(T entry) {
     synchronized (mutex) {
       deque[(start + length) % limit] = entry;
@@ -112,6 +113,7 @@ public class CircularBlockingDeque<T> implements Iterable<T> {
    * @return the head of the queue
    * @throws InterruptedException
    */
+  @Override
   public T takeFirst() throws InterruptedException {
     T entry;
     synchronized (mutex) {
@@ -180,10 +182,12 @@ public class CircularBlockingDeque<T> implements Iterable<T> {
     }
   }
 
+  @Override
   public boolean isEmpty() {
     return length == 0;
   }
   
+  @Override
   public int length() { return length; }
 
   /**
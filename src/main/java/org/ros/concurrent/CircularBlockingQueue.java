@@ -0,0 +1,38 @@
+package org.ros.concurrent;
+
+/**
+ * A bounded queue that never blocks its producers, the oldest entry is
+ * dropped to make room, and blocks its consumer on {@link #takeFirst()} until
+ * an entry is available. Implemented by the monitor based
+ * {@link CircularBlockingDeque} and the lock free {@link RingBuffer}s.
+ *
+ * @author jg
+ */
+public interface CircularBlockingQueue<T> {
+
+  /**
+   * Adds the specified entry to the tail of the queue, dropping the oldest
+   * entry if necessary.
+   *
+   * @param entry
+   *          the entry to add
+   * @return {@code true}
+   */
+  boolean addLast(T entry);
+
+  /**
+   * Retrieves the head of the queue, blocking if necessary until an entry is
+   * available.
+   *
+   * @return the head of the queue
+   * @throws InterruptedException
+   */
+  T takeFirst() throws InterruptedException;
+
+  boolean isEmpty();
+
+  /**
+   * @return the number of entries in the queue
+   */
+  int length();
+}
@@ -26,11 +26,22 @@ package org.ros.concurrent;
 public class EventDispatcher<T> extends CancellableLoop {
 
   private final T listener;
-  private final CircularBlockingDeque<SignalRunnable<T>> events;
+  private final CircularBlockingQueue<SignalRunnable<T>> events;
 
   public EventDispatcher(T listener, int queueCapacity) {
+    this(listener, new MpscRingBuffer<SignalRunnable<T>>(queueCapacity));
+  }
+
+  /**
+   * @param listener
+   *          the listener to signal
+   * @param events
+   *          the queue of pending signals, which may be a single producer one
+   *          if signals are known to come from one thread at a time
+   */
+  public EventDispatcher(T listener, CircularBlockingQueue<SignalRunnable<T>> events) {
     this.listener = listener;
-    events = new CircularBlockingDeque<SignalRunnable<T>>(queueCapacity);
+    this.events = events;
   }
 
   public void signal(final SignalRunnable<T> signalRunnable) {
@@ -51,7 +51,7 @@ public class Holder<T> {
   }
 
   public T set(T value) {
-    assert(this.value != null);
+    assert(this.value == null);
     this.value = value;
     latch.countDown();
     return value;
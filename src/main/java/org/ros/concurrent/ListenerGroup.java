@@ -33,9 +33,22 @@ public class ListenerGroup<T> {
 
   private final ExecutorService executorService;
   private final Collection<EventDispatcher<T>> eventDispatchers;
+  private final boolean singleProducer;
 
   public ListenerGroup(ExecutorService executorService) {
+    this(executorService, false);
+  }
+
+  /**
+   * @param executorService
+   *          runs the {@link EventDispatcher}s
+   * @param singleProducer
+   *          {@code true} if the group is only ever signaled by one thread at
+   *          a time, so its dispatchers can queue on single producer rings
+   */
+  public ListenerGroup(ExecutorService executorService, boolean singleProducer) {
     this.executorService = executorService;
+    this.singleProducer = singleProducer;
     eventDispatchers = new ArrayList<EventDispatcher<T>>();
   }
 
@@ -50,7 +63,9 @@ public class ListenerGroup<T> {
    *         listener
    */
   public EventDispatcher<T> add(T listener, int queueCapacity) {
-    EventDispatcher<T> eventDispatcher = new EventDispatcher<T>(listener, queueCapacity);
+    EventDispatcher<T> eventDispatcher = singleProducer ?
+        new EventDispatcher<T>(listener, new SpscRingBuffer<SignalRunnable<T>>(queueCapacity)) :
+        new EventDispatcher<T>(listener, queueCapacity);
     eventDispatchers.add(eventDispatcher);
     executorService.execute(eventDispatcher);
     return eventDispatcher;
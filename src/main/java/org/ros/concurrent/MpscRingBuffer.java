@@ -0,0 +1,54 @@
+package org.ros.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RingBuffer} any number of threads may add to, each claiming its
+ * position by compare and set on the tail.
+ *
+ * @author jg
+ */
+public class MpscRingBuffer<T> extends RingBuffer<T> {
+
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * @param capacity
+   *          the most entries the ring holds
+   */
+  public MpscRingBuffer(int capacity) {
+    this(capacity, WaitStrategy.PARK);
+  }
+
+  public MpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+    super(capacity, waitStrategy);
+  }
+
+  @Override
+  protected long tail() {
+    return tail.get();
+  }
+
+  @Override
+  public boolean addLast(T entry) {
+    while (true) {
+      long position = tail.get();
+      // the slot may be free while the ring holds its capacity, the head only
+      // moves on so a position not full now stays so until claimed
+      if (isFull(position)) {
+        dropOldest();
+        continue;
+      }
+      int index = (int) position & mask;
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          publish(index, position, entry);
+          return true;
+        }
+      }
+      // otherwise another producer claimed the position, or the consumer is
+      // still freeing the slot
+    }
+  }
+}
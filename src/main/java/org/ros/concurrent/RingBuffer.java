@@ -0,0 +1,194 @@
+package org.ros.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock free bounded ring for a single consumer, the replacement for the
+ * {@link CircularBlockingDeque} where producers and consumer are known.
+ * <p>
+ * Each slot carries a sequence number, after Vyukov's bounded queue: a slot
+ * whose sequence equals a producer's position is free for it, one whose
+ * sequence is the consumer's position plus one holds the entry for it. Neither
+ * side ever waits on the other to finish beyond its own slot and there is no
+ * monitor, so a producer descheduled mid write holds up only the entry it was
+ * writing.
+ * <p>
+ * As with the deque, producers never block, a producer that finds the ring
+ * holding its capacity drops the oldest entry by taking it itself. The slots
+ * are a power of two, for the index to be a mask of the position, but the ring
+ * never holds more than the capacity it was given. That makes the head the one
+ * thing producers and consumer contend on, which is why the consumer claims it
+ * by compare and set even in the single producer ring.
+ * <p>
+ * The consumer waits on an empty ring according to its {@link WaitStrategy}.
+ *
+ * @author jg
+ */
+public abstract class RingBuffer<T> implements CircularBlockingQueue<T> {
+
+  // a parked consumer wakes on its own after this, should it ever miss an unpark
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  // a consumer about to park polls this many times first, yielding, as an
+  // entry is often just about to arrive and a park and unpark cost far more
+  private static final int YIELDS_BEFORE_PARK = 16;
+  // the largest power of two an int holds
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  protected final int capacity;
+  // the number of slots, the capacity rounded up to a power of two
+  protected final int size;
+  protected final int mask;
+  protected final AtomicReferenceArray<T> entries;
+  protected final AtomicLongArray sequences;
+  protected final AtomicLong head = new AtomicLong();
+  private final WaitStrategy waitStrategy;
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile Thread waiter;
+
+  /**
+   * @param capacity
+   *          the most entries the ring holds
+   * @param waitStrategy
+   *          what the consumer does while the ring is empty
+   */
+  protected RingBuffer(int capacity, WaitStrategy waitStrategy) {
+    assert(capacity > 0) : "RingBuffer capacity must be positive";
+    this.capacity = Math.min(capacity, MAX_CAPACITY);
+    // at least two slots, so a slot freed for the producer a ring ahead is
+    // never mistaken for one holding an entry
+    size = this.capacity < 2 ? 2 : Integer.highestOneBit(this.capacity - 1) << 1;
+    this.waitStrategy = waitStrategy;
+    mask = size - 1;
+    entries = new AtomicReferenceArray<T>(size);
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return the position the next entry will be written at
+   */
+  protected abstract long tail();
+
+  /**
+   * Make the entry at a claimed position visible to the consumer, and wake it
+   * if it is parked.
+   */
+  protected void publish(int index, long position, T entry) {
+    entries.lazySet(index, entry);
+    if (waitStrategy == WaitStrategy.PARK) {
+      // a full volatile store, ordered before the read of the waiter the
+      // consumer set before its last look at the ring
+      sequences.set(index, position + 1);
+      Thread consumer = waiter;
+      if (consumer != null) {
+        LockSupport.unpark(consumer);
+      }
+    } else {
+      sequences.lazySet(index, position + 1);
+    }
+  }
+
+  /**
+   * @return {@code true} if the capacity in entries lies between the head and
+   *         the position
+   */
+  protected boolean isFull(long position) {
+    return position - head.get() >= capacity;
+  }
+
+  /**
+   * Make room by taking the oldest entry.
+   */
+  protected void dropOldest() {
+    if (poll() != null) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Retrieves the head of the ring without waiting.
+   *
+   * @return the head of the ring, or {@code null} if there is no entry ready
+   */
+  public T poll() {
+    while (true) {
+      long position = head.get();
+      int index = (int) position & mask;
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          T entry = entries.get(index);
+          entries.lazySet(index, null);
+          // the slot is free for the producer a ring ahead
+          sequences.lazySet(index, position + size);
+          return entry;
+        }
+      } else if (difference < 0) {
+        return null;
+      }
+      // a producer dropping the oldest took it first
+    }
+  }
+
+  @Override
+  public T takeFirst() throws InterruptedException {
+    T entry;
+    int idle = 0;
+    while ((entry = poll()) == null) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      switch (waitStrategy) {
+        case SPIN:
+          break;
+        case YIELD:
+          Thread.yield();
+          break;
+        default:
+          if (++idle <= YIELDS_BEFORE_PARK) {
+            Thread.yield();
+            break;
+          }
+          waiter = Thread.currentThread();
+          if (isEmpty()) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+          }
+          waiter = null;
+      }
+    }
+    return entry;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    long position = head.get();
+    return sequences.get((int) position & mask) != position + 1;
+  }
+
+  @Override
+  public int length() {
+    long length = tail() - head.get();
+    return (int) Math.max(0, Math.min(length, capacity));
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  /**
+   * @return the number of entries dropped to make room for newer ones
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+}
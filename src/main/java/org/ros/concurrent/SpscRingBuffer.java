@@ -0,0 +1,48 @@
+package org.ros.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RingBuffer} for one producer at a time, which owns the tail and so
+ * adds without compare and set. Producers taking turns are fine as long as
+ * something orders them, such as a lock held while adding.
+ *
+ * @author jg
+ */
+public class SpscRingBuffer<T> extends RingBuffer<T> {
+
+  // written only by the producer, read by others for the length
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * @param capacity
+   *          the most entries the ring holds
+   */
+  public SpscRingBuffer(int capacity) {
+    this(capacity, WaitStrategy.PARK);
+  }
+
+  public SpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+    super(capacity, waitStrategy);
+  }
+
+  @Override
+  protected long tail() {
+    return tail.get();
+  }
+
+  @Override
+  public boolean addLast(T entry) {
+    long position = tail.get();
+    int index = (int) position & mask;
+    while (isFull(position) || sequences.get(index) != position) {
+      // full, or the consumer is still freeing the slot
+      if (isFull(position)) {
+        dropOldest();
+      }
+    }
+    tail.lazySet(position + 1);
+    publish(index, position, entry);
+    return true;
+  }
+}
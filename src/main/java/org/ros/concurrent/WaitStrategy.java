@@ -0,0 +1,26 @@
+package org.ros.concurrent;
+
+/**
+ * What the consumer of a {@link RingBuffer} does while the ring is empty.
+ *
+ * @author jg
+ */
+public enum WaitStrategy {
+  /**
+   * Poll continuously. The lowest latency, at the cost of a core per consumer
+   * even when there is nothing to consume.
+   */
+  SPIN,
+  /**
+   * Poll, yielding the processor between polls. Nearly the latency of
+   * {@link #SPIN} on an idle machine, but still never sleeps.
+   */
+  YIELD,
+  /**
+   * Yield for a few polls, then park until a producer unparks the consumer.
+   * Costs the producer a volatile store and load per entry and the consumer a
+   * wakeup, but an idle consumer uses no processor. The default, as most
+   * queues are idle most of the time.
+   */
+  PARK
+}
@@ -0,0 +1,14 @@
+package org.ros.exception;
+
+/**
+ * Thrown when a call reaches a standby master that is still following its
+ * primary. The call was not invoked, it should be made on the primary.
+ * 
+ * @author jg
+ */
+public class NotMasterException extends RosRuntimeException {
+
+  public NotMasterException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,14 @@
+package org.ros.exception;
+
+/**
+ * Thrown when a remote server sheds a call because its workers and request
+ * queue are full. The call was not invoked and may be retried.
+ * 
+ * @author jg
+ */
+public class RpcBusyException extends RosRuntimeException {
+
+  public RpcBusyException(String message) {
+    super(message);
+  }
+}
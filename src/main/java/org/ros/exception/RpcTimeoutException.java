@@ -0,0 +1,18 @@
+package org.ros.exception;
+
+/**
+ * Thrown when a remote call is not answered within its timeout, or could not
+ * connect within the connection timeout.
+ * 
+ * @author jg
+ */
+public class RpcTimeoutException extends RosRuntimeException {
+
+  public RpcTimeoutException(String message) {
+    super(message);
+  }
+
+  public RpcTimeoutException(String message, Throwable throwable) {
+    super(message, throwable);
+  }
+}
@@ -56,6 +56,9 @@ import java.util.Map;
  */
 public class CommandLineLoader {
 
+  private static final String MASTER_SHARDS_ARGUMENT = "__master_shards";
+  private static final String MASTER_SHARDS_VARIABLE = "ROS_MASTER_SHARDS";
+
   private final List<String> argv;
   private final List<String> nodeArguments;
   private final List<String> remappingArguments;
@@ -139,11 +142,15 @@ public class CommandLineLoader {
   public NodeConfiguration build() {
     parseRemappingArguments();
     // TODO(damonkohler): Add support for starting up a private node.
-    NodeConfiguration nodeConfiguration = NodeConfiguration.newPublic(getHost(), getMasterUri());
+    List<InetSocketAddress> masterUris = getMasterUris();
+    NodeConfiguration nodeConfiguration = NodeConfiguration.newPublic(getHost(), masterUris.get(0));
     nodeConfiguration.setParentResolver(buildParentResolver());
     nodeConfiguration.setRosRoot(getRosRoot());
     nodeConfiguration.setRosPackagePath(getRosPackagePath());
-    nodeConfiguration.setMasterUri(getMasterUri());
+    nodeConfiguration.setMasterUris(masterUris);
+    for (Map.Entry<GraphName, List<InetSocketAddress>> shard : getMasterShards().entrySet()) {
+      nodeConfiguration.setMasterShard(shard.getKey(), shard.getValue());
+    }
     if (specialRemappings.containsKey(CommandLineVariables.NODE_NAME)) {
       nodeConfiguration.setNodeName(specialRemappings.get(CommandLineVariables.NODE_NAME));
     }
@@ -216,15 +223,71 @@ public class CommandLineLoader {
    * <li>The ROS_MASTER_URI environment variable.</li>
    * <li>The default master URI as defined in {@link NodeConfiguration}.</li>
    * </ol>
+   * Either may name standbys after the master, separated by commas, and a
+   * port after a colon, 8090 if none.
    */
-  private InetSocketAddress getMasterUri() {
-    InetSocketAddress uri = NodeConfiguration.DEFAULT_MASTER_URI;
+  private List<InetSocketAddress> getMasterUris() {
+    String masters = null;
     if (specialRemappings.containsKey(CommandLineVariables.ROS_MASTER_URI)) {
-        uri = new InetSocketAddress(specialRemappings.get(CommandLineVariables.ROS_MASTER_URI), 8090);
-      } else if (environment.containsKey(EnvironmentVariables.ROS_MASTER_URI)) {
-        uri = new InetSocketAddress(environment.get(EnvironmentVariables.ROS_MASTER_URI), 8090);
+      masters = specialRemappings.get(CommandLineVariables.ROS_MASTER_URI);
+    } else if (environment.containsKey(EnvironmentVariables.ROS_MASTER_URI)) {
+      masters = environment.get(EnvironmentVariables.ROS_MASTER_URI);
+    }
+    if (masters == null) {
+      List<InetSocketAddress> uris = new ArrayList<InetSocketAddress>();
+      uris.add(NodeConfiguration.DEFAULT_MASTER_URI);
+      return uris;
+    }
+    return parseMasterUris(masters);
+  }
+
+  /**
+   * Precedence:
+   * 
+   * <ol>
+   * <li>The __master_shards:= command line argument.</li>
+   * <li>The ROS_MASTER_SHARDS environment variable.</li>
+   * </ol>
+   * Each shard is a namespace and its masters, as for the master URI,
+   * separated by semicolons, such as /arm=arm-host:8090;/base=base-host:8090.
+   * None if neither is given.
+   */
+  private Map<GraphName, List<InetSocketAddress>> getMasterShards() {
+    String shards = null;
+    if (specialRemappings.containsKey(MASTER_SHARDS_ARGUMENT)) {
+      shards = specialRemappings.get(MASTER_SHARDS_ARGUMENT);
+    } else if (environment.containsKey(MASTER_SHARDS_VARIABLE)) {
+      shards = environment.get(MASTER_SHARDS_VARIABLE);
+    }
+    Map<GraphName, List<InetSocketAddress>> masterShards = new HashMap<GraphName, List<InetSocketAddress>>();
+    if (shards == null) {
+      return masterShards;
+    }
+    for (String shard : shards.split(";")) {
+      String[] namespaceMasters = shard.trim().split("=");
+      if (namespaceMasters.length != 2) {
+        throw new IllegalArgumentException("Invalid master shard: " + shard);
       }
-      return uri;
+      masterShards.put(GraphName.of(namespaceMasters[0].trim()).toGlobal(), parseMasterUris(namespaceMasters[1]));
+    }
+    return masterShards;
+  }
+
+  /**
+   * @param masters host[:port] of each master, separated by commas
+   */
+  private static List<InetSocketAddress> parseMasterUris(String masters) {
+    List<InetSocketAddress> uris = new ArrayList<InetSocketAddress>();
+    for (String master : masters.split(",")) {
+      master = master.trim();
+      int colon = master.lastIndexOf(':');
+      if (colon > 0 && master.indexOf(':') == colon) {
+        uris.add(new InetSocketAddress(master.substring(0, colon), Integer.parseInt(master.substring(colon + 1))));
+      } else {
+        uris.add(new InetSocketAddress(master, 8090));
+      }
+    }
+    return uris;
   }
 
   private File getRosRoot() {
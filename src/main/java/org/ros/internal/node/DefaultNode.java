@@ -17,6 +17,7 @@ import org.ros.internal.node.parameter.DefaultParameterTree;
 import org.ros.internal.node.parameter.ParameterManager;
 import org.ros.internal.node.response.Response;
 import org.ros.internal.node.response.StatusCode;
+import org.ros.internal.node.rpc.MasterShards;
 import org.ros.internal.node.server.NodeIdentifier;
 import org.ros.internal.node.server.SlaveServer;
 import org.ros.internal.node.service.ServiceDeclaration;
@@ -109,8 +110,9 @@ public class DefaultNode implements ConnectedNode {
     this.nodeListeners.addAll(nodeListeners);
     this.scheduledExecutorService = scheduledExecutorService;
     masterUri = nodeConfiguration.getMasterUri();
+    MasterShards masterShards = new MasterShards(nodeConfiguration.getMasterUris(), nodeConfiguration.getMasterShards());
     try {
-		masterClient = new MasterClient(masterUri, 60000, 60000);
+		masterClient = new MasterClient(masterShards, 60000, 60000);
 	} catch (IOException e1) {
 		log.error("Unknown host for master client:"+masterUri,e1);
 		//e1.printStackTrace();
@@ -130,19 +132,24 @@ public class DefaultNode implements ConnectedNode {
 		        nodeConfiguration.getTcpRosAdvertiseAddress(),
 		        nodeConfiguration.getRpcBindAddress(),
 		        nodeConfiguration.getRpcAdvertiseAddress(), masterClient, topicParticipantManager,
-		        serviceManager, parameterManager, scheduledExecutorService);
+		        serviceManager, parameterManager, scheduledExecutorService,
+		        nodeConfiguration.getTcpRosSelectorThreads());
 	} catch (IOException e) {
 		log.error("Can not configure slave server from DefaultNode "+e,e);
 		throw new RosRuntimeException(e);
 	}
+    slaveServer.getTcpRosServer().getCodecSelector().setStreamResetInterval(nodeConfiguration.getTcpRosStreamResetInterval());
+    slaveServer.getTcpRosServer().getCodecSelector().setTopicCodecs(nodeConfiguration.getTopicCodecs());
+    slaveServer.getTcpRosServer().setMaxFrameSize(nodeConfiguration.getTcpRosMaxFrameSize());
     // start TcpRosServer and SlaveServer
+    slaveServer.setSharedMemoryRingCapacity(nodeConfiguration.getSharedMemoryRingCapacity());
     slaveServer.start();
 
     NodeIdentifier nodeIdentifier = slaveServer.toNodeIdentifier();
 
     try {
 		parameterTree =
-		    DefaultParameterTree.newFromNodeIdentifier(nodeIdentifier, masterClient.getRemoteUri(),
+		    DefaultParameterTree.newFromNodeIdentifier(nodeIdentifier, masterShards,
 		        resolver, parameterManager);
 	} catch (IOException e) {
 		log.error("Cannot construct parameter tree due to "+e,e);
@@ -150,9 +157,13 @@ public class DefaultNode implements ConnectedNode {
 
     publisherFactory =
         new PublisherFactory(nodeIdentifier, topicParticipantManager,
-            nodeConfiguration.getTopicMessageFactory(), scheduledExecutorService);
+            nodeConfiguration.getTopicMessageFactory(), scheduledExecutorService,
+            nodeConfiguration.getTcpRosSubscriberQueueCapacity(), nodeConfiguration.getTcpRosOverflowPolicy());
     subscriberFactory =
-        new SubscriberFactory(nodeIdentifier, topicParticipantManager, scheduledExecutorService);
+        new SubscriberFactory(nodeIdentifier, topicParticipantManager, scheduledExecutorService,
+            slaveServer.getTcpRosSelectorGroup());
+    subscriberFactory.setUdpRosTopics(nodeConfiguration.getUdpRosTopics(), nodeConfiguration.getUdpRosMaxDatagramSize());
+    subscriberFactory.setTcpRosMaxFrameSize(nodeConfiguration.getTcpRosMaxFrameSize());
     serviceFactory =
         new ServiceFactory(nodeName, slaveServer, serviceManager, scheduledExecutorService);
 
@@ -239,7 +250,7 @@ public class DefaultNode implements ConnectedNode {
         TopicDeclaration.newFromTopicName(resolvedTopicName, topicDescription);
     Publisher<T> publisher = null;
     try {
-     publisher = publisherFactory.newOrExisting(topicDeclaration, slaveServer.getSubscribers());
+     publisher = publisherFactory.newOrExisting(topicDeclaration, slaveServer.getTopicRoutingTable());
     } catch(IOException e) { throw new RosRuntimeException(e); }
     return publisher;
   }
@@ -17,12 +17,17 @@
 package org.ros.internal.node.client;
 
 import org.ros.exception.RosRuntimeException;
+import org.ros.internal.node.response.Response;
+import org.ros.internal.node.response.ResultFactory;
 import org.ros.internal.node.rpc.RpcClientConfigImpl;
 import org.ros.internal.node.rpc.RpcEndpoint;
 import org.ros.internal.node.server.RpcServer;
 
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Base class for RPC clients (e.g. MasterClient and SlaveClient).
@@ -38,20 +43,58 @@ abstract class Client<T extends RpcEndpoint> {
 
   protected T rpcEndpoint = null;
 
+  /**
+   * The address and timeouts, a subclass hands them to its endpoint with
+   * {@link RpcEndpoint#setConfig} once it has one.
+   */
+  protected final RpcClientConfigImpl config;
+
   /**
    * @param subscriberSlaveUri
    *          the {@link URI} to connect to
-   * @param interfaceClass
-   *          the class literal for the XML-RPC interface
+   * @param connTimeout
+   *          milliseconds to wait to connect
+   * @param replyTimeout
+   *          milliseconds each call waits for its response
    */
   public Client(InetSocketAddress subscriberSlaveUri, int connTimeout, int replyTimeout) {
     this.uri = subscriberSlaveUri;
-    RpcClientConfigImpl config = new RpcClientConfigImpl();
+    config = new RpcClientConfigImpl();
     config.setServerURL(subscriberSlaveUri);
     config.setConnectionTimeout(connTimeout);
     config.setReplyTimeout(replyTimeout);
+  }
+
+  /**
+   * The asynchronous form of {@link Response#fromListChecked}.
+   * 
+   * @return completes with the {@link Response} once the call does, or
+   *         exceptionally if the call failed or its status is not a success
+   */
+  protected static <R> CompletableFuture<Response<R>> checked(CompletableFuture<List<Object>> call,
+      final ResultFactory<R> resultFactory) {
+    return call.thenApply(new Function<List<Object>, Response<R>>() {
+      @Override
+      public Response<R> apply(List<Object> response) {
+        return Response.fromListChecked(response, resultFactory);
+      }
+    });
+  }
 
-       
+  /**
+   * The asynchronous form of {@link Response#fromListCheckedFailure}.
+   * 
+   * @return completes with the {@link Response} once the call does, or
+   *         exceptionally if the call failed or its status is a failure
+   */
+  protected static <R> CompletableFuture<Response<R>> checkedFailure(CompletableFuture<List<Object>> call,
+      final ResultFactory<R> resultFactory) {
+    return call.thenApply(new Function<List<Object>, Response<R>>() {
+      @Override
+      public Response<R> apply(List<Object> response) {
+        return Response.fromListCheckedFailure(response, resultFactory);
+      }
+    });
   }
 
   /**
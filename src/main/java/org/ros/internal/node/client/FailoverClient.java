@@ -0,0 +1,197 @@
+package org.ros.internal.node.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.exception.NotMasterException;
+import org.ros.internal.node.server.RemoteRequestInterface;
+
+/**
+ * A {@link RemoteClient} to the first of several servers that moves on to the next when it loses the one it has,
+ * for a master with warm standbys, see {@link org.ros.internal.node.server.master.MasterStandby}.<p/>
+ * A call that fails because the connection failed, could not be made or timed out connecting, or that a standby
+ * still following its primary refused with a {@link NotMasterException}, is made again on the next server. Each
+ * server is tried once, and after that the round is made again every {@link #RETRY} ms until the reply timeout has
+ * passed since the call was made, so a client that lost the primary for a moment goes back to it, and one that
+ * lost it for good reaches the standby once it has taken over. A call the server answered with an error, or that
+ * timed out waiting for its answer, fails as it would on a {@link RemoteClient}. The calls made to the master are
+ * registrations, lookups and parameter changes that can be made twice, so a call that may have reached the lost
+ * server before it went is simply made again. We stay with the server that answered, and from there the next one
+ * in the list is tried when it is lost or refuses in turn. Only a master that has taken over answers, so clients
+ * never register with a standby the primary does not know of.
+ * @author jg
+ *
+ */
+public class FailoverClient {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(FailoverClient.class);
+	public static final long RETRY = 250; // milliseconds between rounds of the servers when none would take a call
+	// calls are made again off the thread that saw the failure, that may be a connection's reader
+	private static final ScheduledExecutorService failovers = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "FailoverClient");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final List<InetSocketAddress> addresses;
+	private final int portOffset;
+	private volatile int connectTimeout = RemoteClient.DEFAULT_CONNECT_TIMEOUT;
+	private volatile long replyTimeout = RemoteClient.DEFAULT_REPLY_TIMEOUT;
+	// guarded by this
+	private int current;
+	private RemoteClient remote;
+
+	/**
+	 * @param addresses The servers in the order to use them, the first is connected to
+	 * @param portOffset Added to the port of each address, 1 to reach the parameter server beside a master
+	 * @throws IOException if the first address can not be resolved
+	 */
+	public FailoverClient(List<InetSocketAddress> addresses, int portOffset) throws IOException {
+		assert(!addresses.isEmpty()) : "FailoverClient needs at least one address";
+		this.addresses = Collections.unmodifiableList(new ArrayList<InetSocketAddress>(addresses));
+		this.portOffset = portOffset;
+		remote = connect(0);
+	}
+
+	private RemoteClient connect(int index) throws IOException {
+		InetSocketAddress address = addresses.get(index);
+		RemoteClient client = new RemoteClient(address.getHostString(), address.getPort() + portOffset);
+		client.setTimeouts(connectTimeout, replyTimeout);
+		return client;
+	}
+
+	private synchronized RemoteClient current() {
+		return remote;
+	}
+
+	/**
+	 * @return The address of the server calls go to now
+	 */
+	public synchronized InetSocketAddress getCurrentAddress() {
+		return addresses.get(current);
+	}
+
+	public List<InetSocketAddress> getAddresses() {
+		return addresses;
+	}
+
+	/**
+	 * As {@link RemoteClient#setTimeouts}, for every server.
+	 */
+	public synchronized void setTimeouts(int connectTimeout, long replyTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.replyTimeout = replyTimeout;
+		remote.setTimeouts(connectTimeout, replyTimeout);
+	}
+
+	public long getReplyTimeout() {
+		return replyTimeout;
+	}
+
+	/**
+	 * As {@link RemoteClient#submit(RemoteRequestInterface)}, made again on the next server if the connection is lost.
+	 */
+	public CompletableFuture<Object> submit(RemoteRequestInterface rri) {
+		return submit(rri, replyTimeout);
+	}
+
+	/**
+	 * As {@link RemoteClient#submit(RemoteRequestInterface, long)}, made again on the next server if the connection
+	 * is lost or the server is not the master. Each attempt has the whole timeout.
+	 */
+	public CompletableFuture<Object> submit(RemoteRequestInterface rri, long timeout) {
+		CompletableFuture<Object> call = new CompletableFuture<Object>();
+		attempt(rri, timeout, call, System.currentTimeMillis() + timeout, 1);
+		return call;
+	}
+
+	private void attempt(final RemoteRequestInterface rri, final long timeout, final CompletableFuture<Object> call,
+			final long deadline, final int attempts) {
+		final RemoteClient client = current();
+		client.submit(rri, timeout).whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable failure) {
+				if( failure == null ) {
+					call.complete(result);
+				} else if( (attempts < addresses.size() || addresses.size() > 1 && System.currentTimeMillis() < deadline) &&
+						(isNotMaster(failure) || isConnectionLost(failure) || client != current()) ) {
+					// a whole round of the servers found none to take it, wait for a takeover or the primary
+					long delay = attempts % addresses.size() == 0 ? RETRY : 0;
+					failovers.schedule(new Runnable() {
+						@Override
+						public void run() {
+							failOver(client, failure);
+							attempt(rri, timeout, call, deadline, attempts + 1);
+						}
+					}, delay, TimeUnit.MILLISECONDS);
+				} else {
+					call.completeExceptionally(failure);
+				}
+			}
+		});
+	}
+
+	/**
+	 * The server is a standby that has not taken over.
+	 */
+	private static boolean isNotMaster(Throwable failure) {
+		for(Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if( cause instanceof NotMasterException )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The connection failed rather than the call, the failure was an {@link IOException} or caused by one.
+	 */
+	private static boolean isConnectionLost(Throwable failure) {
+		for(Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if( cause instanceof IOException )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Move on from the server that failed or refused to the next one we can resolve, unless another call has already
+	 * moved us.
+	 */
+	private synchronized void failOver(RemoteClient failed, Throwable failure) {
+		if( remote != failed )
+			return;
+		for(int i = 1; i < addresses.size(); i++) {
+			int next = (current + i) % addresses.size();
+			try {
+				remote = connect(next);
+			} catch(IOException e) {
+				log.warn("FailoverClient can not use "+addresses.get(next)+": "+e);
+				continue;
+			}
+			log.warn("FailoverClient lost "+addresses.get(current)+" ("+failure+"), moving to "+addresses.get(next));
+			current = next;
+			failed.close();
+			return;
+		}
+		if( DEBUG )
+			log.debug("FailoverClient has nowhere to move from "+addresses.get(current));
+	}
+
+	public synchronized void close() {
+		remote.close();
+	}
+}
@@ -17,9 +17,11 @@
 package org.ros.internal.node.client;
 
 import org.ros.exception.RosRuntimeException;
+import org.ros.internal.node.response.GraphEventsResultFactory;
 import org.ros.internal.node.response.InetAddressListResultFactory;
 
 import org.ros.internal.node.response.InetSocketAddressListResultFactory;
+import org.ros.internal.node.response.InetSocketAddressListsResultFactory;
 import org.ros.internal.node.response.InetSocketAddressResultFactory;
 import org.ros.internal.node.response.IntegerResultFactory;
 import org.ros.internal.node.response.Response;
@@ -31,6 +33,7 @@ import org.ros.internal.node.response.UriResultFactory;
 import org.ros.internal.node.response.VoidResultFactory;
 import org.ros.internal.node.rpc.MasterRpcEndpoint;
 import org.ros.internal.node.rpc.MasterRpcEndpointImpl;
+import org.ros.internal.node.rpc.MasterShards;
 
 import org.ros.internal.node.server.NodeIdentifier;
 import org.ros.internal.node.server.SlaveServer;
@@ -38,6 +41,8 @@ import org.ros.internal.node.server.master.MasterServer;
 import org.ros.internal.node.topic.PublisherDeclaration;
 import org.ros.internal.node.topic.PublisherIdentifier;
 import org.ros.internal.node.topic.TopicDeclaration;
+import org.ros.internal.node.topic.TopicParticipant;
+import org.ros.master.client.GraphEvents;
 import org.ros.master.client.SystemState;
 import org.ros.master.client.TopicSystemState;
 import org.ros.master.client.TopicType;
@@ -51,10 +56,17 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Provides access to the RPC API exposed by a {@link MasterServer}.
+ * <p>
+ * Each call has a blocking form returning a {@link Response} and an
+ * asynchronous form returning a {@link CompletableFuture} of one. Any number of
+ * asynchronous calls may be in flight at once on the one connection to the
+ * master, none of them holding a thread while it waits.
  * 
  * @author damonkohler@google.com (Damon Kohler)
  */
@@ -72,7 +84,38 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
   public MasterClient(InetSocketAddress uri, int connTimeout, int replyTimeout) throws IOException {
 	    super(uri, connTimeout, replyTimeout);
 	    rpcEndpoint = new MasterRpcEndpointImpl(uri.getHostName(), uri.getPort());
+	    rpcEndpoint.setConfig(config);
   }
+
+  /**
+   * Create a new {@link MasterClient} connected to the first of the
+   * {@link MasterServer}s, moving on to the next when it is lost.
+   * 
+   * @param uris
+   *          the primary master and its standbys, in the order to use them
+   * @throws IOException
+   */
+  public MasterClient(List<InetSocketAddress> uris, int connTimeout, int replyTimeout) throws IOException {
+    super(uris.get(0), connTimeout, replyTimeout);
+    rpcEndpoint = new MasterRpcEndpointImpl(uris);
+    rpcEndpoint.setConfig(config);
+  }
+
+  /**
+   * Create a new {@link MasterClient} for a graph split over several
+   * {@link MasterServer}s by namespace, each call going to the masters owning
+   * the names in it.
+   * 
+   * @param shards
+   *          the masters of each namespace
+   * @throws IOException
+   */
+  public MasterClient(MasterShards shards, int connTimeout, int replyTimeout) throws IOException {
+    super(shards.getMasters(0).get(0), connTimeout, replyTimeout);
+    rpcEndpoint = new MasterRpcEndpointImpl(shards);
+    rpcEndpoint.setConfig(config);
+  }
+
   /**
    * Registers the given {@link ServiceServer}.
    * 
@@ -91,6 +134,69 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
         slave.getUri().getHostName().toString(), String.valueOf(slave.getUri().getPort())),
         new VoidResultFactory());
   }
+  /**
+   * As {@link #registerService}, without waiting on the master.
+   */
+  public CompletableFuture<Response<Void>> registerServiceAsync(NodeIdentifier slave, ServiceServer<?, ?> service) {
+    return checked(
+        rpcEndpoint.registerServiceAsync(slave.getName().toString(),
+        service.getName().toString(),
+        service.getUri().getHostName().toString(), String.valueOf(service.getUri().getPort()),
+        slave.getUri().getHostName().toString(), String.valueOf(slave.getUri().getPort())),
+        new VoidResultFactory());
+  }
+
+  /**
+   * Registers many {@link ServiceServer}s of one node in one call.
+   * 
+   * @param slave
+   *          the {@link NodeIdentifier} where the {@link ServiceServer}s are
+   *          running
+   * @param services
+   *          the {@link ServiceServer}s to register
+   * @return a void {@link Response}
+   */
+  public Response<Void> registerServices(NodeIdentifier slave, List<? extends ServiceServer<?, ?>> services) {
+    return Response.fromListChecked(
+        rpcEndpoint.registerServices(slave.getName().toString(), serviceNames(services), serviceHosts(services),
+        servicePorts(services), slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
+        new VoidResultFactory());
+  }
+  /**
+   * As {@link #registerServices}, without waiting on the master.
+   */
+  public CompletableFuture<Response<Void>> registerServicesAsync(NodeIdentifier slave,
+      List<? extends ServiceServer<?, ?>> services) {
+    return checked(
+        rpcEndpoint.registerServicesAsync(slave.getName().toString(), serviceNames(services), serviceHosts(services),
+        servicePorts(services), slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
+        new VoidResultFactory());
+  }
+
+  private static List<String> serviceNames(List<? extends ServiceServer<?, ?>> services) {
+    List<String> names = new ArrayList<String>();
+    for (ServiceServer<?, ?> service : services) {
+      names.add(service.getName().toString());
+    }
+    return names;
+  }
+
+  private static List<String> serviceHosts(List<? extends ServiceServer<?, ?>> services) {
+    List<String> hosts = new ArrayList<String>();
+    for (ServiceServer<?, ?> service : services) {
+      hosts.add(service.getUri().getHostName());
+    }
+    return hosts;
+  }
+
+  private static List<String> servicePorts(List<? extends ServiceServer<?, ?>> services) {
+    List<String> ports = new ArrayList<String>();
+    for (ServiceServer<?, ?> service : services) {
+      ports.add(String.valueOf(service.getUri().getPort()));
+    }
+    return ports;
+  }
+
 
   /**
    * Unregisters the specified {@link ServiceServer}.
@@ -107,6 +213,15 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
         slave.getName().toString(), service.getName().toString(), service.getUri().getHostName(), String.valueOf(service.getUri().getPort())),
         new IntegerResultFactory());
   }
+  /**
+   * As {@link #unregisterService}, without waiting on the master.
+   */
+  public CompletableFuture<Response<Integer>> unregisterServiceAsync(NodeIdentifier slave, ServiceServer<?, ?> service) {
+    return checked(rpcEndpoint.unregisterServiceAsync(
+        slave.getName().toString(), service.getName().toString(), service.getUri().getHostName(), String.valueOf(service.getUri().getPort())),
+        new IntegerResultFactory());
+  }
+
 
   /**
    * Registers the given {@link Subscriber}. In addition to receiving a list of
@@ -130,6 +245,47 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
     		 slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())), 
     	    new InetAddressListResultFactory());
   }
+  /**
+   * As {@link #registerSubscriber}, without waiting on the master.
+   */
+  public CompletableFuture<Response<List<InetAddress>>> registerSubscriberAsync(NodeIdentifier slave, Subscriber<?> subscriber) {
+    return checked(
+        rpcEndpoint.registerSubscriberAsync(slave.getName().toString(),
+         subscriber.getTopicName().toString(),
+         subscriber.getTopicMessageType(),
+         slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
+        new InetAddressListResultFactory());
+  }
+
+  /**
+   * Registers many {@link Subscriber}s of one node in one call.
+   * 
+   * @param slave
+   *          the {@link NodeIdentifier} that the {@link Subscriber}s are
+   *          running on
+   * @param subscribers
+   *          the {@link Subscriber}s to register
+   * @return for each {@link Subscriber}, in order, the {@link SlaveServer}
+   *         addresses of the nodes currently publishing its topic
+   */
+  public Response<List<List<InetSocketAddress>>> registerSubscribers(NodeIdentifier slave,
+      List<? extends TopicParticipant> subscribers) {
+    return Response.fromListChecked(
+        rpcEndpoint.registerSubscribers(slave.getName().toString(), topicNames(subscribers),
+        topicMessageTypes(subscribers), slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
+        new InetSocketAddressListsResultFactory());
+  }
+  /**
+   * As {@link #registerSubscribers}, without waiting on the master.
+   */
+  public CompletableFuture<Response<List<List<InetSocketAddress>>>> registerSubscribersAsync(NodeIdentifier slave,
+      List<? extends TopicParticipant> subscribers) {
+    return checked(
+        rpcEndpoint.registerSubscribersAsync(slave.getName().toString(), topicNames(subscribers),
+        topicMessageTypes(subscribers), slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
+        new InetSocketAddressListsResultFactory());
+  }
+
 
   /**
    * Unregisters the specified {@link Subscriber}.
@@ -145,6 +301,15 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
         .toString(), subscriber.getTopicName().toString(), slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
         new IntegerResultFactory());
   }
+  /**
+   * As {@link #unregisterSubscriber}, without waiting on the master.
+   */
+  public CompletableFuture<Response<Integer>> unregisterSubscriberAsync(NodeIdentifier slave, Subscriber<?> subscriber) {
+    return checked(rpcEndpoint.unregisterSubscriberAsync(slave.getName()
+        .toString(), subscriber.getTopicName().toString(), slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
+        new IntegerResultFactory());
+  }
+
 
   /**
    * Registers the specified {@link PublisherDeclaration}.
@@ -165,6 +330,65 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
         rpcEndpoint.registerPublisher(slaveName, topicName, messageType, slaveUri, slavePort),
         new InetSocketAddressListResultFactory());
   }
+  /**
+   * As {@link #registerPublisher}, without waiting on the master.
+   */
+  public CompletableFuture<Response<List<InetSocketAddress>>> registerPublisherAsync(PublisherDeclaration publisherDeclaration) {
+    String slaveName = publisherDeclaration.getSlaveName().toString();
+    String slaveUri = publisherDeclaration.getSlaveUri().getHostName();
+    String slavePort = String.valueOf(publisherDeclaration.getSlaveUri().getPort());
+    String topicName = publisherDeclaration.getTopicName().toString();
+    String messageType = publisherDeclaration.getTopicMessageType();
+    return checked(
+        rpcEndpoint.registerPublisherAsync(slaveName, topicName, messageType, slaveUri, slavePort),
+        new InetSocketAddressListResultFactory());
+  }
+
+  /**
+   * Registers many {@link Publisher}s of one node in one call.
+   * 
+   * @param slave
+   *          the {@link NodeIdentifier} that the {@link Publisher}s are
+   *          running on
+   * @param publishers
+   *          the {@link Publisher}s to register
+   * @return for each {@link Publisher}, in order, the {@link SlaveServer}
+   *         URIs of the current {@link Subscriber}s to its topic
+   */
+  public Response<List<List<InetSocketAddress>>> registerPublishers(NodeIdentifier slave,
+      List<? extends TopicParticipant> publishers) {
+    return Response.fromListChecked(
+        rpcEndpoint.registerPublishers(slave.getName().toString(), topicNames(publishers),
+        topicMessageTypes(publishers), slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
+        new InetSocketAddressListsResultFactory());
+  }
+  /**
+   * As {@link #registerPublishers}, without waiting on the master.
+   */
+  public CompletableFuture<Response<List<List<InetSocketAddress>>>> registerPublishersAsync(NodeIdentifier slave,
+      List<? extends TopicParticipant> publishers) {
+    return checked(
+        rpcEndpoint.registerPublishersAsync(slave.getName().toString(), topicNames(publishers),
+        topicMessageTypes(publishers), slave.getUri().getHostName(), String.valueOf(slave.getUri().getPort())),
+        new InetSocketAddressListsResultFactory());
+  }
+
+  private static List<String> topicNames(List<? extends TopicParticipant> participants) {
+    List<String> names = new ArrayList<String>();
+    for (TopicParticipant participant : participants) {
+      names.add(participant.getTopicName().toString());
+    }
+    return names;
+  }
+
+  private static List<String> topicMessageTypes(List<? extends TopicParticipant> participants) {
+    List<String> types = new ArrayList<String>();
+    for (TopicParticipant participant : participants) {
+      types.add(participant.getTopicMessageType());
+    }
+    return types;
+  }
+
 
   /**
    * Unregisters the specified {@link PublisherDeclaration}.
@@ -183,6 +407,19 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
         rpcEndpoint.unregisterPublisher(slaveName, topicName, slaveUri, slavePort),
         new IntegerResultFactory());
   }
+  /**
+   * As {@link #unregisterPublisher}, without waiting on the master.
+   */
+  public CompletableFuture<Response<Integer>> unregisterPublisherAsync(PublisherIdentifier publisherIdentifier) {
+    String slaveName = publisherIdentifier.getNodeName().toString();
+    String slaveUri = publisherIdentifier.getNodeUri().getHostName();
+    String slavePort = String.valueOf(publisherIdentifier.getNodeUri().getPort());
+    String topicName = publisherIdentifier.getTopicName().toString();
+    return checked(
+        rpcEndpoint.unregisterPublisherAsync(slaveName, topicName, slaveUri, slavePort),
+        new IntegerResultFactory());
+  }
+
 
   /**
    * @param slaveName
@@ -195,6 +432,14 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
     return Response.fromListChecked(rpcEndpoint.lookupNode(slaveName.toString(), nodeName),
         new UriResultFactory());
   }
+  /**
+   * As {@link #lookupNode}, without waiting on the master.
+   */
+  public CompletableFuture<Response<URI>> lookupNodeAsync(GraphName slaveName, String nodeName) {
+    return checked(rpcEndpoint.lookupNodeAsync(slaveName.toString(), nodeName),
+        new UriResultFactory());
+  }
+
 
   /**
    * @param slaveName
@@ -205,6 +450,14 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
     return Response.fromListChecked(rpcEndpoint.getUri(slaveName.toString()),
         new InetSocketAddressResultFactory());
   }
+  /**
+   * As {@link #getUri}, without waiting on the master.
+   */
+  public CompletableFuture<Response<InetSocketAddress>> getUriAsync(GraphName slaveName) {
+    return checked(rpcEndpoint.getUriAsync(slaveName.toString()),
+        new InetSocketAddressResultFactory());
+  }
+
 
   /**
    * @param callerName
@@ -218,6 +471,14 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
     return Response.fromListCheckedFailure(
         rpcEndpoint.lookupService(callerName.toString(), serviceName), new UriResultFactory());
   }
+  /**
+   * As {@link #lookupService}, without waiting on the master.
+   */
+  public CompletableFuture<Response<URI>> lookupServiceAsync(GraphName callerName, String serviceName) {
+    return checkedFailure(
+        rpcEndpoint.lookupServiceAsync(callerName.toString(), serviceName), new UriResultFactory());
+  }
+
 
   /**
    * @param callerName
@@ -231,6 +492,15 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
         rpcEndpoint.getPublishedTopics(callerName.toString(), subgraph),
         new TopicListResultFactory());
   }
+  /**
+   * As {@link #getPublishedTopics}, without waiting on the master.
+   */
+  public CompletableFuture<Response<List<TopicDeclaration>>> getPublishedTopicsAsync(GraphName callerName, String subgraph) {
+    return checked(
+        rpcEndpoint.getPublishedTopicsAsync(callerName.toString(), subgraph),
+        new TopicListResultFactory());
+  }
+
 
   /**
    * Get a {@link List} of all {@link TopicSystemState} message types.
@@ -243,6 +513,14 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
     return Response.fromListChecked(rpcEndpoint.getTopicTypes(callerName.toString()),
         new TopicTypeListResultFactory());
   }
+  /**
+   * As {@link #getTopicTypes}, without waiting on the master.
+   */
+  public CompletableFuture<Response<List<TopicType>>> getTopicTypesAsync(GraphName callerName) {
+    return checked(rpcEndpoint.getTopicTypesAsync(callerName.toString()),
+        new TopicTypeListResultFactory());
+  }
+
 
   /**
    * @param callerName
@@ -253,4 +531,71 @@ public class MasterClient extends Client<MasterRpcEndpoint> {
     return Response.fromListChecked(rpcEndpoint.getSystemState(callerName.toString()),
         new SystemStateResultFactory());
   }
+  /**
+   * As {@link #getSystemState}, without waiting on the master.
+   */
+  public CompletableFuture<Response<SystemState>> getSystemStateAsync(GraphName callerName) {
+    return checked(rpcEndpoint.getSystemStateAsync(callerName.toString()),
+        new SystemStateResultFactory());
+  }
+
+  /**
+   * Get only the changes to the system state since a version the caller has.
+   * Keep the {@link GraphEvents#getEpoch()} and
+   * {@link GraphEvents#getSequence()} of each answer as the version to ask from
+   * next, the first call, with an epoch of 0, gets the whole graph as a
+   * snapshot.
+   * 
+   * @param callerName
+   *          the {@link GraphName} of the caller
+   * @param epoch
+   *          the epoch of the caller's version, 0 if none
+   * @param version
+   *          the caller's version
+   * @return the changes since the version, or a snapshot
+   */
+  public Response<GraphEvents> getSystemStateSince(GraphName callerName, long epoch, long version) {
+    return Response.fromListChecked(rpcEndpoint.getSystemStateSince(callerName.toString(), epoch, version),
+        new GraphEventsResultFactory());
+  }
+
+  /**
+   * As {@link #getSystemStateSince}, without waiting on the master.
+   */
+  public CompletableFuture<Response<GraphEvents>> getSystemStateSinceAsync(GraphName callerName, long epoch,
+      long version) {
+    return checked(rpcEndpoint.getSystemStateSinceAsync(callerName.toString(), epoch, version),
+        new GraphEventsResultFactory());
+  }
+
+  /**
+   * Watch the graph for changes rather than polling {@link #getSystemState}.
+   * Call again with the epoch and sequence number of each answer to get the
+   * changes after it, the first call, with an epoch of 0, gets a snapshot of
+   * the whole graph.
+   * 
+   * @param callerName
+   *          the {@link GraphName} of the caller
+   * @param epoch
+   *          the {@link GraphEvents#getEpoch()} of the last answer, 0 if none
+   * @param since
+   *          the {@link GraphEvents#getSequence()} of the last answer
+   * @param waitMillis
+   *          how long the master may hold the call waiting for a change
+   * @return the changes, empty if there were none within the wait
+   */
+  public Response<GraphEvents> watchGraph(GraphName callerName, long epoch, long since, long waitMillis) {
+    return Response.fromListChecked(rpcEndpoint.watchGraph(callerName.toString(), epoch, since, waitMillis),
+        new GraphEventsResultFactory());
+  }
+
+  /**
+   * As {@link #watchGraph}, without waiting on the master.
+   */
+  public CompletableFuture<Response<GraphEvents>> watchGraphAsync(GraphName callerName, long epoch, long since,
+      long waitMillis) {
+    return checked(rpcEndpoint.watchGraphAsync(callerName.toString(), epoch, since, waitMillis),
+        new GraphEventsResultFactory());
+  }
+
 }
@@ -12,6 +12,7 @@ import org.ros.internal.node.response.Response;
 import org.ros.internal.node.response.StringResultFactory;
 import org.ros.internal.node.response.VoidResultFactory;
 import org.ros.internal.node.rpc.MasterRpcEndpointImpl;
+import org.ros.internal.node.rpc.MasterShards;
 import org.ros.internal.node.rpc.ParameterServerRpcEndpoint;
 import org.ros.internal.node.server.NodeIdentifier;
 import org.ros.internal.node.server.ParameterServer;
@@ -22,11 +23,13 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
  * Provide access to the RPC API for a ROS {@link ParameterServer}.
  * The ParameterServer typically starts one port higher than the master.
+ * Each call also has an asynchronous form returning a {@link CompletableFuture}.
  * 
  * @author jg
  */
@@ -52,17 +55,65 @@ public class ParameterClient extends Client<ParameterServerRpcEndpoint> {
     this.nodeIdentifier = nodeIdentifier;
     nodeName = nodeIdentifier.getName().toString();
     rpcEndpoint = new MasterRpcEndpointImpl(uri.getHostName(), uri.getPort());
+    rpcEndpoint.setConfig(config);
 }
 
+  /**
+   * Create a new {@link ParameterClient} connected to the {@link ParameterServer}
+   * of the first of the masters, moving on to the next when it is lost.
+   * @param nodeIdentifier The identifier of our currently executing node
+   * @param masterUris the primary master and its standbys, in the order to use them
+   * @throws IOException
+   */
+  public ParameterClient(NodeIdentifier nodeIdentifier, List<InetSocketAddress> masterUris) throws IOException {
+    super(masterUris.get(0), 60000, 60000);
+    this.nodeIdentifier = nodeIdentifier;
+    nodeName = nodeIdentifier.getName().toString();
+    rpcEndpoint = new MasterRpcEndpointImpl(masterUris);
+    rpcEndpoint.setConfig(config);
+  }
+
+  /**
+   * Create a new {@link ParameterClient} for a graph split over several masters
+   * by namespace, each parameter kept by the {@link ParameterServer} of the
+   * masters owning its name.
+   * @param nodeIdentifier The identifier of our currently executing node
+   * @param shards the masters of each namespace
+   * @throws IOException
+   */
+  public ParameterClient(NodeIdentifier nodeIdentifier, MasterShards shards) throws IOException {
+    super(shards.getMasters(0).get(0), 60000, 60000);
+    this.nodeIdentifier = nodeIdentifier;
+    nodeName = nodeIdentifier.getName().toString();
+    rpcEndpoint = new MasterRpcEndpointImpl(shards);
+    rpcEndpoint.setConfig(config);
+  }
+
 public Response<Object> getParam(GraphName parameterName) {
     return Response.fromListCheckedFailure(rpcEndpoint.getParam(nodeName, parameterName.toString()),
         new ObjectResultFactory());
   }
+  /**
+   * As {@link #getParam}, without waiting on the parameter server.
+   */
+  public CompletableFuture<Response<Object>> getParamAsync(GraphName parameterName) {
+    return checkedFailure(rpcEndpoint.getParamAsync(nodeName, parameterName.toString()),
+        new ObjectResultFactory());
+  }
+
 
   public Response<Void> setParam(GraphName parameterName, Object parameterValue) {
     return Response.fromListChecked(
         rpcEndpoint.setParam(nodeName, parameterName.toString(), parameterValue), new VoidResultFactory());
   }
+  /**
+   * As {@link #setParam}, without waiting on the parameter server.
+   */
+  public CompletableFuture<Response<Void>> setParamAsync(GraphName parameterName, Object parameterValue) {
+    return checked(
+        rpcEndpoint.setParamAsync(nodeName, parameterName.toString(), parameterValue), new VoidResultFactory());
+  }
+
 
 
   public Response<GraphName> searchParam(GraphName parameterName) {
@@ -77,6 +128,14 @@ public Response<Object> getParam(GraphName parameterName) {
     return Response.fromListChecked(rpcEndpoint.subscribeParam(nodeName, nodeIdentifier.getUri().getHostName(),
     		String.valueOf(nodeIdentifier.getUri().getPort()), parameterName.toString()), new ObjectResultFactory());
   }
+  /**
+   * As {@link #subscribeParam}, without waiting on the parameter server.
+   */
+  public CompletableFuture<Response<Object>> subscribeParamAsync(GraphName parameterName) {
+    return checked(rpcEndpoint.subscribeParamAsync(nodeName, nodeIdentifier.getUri().getHostName(),
+    		String.valueOf(nodeIdentifier.getUri().getPort()), parameterName.toString()), new ObjectResultFactory());
+  }
+
 
   public Response<Integer> unsubscribeParam(GraphName parameterName) {
     return Response.fromListChecked(
@@ -90,17 +149,40 @@ public Response<Object> getParam(GraphName parameterName) {
     return Response.fromListChecked(rpcEndpoint.hasParam(nodeName, parameterName.toString()),
         new BooleanResultFactory());
   }
+  /**
+   * As {@link #hasParam}, without waiting on the parameter server.
+   */
+  public CompletableFuture<Response<Boolean>> hasParamAsync(GraphName parameterName) {
+    return checked(rpcEndpoint.hasParamAsync(nodeName, parameterName.toString()),
+        new BooleanResultFactory());
+  }
+
 
   public Response<Void> deleteParam(GraphName parameterName) {
     return Response.fromListChecked(rpcEndpoint.deleteParam(nodeName, parameterName.toString()),
         new VoidResultFactory());
   }
+  /**
+   * As {@link #deleteParam}, without waiting on the parameter server.
+   */
+  public CompletableFuture<Response<Void>> deleteParamAsync(GraphName parameterName) {
+    return checked(rpcEndpoint.deleteParamAsync(nodeName, parameterName.toString()),
+        new VoidResultFactory());
+  }
+
 
   public Response<List<GraphName>> getParamNames() {
     Response<List<GraphName>> response =
         Response.fromListChecked(rpcEndpoint.getParamNames(nodeName), new GraphNameListResultFactory());
     return response;
   }
+  /**
+   * As {@link #getParamNames}, without waiting on the parameter server.
+   */
+  public CompletableFuture<Response<List<GraphName>>> getParamNamesAsync() {
+    return checked(rpcEndpoint.getParamNamesAsync(nodeName), new GraphNameListResultFactory());
+  }
+
 
 
 }
@@ -19,6 +19,7 @@ import org.ros.internal.node.topic.TopicParticipantManagerListener;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -29,6 +30,12 @@ import java.util.concurrent.TimeUnit;
  * Manages topic, and service registrations of a {@link SlaveServer} with the
  * {@link MasterServer}.
  * 
+ * <p>
+ * Registrations are held for a short window and sent in one batch call for
+ * each of publishers, subscribers and services. Unregistrations go one at a
+ * time, and one for a participant still waiting on the window just takes it
+ * out of the batch, the master never having heard of it.
+ * 
  * @author jg
  */
 public class Registrar implements TopicParticipantManagerListener, ServiceManagerListener {
@@ -39,6 +46,11 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
   private static final int SHUTDOWN_TIMEOUT = 5;
   private static final TimeUnit SHUTDOWN_TIMEOUT_UNITS = TimeUnit.SECONDS;
 
+  /**
+   * Milliseconds registrations are held for others to join them in one call.
+   */
+  public static final long DEFAULT_BATCH_WINDOW = 20;
+
   private final MasterClient masterClient;
   private final ScheduledExecutorService executorService;
   private final RetryingExecutorService retryingExecutorService;
@@ -46,6 +58,13 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
   private NodeIdentifier nodeIdentifier;
   private boolean running;
 
+  // registrations waiting on the batch window, guarded by this
+  private long batchWindow = DEFAULT_BATCH_WINDOW;
+  private List<DefaultPublisher<?>> queuedPublishers = new ArrayList<DefaultPublisher<?>>();
+  private List<DefaultSubscriber<?>> queuedSubscribers = new ArrayList<DefaultSubscriber<?>>();
+  private List<DefaultServiceServer<?, ?>> queuedServiceServers = new ArrayList<DefaultServiceServer<?, ?>>();
+  private boolean flushScheduled = false;
+
   /**
    * @param masterClient
    *          a {@link MasterClient} for communicating with the ROS master
@@ -64,6 +83,21 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     }
   }
 
+  /**
+   * Registrations added within this window of the first go to the master
+   * together, so a node starting up with many topics makes a few calls rather
+   * than one for each.
+   * 
+   * @param window
+   *          the window in units of {@code unit}, 0 to send whatever has
+   *          queued as soon as a thread is free
+   * @param unit
+   *          the unit of {@code window}
+   */
+  public synchronized void setBatchWindow(long window, TimeUnit unit) {
+    batchWindow = unit.toMillis(window);
+  }
+
   /**
    * Failed registration actions are retried periodically until they succeed.
    * This method adjusts the delay between successive retry attempts for any
@@ -87,6 +121,72 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     return false;
   }
 
+  /**
+   * Queue a registration for the next batch, starting the batch window if it
+   * is the first.
+   * 
+   * @return {@code false} if the {@link Registrar} is no longer running
+   */
+  private synchronized <T> boolean enqueue(List<T> queue, T participant) {
+    if (!running) {
+      log.warn("Registrar no longer running, request ignored.");
+      return false;
+    }
+    queue.add(participant);
+    if (!flushScheduled) {
+      flushScheduled = true;
+      executorService.schedule(new Runnable() {
+        @Override
+        public void run() {
+          flush();
+        }
+      }, batchWindow, TimeUnit.MILLISECONDS);
+    }
+    return true;
+  }
+
+  /**
+   * Take a participant removed before its registration was sent out of the
+   * batch.
+   * 
+   * @return {@code true} if it was still queued, the master then has nothing
+   *         to unregister
+   */
+  private synchronized <T> boolean dequeue(List<T> queue, T participant) {
+    return queue.remove(participant);
+  }
+
+  /**
+   * Send the queued registrations, one call to the master for each kind.
+   */
+  private void flush() {
+    List<DefaultPublisher<?>> publishers;
+    List<DefaultSubscriber<?>> subscribers;
+    List<DefaultServiceServer<?, ?>> serviceServers;
+    synchronized (this) {
+      publishers = queuedPublishers;
+      subscribers = queuedSubscribers;
+      serviceServers = queuedServiceServers;
+      queuedPublishers = new ArrayList<DefaultPublisher<?>>();
+      queuedSubscribers = new ArrayList<DefaultSubscriber<?>>();
+      queuedServiceServers = new ArrayList<DefaultServiceServer<?, ?>>();
+      flushScheduled = false;
+    }
+    if (DEBUG) {
+      log.info(String.format("Registering %d publishers, %d subscribers and %d services", publishers.size(),
+          subscribers.size(), serviceServers.size()));
+    }
+    if (!publishers.isEmpty()) {
+      registerPublishers(publishers);
+    }
+    if (!subscribers.isEmpty()) {
+      registerSubscribers(subscribers);
+    }
+    if (!serviceServers.isEmpty()) {
+      registerServiceServers(serviceServers);
+    }
+  }
+
   private <T> boolean callMaster(Callable<Response<T>> callable) {
     assert(nodeIdentifier != null) : "Registrar not started.";  
     boolean success;
@@ -112,30 +212,43 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     if (DEBUG) {
       log.info("Registering publisher: " + publisher);
     }
+    if (!enqueue(queuedPublishers, publisher)) {
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          publisher.signalOnMasterRegistrationFailure();
+        }
+      });
+    }
+  }
+
+  /**
+   * Register a batch of publishers in one call to the master.
+   */
+  private void registerPublishers(final List<DefaultPublisher<?>> publishers) {
     boolean submitted = submit(new Callable<Boolean>() {
       @Override
       public Boolean call() throws Exception {
-        boolean success = callMaster(new Callable<Response<List<InetSocketAddress>>>() {
+        boolean success = callMaster(new Callable<Response<List<List<InetSocketAddress>>>>() {
           @Override
-          public Response<List<InetSocketAddress>> call() throws Exception {
-            return masterClient.registerPublisher(publisher.toDeclaration());
+          public Response<List<List<InetSocketAddress>>> call() throws Exception {
+            return masterClient.registerPublishers(nodeIdentifier, publishers);
           }
         });
-        if (success) {
-          publisher.signalOnMasterRegistrationSuccess();
-        } else {
-          publisher.signalOnMasterRegistrationFailure();
+        for (DefaultPublisher<?> publisher : publishers) {
+          if (success) {
+            publisher.signalOnMasterRegistrationSuccess();
+          } else {
+            publisher.signalOnMasterRegistrationFailure();
+          }
         }
         return !success;
       }
     });
     if (!submitted) {
-      executorService.execute(new Runnable() {
-        @Override
-        public void run() {
-          publisher.signalOnMasterRegistrationFailure();
-        }
-      });
+      for (DefaultPublisher<?> publisher : publishers) {
+        publisher.signalOnMasterRegistrationFailure();
+      }
     }
   }
 
@@ -144,6 +257,15 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     if (DEBUG) {
       log.info("Unregistering publisher: " + publisher);
     }
+    if (dequeue(queuedPublishers, publisher)) {
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          publisher.signalOnMasterUnregistrationSuccess();
+        }
+      });
+      return;
+    }
     boolean submitted = submit(new Callable<Boolean>() {
       @Override
       public Boolean call() throws Exception {
@@ -176,35 +298,50 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     if (DEBUG) {
       log.info("Registering subscriber: " + subscriber);
     }
+    if (!enqueue(queuedSubscribers, subscriber)) {
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          subscriber.signalOnMasterRegistrationFailure();
+        }
+      });
+    }
+  }
+
+  /**
+   * Register a batch of subscribers in one call to the master, and hand each
+   * the current publishers of its topic.
+   */
+  private void registerSubscribers(final List<DefaultSubscriber<?>> subscribers) {
     boolean submitted = submit(new Callable<Boolean>() {
       @Override
       public Boolean call() throws Exception {
-        final Holder<Response<List<InetAddress>>> holder = Holder.newEmpty();
-        boolean success = callMaster(new Callable<Response<List<InetAddress>>>() {
+        final Holder<Response<List<List<InetSocketAddress>>>> holder = Holder.newEmpty();
+        boolean success = callMaster(new Callable<Response<List<List<InetSocketAddress>>>>() {
           @Override
-          public Response<List<InetAddress>> call() throws Exception {
-            return holder.set(masterClient.registerSubscriber(nodeIdentifier, subscriber));
+          public Response<List<List<InetSocketAddress>>> call() throws Exception {
+            return holder.set(masterClient.registerSubscribers(nodeIdentifier, subscribers));
           }
         });
-        if (success) {
-          Collection<PublisherIdentifier> publisherIdentifiers =
-              PublisherIdentifier.newCollectionFromUris((Collection<InetSocketAddress>) holder.get().getResult(),
-                  subscriber.getTopicDeclaration());
-          subscriber.updatePublishers(publisherIdentifiers);
-          subscriber.signalOnMasterRegistrationSuccess();
-        } else {
-          subscriber.signalOnMasterRegistrationFailure();
+        List<List<InetSocketAddress>> publisherUris = success ? holder.get().<List<List<InetSocketAddress>>>getResult() : null;
+        for (int i = 0; i < subscribers.size(); i++) {
+          DefaultSubscriber<?> subscriber = subscribers.get(i);
+          if (success) {
+            Collection<PublisherIdentifier> publisherIdentifiers =
+                PublisherIdentifier.newCollectionFromUris(publisherUris.get(i), subscriber.getTopicDeclaration());
+            subscriber.updatePublishers(publisherIdentifiers);
+            subscriber.signalOnMasterRegistrationSuccess();
+          } else {
+            subscriber.signalOnMasterRegistrationFailure();
+          }
         }
         return !success;
       }
     });
     if (!submitted) {
-      executorService.execute(new Runnable() {
-        @Override
-        public void run() {
-          subscriber.signalOnMasterRegistrationFailure();
-        }
-      });
+      for (DefaultSubscriber<?> subscriber : subscribers) {
+        subscriber.signalOnMasterRegistrationFailure();
+      }
     }
   }
 
@@ -213,6 +350,15 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     if (DEBUG) {
       log.info("Unregistering subscriber: " + subscriber);
     }
+    if (dequeue(queuedSubscribers, subscriber)) {
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          subscriber.signalOnMasterUnregistrationSuccess();
+        }
+      });
+      return;
+    }
     boolean submitted = submit(new Callable<Boolean>() {
       @Override
       public Boolean call() throws Exception {
@@ -245,30 +391,43 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     if (DEBUG) {
       log.info("Registering service: " + serviceServer);
     }
+    if (!enqueue(queuedServiceServers, serviceServer)) {
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          serviceServer.signalOnMasterRegistrationFailure();
+        }
+      });
+    }
+  }
+
+  /**
+   * Register a batch of services in one call to the master.
+   */
+  private void registerServiceServers(final List<DefaultServiceServer<?, ?>> serviceServers) {
     boolean submitted = submit(new Callable<Boolean>() {
       @Override
       public Boolean call() throws Exception {
         boolean success = callMaster(new Callable<Response<Void>>() {
           @Override
           public Response<Void> call() throws Exception {
-            return masterClient.registerService(nodeIdentifier, serviceServer);
+            return masterClient.registerServices(nodeIdentifier, serviceServers);
           }
         });
-        if (success) {
-          serviceServer.signalOnMasterRegistrationSuccess();
-        } else {
-          serviceServer.signalOnMasterRegistrationFailure();
+        for (DefaultServiceServer<?, ?> serviceServer : serviceServers) {
+          if (success) {
+            serviceServer.signalOnMasterRegistrationSuccess();
+          } else {
+            serviceServer.signalOnMasterRegistrationFailure();
+          }
         }
         return !success;
       }
     });
     if (!submitted) {
-      executorService.execute(new Runnable() {
-        @Override
-        public void run() {
-          serviceServer.signalOnMasterRegistrationFailure();
-        }
-      });
+      for (DefaultServiceServer<?, ?> serviceServer : serviceServers) {
+        serviceServer.signalOnMasterRegistrationFailure();
+      }
     }
   }
 
@@ -277,6 +436,15 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     if (DEBUG) {
       log.info("Unregistering service: " + serviceServer);
     }
+    if (dequeue(queuedServiceServers, serviceServer)) {
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          serviceServer.signalOnMasterUnregistrationSuccess();
+        }
+      });
+      return;
+    }
     boolean submitted = submit(new Callable<Boolean>() {
       @Override
       public Boolean call() throws Exception {
@@ -334,7 +502,11 @@ public class Registrar implements TopicParticipantManagerListener, ServiceManage
     if (!running) {
       return;
     }
-    running = false;
+    // whatever is waiting on the batch window gets the same chance as the jobs already queued
+    flush();
+    synchronized (this) {
+      running = false;
+    }
     try {
       retryingExecutorService.shutdown(SHUTDOWN_TIMEOUT, SHUTDOWN_TIMEOUT_UNITS);
     } catch (InterruptedException e) {
@@ -1,7 +1,6 @@
 package org.ros.internal.node.client;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
@@ -9,11 +8,32 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ros.exception.NotMasterException;
+import org.ros.exception.RosRuntimeException;
+import org.ros.exception.RpcBusyException;
+import org.ros.exception.RpcTimeoutException;
+import org.ros.internal.node.server.CompactRequest;
+import org.ros.internal.node.server.MethodNamesAndParams;
+import org.ros.internal.node.server.RemoteRequest;
 import org.ros.internal.node.server.RemoteRequestInterface;
+import org.ros.internal.node.server.RemoteResponse;
 import org.ros.internal.node.server.ThreadPoolManager;
 
 
@@ -21,6 +41,17 @@ import org.ros.internal.node.server.ThreadPoolManager;
  * This class functions as client to the remote node. MasterRpcEndpoint has one of these each for master and parameter server
  * SlaveRpcEndpoint has but one for contacting the remote master and issuing commands via the remote invokable methods.
  * The transport is accomplished via the RemoteRequestinterface implementors.
+ * Each call is tagged with an id and any number may be in flight on the one socket, the remote worker answers
+ * them as they complete and the reader thread hands each {@link RemoteResponse} to the caller waiting on that id.<p/>
+ * On connecting the client asks the server for its {@link MethodNamesAndParams}, and from then on sends each
+ * request for a method in the table as a {@link CompactRequest}, the method id and the bare parameters.<p/>
+ * Connecting is bounded by the connect timeout and every call by its reply timeout. A call not answered in time
+ * fails with a {@link RpcTimeoutException} and the caller moves on, a late answer is dropped. The timeout travels with
+ * the request so the server does not start on a call its caller has given up on. Timeouts count as connection
+ * failures, a peer that has silently died stops answering everything and a pool sees it as unhealthy.
+ * A server with no room for a call answers it busy without invoking it, the call fails with a {@link RpcBusyException}.
+ * A standby master still following its primary answers without invoking it, the call fails with a
+ * {@link NotMasterException}.
  * @author jg
  * Copyright (C) NeoCoreTechs 2014,2015
  */
@@ -28,6 +59,21 @@ public class RemoteClient implements Runnable {
 	private static final boolean DEBUG = false;
 	public static final boolean TEST = false; // true to run in local cluster test mode
 	private static final Log log = LogFactory.getLog(RemoteClient.class);
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000; // milliseconds
+	public static final long DEFAULT_REPLY_TIMEOUT = 60000; // milliseconds
+	// expires the calls of every client, the tasks are trivial
+	private static final ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "RemoteClientTimeout");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	static {
+		// most calls are answered long before they expire
+		timeouts.setRemoveOnCancelPolicy(true);
+	}
 	private int remotePort; // temp master port, accepts connection from remote server
 	
 	private InetAddress IPAddress = null;
@@ -35,11 +81,18 @@ public class RemoteClient implements Runnable {
 	private Socket workerSocket = null; // socket assigned to slave port
 	private SocketAddress workerSocketAddress; //address of slave
 
-	private boolean shouldRun = true; // master service thread control
+	private volatile boolean shouldRun = true; // master service thread control
 	private Object waitHalt = new Object(); 
+	private Object writeLock = new Object(); // guards workerSocket and the writes to it
+	private Map<String, Integer> methodIds = null; // method ids of the server on workerSocket, guarded by writeLock
+	private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private volatile long replyTimeout = DEFAULT_REPLY_TIMEOUT;
 	
-	ArrayBlockingQueue<RemoteRequestInterface> requests = new ArrayBlockingQueue<RemoteRequestInterface>(1);
-	ArrayBlockingQueue<Object> responses = new ArrayBlockingQueue<Object>(1);
+	// calls in flight by request id, many callers share the one socket and are answered in any order
+	private final AtomicLong nextId = new AtomicLong();
+	private final ConcurrentHashMap<Long, CompletableFuture<Object>> pending = new ConcurrentHashMap<Long, CompletableFuture<Object>>();
+	// calls lost to the connection since the last answer, the health a pool judges us by
+	private final AtomicInteger connectionFailures = new AtomicInteger();
 	
 	
 	/**
@@ -65,97 +118,372 @@ public class RemoteClient implements Runnable {
 	
 	
 	/**
-	 * Look for messages coming back from the workers. 
+	 * Look for messages coming back from the workers and complete the calls they answer. 
 	 */
 	@Override
 	public void run() {
  
 		while(shouldRun ) {
+			Socket socket = null;
 			try {
-				// sets workerSocket
-				send(requests.take());
-				InputStream ins = workerSocket.getInputStream();
-				ObjectInputStream ois = new ObjectInputStream(ins);
-				Object ret = ois.readObject();
-				if( ret == null )
-					ret = new Object(); // let voidResultFactory handle this, we cant put null to queue
+				socket = awaitSocket();
+				if( socket == null )
+					break;
+				ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
+				RemoteResponse res = (RemoteResponse) ois.readObject();
 				if( DEBUG )
-					 log.debug("FROM Remote, response:"+ret);
-				 responses.put(ret);
+					 log.debug("FROM Remote, response:"+res);
+				connectionFailures.set(0);
+				CompletableFuture<Object> call = pending.remove(res.getId());
+				if( call == null ) {
+					log.warn("RemoteClient: response for unknown request "+res.getId()+" Address:"+IPAddress+" port:"+remotePort);
+					continue;
+				}
+				if( res.isBusy() ) {
+					call.completeExceptionally(new RpcBusyException(res.getError()));
+				} else if( res.isNotMaster() ) {
+					call.completeExceptionally(new NotMasterException(res.getError()));
+				} else if( res.getError() != null ) {
+					call.completeExceptionally(new RosRuntimeException(res.getError()));
+				} else {
+					// let voidResultFactory handle this, callers cant tell null from no response
+					call.complete(res.getResult() == null ? new Object() : res.getResult());
+				}
 			} catch (SocketException e) {
+				if( shouldRun )
 					log.error("RemoteClient: receive socket error "+e+" Address:"+IPAddress+" port:"+remotePort);
-					try {
-						if( workerSocket != null ) workerSocket.close();
-					} catch (IOException e2) {}
-					workerSocket = null;
+				disconnect(socket, e);
 			} catch (IOException e) {
-				// we lost the remote, try to close worker and wait for reconnect
+				// we lost the remote, close the worker, the next call reconnects
 				log.debug("RemoteClient: receive IO error "+e+" Address:"+IPAddress+" port:"+remotePort);
-				try {
-					if( workerSocket != null ) workerSocket.close();
-				} catch (IOException e2) {}
-				workerSocket = null;
+				disconnect(socket, e);
 			} catch (ClassNotFoundException e1) {
 				log.error("Class not found for deserialization "+e1+" Address:"+IPAddress+" port:"+remotePort);
+				disconnect(socket, e1);
 				break;
 			} catch (InterruptedException e) {
 				break;
 			}
 	    }	// shouldRun
-		try {
-				if( workerSocket != null ) workerSocket.close();
-		} catch (IOException e2) {}
+		disconnect(null, new IOException("RemoteClient closed"));
 		synchronized(waitHalt) {
 				waitHalt.notify();
 		}
 	}
 	
+	/**
+	 * Wait for a call to connect the socket.
+	 * @return The connected socket, or null if we were closed first
+	 * @throws InterruptedException
+	 */
+	private Socket awaitSocket() throws InterruptedException {
+		synchronized(writeLock) {
+			while( shouldRun && workerSocket == null ) {
+				writeLock.wait();
+			}
+			return workerSocket;
+		}
+	}
+	
+	/**
+	 * Drop the socket, if it is still the current one, and fail every call in flight on it.
+	 * @param socket The socket that failed, null for whatever is current
+	 * @param cause
+	 */
+	private void disconnect(Socket socket, Exception cause) {
+		synchronized(writeLock) {
+			if( socket != null && socket != workerSocket )
+				return;
+			try {
+				if( workerSocket != null ) workerSocket.close();
+			} catch (IOException e2) {}
+			workerSocket = null;
+			// calls are only added under the lock, none of these can have gone out on a new socket
+			for(Long id : pending.keySet()) {
+				CompletableFuture<Object> call = pending.remove(id);
+				if( call != null ) {
+					connectionFailures.incrementAndGet();
+					call.completeExceptionally(new RosRuntimeException(cause));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param connectTimeout milliseconds to wait for a connection and the handshake on it, 0 for no limit
+	 * @param replyTimeout milliseconds a call waits for its response unless it gives its own timeout, 0 for no limit
+	 */
+	public void setTimeouts(int connectTimeout, long replyTimeout) {
+		assert(connectTimeout >= 0 && replyTimeout >= 0) : "RemoteClient timeouts must not be negative";
+		this.connectTimeout = connectTimeout;
+		this.replyTimeout = replyTimeout;
+	}
+	
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	public long getReplyTimeout() {
+		return replyTimeout;
+	}
+	
+	/**
+	 * Issue a call with the reply timeout without waiting for it. Any number of calls may be in flight at once.
+	 * @param rri
+	 * @return A future completed with the result, or exceptionally with a {@link RosRuntimeException}
+	 * if the remote invocation failed or the connection was lost, a {@link RpcTimeoutException} if it timed out,
+	 * or a {@link RpcBusyException} if the server shed it. Cancelling it abandons the call.
+	 */
+	public CompletableFuture<Object> submit(RemoteRequestInterface rri) {
+		return submit(rri, replyTimeout);
+	}
+	
+	/**
+	 * Issue a call without waiting for it.
+	 * @param rri
+	 * @param timeout milliseconds to wait for the response, 0 for no limit
+	 * @return As {@link #submit(RemoteRequestInterface)}
+	 */
+	public CompletableFuture<Object> submit(RemoteRequestInterface rri, long timeout) {
+		CompletableFuture<Object> call = new CompletableFuture<Object>();
+		if( !shouldRun ) {
+			call.completeExceptionally(new RosRuntimeException("RemoteClient closed for address "+IPAddress+" port "+remotePort));
+			return call;
+		}
+		rri.setId(nextId.incrementAndGet());
+		rri.setTimeout(timeout);
+		try {
+			send(rri, call);
+		} catch (IOException e) {
+			log.error("Socket send error "+e+" to address "+IPAddress+" on port "+remotePort);
+			connectionFailures.incrementAndGet();
+			pending.remove(rri.getId());
+			call.completeExceptionally(e instanceof SocketTimeoutException ?
+					new RpcTimeoutException("RemoteClient connect to address "+IPAddress+" port "+remotePort+" timed out after "+connectTimeout+" ms", e) :
+					new RosRuntimeException(e));
+			return call;
+		}
+		expire(rri, call);
+		return call;
+	}
+	
+	/**
+	 * Fail the call with a {@link RpcTimeoutException} if it is still waiting when its timeout is up,
+	 * and forget it once it completes, whether answered, failed, timed out or cancelled.
+	 * @param rri
+	 * @param call
+	 */
+	private void expire(final RemoteRequestInterface rri, final CompletableFuture<Object> call) {
+		final Long id = rri.getId();
+		final ScheduledFuture<?> expiry;
+		if( rri.getTimeout() > 0 && !call.isDone() ) {
+			expiry = timeouts.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if( pending.remove(id, call) ) {
+						connectionFailures.incrementAndGet();
+						if( DEBUG )
+							log.debug("RemoteClient call timed out "+rri);
+						call.completeExceptionally(new RpcTimeoutException("RemoteClient call "+rri.getMethodName()+" to address "+
+								IPAddress+" port "+remotePort+" timed out after "+rri.getTimeout()+" ms"));
+					}
+				}
+			}, rri.getTimeout(), TimeUnit.MILLISECONDS);
+		} else {
+			expiry = null;
+		}
+		call.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable failure) {
+				if( expiry != null )
+					expiry.cancel(false);
+				pending.remove(id, call);
+			}
+		});
+	}
+	
+	/**
+	 * Issue a call with the reply timeout and wait for its result.
+	 * @param rri
+	 * @return The result, or null if interrupted while waiting
+	 * @throws RpcTimeoutException if the call timed out
+	 * @throws RpcBusyException if the server shed the call
+	 */
 	public Object queue(RemoteRequestInterface rri) {
 		try {
-			requests.put(rri);
-			return responses.take();
+			return submit(rri).get();
 		} catch (InterruptedException e) {
+			// leave the interrupt for our caller to see
+			Thread.currentThread().interrupt();
 			return null;
+		} catch (ExecutionException e) {
+			if( e.getCause() instanceof RosRuntimeException )
+				throw (RosRuntimeException)e.getCause();
+			throw new RosRuntimeException(e.getCause());
 		}
 	}
 	
 	/**
 	 * Send request to remote worker, if workerSocket is null open SLAVEPORT connection to remote master
+	 * and wake the reader. The connect and handshake are made outside the write lock, so a peer slow to answer
+	 * holds up only the callers waiting on the connection, not the reader or the writes on a socket already up.
+	 * If two callers connect at once the first to finish is used and the other closed.
 	 * @param iori
+	 * @param call Completed by the reader when the response arrives
+	 * @throws IOException 
 	 */
-	private void send(RemoteRequestInterface iori) {
-		try {
-			if(workerSocket == null ) {
-				workerSocketAddress = new InetSocketAddress(IPAddress, remotePort);
-				workerSocket = new Socket();
-				workerSocket.connect(workerSocketAddress);
-				workerSocket.setKeepAlive(true);
-				//workerSocket.setTcpNoDelay(true);
-				workerSocket.setReceiveBufferSize(32767);
-				workerSocket.setSendBufferSize(32767);
+	private void send(RemoteRequestInterface iori, CompletableFuture<Object> call) throws IOException {
+		Socket connected = null;
+		Map<String, Integer> connectedIds = null;
+		while( true ) {
+			synchronized(writeLock) {
+				if( connected != null ) {
+					if( workerSocket == null && shouldRun ) {
+						workerSocketAddress = connected.getRemoteSocketAddress();
+						workerSocket = connected;
+						methodIds = connectedIds;
+						writeLock.notifyAll();
+					} else {
+						// another caller connected first, or we were closed meanwhile
+						closeQuietly(connected);
+					}
+				}
+				if( !shouldRun )
+					throw new IOException("RemoteClient closed for address "+IPAddress+" port "+remotePort);
+				if( workerSocket != null ) {
+					pending.put(iori.getId(), call);
+					try {
+						ObjectOutputStream oos = new ObjectOutputStream(workerSocket.getOutputStream());
+						oos.writeObject(compact(iori));
+						oos.flush();
+					} catch (IOException e) {
+						closeQuietly(workerSocket);
+						// the reader fails the calls in flight when it sees the close
+						throw e;
+					}
+					return;
+				}
+			}
+			connected = connect();
+			try {
+				// the handshake is part of connecting, a peer that accepts and never answers must not hang us
+				connected.setSoTimeout(connectTimeout);
+				connectedIds = handshake(connected);
+				connected.setSoTimeout(0);
+			} catch (IOException e) {
+				closeQuietly(connected);
+				throw e;
 			}
-			ObjectOutputStream oos = new ObjectOutputStream(workerSocket.getOutputStream());
-			oos.writeObject(iori);
-			oos.flush();
-			
-		} catch (SocketException e) {
-				log.error("Exception setting up socket to remote host:"+IPAddress+" port "+remotePort+" "+e);
+		}
+	}
+	
+	/**
+	 * Open a new connection to the server, bounded by the connect timeout.
+	 * @return The connected socket
+	 * @throws IOException
+	 */
+	private Socket connect() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(IPAddress, remotePort), connectTimeout);
+			socket.setKeepAlive(true);
+			//socket.setTcpNoDelay(true);
+			socket.setReceiveBufferSize(32767);
+			socket.setSendBufferSize(32767);
 		} catch (IOException e) {
-				log.error("Socket send error "+e+" to address "+IPAddress+" on port "+remotePort);
+			closeQuietly(socket);
+			throw e;
 		}
+		return socket;
+	}
+	
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {}
+	}
+	
+	/**
+	 * Ask the server on a new connection for its method table, before anything else goes out on it.
+	 * @param socket
+	 * @return The id of each method name, or null if the server takes requests by name only
+	 * @throws IOException
+	 */
+	private Map<String, Integer> handshake(Socket socket) throws IOException {
+		ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+		oos.writeObject(new RemoteRequest(null, MethodNamesAndParams.HANDSHAKE));
+		oos.flush();
+		MethodNamesAndParams table;
+		try {
+			ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
+			table = (MethodNamesAndParams) ois.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("RemoteClient handshake failed with address "+IPAddress+" port "+remotePort, e);
+		}
+		if( table == null )
+			return null;
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> names = table.getMethodNames();
+		for(int i = 0; i < names.size(); i++) {
+			// overloads share the first id of their name, the server picks among them by the arguments
+			if( !ids.containsKey(names.get(i)) )
+				ids.put(names.get(i), i);
+		}
+		if( DEBUG )
+			log.debug("RemoteClient has "+ids.size()+" method ids for "+table.className+" at address "+IPAddress+" port "+remotePort);
+		return ids;
+	}
+	
+	/**
+	 * @param iori
+	 * @return The request as a {@link CompactRequest} if the server has an id for its method, else as it is
+	 */
+	private RemoteRequestInterface compact(RemoteRequestInterface iori) {
+		if( methodIds == null || iori.getMethodId() != RemoteRequestInterface.NO_METHOD_ID )
+			return iori;
+		Integer methodId = methodIds.get(iori.getMethodName());
+		if( methodId == null || iori.getParamArray().length > 0xFF )
+			return iori;
+		return new CompactRequest(iori.getId(), iori.getTimeout(), methodId, iori.getParamArray());
+	}
+	
+	/**
+	 * @return false once closed
+	 */
+	public boolean isOpen() {
+		return shouldRun;
+	}
+	
+	/**
+	 * @return The number of calls waiting on a response
+	 */
+	public int getInFlight() {
+		return pending.size();
+	}
+	
+	/**
+	 * @return The number of calls that failed to connect, or lost their connection, since a response last arrived.
+	 * Failures of the remote invocation itself do not count.
+	 */
+	public int getConnectionFailures() {
+		return connectionFailures.get();
 	}
 	
 	public void close() {
 		synchronized(waitHalt) {
 			try {
 				shouldRun = false;
-				waitHalt.wait();
+				synchronized(writeLock) {
+					if( workerSocket != null ) {
+						try {
+							workerSocket.close();
+						} catch (IOException e) {}
+					}
+					writeLock.notifyAll();
+				}
+				waitHalt.wait(1000);
 			} catch (InterruptedException ie) {}
 		}
 	}
 
-
-	
-
-	
 }
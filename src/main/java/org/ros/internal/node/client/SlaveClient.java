@@ -34,6 +34,17 @@ public class SlaveClient extends Client<SlaveRpcEndpoint> {
 	    super(subscriberSlaveUri, 60000, 60000);
 	    this.nodeName = nodeName;
 	    rpcEndpoint = new SlaveRpcEndpointImpl(subscriberSlaveUri.getHostName(), subscriberSlaveUri.getPort());
+	    rpcEndpoint.setConfig(config);
+  }
+
+  /**
+   * A client on a connection the {@link SlaveClientPool} shares between callers, with the timeouts the pool set.
+   */
+  SlaveClient(GraphName nodeName, InetSocketAddress subscriberSlaveUri, SlaveRpcEndpoint rpcEndpoint,
+      int connTimeout, int replyTimeout) {
+	    super(subscriberSlaveUri, connTimeout, replyTimeout);
+	    this.nodeName = nodeName;
+	    this.rpcEndpoint = rpcEndpoint;
   }
   
   public List<Object> getBusStats() {
@@ -80,7 +91,25 @@ public class SlaveClient extends Client<SlaveRpcEndpoint> {
 
   public Response<ProtocolDescription> requestTopic(GraphName topic,
       Collection<String> requestedProtocols) throws RemoteException, RemoteNotFoundException {
+    // one entry per protocol, the protocol name heading each
+    Object[][] protocols = new Object[requestedProtocols.size()][];
+    int i = 0;
+    for (String protocol : requestedProtocols) {
+      protocols[i++] = new Object[] { protocol };
+    }
+    return requestTopic(topic, protocols);
+  }
+
+  /**
+   * @param topic
+   * @param protocols
+   *          one entry per protocol offered, the protocol name followed by its
+   *          parameters
+   * @return the protocol the publisher selected
+   */
+  public Response<ProtocolDescription> requestTopic(GraphName topic,
+      Object[][] protocols) throws RemoteException, RemoteNotFoundException {
     return Response.fromListCheckedNotFound(rpcEndpoint.requestTopic(nodeName.toString(), topic.toString(),
-        new Object[][] { requestedProtocols.toArray() }), new ProtocolDescriptionResultFactory());
+        protocols), new ProtocolDescriptionResultFactory());
   }
 }
@@ -0,0 +1,187 @@
+package org.ros.internal.node.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.internal.node.rpc.SlaveRpcEndpointImpl;
+import org.ros.namespace.GraphName;
+
+/**
+ * Connections to remote slaves shared by everything in the process that calls them, keyed by slave address.
+ * A {@link SlaveClient} from the pool is cheap, it only names the caller, all of them for one slave multiplex their
+ * calls over one {@link RemoteClient} socket and thread.<p/>
+ * A connection is closed when it has gone unused for the idle timeout, or when it fails its health check: it was closed,
+ * or {@link #MAX_CONNECTION_FAILURES} calls in a row could not reach the slave. Connections with calls in flight are
+ * left alone. Usage pattern is SlaveClientPool.getInstance().get([caller], [slave address]).
+ * @author jg
+ *
+ */
+public class SlaveClientPool {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(SlaveClientPool.class);
+	public static final long DEFAULT_IDLE_TIMEOUT = 60000; // milliseconds
+	public static final int MAX_CONNECTION_FAILURES = 3;
+	public static final int DEFAULT_CONNECT_TIMEOUT = 60000; // milliseconds, as for an unpooled SlaveClient
+	public static final int DEFAULT_REPLY_TIMEOUT = 60000; // milliseconds
+
+	private static SlaveClientPool slaveClientPool = null;
+
+	private final Map<InetSocketAddress, PooledEndpoint> endpoints = new ConcurrentHashMap<InetSocketAddress, PooledEndpoint>();
+	private final long idleTimeout;
+	private final int connectTimeout;
+	private final int replyTimeout;
+	private final ScheduledExecutorService sweeper;
+
+	private static class PooledEndpoint {
+		final SlaveRpcEndpointImpl endpoint;
+		volatile long lastUsed = System.currentTimeMillis();
+		PooledEndpoint(SlaveRpcEndpointImpl endpoint) {
+			this.endpoint = endpoint;
+		}
+		boolean isHealthy() {
+			RemoteClient remoteClient = endpoint.getRemoteClient();
+			return remoteClient.isOpen() && remoteClient.getConnectionFailures() < MAX_CONNECTION_FAILURES;
+		}
+		boolean isBusy() {
+			return endpoint.getRemoteClient().getInFlight() > 0;
+		}
+	}
+
+	public static synchronized SlaveClientPool getInstance() {
+		if( slaveClientPool == null ) {
+			slaveClientPool = new SlaveClientPool(DEFAULT_IDLE_TIMEOUT);
+		}
+		return slaveClientPool;
+	}
+
+	/**
+	 * @param idleTimeout milliseconds a connection may go unused before it is closed
+	 */
+	public SlaveClientPool(long idleTimeout) {
+		this(idleTimeout, DEFAULT_CONNECT_TIMEOUT, DEFAULT_REPLY_TIMEOUT);
+	}
+
+	/**
+	 * @param idleTimeout milliseconds a connection may go unused before it is closed
+	 * @param connectTimeout milliseconds a pooled connection waits to connect
+	 * @param replyTimeout milliseconds each call on a pooled connection waits for its response
+	 */
+	public SlaveClientPool(long idleTimeout, int connectTimeout, int replyTimeout) {
+		this.idleTimeout = idleTimeout;
+		this.connectTimeout = connectTimeout;
+		this.replyTimeout = replyTimeout;
+		sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SlaveClientPool");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long period = Math.max(1, idleTimeout / 2);
+		sweeper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evict();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Get a client for the slave at the given address, on the pooled connection if there is a healthy one.
+	 * @param nodeName The name of the caller, as the slave sees it
+	 * @param slaveUri The address of the slave server
+	 * @return A {@link SlaveClient}, there is nothing to release when done with it but it should not be
+	 * held past the idle timeout between calls
+	 * @throws IOException if the slave host is unknown
+	 */
+	public SlaveClient get(GraphName nodeName, InetSocketAddress slaveUri) throws IOException {
+		PooledEndpoint pooled;
+		synchronized(endpoints) {
+			pooled = endpoints.get(slaveUri);
+			if( pooled == null || !pooled.isHealthy() ) {
+				if( pooled != null ) {
+					log.info("SlaveClientPool replacing unhealthy connection to "+slaveUri);
+					pooled.endpoint.close();
+				}
+				SlaveRpcEndpointImpl endpoint = new SlaveRpcEndpointImpl(slaveUri.getHostName(), slaveUri.getPort());
+				endpoint.getRemoteClient().setTimeouts(connectTimeout, replyTimeout);
+				pooled = new PooledEndpoint(endpoint);
+				endpoints.put(slaveUri, pooled);
+				if( DEBUG )
+					log.debug("SlaveClientPool opened connection to "+slaveUri+", "+endpoints.size()+" pooled");
+			}
+			pooled.lastUsed = System.currentTimeMillis();
+		}
+		return new SlaveClient(nodeName, slaveUri, pooled.endpoint, connectTimeout, replyTimeout);
+	}
+
+	/**
+	 * Close the connection to a slave known to be gone, such as one whose node was replaced.
+	 * Calls in flight on it fail.
+	 * @param slaveUri
+	 */
+	public void invalidate(InetSocketAddress slaveUri) {
+		PooledEndpoint pooled;
+		synchronized(endpoints) {
+			pooled = endpoints.remove(slaveUri);
+		}
+		if( pooled != null )
+			pooled.endpoint.close();
+	}
+
+	/**
+	 * Close the connections that are idle past the timeout or fail the health check, and have no calls in flight.
+	 * Runs periodically, public for those that cannot wait.
+	 * @return The number of connections closed
+	 */
+	public int evict() {
+		long idleSince = System.currentTimeMillis() - idleTimeout;
+		int evicted = 0;
+		for(Map.Entry<InetSocketAddress, PooledEndpoint> entry : endpoints.entrySet()) {
+			PooledEndpoint pooled = entry.getValue();
+			if( pooled.isBusy() || (pooled.lastUsed > idleSince && pooled.isHealthy()) )
+				continue;
+			synchronized(endpoints) {
+				// a get may have just handed it out
+				if( pooled.isBusy() || (pooled.lastUsed > idleSince && pooled.isHealthy()) || !endpoints.remove(entry.getKey(), pooled) ) {
+					continue;
+				}
+			}
+			if( DEBUG )
+				log.debug("SlaveClientPool closing "+(pooled.isHealthy() ? "idle" : "unhealthy")+" connection to "+entry.getKey());
+			pooled.endpoint.close();
+			++evicted;
+		}
+		return evicted;
+	}
+
+	/**
+	 * @return The number of pooled connections
+	 */
+	public int size() {
+		return endpoints.size();
+	}
+
+	/**
+	 * Close every pooled connection and stop the eviction sweep.
+	 */
+	public void shutdown() {
+		sweeper.shutdownNow();
+		synchronized(endpoints) {
+			for(PooledEndpoint pooled : endpoints.values()) {
+				pooled.endpoint.close();
+			}
+			endpoints.clear();
+		}
+	}
+
+}
@@ -21,6 +21,7 @@ import org.ros.exception.ParameterNotFoundException;
 import org.ros.exception.RosRuntimeException;
 import org.ros.internal.node.client.ParameterClient;
 import org.ros.internal.node.response.Response;
+import org.ros.internal.node.rpc.MasterShards;
 import org.ros.internal.node.response.StatusCode;
 import org.ros.internal.node.server.NodeIdentifier;
 import org.ros.internal.node.server.ParameterServer;
@@ -55,6 +56,16 @@ public class DefaultParameterTree implements ParameterTree {
     return new DefaultParameterTree(client, parameterManager, resolver);
   }
 
+  /**
+   * As {@link #newFromNodeIdentifier(NodeIdentifier, InetSocketAddress, NameResolver, ParameterManager)},
+   * moving on to the parameter server of the next master when one is lost and keeping each parameter
+   * with the masters owning its namespace.
+   */
+  public static DefaultParameterTree newFromNodeIdentifier(NodeIdentifier nodeIdentifier,
+    MasterShards shards, NameResolver resolver, ParameterManager parameterManager) throws IOException {
+    return new DefaultParameterTree(new ParameterClient(nodeIdentifier, shards), parameterManager, resolver);
+  }
+
   private DefaultParameterTree(ParameterClient parameterClient, ParameterManager parameterManager,
       NameResolver resolver) {
     this.parameterClient = parameterClient;
@@ -0,0 +1,16 @@
+package org.ros.internal.node.response;
+
+import org.ros.master.client.GraphEvents;
+
+/**
+ * A {@link ResultFactory} to take an object and turn it into the {@link GraphEvents} answering a watch of the graph.
+ * 
+ * @author jg
+ */
+public class GraphEventsResultFactory implements ResultFactory<GraphEvents> {
+
+	@Override
+	public GraphEvents newFromValue(Object value) {
+		return (GraphEvents) value;
+	}
+}
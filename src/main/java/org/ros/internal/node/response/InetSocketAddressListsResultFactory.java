@@ -0,0 +1,26 @@
+package org.ros.internal.node.response;
+
+import java.net.InetSocketAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A {@link ResultFactory} to take an object and turn it into a list of lists of InetSocketAddresses,
+ * the result of a batch registration, one list for each registration in the batch.
+ * 
+ * @author jg
+ */
+public class InetSocketAddressListsResultFactory implements ResultFactory<List<List<InetSocketAddress>>> {
+
+	@Override
+	public List<List<InetSocketAddress>> newFromValue(Object value) {
+		InetSocketAddressListResultFactory listFactory = new InetSocketAddressListResultFactory();
+		List<List<InetSocketAddress>> lists = new ArrayList<List<InetSocketAddress>>();
+		for (Object list : (List<?>) value) {
+			lists.add(listFactory.newFromValue(list));
+		}
+		return lists;
+	}
+}
@@ -23,7 +23,10 @@ import java.util.List;
 import org.ros.address.AdvertiseAddress;
 import org.ros.internal.transport.ProtocolDescription;
 import org.ros.internal.transport.ProtocolNames;
+import org.ros.internal.transport.intraprocess.IntraProcessProtocolDescription;
+import org.ros.internal.transport.shm.SharedMemoryProtocolDescription;
 import org.ros.internal.transport.tcp.TcpRosProtocolDescription;
+import org.ros.internal.transport.udp.UdpRosProtocolDescription;
 
 
 /**
@@ -38,6 +41,17 @@ public class ProtocolDescriptionResultFactory implements ResultFactory<ProtocolD
     //assert(protocolParameters.get(0).equals(ProtocolNames.TCPROS));
     ArrayList params = (ArrayList) protocolParameters.get(0);
     AdvertiseAddress address = new AdvertiseAddress((String) params.get(1), (Integer) params.get(2));
+    if (ProtocolNames.INTRAPROCESS.equals(params.get(0)) && params.size() > 3) {
+      return new IntraProcessProtocolDescription(address, (String) params.get(3));
+    }
+    if (ProtocolNames.SHMROS.equals(params.get(0)) && params.size() > 5) {
+      return new SharedMemoryProtocolDescription(address, (String) params.get(3), (String) params.get(4),
+          (String) params.get(5));
+    }
+    if (ProtocolNames.UDPROS.equals(params.get(0)) && params.size() > 5) {
+      return new UdpRosProtocolDescription(address, (Integer) params.get(3), (Integer) params.get(4),
+          (String) params.get(5));
+    }
     return new TcpRosProtocolDescription(address);
   }
 }
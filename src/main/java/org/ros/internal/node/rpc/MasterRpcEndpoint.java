@@ -1,6 +1,7 @@
 package org.ros.internal.node.rpc;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An RPC endpoint description of a ROS master.
@@ -18,6 +19,14 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> getPid(String callerId);
 
+  /**
+   * As {@link #getPid}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> getPidAsync(String callerId);
+
   /**
    * Register the caller as a provider of the specified service.
    * 
@@ -33,6 +42,40 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
   List<Object>
       registerService(String callerId, String service, String serviceApi, String serviceport, String callerApi, String callerport);
 
+  /**
+   * As {@link #registerService}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> registerServiceAsync(String callerId, String service, String serviceApi, String serviceport, String callerApi, String callerport);
+
+  /**
+   * Register the caller as a provider of many services in one call.
+   * 
+   * @param callerId
+   *          ROS caller ID
+   * @param services
+   *          Fully-qualified names of the services
+   * @param serviceApis
+   *          hosts of the services, in the same order
+   * @param serviceports
+   *          ports of the services, in the same order
+   * @param callerApi
+   * @return ignore
+   */
+  List<Object> registerServices(String callerId, List<String> services, List<String> serviceApis,
+      List<String> serviceports, String callerApi, String callerport);
+
+  /**
+   * As {@link #registerServices}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> registerServicesAsync(String callerId, List<String> services, List<String> serviceApis,
+      List<String> serviceports, String callerApi, String callerport);
+
   /**
    * Unregister the caller as a provider of the specified service.
    * 
@@ -49,6 +92,14 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> unregisterService(String callerId, String service, String serviceApi, String port);
 
+  /**
+   * As {@link #unregisterService}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> unregisterServiceAsync(String callerId, String service, String serviceApi, String port);
+
   /**
    * Subscribe the caller to the specified topic. In addition to receiving a
    * list of current publishers, the subscriber will also receive notifications
@@ -72,6 +123,43 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
   List<Object> registerSubscriber(String callerId, String topicName, String topicType,
       String callerApi, String port);
 
+  /**
+   * As {@link #registerSubscriber}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> registerSubscriberAsync(String callerId, String topicName, String topicType,
+      String callerApi, String port);
+
+  /**
+   * Subscribe the caller to many topics in one call.
+   * 
+   * @param callerId
+   *          ROS caller ID
+   * @param topicNames
+   *          Fully-qualified names of the topics
+   * @param topicTypes
+   *          topic types, in the same order
+   * @param callerApi
+   *          API URI of subscriber to register
+   * @param port
+   * 		  port the server is running on
+   * @return for each topic, in order, the publishers as a list of
+   *         InetSocketAddresses
+   */
+  List<Object> registerSubscribers(String callerId, List<String> topicNames, List<String> topicTypes,
+      String callerApi, String port);
+
+  /**
+   * As {@link #registerSubscribers}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> registerSubscribersAsync(String callerId, List<String> topicNames, List<String> topicTypes,
+      String callerApi, String port);
+
   /**
    * Unregister the caller as a publisher of the topic.
    * 
@@ -88,6 +176,14 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> unregisterSubscriber(String callerId, String topicName, String callerApi, String port);
 
+  /**
+   * As {@link #unregisterSubscriber}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> unregisterSubscriberAsync(String callerId, String topicName, String callerApi, String port);
+
   /**
    * Register the caller as a publisher the topic.
    * 
@@ -104,6 +200,41 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
   List<Object> registerPublisher(String callerId, String topicName, String topicType,
       String callerApi, String port);
 
+  /**
+   * As {@link #registerPublisher}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> registerPublisherAsync(String callerId, String topicName, String topicType,
+      String callerApi, String port);
+
+  /**
+   * Register the caller as a publisher of many topics in one call.
+   * 
+   * @param callerId
+   *          ROS caller ID
+   * @param topicNames
+   *          fully-qualified names of the topics to register
+   * @param topicTypes
+   *          topic types, in the same order
+   * @param callerApi
+   *          API URI of publisher to register
+   * @return for each topic, in order, its current subscribers in the form of
+   *         RPC URIs
+   */
+  List<Object> registerPublishers(String callerId, List<String> topicNames, List<String> topicTypes,
+      String callerApi, String port);
+
+  /**
+   * As {@link #registerPublishers}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> registerPublishersAsync(String callerId, List<String> topicNames, List<String> topicTypes,
+      String callerApi, String port);
+
   /**
    * Unregister the caller as a publisher of the topic.
    * 
@@ -120,6 +251,14 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> unregisterPublisher(String callerId, String topicName, String callerApi, String port);
 
+  /**
+   * As {@link #unregisterPublisher}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> unregisterPublisherAsync(String callerId, String topicName, String callerApi, String port);
+
   /**
    * Get the XML-RPC URI of the node with the associated name/caller_id. This
    * API is for looking information about publishers and subscribers. Use
@@ -133,6 +272,14 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> lookupNode(String callerId, String nodeName);
 
+  /**
+   * As {@link #lookupNode}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> lookupNodeAsync(String callerId, String nodeName);
+
   /**
    * Get list of topics that can be subscribed to. This does not return topics
    * that have no publishers. See getSystemState() to get more comprehensive
@@ -149,6 +296,14 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> getPublishedTopics(String callerId, String subgraph);
 
+  /**
+   * As {@link #getPublishedTopics}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> getPublishedTopicsAsync(String callerId, String subgraph);
+
   /**
    * Get a list of all topic types.
    * 
@@ -159,6 +314,14 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> getTopicTypes(String callerId);
 
+  /**
+   * As {@link #getTopicTypes}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> getTopicTypesAsync(String callerId);
+
   /**
    * Retrieve list representation of system state (i.e. publishers, subscribers,
    * and services).
@@ -174,6 +337,60 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> getSystemState(String callerId);
 
+  /**
+   * As {@link #getSystemState}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> getSystemStateAsync(String callerId);
+
+  /**
+   * Retrieve the changes to the system state since a version the caller has.
+   * 
+   * @param callerId
+   *          ROS caller ID
+   * @param epoch
+   *          the epoch of the caller's version, 0 if none
+   * @param version
+   *          the caller's version
+   * @return the GraphEvents, the changes since the version or a snapshot
+   */
+  List<Object> getSystemStateSince(String callerId, long epoch, long version);
+
+  /**
+   * As {@link #getSystemStateSince}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> getSystemStateSinceAsync(String callerId, long epoch, long version);
+
+  /**
+   * Watch the graph for changes. The master answers with the changes after
+   * the given sequence number, or a snapshot of the whole graph, and if there
+   * are none yet waits for one before answering.
+   * 
+   * @param callerId
+   *          ROS caller ID
+   * @param epoch
+   *          the epoch of the last answer, 0 if none
+   * @param since
+   *          the sequence number of the last answer
+   * @param waitMillis
+   *          how long the master may wait for a change
+   * @return the GraphEvents
+   */
+  List<Object> watchGraph(String callerId, long epoch, long since, long waitMillis);
+
+  /**
+   * As {@link #watchGraph}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> watchGraphAsync(String callerId, long epoch, long since, long waitMillis);
+
   /**
    * Get the URI of the the master.
    * 
@@ -183,6 +400,14 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> getUri(String callerId);
 
+  /**
+   * As {@link #getUri}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> getUriAsync(String callerId);
+
   /**
    * Lookup all provider of a particular service.
    * 
@@ -195,4 +420,12 @@ public interface MasterRpcEndpoint extends RpcEndpoint {
    */
   List<Object> lookupService(String callerId, String service);
 
+  /**
+   * As {@link #lookupService}, without waiting on the master.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  CompletableFuture<List<Object>> lookupServiceAsync(String callerId, String service);
+
 }
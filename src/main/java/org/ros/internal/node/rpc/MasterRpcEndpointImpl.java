@@ -1,5 +1,7 @@
 package org.ros.internal.node.rpc;
 
+import org.ros.exception.RosRuntimeException;
+import org.ros.internal.node.client.FailoverClient;
 import org.ros.internal.node.client.RemoteClient;
 import org.ros.internal.node.response.Response;
 import org.ros.internal.node.server.NodeIdentifier;
@@ -11,192 +13,736 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 /**
  * A combined RPC endpoint for the master and parameter servers.
- * 
+ * Every call is made asynchronously on the multiplexed {@link RemoteClient}, the blocking
+ * methods wait on their asynchronous counterparts. Given more than one master, the calls go
+ * to the first and move on to the next when it is lost, see {@link FailoverClient}.
+ * Given {@link MasterShards}, each call goes to the masters owning the topic, service or
+ * parameter it names. A batch of registrations is split among the shards it touches, and
+ * the graph wide queries, the system state, topics, topic types and parameter names, are
+ * merged from every shard. A parameter namespace holding other shards' namespaces is split
+ * among them: getting it merges the trees of every shard under it, setting it to a dictionary
+ * sends each shard its part of the tree, and setting it to a value or deleting it deletes the
+ * parts held below. Subscribing to a parameter goes to its owner only. The calls versioned by
+ * one master, {@link #getSystemStateSince} and {@link #watchGraph}, and those about the master
+ * itself go to the root shard only, so they see nothing of the topics and services of another
+ * shard.
+ *
  * @author damonkohler@google.com (Damon Kohler)
  * @author jg
  */
 public class MasterRpcEndpointImpl implements MasterRpcEndpoint, ParameterServerRpcEndpoint {
 
-  //private final MasterServer master;
-  //private final ParameterServer parameterServer;
-	private final RemoteClient remoteMaster;
-	private final RemoteClient remoteParameter;
-	
+	private static final String MASTER_CLASS = "org.ros.internal.node.server.master.MasterServer";
+	private static final String PARAMETER_CLASS = "org.ros.internal.node.server.ParameterServer";
+
+	private final MasterShards shards;
+	// by shard, the root shard first
+	private final FailoverClient[] remoteMasters;
+	private final FailoverClient[] remoteParameters;
+
   public MasterRpcEndpointImpl(String remoteHost, int remotePort) throws IOException {
-    //this.master = master;
-    //parameterServer = new ParameterServer();
-	  remoteMaster = new RemoteClient(remoteHost, remotePort);
-	  remoteParameter = new RemoteClient(remoteHost, remotePort+1);
+	  this(Collections.singletonList(new InetSocketAddress(remoteHost, remotePort)));
+  }
+
+  /**
+   * @param masters The primary master and its standbys, each parameter server is one port above its master
+   * @throws IOException
+   */
+  public MasterRpcEndpointImpl(List<InetSocketAddress> masters) throws IOException {
+	  this(new MasterShards(masters, Collections.<GraphName, List<InetSocketAddress>>emptyMap()));
+  }
+
+  /**
+   * @param shards The masters of each namespace, each parameter server is one port above its master
+   * @throws IOException
+   */
+  public MasterRpcEndpointImpl(MasterShards shards) throws IOException {
+	  this.shards = shards;
+	  remoteMasters = new FailoverClient[shards.size()];
+	  remoteParameters = new FailoverClient[shards.size()];
+	  for (int i = 0; i < shards.size(); i++) {
+		  remoteMasters[i] = new FailoverClient(shards.getMasters(i), 0);
+		  remoteParameters[i] = new FailoverClient(shards.getMasters(i), 1);
+	  }
+  }
+
+  /**
+   * @return The master owning a topic or service
+   */
+  private FailoverClient master(String name) {
+	  return remoteMasters[shards.shardOf(name)];
+  }
+
+  /**
+   * @return The parameter server owning a parameter
+   */
+  private FailoverClient parameter(String key) {
+	  return remoteParameters[shards.shardOf(key)];
+  }
+
+  /**
+   * Turns the result of a remote invocation into the list representation of its {@link Response}.
+   */
+  private interface ResponseBuilder {
+    List<Object> toList(Object result);
+  }
+
+  private static CompletableFuture<List<Object>> call(FailoverClient remote, RemoteRequestInterface rri,
+      ResponseBuilder builder) {
+    return call(remote.submit(rri), builder);
+  }
+
+  private static CompletableFuture<List<Object>> call(CompletableFuture<?> result, final ResponseBuilder builder) {
+    return result.thenApply(new Function<Object, List<Object>>() {
+      @Override
+      public List<Object> apply(Object result) {
+        return builder.toList(result);
+      }
+    });
+  }
+
+  private static CompletableFuture<List<Object>> success(FailoverClient remote, RemoteRequestInterface rri,
+      String message) {
+    return success(remote.submit(rri), message);
+  }
+
+  private static CompletableFuture<List<Object>> success(CompletableFuture<?> result, final String message) {
+    return call(result, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object result) {
+        return Response.newSuccess(message, result).toList();
+      }
+    });
+  }
+
+  /**
+   * The result of an unregistration is the count unregistered, 0 or 1.
+   */
+  private static CompletableFuture<List<Object>> count(FailoverClient remote, RemoteRequestInterface rri) {
+    return call(remote, rri, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object result) {
+        return Response.newSuccess("Success", (boolean) result ? 1 : 0).toList();
+      }
+    });
+  }
+
+  private static List<GraphName> toGraphNames(List<String> names) {
+    List<GraphName> graphNames = new ArrayList<GraphName>();
+    for (String name : names) {
+      graphNames.add(GraphName.of(name));
+    }
+    return graphNames;
+  }
+
+  /**
+   * Make a call on every shard, each its own request as a request is numbered by its connection.
+   * @return The results in shard order
+   */
+  private static CompletableFuture<List<Object>> everyShard(FailoverClient[] remotes, String className,
+      String method, Object... params) {
+    List<CompletableFuture<Object>> calls = new ArrayList<CompletableFuture<Object>>();
+    for (FailoverClient remote : remotes) {
+      calls.add(remote.submit(new RemoteRequest(className, method, params)));
+    }
+    return all(calls);
+  }
+
+  /**
+   * @return The results of the calls in their order, once every one is done
+   */
+  private static CompletableFuture<List<Object>> all(final List<CompletableFuture<Object>> calls) {
+    return CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[calls.size()])).thenApply(
+        new Function<Void, List<Object>>() {
+          @Override
+          public List<Object> apply(Void done) {
+            List<Object> results = new ArrayList<Object>();
+            for (CompletableFuture<Object> call : calls) {
+              results.add(call.join());
+            }
+            return results;
+          }
+        });
+  }
+
+  /**
+   * Make a parameter call on the owner of a namespace, and on each shard under it for the shard's own namespace,
+   * each its own request.
+   * @return The results, the owner's first then those of the shards under it
+   */
+  private CompletableFuture<List<Object>> namespace(String key, List<Integer> under, String method) {
+    List<CompletableFuture<Object>> calls = new ArrayList<CompletableFuture<Object>>();
+    calls.add(parameter(key).submit(new RemoteRequest(PARAMETER_CLASS, method, GraphName.of(key))));
+    for (int shard : under) {
+      calls.add(remoteParameters[shard].submit(new RemoteRequest(PARAMETER_CLASS, method,
+          GraphName.of(shards.getNamespace(shard)))));
+    }
+    return all(calls);
+  }
+
+  /**
+   * @return The result of the first call, the owner's, once every one is done
+   */
+  private static CompletableFuture<Object> first(List<CompletableFuture<Object>> calls) {
+    return all(calls).thenApply(new Function<List<Object>, Object>() {
+      @Override
+      public Object apply(List<Object> results) {
+        return results.get(0);
+      }
+    });
+  }
+
+  /**
+   * @return The names, part by part, from a namespace down to the namespace of a shard under it
+   */
+  private static List<String> partsBelow(String key, String namespace) {
+    String path = key.endsWith("/") ? key : key + "/";
+    return Arrays.asList(namespace.substring(path.length()).split("/"));
+  }
+
+  /**
+   * @return A copy of a parameter tree whose dictionaries can be taken apart, the value itself if it is not one
+   */
+  @SuppressWarnings("unchecked")
+  private static Object copyTree(Object value) {
+    if (!(value instanceof Map)) {
+      return value;
+    }
+    Map<String, Object> copy = new HashMap<String, Object>();
+    for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+      copy.put(entry.getKey(), copyTree(entry.getValue()));
+    }
+    return copy;
+  }
+
+  /**
+   * Take the subtree at the given parts out of a parameter tree.
+   * @return The subtree, null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  private static Object detach(Object tree, List<String> parts) {
+    for (int i = 0; i < parts.size() - 1 && tree instanceof Map; i++) {
+      tree = ((Map<String, Object>) tree).get(parts.get(i));
+    }
+    if (!(tree instanceof Map)) {
+      return null;
+    }
+    return ((Map<String, Object>) tree).remove(parts.get(parts.size() - 1));
+  }
+
+  /**
+   * @return The value put in a tree at the given parts
+   */
+  private static Object graft(List<String> parts, Object value) {
+    for (int i = parts.size() - 1; i >= 0; i--) {
+      Map<String, Object> tree = new HashMap<String, Object>();
+      tree.put(parts.get(i), value);
+      value = tree;
+    }
+    return value;
+  }
+
+  /**
+   * Lay the tree a shard further down answered over the tree so far. Dictionaries are merged, any other
+   * value of the deeper shard replaces what is there, as it owns those names.
+   */
+  @SuppressWarnings("unchecked")
+  private static Object overlay(Object tree, Object deeper) {
+    if (!(tree instanceof Map) || !(deeper instanceof Map)) {
+      return deeper;
+    }
+    Map<String, Object> merged = new HashMap<String, Object>((Map<String, Object>) tree);
+    for (Map.Entry<String, Object> entry : ((Map<String, Object>) deeper).entrySet()) {
+      merged.put(entry.getKey(), overlay(merged.get(entry.getKey()), entry.getValue()));
+    }
+    return merged;
+  }
+
+  /**
+   * Join the lists each shard answered, for queries whose results are lists of disjoint entries.
+   */
+  private static List<Object> concatenate(Object lists) {
+    List<Object> all = new ArrayList<Object>();
+    for (Object list : (List<?>) lists) {
+      all.addAll((List<?>) list);
+    }
+    return all;
+  }
+
+  /**
+   * Make a registration of many names with the masters owning them. A batch within one shard is one call,
+   * as without shards, otherwise each shard is sent its part and the answers are put back in the batch's
+   * order.
+   * @param method The registration, taking the node, its address, the names and a value for each
+   * @return A list of the answer for each name if the registration answers with one, else the answer of
+   * the first shard
+   */
+  private CompletableFuture<Object> registerByShard(String method, GraphName caller, InetSocketAddress slaveUri,
+      List<String> names, List<?> values) {
+    final Map<Integer, List<Integer>> batches = new TreeMap<Integer, List<Integer>>();
+    for (int i = 0; i < names.size(); i++) {
+      Integer shard = shards.shardOf(names.get(i));
+      List<Integer> batch = batches.get(shard);
+      if (batch == null) {
+        batch = new ArrayList<Integer>();
+        batches.put(shard, batch);
+      }
+      batch.add(i);
+    }
+    if (batches.size() <= 1) {
+      FailoverClient remote = batches.isEmpty() ? remoteMasters[0] : remoteMasters[batches.keySet().iterator().next()];
+      return remote.submit(new RemoteRequest(MASTER_CLASS, method, caller, slaveUri, toGraphNames(names),
+          new ArrayList<Object>(values)));
+    }
+    final List<CompletableFuture<Object>> calls = new ArrayList<CompletableFuture<Object>>();
+    for (Map.Entry<Integer, List<Integer>> batch : batches.entrySet()) {
+      List<String> batchNames = new ArrayList<String>();
+      List<Object> batchValues = new ArrayList<Object>();
+      for (int i : batch.getValue()) {
+        batchNames.add(names.get(i));
+        batchValues.add(values.get(i));
+      }
+      calls.add(remoteMasters[batch.getKey()].submit(new RemoteRequest(MASTER_CLASS, method, caller, slaveUri,
+          toGraphNames(batchNames), batchValues)));
+    }
+    final int size = names.size();
+    return CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[calls.size()])).thenApply(
+        new Function<Void, Object>() {
+          @Override
+          public Object apply(Void done) {
+            Object first = calls.get(0).join();
+            if (!(first instanceof List)) {
+              return first;
+            }
+            Object[] answers = new Object[size];
+            int next = 0;
+            for (List<Integer> batch : batches.values()) {
+              List<?> batchAnswers = (List<?>) calls.get(next++).join();
+              for (int i = 0; i < batch.size(); i++) {
+                answers[batch.get(i)] = batchAnswers.get(i);
+              }
+            }
+            return new ArrayList<Object>(Arrays.asList(answers));
+          }
+        });
+  }
+
+  /**
+   * Wait for a call to complete.
+   * @throws RosRuntimeException if the call failed or we were interrupted waiting on it
+   */
+  private static List<Object> await(CompletableFuture<List<Object>> call) {
+    try {
+      return call.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RosRuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RosRuntimeException) {
+        throw (RosRuntimeException) e.getCause();
+      }
+      throw new RosRuntimeException(e.getCause());
+    }
   }
 
   @Override
   public List<Object> getPid(String callerId) {
-	RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", "getPid");  
-    return Response.newSuccess("server pid", remoteMaster.queue(rri)).toList();
+    return await(getPidAsync(callerId));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> getPidAsync(String callerId) {
+	RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS, "getPid");
+    return success(remoteMasters[0], rri, "server pid");
   }
 
   @Override
   public List<Object> getPublishedTopics(String callerId, String subgraph) {
-	RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(getPublishedTopicsAsync(callerId, subgraph));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> getPublishedTopicsAsync(String callerId, String subgraph) {
+    CompletableFuture<List<Object>> topics = everyShard(remoteMasters, MASTER_CLASS,
 			  "getPublishedTopics",
 			  GraphName.of(callerId), GraphName.of(subgraph));
-    return Response.newSuccess("current topics", remoteMaster.queue(rri)
-        //master.getPublishedTopics(GraphName.of(callerId), GraphName.of(subgraph))
-        ).toList();
+    return call(topics, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object results) {
+        return Response.newSuccess("current topics", concatenate(results)).toList();
+      }
+    });
   }
 
   @Override
   public List<Object> getTopicTypes(String callerId) {
-	RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(getTopicTypesAsync(callerId));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> getTopicTypesAsync(String callerId) {
+    CompletableFuture<List<Object>> types = everyShard(remoteMasters, MASTER_CLASS,
 			  "getTopicTypes",
 			  GraphName.of(callerId));
-    return Response.newSuccess("topic types", remoteMaster.queue(rri)
-    		//master.getTopicTypes(GraphName.of(callerId))
-    		).toList();
+    return call(types, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object results) {
+        return Response.newSuccess("topic types", concatenate(results)).toList();
+      }
+    });
   }
 
   @Override
   public List<Object> getSystemState(String callerId) {
-	RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(getSystemStateAsync(callerId));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> getSystemStateAsync(String callerId) {
+    CompletableFuture<List<Object>> states = everyShard(remoteMasters, MASTER_CLASS,
 			  "getSystemState"
 			  );
-    return Response.newSuccess("current system state", remoteMaster.queue(rri)
-    		//master.getSystemState()
-    		).toList();
+    // [publishers, subscribers, services] of each shard, joined part by part
+    return call(states, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object results) {
+        List<List<Object>> state = new ArrayList<List<Object>>();
+        for (Object shardState : (List<?>) results) {
+          List<?> parts = (List<?>) shardState;
+          for (int i = 0; i < parts.size(); i++) {
+            if (state.size() == i) {
+              state.add(new ArrayList<Object>());
+            }
+            state.get(i).addAll((List<?>) parts.get(i));
+          }
+        }
+        return Response.newSuccess("current system state", state).toList();
+      }
+    });
+  }
+
+  @Override
+  public List<Object> getSystemStateSince(String callerId, long epoch, long version) {
+    return await(getSystemStateSinceAsync(callerId, epoch, version));
+  }
+
+  /**
+   * The changes to the root shard only, those to the topics and services of another shard are not seen,
+   * {@link #getSystemState} merges every shard.
+   */
+  @Override
+  public CompletableFuture<List<Object>> getSystemStateSinceAsync(String callerId, long epoch, long version) {
+	RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
+			  "getSystemStateSince",
+			  GraphName.of(callerId), epoch, version);
+    return success(remoteMasters[0], rri, "system state changes");
+  }
+
+  @Override
+  public List<Object> watchGraph(String callerId, long epoch, long since, long waitMillis) {
+    return await(watchGraphAsync(callerId, epoch, since, waitMillis));
+  }
+
+  /**
+   * The master holds the call for up to the wait, so it is given that much longer than the reply timeout.
+   * Only the root shard's graph is watched, the topics and services of another shard are not seen.
+   */
+  @Override
+  public CompletableFuture<List<Object>> watchGraphAsync(String callerId, long epoch, long since, long waitMillis) {
+	RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
+			  "watchGraph",
+			  GraphName.of(callerId), epoch, since, waitMillis);
+    return remoteMasters[0].submit(rri, remoteMasters[0].getReplyTimeout() + waitMillis).thenApply(
+        new Function<Object, List<Object>>() {
+          @Override
+          public List<Object> apply(Object result) {
+            return Response.newSuccess("graph events", result).toList();
+          }
+        });
   }
 
   @Override
   public List<Object> getUri(String callerId) {
-	 RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(getUriAsync(callerId));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> getUriAsync(String callerId) {
+	 RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
 			  "getUri"
 			  );
-    return Response.newSuccess("Success", remoteMaster.queue(rri)
-    		//master.getUri().toString()
-    		).toList();
+    return success(remoteMasters[0], rri, "Success");
   }
 
   @Override
   public List<Object> lookupNode(String callerId, String nodeName) {
-	RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(lookupNodeAsync(callerId, nodeName));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> lookupNodeAsync(String callerId, String nodeName) {
+    // a node registers with each shard it has a topic or service in, any of them knows it
+    CompletableFuture<List<Object>> lookups = everyShard(remoteMasters, MASTER_CLASS,
 			  "lookupNode",
 			  GraphName.of(nodeName));
-    InetSocketAddress nodeSlaveUri = (InetSocketAddress) remoteMaster.queue(rri);//master.lookupNode(GraphName.of(nodeName));
-    if (nodeSlaveUri != null) {
-      return Response.newSuccess("Success", nodeSlaveUri.toString()).toList();
-    } else {
-      return Response.newError("No such node", null).toList();
-    }
+    return call(lookups, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object results) {
+        for (Object result : (List<?>) results) {
+          if (result instanceof InetSocketAddress) {
+            return Response.newSuccess("Success", result.toString()).toList();
+          }
+        }
+        return Response.newError("No such node", null).toList();
+      }
+    });
   }
 
   @Override
   public List<Object> registerPublisher(String callerId, String topicName, String topicMessageType,
       String callerSlaveUri, String port) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(registerPublisherAsync(callerId, topicName, topicMessageType, callerSlaveUri, port));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> registerPublisherAsync(String callerId, String topicName, String topicMessageType,
+      String callerSlaveUri, String port) {
+	  RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
 			  "registerPublisher",
 			  GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(port)), GraphName.of(topicName), topicMessageType);
-	  List<InetSocketAddress> subscribers =
-         //master.registerPublisher(GraphName.of(callerId), 
-        //new InetSocketAddress(callerSlaveUri, Integer.valueOf(port)), GraphName.of(topicName), topicMessageType);
-    		(List<InetSocketAddress>)remoteMaster.queue(rri);
-      return Response.newSuccess("Success", subscribers).toList();
+	  // the subscribers, a List of InetSocketAddress
+	  return success(master(topicName), rri, "Success");
+  }
+
+  @Override
+  public List<Object> registerPublishers(String callerId, List<String> topicNames, List<String> topicMessageTypes,
+      String callerSlaveUri, String port) {
+    return await(registerPublishersAsync(callerId, topicNames, topicMessageTypes, callerSlaveUri, port));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> registerPublishersAsync(String callerId, List<String> topicNames,
+      List<String> topicMessageTypes, String callerSlaveUri, String port) {
+	  CompletableFuture<Object> result = registerByShard("registerPublishers",
+			  GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(port)), topicNames,
+			  topicMessageTypes);
+	  // the subscribers of each topic, a List of Lists of InetSocketAddress
+	  return success(result, "Success");
   }
 
   @Override
   public List<Object> unregisterPublisher(String callerId, String topicName, String callerSlaveUri, String port) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(unregisterPublisherAsync(callerId, topicName, callerSlaveUri, port));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> unregisterPublisherAsync(String callerId, String topicName, String callerSlaveUri, String port) {
+	  RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
 			  "unregisterPublisher",
 			  GraphName.of(callerId), GraphName.of(topicName));
-    boolean result = (boolean) remoteMaster.queue(rri);//master.unregisterPublisher(GraphName.of(callerId), GraphName.of(topicName));
-    return Response.newSuccess("Success", result ? 1 : 0).toList();
+    return count(master(topicName), rri);
   }
 
   @Override
   public List<Object> registerSubscriber(String callerId, String topicName,String topicMessageType, String callerSlaveUri, String port) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(registerSubscriberAsync(callerId, topicName, topicMessageType, callerSlaveUri, port));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> registerSubscriberAsync(String callerId, String topicName,String topicMessageType, String callerSlaveUri, String port) {
+	  RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
 			  "registerSubscriber",
 			  GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(port)), GraphName.of(topicName), topicMessageType);
-    List<InetSocketAddress> publishers =
-        //master.registerSubscriber(GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(port)),
-        //    GraphName.of(topicName), topicMessageType);
-    		(List<InetSocketAddress>)remoteMaster.queue(rri);
-      //List<String> urls = new ArrayList<String>();
-      //for (InetSocketAddress uri : publishers) {
-      //  urls.add(uri.toString());
-      //}
-      return Response.newSuccess("Success", publishers).toList();
+	  // the publishers, a List of InetSocketAddress
+	  return success(master(topicName), rri, "Success");
+  }
+
+  @Override
+  public List<Object> registerSubscribers(String callerId, List<String> topicNames, List<String> topicMessageTypes,
+      String callerSlaveUri, String port) {
+    return await(registerSubscribersAsync(callerId, topicNames, topicMessageTypes, callerSlaveUri, port));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> registerSubscribersAsync(String callerId, List<String> topicNames,
+      List<String> topicMessageTypes, String callerSlaveUri, String port) {
+	  CompletableFuture<Object> result = registerByShard("registerSubscribers",
+			  GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(port)), topicNames,
+			  topicMessageTypes);
+	  // the publishers of each topic, a List of Lists of InetSocketAddress
+	  return success(result, "Success");
   }
 
   @Override
   public List<Object> unregisterSubscriber(String callerId, String topicName, String callerSlaveUri, String port) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(unregisterSubscriberAsync(callerId, topicName, callerSlaveUri, port));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> unregisterSubscriberAsync(String callerId, String topicName, String callerSlaveUri, String port) {
+	  RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
 			  "unregisterSubscriber",
 			  GraphName.of(callerId), GraphName.of(topicName));
-    boolean result = (boolean) remoteMaster.queue(rri);//master.unregisterSubscriber(GraphName.of(callerId), GraphName.of(topicName));
-    return Response.newSuccess("Success", result ? 1 : 0).toList();
+    return count(master(topicName), rri);
   }
 
   @Override
   public List<Object> lookupService(String callerId, String serviceName) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(lookupServiceAsync(callerId, serviceName));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> lookupServiceAsync(String callerId, String serviceName) {
+	  RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
 			  "lookupService",
 			  GraphName.of(serviceName));
-    InetSocketAddress slaveUri = (InetSocketAddress) remoteMaster.queue(rri);//master.lookupService(GraphName.of(serviceName));
-    if (slaveUri != null) {
-      return Response.newSuccess("Success", slaveUri.toString()).toList();
-    }
-    return Response.newError("No such service.", null).toList();
+    return call(master(serviceName), rri, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object result) {
+        if (result instanceof InetSocketAddress) {
+          return Response.newSuccess("Success", result.toString()).toList();
+        }
+        return Response.newError("No such service.", null).toList();
+      }
+    });
   }
 
   @Override
   public List<Object> registerService(String callerId, String serviceName, String serviceUri, String serviceport,
       String callerSlaveUri, String callerport) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(registerServiceAsync(callerId, serviceName, serviceUri, serviceport, callerSlaveUri, callerport));
+  }
+
+  @Override
+  public List<Object> registerServices(String callerId, List<String> serviceNames, List<String> serviceUris,
+      List<String> serviceports, String callerSlaveUri, String callerport) {
+    return await(registerServicesAsync(callerId, serviceNames, serviceUris, serviceports, callerSlaveUri, callerport));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> registerServicesAsync(String callerId, List<String> serviceNames,
+      List<String> serviceUris, List<String> serviceports, String callerSlaveUri, String callerport) {
+	  List<InetSocketAddress> serviceAddresses = new ArrayList<InetSocketAddress>();
+	  for (int i = 0; i < serviceUris.size(); i++) {
+		  serviceAddresses.add(new InetSocketAddress(serviceUris.get(i), Integer.valueOf(serviceports.get(i))));
+	  }
+	  CompletableFuture<Object> result = registerByShard("registerServices",
+			  GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(callerport)),
+			  serviceNames, serviceAddresses);
+    return success(result, "Success");
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> registerServiceAsync(String callerId, String serviceName, String serviceUri, String serviceport,
+      String callerSlaveUri, String callerport) {
+	  RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
 			  "registerService",
-			  GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(callerport)), 
+			  GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(callerport)),
 			  GraphName.of(serviceName), new InetSocketAddress(serviceUri, Integer.valueOf(serviceport)));
-    //master.registerService(GraphName.of(callerId), new InetSocketAddress(callerSlaveUri, Integer.valueOf(callerport)), GraphName.of(
-    //      serviceName), new InetSocketAddress(serviceUri, Integer.valueOf(serviceport)));
-	  
-      return Response.newSuccess("Success", remoteMaster.queue(rri)).toList();
+    return success(master(serviceName), rri, "Success");
   }
 
   @Override
   public List<Object> unregisterService(String callerId, String serviceName, String serviceUri, String servicePort) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.master.MasterServer", 
+    return await(unregisterServiceAsync(callerId, serviceName, serviceUri, servicePort));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> unregisterServiceAsync(String callerId, String serviceName, String serviceUri, String servicePort) {
+	  RemoteRequestInterface rri = new RemoteRequest(MASTER_CLASS,
 			  "unregisterService",
 			  GraphName.of(callerId), GraphName.of(serviceName), new InetSocketAddress(serviceUri, Integer.valueOf(servicePort)));
-    boolean result =
-          //master.unregisterService(GraphName.of(callerId), GraphName.of(serviceName), new InetSocketAddress(serviceUri, Integer.valueOf(servicePort)));
-    		(boolean) remoteMaster.queue(rri);
-      return Response.newSuccess("Success", result ? 1 : 0).toList();
+    return count(master(serviceName), rri);
   }
 
- 
+
   @Override
   public List<Object> setParam(String callerId, String key, Object value) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.ParameterServer", 
+    return await(setParamAsync(callerId, key, value));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> setParamAsync(String callerId, String key, Object value) {
+	  RemoteRequestInterface rri = new RemoteRequest(PARAMETER_CLASS,
 			  "set",
 			  GraphName.of(key), value);
-    //parameterServer.set(GraphName.of(key), value);
-    return Response.newSuccess("Success", remoteParameter.queue(rri)).toList();
+    List<Integer> under = shards.shardsUnder(key);
+    if (under.isEmpty()) {
+      return success(parameter(key), rri, "Success");
+    }
+    // each shard under the namespace is set to its part of the tree, the deepest taken out first so a
+    // part leaves out those further down, and a shard with no part has what it held deleted
+    Object rest = copyTree(value);
+    List<RemoteRequestInterface> parts = new ArrayList<RemoteRequestInterface>();
+    for (int i = under.size() - 1; i >= 0; i--) {
+      String namespace = shards.getNamespace(under.get(i));
+      Object part = detach(rest, partsBelow(key, namespace));
+      parts.add(part == null ? new RemoteRequest(PARAMETER_CLASS, "delete", GraphName.of(namespace))
+          : new RemoteRequest(PARAMETER_CLASS, "set", GraphName.of(namespace), part));
+    }
+    List<CompletableFuture<Object>> calls = new ArrayList<CompletableFuture<Object>>();
+    calls.add(parameter(key).submit(new RemoteRequest(PARAMETER_CLASS, "set", GraphName.of(key), rest)));
+    for (int i = 0; i < parts.size(); i++) {
+      calls.add(remoteParameters[under.get(under.size() - 1 - i)].submit(parts.get(i)));
+    }
+    return success(first(calls), "Success");
   }
 
   @Override
   public List<Object> getParam(String callerId, String key) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.ParameterServer", 
+    return await(getParamAsync(callerId, key));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> getParamAsync(String callerId, final String key) {
+	  RemoteRequestInterface rri = new RemoteRequest(PARAMETER_CLASS,
 			  "get",
 			  GraphName.of(key));
-    Object value = remoteParameter.queue(rri);//parameterServer.get(GraphName.of(key));
-    if (value == null) {
-      return Response.newError("Parameter \"" + key + "\" is not set.", null).toList();
+    final ResponseBuilder builder = new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object value) {
+        // the RemoteClient stands an empty Object in for null
+        if (value == null || value.getClass() == Object.class) {
+          return Response.newError("Parameter \"" + key + "\" is not set.", null).toList();
+        }
+        return Response.newSuccess("Success", value).toList();
+      }
+    };
+    final List<Integer> under = shards.shardsUnder(key);
+    if (under.isEmpty()) {
+      return call(parameter(key), rri, builder);
     }
-    return Response.newSuccess("Success", value).toList();
+    // the namespace is the owner's tree with those of the shards under it laid over, shallowest first
+    return call(namespace(key, under, "get"), new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object results) {
+        List<?> values = (List<?>) results;
+        Object tree = null;
+        for (int i = 0; i < values.size(); i++) {
+          Object value = values.get(i);
+          if (value == null || value.getClass() == Object.class) {
+            continue;
+          }
+          if (i > 0) {
+            value = graft(partsBelow(key, shards.getNamespace(under.get(i - 1))), value);
+          }
+          tree = tree == null ? value : overlay(tree, value);
+        }
+        return builder.toList(tree);
+      }
+    });
   }
 
   @Override
@@ -206,17 +752,24 @@ public class MasterRpcEndpointImpl implements MasterRpcEndpoint, ParameterServer
 
   @Override
   public List<Object> subscribeParam(String callerId, String callerSlaveUri, String slavePort, String key) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.ParameterServer", 
+    return await(subscribeParamAsync(callerId, callerSlaveUri, slavePort, key));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> subscribeParamAsync(String callerId, String callerSlaveUri, String slavePort, String key) {
+	  RemoteRequestInterface rri = new RemoteRequest(PARAMETER_CLASS,
 			  "subscribe",
 			  GraphName.of(key), NodeIdentifier.forNameAndUri(callerId, callerSlaveUri, Integer.valueOf(slavePort)));
-    //parameterServer.subscribe(GraphName.of(key),
-    //    NodeIdentifier.forNameAndUri(callerId, callerSlaveUri, Integer.valueOf(slavePort)));
-    Object value = remoteParameter.queue(rri);//parameterServer.get(GraphName.of(key));
-    if (value == null) {
-      // Must return an empty map as the value of an unset parameter.
-      value = new HashMap<String, Object>();
-    }
-    return Response.newSuccess("Success", value).toList();
+    return call(parameter(key), rri, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object value) {
+        if (value == null || value.getClass() == Object.class) {
+          // Must return an empty map as the value of an unset parameter.
+          value = new HashMap<String, Object>();
+        }
+        return Response.newSuccess("Success", value).toList();
+      }
+    });
   }
 
   @Override
@@ -226,42 +779,77 @@ public class MasterRpcEndpointImpl implements MasterRpcEndpoint, ParameterServer
 
   @Override
   public List<Object> deleteParam(String callerId, String key) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.ParameterServer", 
+    return await(deleteParamAsync(callerId, key));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> deleteParamAsync(String callerId, String key) {
+	  RemoteRequestInterface rri = new RemoteRequest(PARAMETER_CLASS,
 			  "delete",
-			  GraphName.of(key)); 
-    //parameterServer.delete(GraphName.of(key));
-    return Response.newSuccess("Success", remoteParameter.queue(rri)).toList();
+			  GraphName.of(key));
+    List<Integer> under = shards.shardsUnder(key);
+    if (under.isEmpty()) {
+      return success(parameter(key), rri, "Success");
+    }
+    List<CompletableFuture<Object>> calls = new ArrayList<CompletableFuture<Object>>();
+    calls.add(parameter(key).submit(rri));
+    for (int shard : under) {
+      calls.add(remoteParameters[shard].submit(new RemoteRequest(PARAMETER_CLASS, "delete",
+          GraphName.of(shards.getNamespace(shard)))));
+    }
+    return success(first(calls), "Success");
   }
 
   @Override
   public List<Object> hasParam(String callerId, String key) {
-	  RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.ParameterServer", 
+    return await(hasParamAsync(callerId, key));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> hasParamAsync(String callerId, String key) {
+	  RemoteRequestInterface rri = new RemoteRequest(PARAMETER_CLASS,
 			  "has",
 			  GraphName.of(key));
-    return Response.newSuccess("Success",
-    		remoteParameter.queue(rri)
-    		//parameterServer.has(GraphName.of(key))
-    		).toList();
+    List<Integer> under = shards.shardsUnder(key);
+    if (under.isEmpty()) {
+      return success(parameter(key), rri, "Success");
+    }
+    // the namespace is there if any shard holds part of it
+    return call(namespace(key, under, "has"), new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object results) {
+        return Response.newSuccess("Success", ((List<?>) results).contains(Boolean.TRUE)).toList();
+      }
+    });
   }
 
   @Override
   public List<Object> getParamNames(String callerId) {
-	RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.ParameterServer", 
+    return await(getParamNamesAsync(callerId));
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> getParamNamesAsync(String callerId) {
+    CompletableFuture<List<Object>> names = everyShard(remoteParameters, PARAMETER_CLASS,
 			  "getNames"
 			  );
-    //Collection<GraphName> names = (Collection<GraphName>) remoteParameter.queue(rri);//parameterServer.getNames();
-    /*
-    List<String> stringNames = new ArrayList<String>();
-    for (GraphName name : names) {
-      stringNames.add(name.toString());
-    }
-    */
-    return Response.newSuccess("Success", remoteParameter.queue(rri)).toList();
+    return call(names, new ResponseBuilder() {
+      @Override
+      public List<Object> toList(Object results) {
+        return Response.newSuccess("Success", concatenate(results)).toList();
+      }
+    });
   }
 
-@Override
-public void setConfig(RpcClientConfigImpl config) {
-	// TODO Auto-generated method stub	
-}
+  /**
+   * Apply the connect and reply timeouts to the master and parameter server connections.
+   */
+  @Override
+  public void setConfig(RpcClientConfigImpl config) {
+    for (int i = 0; i < shards.size(); i++) {
+      remoteMasters[i].setTimeouts(config.getConnectionTimeout(), config.getReplyTimeout());
+      remoteParameters[i].setTimeouts(config.getConnectionTimeout(), config.getReplyTimeout());
+    }
+  }
 
 }
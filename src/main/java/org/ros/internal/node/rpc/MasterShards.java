@@ -0,0 +1,104 @@
+package org.ros.internal.node.rpc;
+
+import org.ros.namespace.GraphName;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which master owns which names, for a graph split over several masters by namespace.<p/>
+ * Each shard is a namespace, /arm say, and the masters that own it, a primary and its standbys.
+ * A topic, service or parameter name belongs to the shard with the longest namespace it lies in,
+ * /arm/joints to /arm and /arm/left/joints to /arm/left if there is one, and any name in none of
+ * them to the root shard, the masters the node was given with {@link org.ros.node.NodeConfiguration#setMasterUris}.
+ * Shard 0 is always the root shard.
+ * @author jg
+ *
+ */
+public class MasterShards {
+
+  private final List<List<InetSocketAddress>> masters = new ArrayList<List<InetSocketAddress>>();
+  // the namespace of each shard after the root, with a trailing slash to match names under it
+  private final List<String> prefixes = new ArrayList<String>();
+
+  /**
+   * @param rootMasters The masters of every name not in a shard
+   * @param shards The masters of each namespace, none for a single master
+   */
+  public MasterShards(List<InetSocketAddress> rootMasters, Map<GraphName, List<InetSocketAddress>> shards) {
+    assert(!rootMasters.isEmpty()) : "MasterShards needs at least one master";
+    masters.add(Collections.unmodifiableList(new ArrayList<InetSocketAddress>(rootMasters)));
+    prefixes.add("/");
+    for (Map.Entry<GraphName, List<InetSocketAddress>> shard : shards.entrySet()) {
+      GraphName namespace = shard.getKey().toGlobal();
+      assert(!namespace.isRoot()) : "MasterShards root namespace is the root masters, not a shard";
+      assert(!shard.getValue().isEmpty()) : "MasterShards needs at least one master for " + namespace;
+      masters.add(Collections.unmodifiableList(new ArrayList<InetSocketAddress>(shard.getValue())));
+      prefixes.add(namespace.toString() + "/");
+    }
+  }
+
+  /**
+   * @return The number of shards, the root shard included
+   */
+  public int size() {
+    return masters.size();
+  }
+
+  /**
+   * @return The primary and standbys of the shard
+   */
+  public List<InetSocketAddress> getMasters(int shard) {
+    return masters.get(shard);
+  }
+
+  /**
+   * @param name A global graph name
+   * @return The shard owning the name, that with the longest namespace it lies in, 0 if none
+   */
+  public int shardOf(String name) {
+    String path = name.endsWith("/") ? name : name + "/";
+    int owner = 0;
+    for (int i = 1; i < prefixes.size(); i++) {
+      String prefix = prefixes.get(i);
+      if (path.startsWith(prefix) && prefix.length() > prefixes.get(owner).length()) {
+        owner = i;
+      }
+    }
+    return owner;
+  }
+
+  /**
+   * @param name A global graph name
+   * @return The shards whose namespace lies under the name, shortest namespace first, none if the name
+   * is not a namespace holding a shard
+   */
+  public List<Integer> shardsUnder(String name) {
+    String path = name.endsWith("/") ? name : name + "/";
+    List<Integer> under = new ArrayList<Integer>();
+    for (int i = 1; i < prefixes.size(); i++) {
+      if (prefixes.get(i).length() > path.length() && prefixes.get(i).startsWith(path)) {
+        under.add(i);
+      }
+    }
+    Collections.sort(under, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return prefixes.get(a).length() - prefixes.get(b).length();
+      }
+    });
+    return under;
+  }
+
+  /**
+   * @return The namespace of the shard, / for the root shard
+   */
+  public String getNamespace(int shard) {
+    String prefix = prefixes.get(shard);
+    return shard == 0 ? prefix : prefix.substring(0, prefix.length() - 1);
+  }
+}
@@ -20,6 +20,7 @@ import org.ros.internal.node.server.ParameterServer;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -40,6 +41,14 @@ public interface ParameterServerRpcEndpoint extends RpcEndpoint {
    */
   public List<Object> deleteParam(String callerId, String key);
 
+  /**
+   * As {@link #deleteParam}, without waiting on the parameter server.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  public CompletableFuture<List<Object>> deleteParamAsync(String callerId, String key);
+
   /**
    * Sets a parameter.
    * 
@@ -62,6 +71,14 @@ public interface ParameterServerRpcEndpoint extends RpcEndpoint {
  
   public List<Object> setParam(String callerId, String key, Object value);
 
+  /**
+   * As {@link #setParam}, without waiting on the parameter server.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  public CompletableFuture<List<Object>> setParamAsync(String callerId, String key, Object value);
+
   /**
    * Retrieve parameter value from server.
    * 
@@ -79,6 +96,14 @@ public interface ParameterServerRpcEndpoint extends RpcEndpoint {
    */
   public List<Object> getParam(String callerId, String key);
 
+  /**
+   * As {@link #getParam}, without waiting on the parameter server.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  public CompletableFuture<List<Object>> getParamAsync(String callerId, String key);
+
   /**
    * Searches for a parameter key on the {@link ParameterServer}.
    * 
@@ -121,6 +146,14 @@ public interface ParameterServerRpcEndpoint extends RpcEndpoint {
    */
   public List<Object> subscribeParam(String callerId, String callerApi, String callerPort, String key);
 
+  /**
+   * As {@link #subscribeParam}, without waiting on the parameter server.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  public CompletableFuture<List<Object>> subscribeParamAsync(String callerId, String callerApi, String callerPort, String key);
+
   /**
    * Unsubscribes from updates to the specified param. See paramUpdate() in the
    * Node API.
@@ -150,6 +183,14 @@ public interface ParameterServerRpcEndpoint extends RpcEndpoint {
    */
   public List<Object> hasParam(String callerId, String key);
 
+  /**
+   * As {@link #hasParam}, without waiting on the parameter server.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  public CompletableFuture<List<Object>> hasParamAsync(String callerId, String key);
+
   /**
    * Gets the list of all parameter names stored on this server.
    * 
@@ -159,4 +200,12 @@ public interface ParameterServerRpcEndpoint extends RpcEndpoint {
    */
   public List<Object> getParamNames(String callerId);
 
+  /**
+   * As {@link #getParamNames}, without waiting on the parameter server.
+   * 
+   * @return completes with the list representation, or exceptionally if the
+   *         call could not be made
+   */
+  public CompletableFuture<List<Object>> getParamNamesAsync(String callerId);
+
 }
\ No newline at end of file
@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
@@ -41,6 +42,20 @@ public class SlaveRpcEndpointImpl implements SlaveRpcEndpoint {
 	  remoteSlave = new RemoteClient(remoteHost, remotePort);
   }
 
+  /**
+   * @return the {@link RemoteClient} all calls on this endpoint share
+   */
+  public RemoteClient getRemoteClient() {
+    return remoteSlave;
+  }
+
+  /**
+   * Close the connection to the remote slave and stop its {@link RemoteClient} thread.
+   */
+  public void close() {
+    remoteSlave.close();
+  }
+
   @Override
   public List<Object> getBusStats(String callerId) {
 	RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.SlaveServer",
@@ -151,13 +166,21 @@ public class SlaveRpcEndpointImpl implements SlaveRpcEndpoint {
   @Override
   public List<Object> requestTopic(String callerId, String topic, Object[] protocols) {
     Set<String> requestedProtocols = new HashSet<String>();
+    // the parameters following each protocol name, such as where the subscriber runs
+    HashMap<String, ArrayList<Object>> protocolParams = new HashMap<String, ArrayList<Object>>();
     for (int i = 0; i < protocols.length; i++) {
-      requestedProtocols.add((String) ((Object[]) protocols[i])[0]);
+      Object[] protocol = (Object[]) protocols[i];
+      requestedProtocols.add((String) protocol[0]);
+      ArrayList<Object> params = new ArrayList<Object>();
+      for (int j = 1; j < protocol.length; j++) {
+        params.add(protocol[j]);
+      }
+      protocolParams.put((String) protocol[0], params);
     }
     ProtocolDescription protocol = null;
     RemoteRequestInterface rri = new RemoteRequest("org.ros.internal.node.server.SlaveServer",
 				"requestTopic",
-				topic, requestedProtocols); 
+				topic, requestedProtocols, protocolParams); 
     // The remote request may reference a topic with no publishers
     // in that case the call on the remote side returns null, which is translated to
     // an empty object instance by the time it gets here, so check for proper
@@ -176,9 +199,12 @@ public class SlaveRpcEndpointImpl implements SlaveRpcEndpoint {
     return response;
   }
 
+  /**
+   * Apply the connect and reply timeouts to the slave connection.
+   */
   @Override
   public void setConfig(RpcClientConfigImpl config) {
-	
+    remoteSlave.setTimeouts(config.getConnectionTimeout(), config.getReplyTimeout());
   }
 
 
@@ -3,12 +3,20 @@ package org.ros.internal.node.server;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * Functionally this class Extends TCPServer, takes connections and spins the worker thread to handle each one 
+ * Functionally this class Extends TCPServer, takes connections and spins the worker thread to handle each one.
+ * No more than the {@link RpcServerConfig#getMaxConnections()} of the server are served at once, one accepted
+ * beyond that is closed straight away and the client sees the connection drop. Stopping the server closes the
+ * connections it is serving as well, so its clients know it is gone.
  * @author jg Copyright (C) NeoCoreTechs 2015
  *
  */
@@ -18,6 +26,9 @@ public final class BaseServer extends TCPServer {
 	public int WORKBOOTPORT = 8090;
 	public InetAddress address = null;
 	private RpcServer rpcserver = null;
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final AtomicLong refusedConnections = new AtomicLong();
+	private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
 	
 	
 	public BaseServer(RpcServer server) throws IOException {
@@ -38,7 +49,7 @@ public final class BaseServer extends TCPServer {
 	public void startServer() throws IOException {
 		if( address == null )
 			throw new IOException("Server address not defined, can not start Base Server");
-		startServer(WORKBOOTPORT, address);
+		startServer(WORKBOOTPORT, address, rpcserver.getServerConfig().getBacklog());
 	}
 	/**
 	 * Start the server
@@ -53,15 +64,34 @@ public final class BaseServer extends TCPServer {
 	public void run() {
 		while(!shouldStop) {
 				try {
-					Socket datasocket = server.accept();
+					final Socket datasocket = server.accept();
                     // disable Nagles algoritm; do not combine small packets into larger ones
                     //datasocket.setTcpNoDelay(true);
                     // wait 1 second before close; close blocks for 1 sec. and data can be sent
                     datasocket.setSoLinger(true, 1);
 					//
     
-                    TCPWorker uworker = new TCPWorker(datasocket, rpcserver);
-                    ThreadPoolManager.getInstance().spin(uworker);
+                    if( openConnections.incrementAndGet() > rpcserver.getServerConfig().getMaxConnections() ) {
+                    	openConnections.decrementAndGet();
+                    	refusedConnections.incrementAndGet();
+                    	log.warn("ROS Server at connection limit "+rpcserver.getServerConfig().getMaxConnections()+", refusing "+datasocket);
+                    	datasocket.setSoLinger(false, 0);
+                    	datasocket.close();
+                    	continue;
+                    }
+                    final TCPWorker uworker = new TCPWorker(datasocket, rpcserver);
+                    connections.add(datasocket);
+                    ThreadPoolManager.getInstance().spin(new Runnable() {
+                    	@Override
+                    	public void run() {
+                    		try {
+                    			uworker.run();
+                    		} finally {
+                    			connections.remove(datasocket);
+                    			openConnections.decrementAndGet();
+                    		}
+                    	}
+                    });
                     
                     if( DEBUG ) {
                     	log.info("ROS Server node worker starting");
@@ -74,6 +104,24 @@ public final class BaseServer extends TCPServer {
 	
 	}
 	
+	@Override
+	public synchronized void stopServer() throws IOException {
+		super.stopServer();
+		for(Socket socket : connections) {
+			try {
+				socket.close();
+			} catch(IOException e) {}
+		}
+	}
+
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+	
+	public long getRefusedConnections() {
+		return refusedConnections.get();
+	}
+	
 	public Integer getPort() {
 		return WORKBOOTPORT;
 	}
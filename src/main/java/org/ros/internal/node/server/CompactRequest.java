@@ -0,0 +1,261 @@
+package org.ros.internal.node.server;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.ros.namespace.GraphName;
+
+/**
+ * The request a client sends once it has the server's {@link MethodNamesAndParams} from the connection handshake.
+ * In place of the class and method names it carries the index of the method in that table, and the parameters
+ * the registration calls pass, names, addresses, strings and boxed primitives, are written as a tag byte and the
+ * bare value rather than as serialized objects. Anything else falls back to serialization.<p/>
+ * The method name is not on the wire, the {@link TCPWorker} fills it in from the table with {@link #resolve}
+ * before the request is invoked, so a server sees the same request either way.
+ * @author jg
+ *
+ */
+public class CompactRequest implements RemoteRequestInterface, Externalizable {
+	private static final long serialVersionUID = -3021853761484230675L;
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte GRAPH_NAME = 2;
+	private static final byte SOCKET_ADDRESS = 3;
+	private static final byte UNRESOLVED_SOCKET_ADDRESS = 4;
+	private static final byte INTEGER = 5;
+	private static final byte LONG = 6;
+	private static final byte BOOLEAN = 7;
+	private static final byte DOUBLE = 8;
+	private static final byte OBJECT = 9;
+
+	private long id;
+	private long timeout;
+	private int methodId;
+	private Object[] paramArray;
+	private transient String method;
+
+	/**
+	 * No arg ctor for deserialization
+	 */
+	public CompactRequest() {}
+
+	/**
+	 * @param id The id of the call, as {@link RemoteRequestInterface#getId()}
+	 * @param timeout The timeout of the call, as {@link RemoteRequestInterface#getTimeout()}
+	 * @param methodId The index of the method in the server's {@link MethodNamesAndParams}
+	 * @param params
+	 */
+	public CompactRequest(long id, long timeout, int methodId, Object ... params) {
+		assert(methodId >= 0 && methodId <= 0xFFFF) : "CompactRequest method id out of range "+methodId;
+		assert(params.length <= 0xFF) : "CompactRequest takes at most 255 parameters";
+		this.id = id;
+		this.timeout = timeout;
+		this.methodId = methodId;
+		this.paramArray = params;
+	}
+
+	/**
+	 * Name the method from the table the method id was taken from.
+	 * @param table
+	 * @return false if the id is not in the table
+	 */
+	public boolean resolve(MethodNamesAndParams table) {
+		if( table == null || methodId >= table.getMethodNames().size() )
+			return false;
+		method = table.getMethodNames().get(methodId);
+		return true;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeLong(id);
+		out.writeInt((int) Math.min(timeout, Integer.MAX_VALUE));
+		out.writeShort(methodId);
+		out.writeByte(paramArray.length);
+		for(Object param : paramArray)
+			writeParam(out, param);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		id = in.readLong();
+		timeout = in.readInt();
+		methodId = in.readUnsignedShort();
+		paramArray = new Object[in.readUnsignedByte()];
+		for(int i = 0; i < paramArray.length; i++)
+			paramArray[i] = readParam(in);
+	}
+
+	private static void writeParam(ObjectOutput out, Object param) throws IOException {
+		if( param == null ) {
+			out.writeByte(NULL);
+		} else if( param instanceof String ) {
+			out.writeByte(STRING);
+			writeString(out, (String) param);
+		} else if( param instanceof GraphName ) {
+			out.writeByte(GRAPH_NAME);
+			writeString(out, param.toString());
+		} else if( param instanceof InetSocketAddress ) {
+			InetSocketAddress address = (InetSocketAddress) param;
+			if( address.isUnresolved() ) {
+				out.writeByte(UNRESOLVED_SOCKET_ADDRESS);
+				out.writeUTF(address.getHostString());
+			} else {
+				// the host as given and the address it resolved to, the receiver need not look it up again
+				out.writeByte(SOCKET_ADDRESS);
+				out.writeUTF(address.getHostString());
+				byte[] ip = address.getAddress().getAddress();
+				out.writeByte(ip.length);
+				out.write(ip);
+			}
+			out.writeShort(address.getPort());
+		} else if( param instanceof Integer ) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) param);
+		} else if( param instanceof Long ) {
+			out.writeByte(LONG);
+			out.writeLong((Long) param);
+		} else if( param instanceof Boolean ) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) param);
+		} else if( param instanceof Double ) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) param);
+		} else {
+			out.writeByte(OBJECT);
+			out.writeObject(param);
+		}
+	}
+
+	/**
+	 * Write a string as its length and UTF-8 bytes, unlike writeUTF there is no 64K limit on parameter values.
+	 */
+	private static void writeString(ObjectOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ObjectInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static Object readParam(ObjectInput in) throws IOException, ClassNotFoundException {
+		byte tag = in.readByte();
+		switch(tag) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in);
+			case GRAPH_NAME:
+				return GraphName.of(readString(in));
+			case SOCKET_ADDRESS: {
+				String host = in.readUTF();
+				byte[] ip = new byte[in.readUnsignedByte()];
+				in.readFully(ip);
+				return new InetSocketAddress(InetAddress.getByAddress(host, ip), in.readUnsignedShort());
+			}
+			case UNRESOLVED_SOCKET_ADDRESS: {
+				String host = in.readUTF();
+				return InetSocketAddress.createUnresolved(host, in.readUnsignedShort());
+			}
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case BOOLEAN:
+				return in.readBoolean();
+			case DOUBLE:
+				return in.readDouble();
+			case OBJECT:
+				return in.readObject();
+			default:
+				throw new IOException("CompactRequest unknown parameter tag "+tag);
+		}
+	}
+
+	@Override
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	@Override
+	public long getId() {
+		return id;
+	}
+
+	@Override
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public long getTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public int getMethodId() {
+		return methodId;
+	}
+
+	/**
+	 * @return null, the node name is not sent
+	 */
+	@Override
+	public String getNodeName() {
+		return null;
+	}
+
+	/**
+	 * @return null, the method table names the class
+	 */
+	@Override
+	public String getClassName() {
+		return null;
+	}
+
+	/**
+	 * @return null, the session is not sent
+	 */
+	@Override
+	public String getSession() {
+		return null;
+	}
+
+	/**
+	 * @return The method name, once resolved
+	 */
+	@Override
+	public String getMethodName() {
+		return method;
+	}
+
+	@Override
+	public Object[] getParamArray() {
+		return paramArray;
+	}
+
+	@Override
+	public Class<?>[] getParams() {
+		int i = 0;
+		Class<?>[] params = new Class<?>[paramArray.length];
+		for( Object param : paramArray) params[i++] = param.getClass();
+		return params;
+	}
+
+	@Override
+	public String toString() {
+		String params = "";
+		for(Object param: paramArray) params += "param:"+param+" -- "+(param == null ? null : param.getClass())+" | ";
+		return "CompactRequest id:"+id+" method id:"+methodId+" method:"+method+" params:"+params;
+	}
+
+}
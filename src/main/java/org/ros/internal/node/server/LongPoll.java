@@ -0,0 +1,125 @@
+package org.ros.internal.node.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The calls parked by a server until there is something after the sequence number the caller already has, as
+ * watches of the graph and standbys following the master are.<p/>
+ * A parked call holds no thread, the server returns its future and the {@link TCPWorker} answers when it completes.
+ * The owner decides when a call is parked and when to wake those behind a new sequence number, then the call is
+ * answered on our own thread rather than the one making the change. A call whose wait is up, or parked when we
+ * shut down, is answered with nothing new.
+ * @author jg
+ *
+ * @param <T> The answer
+ */
+public abstract class LongPoll<T> {
+	public static final long MAX_WAIT = 30000; // milliseconds a call may be parked
+
+	private static class Call<T> {
+		final long since;
+		final CompletableFuture<T> answer = new CompletableFuture<T>();
+		ScheduledFuture<?> timeout;
+		Call(long since) {
+			this.since = since;
+		}
+	}
+
+	private final ScheduledExecutorService scheduler;
+	// guarded by this
+	private List<Call<T>> parked = new ArrayList<Call<T>>();
+
+	/**
+	 * @param threadName The name of the thread that answers the calls
+	 */
+	public LongPoll(final String threadName) {
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * The answer to a call woken by {@link #wake}, made on our thread and not under our monitor.
+	 * @param since The sequence number the caller has
+	 */
+	protected abstract T answer(long since);
+
+	/**
+	 * The answer to a call whose wait is up, or parked at shutdown.
+	 * @param since The sequence number the caller has, which it keeps
+	 */
+	protected abstract T nothingSince(long since);
+
+	/**
+	 * Park a call until it is woken or its wait is up.
+	 * @param since The sequence number the caller has
+	 * @param waitMillis How long to park it, at most {@link #MAX_WAIT}
+	 * @return The answer, completed when the call is woken or its wait is up
+	 */
+	public synchronized CompletableFuture<T> park(long since, long waitMillis) {
+		final Call<T> call = new Call<T>(since);
+		parked.add(call);
+		call.timeout = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(LongPoll.this) {
+					if( !parked.remove(call) )
+						return; // woken meanwhile
+				}
+				call.answer.complete(nothingSince(call.since));
+			}
+		}, Math.min(waitMillis, MAX_WAIT), TimeUnit.MILLISECONDS);
+		return call.answer;
+	}
+
+	/**
+	 * Wake the parked calls behind a sequence number.
+	 * @param upTo The sequence number there is something up to
+	 */
+	public synchronized void wake(long upTo) {
+		final List<Call<T>> woken = new ArrayList<Call<T>>();
+		for(Call<T> call : parked) {
+			if( call.since < upTo )
+				woken.add(call);
+		}
+		if( woken.isEmpty() )
+			return;
+		parked.removeAll(woken);
+		scheduler.execute(new Runnable() {
+			@Override
+			public void run() {
+				for(Call<T> call : woken) {
+					call.timeout.cancel(false);
+					call.answer.complete(answer(call.since));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Answer the parked calls with nothing new and stop.
+	 */
+	public void shutdown() {
+		List<Call<T>> woken;
+		synchronized(this) {
+			woken = parked;
+			parked = new ArrayList<Call<T>>();
+		}
+		for(Call<T> call : woken) {
+			call.answer.complete(nothingSince(call.since));
+		}
+		scheduler.shutdownNow();
+	}
+}
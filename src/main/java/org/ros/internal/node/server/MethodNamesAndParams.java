@@ -11,9 +11,14 @@ import java.util.*;
 */
 public final class MethodNamesAndParams implements Serializable {
        static final long serialVersionUID = 8837760295724028863L;
+       /**
+       * The method name of the request a client sends on connecting to ask for the table.
+       * The index of a method in {@link #methodNames} is its id in a {@link CompactRequest}.
+       */
+       public static final String HANDSHAKE = "#methodTable";
        public transient Class<?> classClass;
        public String className;
-       public transient Vector<String> methodNames = new Vector<String>();
+       public Vector<String> methodNames = new Vector<String>();
        public transient Class<?>[][] methodParams;
        public String[] methodSigs;
        public transient Class<?>[] returnTypes;
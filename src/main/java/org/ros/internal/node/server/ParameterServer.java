@@ -1,7 +1,11 @@
 package org.ros.internal.node.server;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -10,18 +14,25 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ros.address.AdvertiseAddress;
 import org.ros.address.BindAddress;
+import org.ros.exception.NotMasterException;
 import org.ros.exception.RosRuntimeException;
 import org.ros.internal.node.client.SlaveClient;
+import org.ros.internal.node.client.SlaveClientPool;
 import org.ros.namespace.GraphName;
 
 /**
  * A ROS parameter server.
+ * <p>
+ * A standby can {@link #replicate} the parameters and subscriptions, each
+ * change is a record of its op, the name and the serialized value or
+ * subscriber. Nothing is kept for it until it first asks.
  * 
  * @author Groff
  */
@@ -34,13 +45,26 @@ public class ParameterServer extends RpcServer {
   private final GraphName masterName;
   private ServerInvokeMethod invokableMethods;
 
+  private static final byte SET = 1;
+  private static final byte DELETE = 2;
+  private static final byte SUBSCRIBE = 3;
+
+  /**
+   * The changes for a standby to follow, fed once one asks.
+   */
+  private final ReplicationLog replicationLog = new ReplicationLog("parameters");
+  private volatile boolean replicating = false;
+  // while we are a standby following a primary, see setFollowing
+  private volatile boolean following = false;
+
   public ParameterServer(BindAddress binder, AdvertiseAddress advertiseAddress) throws IOException {
 	super(binder, advertiseAddress); 
     tree = new ConcurrentHashMap<String, Object>();
     subscribers = new ConcurrentHashMap<GraphName, List<NodeIdentifier>>();
     masterName = GraphName.of("/master");
     try {
-		invokableMethods = new ServerInvokeMethod(this.getClass().getName(), 0);
+		// the standby's in process controls, a remote caller must not fence us or replace the tree
+		invokableMethods = new ServerInvokeMethod(this.getClass().getName(), 0, "setFollowing", "applyReplicated");
 	} catch (ClassNotFoundException e) {
 		throw new RosRuntimeException(e);
 	}
@@ -53,6 +77,9 @@ public class ParameterServer extends RpcServer {
 		subscribers.put(name, subs);
 	}
 	subs.add(nodeIdentifier);
+	if (replicating) {
+	  replicationLog.append(record(SUBSCRIBE, name, nodeIdentifier));
+	}
   }
 
   private Stack<String> getGraphNameParts(GraphName name) {
@@ -114,7 +141,7 @@ public class ParameterServer extends RpcServer {
         try {
           //if( DEBUG )
         	//	log.info("Constructing SlaveClient for update master:"+masterName+" addr:"+nodeIdentifier.getUri());
-          SlaveClient client = new SlaveClient(masterName, nodeIdentifier.getUri());
+          SlaveClient client = SlaveClientPool.getInstance().get(masterName, nodeIdentifier.getUri());
           //if( DEBUG )
         //		log.info("Calling update master:"+masterName+" addr:"+nodeIdentifier.getUri()+" using "+client);
           updater.update(client);
@@ -137,11 +164,21 @@ public class ParameterServer extends RpcServer {
         client.paramUpdate(fname, fvalue);
       }
     });
+    if (replicating) {
+      replicationLog.append(record(SET, name, value));
+    }
   }
 
  
-  @SuppressWarnings("unchecked")
   public void delete(GraphName name) {
+    deleteValue(name);
+    if (replicating) {
+      replicationLog.append(record(DELETE, name, null));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void deleteValue(GraphName name) {
     assert(name.isGlobal());
     Stack<String> parts = getGraphNameParts(name);
     Map<String, Object> subtree = tree;
@@ -191,7 +228,123 @@ public class ParameterServer extends RpcServer {
     return getSubtreeNames(GraphName.root(), tree);
   }
   
+  private static byte[] record(byte op, GraphName name, Object value) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeByte(op);
+      out.writeUTF(name.toString());
+      out.writeObject(value);
+      out.close();
+    } catch (IOException e) {
+      throw new RosRuntimeException("Parameter " + name + " can not be replicated", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Follow the changes after those the standby has, as
+   * {@link ReplicationLog#follow}. The first follow starts the log.
+   */
+  public synchronized CompletableFuture<ReplicationBatch> replicate(GraphName caller, long epoch, long since,
+      long waitMillis) {
+    if (!replicating) {
+      if (DEBUG) {
+        log.info("Replicating parameters to " + caller);
+      }
+      replicating = true;
+    }
+    return replicationLog.follow(epoch, since, waitMillis, new ReplicationLog.Snapshot() {
+      @Override
+      public ReplicationBatch take() {
+        synchronized (ParameterServer.this) {
+          List<byte[]> records = new ArrayList<byte[]>();
+          for (GraphName name : getNames()) {
+            records.add(record(SET, name, get(name)));
+          }
+          synchronized (subscribers) {
+            for (Map.Entry<GraphName, List<NodeIdentifier>> subs : subscribers.entrySet()) {
+              for (NodeIdentifier nodeIdentifier : subs.getValue()) {
+                records.add(record(SUBSCRIBE, subs.getKey(), nodeIdentifier));
+              }
+            }
+          }
+          return replicationLog.snapshot(records);
+        }
+      }
+    });
+  }
+
+  /**
+   * Make the changes a primary replicated, a snapshot replacing what we have.
+   * Subscribers are not told, the primary told them.
+   * 
+   * @throws IOException
+   *           if a record is not one of ours
+   */
+  public synchronized void applyReplicated(ReplicationBatch batch) throws IOException {
+    if (batch.isSnapshot()) {
+      tree.clear();
+      subscribers.clear();
+    }
+    for (byte[] record : batch.getRecords()) {
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record));
+      byte op = in.readByte();
+      GraphName name = GraphName.of(in.readUTF());
+      Object value;
+      try {
+        value = in.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+      switch (op) {
+        case SET:
+          setValue(name, value);
+          break;
+        case DELETE:
+          deleteValue(name);
+          break;
+        case SUBSCRIBE:
+          subscribe(name, (NodeIdentifier) value);
+          break;
+        default:
+          throw new IOException("unknown parameter record " + op);
+      }
+      if (replicating && op != SUBSCRIBE) {
+        replicationLog.append(record);
+      }
+    }
+  }
+
+  /**
+   * Answer the parked standbys and stop.
+   */
+  @Override
+  public void shutdown() throws IOException {
+    replicationLog.shutdown();
+    super.shutdown();
+  }
+
+  @Override
+  public MethodNamesAndParams getMethodNamesAndParams() {
+	  return invokableMethods.getMethodNamesAndParams();
+  }
+
+  /**
+   * @param following
+   *          true while we are a standby following a primary, every call but
+   *          {@link #replicate} is then refused with a
+   *          {@link NotMasterException} and its caller goes to the primary.
+   *          Set in process by the standby, it is not in the dispatch table.
+   */
+  public void setFollowing(boolean following) {
+    this.following = following;
+  }
+
   public synchronized Object invokeMethod(RemoteRequestInterface rri) throws Exception {
+		if (following && !"replicate".equals(rri.getMethodName())) {
+			throw new NotMasterException("Parameter server " + getUri() + " is a standby following its primary");
+		}
 		return invokableMethods.invokeMethod(rri, this);
   }
 }
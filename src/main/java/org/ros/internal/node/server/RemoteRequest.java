@@ -9,6 +9,8 @@ public class RemoteRequest implements RemoteRequestInterface, Serializable {
 	String session;
 	String method;
 	Object[] paramArray;
+	long id; // correlates the response on a multiplexed connection, 0 for a peer that answers in order
+	long timeout; // milliseconds the caller waits, 0 for no limit
 	
 	public RemoteRequest() {}
 	public RemoteRequest(String classname, String method, Object ... params) {
@@ -25,6 +27,26 @@ public class RemoteRequest implements RemoteRequestInterface, Serializable {
 		session = sess;
 	}
 	
+	@Override
+	public void setId(long id) {
+		this.id = id;
+	}
+	
+	@Override
+	public long getId() {
+		return id;
+	}
+	
+	@Override
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+	
+	@Override
+	public long getTimeout() {
+		return timeout;
+	}
+	
 	@Override
 	public String getNodeName() {
 		return nodeName;
@@ -45,6 +67,11 @@ public class RemoteRequest implements RemoteRequestInterface, Serializable {
 		return method;
 	}
 
+	@Override
+	public int getMethodId() {
+		return NO_METHOD_ID;
+	}
+
 	@Override
 	public Object[] getParamArray() {
 		return paramArray;
@@ -62,7 +89,7 @@ public class RemoteRequest implements RemoteRequestInterface, Serializable {
 	public String toString() {
 		String params = "";
 		for(Object param: paramArray) params += "param:"+param+" -- "+param.getClass()+" | ";
-		return "RemoteRequest Class:"+className+" method:"+method+" params:"+params;
+		return "RemoteRequest id:"+id+" Class:"+className+" method:"+method+" params:"+params;
 	}
 
 }
@@ -7,14 +7,41 @@ package org.ros.internal.node.server;
  *
  */
 public interface RemoteRequestInterface {
+	/**
+	 * The method id of a request that names its method.
+	 */
+	public static final int NO_METHOD_ID = -1;
+
 	public String getNodeName();
 	
 	public String getClassName();
 
 	public String getSession();
 
+	/**
+	 * @return The id the {@link RemoteResponse} to this request carries back, so many requests may be in flight
+	 * on one connection and be answered in any order. 0 asks for the bare result, in order.
+	 */
+	public long getId();
+
+	public void setId(long id);
+
+	/**
+	 * @return The milliseconds the caller waits for the response, 0 if it waits as long as it takes.
+	 * A request still waiting for a thread when that has passed is answered with an error rather than invoked.
+	 */
+	public long getTimeout();
+
+	public void setTimeout(long timeout);
+
 	public String getMethodName();
 
+	/**
+	 * @return The index of the method in the server's {@link MethodNamesAndParams}, or {@link #NO_METHOD_ID}
+	 * if the request goes by {@link #getMethodName()} alone
+	 */
+	public int getMethodId();
+
 	public Object[] getParamArray();
 
 	/**
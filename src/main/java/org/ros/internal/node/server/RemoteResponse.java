@@ -0,0 +1,102 @@
+package org.ros.internal.node.server;
+
+import java.io.Serializable;
+
+/**
+ * The result of a {@link RemoteRequestInterface} together with the id of the request it answers.
+ * The {@link TCPWorker} answers requests as they complete rather than as they arrived, the client matches
+ * them up again by id.
+ * @author jg
+ *
+ */
+public class RemoteResponse implements Serializable {
+	private static final long serialVersionUID = -2472270185838722470L;
+	private final long id;
+	private final Object result;
+	private final String error;
+	private final boolean busy;
+	private final boolean notMaster;
+	
+	public RemoteResponse(long id, Object result) {
+		this.id = id;
+		this.result = result;
+		this.error = null;
+		this.busy = false;
+		this.notMaster = false;
+	}
+	
+	/**
+	 * The remote invocation threw, the client fails the call with the message.
+	 * The exception itself stays on the server, it need not be serializable.
+	 * @param id
+	 * @param error
+	 */
+	public RemoteResponse(long id, String error) {
+		this(id, error, false, false);
+	}
+	
+	private RemoteResponse(long id, String error, boolean busy, boolean notMaster) {
+		this.id = id;
+		this.result = null;
+		this.error = error;
+		this.busy = busy;
+		this.notMaster = notMaster;
+	}
+	
+	/**
+	 * The server had no room for the request and did not invoke it, the client fails the call with
+	 * a {@link org.ros.exception.RpcBusyException} and may retry.
+	 * @param id
+	 * @param message
+	 * @return
+	 */
+	public static RemoteResponse newBusy(long id, String message) {
+		return new RemoteResponse(id, message, true, false);
+	}
+	
+	/**
+	 * The server is a standby still following its primary and did not invoke the request, the client fails the
+	 * call with a {@link org.ros.exception.NotMasterException} and makes it on the primary.
+	 * @param id
+	 * @param message
+	 * @return
+	 */
+	public static RemoteResponse newNotMaster(long id, String message) {
+		return new RemoteResponse(id, message, false, true);
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public Object getResult() {
+		return result;
+	}
+	
+	/**
+	 * @return The failure of the remote invocation, or null if it succeeded
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	/**
+	 * @return true if the request was shed rather than invoked, {@link #getError()} says why
+	 */
+	public boolean isBusy() {
+		return busy;
+	}
+	
+	/**
+	 * @return true if the server is a standby that did not invoke the request, {@link #getError()} says why
+	 */
+	public boolean isNotMaster() {
+		return notMaster;
+	}
+	
+	@Override
+	public String toString() {
+		return "RemoteResponse id:"+id+(error == null ? " result:"+result : (busy ? " busy:" : notMaster ? " not master:" : " error:")+error);
+	}
+
+}
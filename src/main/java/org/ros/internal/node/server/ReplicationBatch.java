@@ -0,0 +1,60 @@
+package org.ros.internal.node.server;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The answer a standby gets for following a {@link ReplicationLog}, the records after the sequence number it had
+ * up to the {@link #getSequence()} it should follow from next. A snapshot holds the records that make the whole
+ * state, and replaces what the standby has.
+ * @author jg
+ *
+ */
+public class ReplicationBatch implements Serializable {
+	private static final long serialVersionUID = 3811764930148367514L;
+
+	private final long epoch;
+	private final long sequence;
+	private final boolean snapshot;
+	private final List<byte[]> records;
+
+	public ReplicationBatch(long epoch, long sequence, boolean snapshot, List<byte[]> records) {
+		this.epoch = epoch;
+		this.sequence = sequence;
+		this.snapshot = snapshot;
+		this.records = records;
+	}
+
+	/**
+	 * @return The run of the primary the sequence numbers belong to, to follow with next
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return The sequence number of the last record covered, to follow from next
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return true if the records are the whole state rather than changes to it
+	 */
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return The records in order, empty if the follow timed out with none
+	 */
+	public List<byte[]> getRecords() {
+		return records;
+	}
+
+	@Override
+	public String toString() {
+		return "ReplicationBatch epoch "+epoch+" to "+sequence+(snapshot ? " snapshot " : " ")+records.size()+" records";
+	}
+}
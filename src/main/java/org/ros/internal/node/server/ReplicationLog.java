@@ -0,0 +1,145 @@
+package org.ros.internal.node.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The recent changes of a server's state as records of bytes, for a warm standby to follow.<p/>
+ * The server appends each change as it makes it, under whatever lock orders its changes, and that is all a change
+ * costs it: nothing is sent while the change is made. A standby follows by asking for the records after the last
+ * one it has. If there are some it is answered at once with up to {@link #MAX_BATCH} of them, if not its call is
+ * parked in a {@link LongPoll} until there are or its wait is up. Records appended while the standby's previous
+ * answer was on the wire go in its next one, so the busier the server the larger the batches.<p/>
+ * The last {@link #DEFAULT_HISTORY} records are kept. A standby further behind than that, or new, or one that
+ * followed an earlier run of the server, gets a {@link Snapshot} of the whole state to start from.
+ * @author jg
+ *
+ */
+public class ReplicationLog {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(ReplicationLog.class);
+	public static final int DEFAULT_HISTORY = 8192;
+	public static final int MAX_BATCH = 1024;
+
+	/**
+	 * Takes the whole state of the server as records, from {@link ReplicationLog#snapshot}. Called without the
+	 * log's monitor, it should hold off changes to the server while it reads.
+	 */
+	public interface Snapshot {
+		ReplicationBatch take();
+	}
+
+	private final String name;
+	private final long epoch = System.currentTimeMillis();
+	private final int historySize;
+	private final LongPoll<ReplicationBatch> followers;
+	// all guarded by this
+	private final ArrayDeque<byte[]> history = new ArrayDeque<byte[]>();
+	private long sequence = 0;
+
+	/**
+	 * @param name What is logged, to name the thread
+	 */
+	public ReplicationLog(String name) {
+		this(name, DEFAULT_HISTORY);
+	}
+
+	/**
+	 * @param name What is logged, to name the thread
+	 * @param historySize The most records kept for standbys catching up
+	 */
+	public ReplicationLog(String name, int historySize) {
+		assert(historySize > 0) : "ReplicationLog history must hold at least one record";
+		this.name = name;
+		this.historySize = historySize;
+		followers = new LongPoll<ReplicationBatch>("ReplicationLog-"+name) {
+			@Override
+			protected ReplicationBatch answer(long since) {
+				return recordsSince(since);
+			}
+
+			@Override
+			protected ReplicationBatch nothingSince(long since) {
+				return new ReplicationBatch(epoch, since, false, Collections.<byte[]>emptyList());
+			}
+		};
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Append a change and wake the parked standbys.
+	 */
+	public synchronized void append(byte[] record) {
+		history.addLast(record);
+		++sequence;
+		if( history.size() > historySize )
+			history.removeFirst();
+		followers.wake(sequence);
+	}
+
+	/**
+	 * The whole state as of now, for a {@link Snapshot} to return once it has read the records.
+	 * @param records The records that make the state, read with changes held off
+	 */
+	public synchronized ReplicationBatch snapshot(List<byte[]> records) {
+		return new ReplicationBatch(epoch, sequence, true, records);
+	}
+
+	/**
+	 * Follow the records after those the standby has, waiting for some if there are none yet.
+	 * @param followEpoch The epoch of the last answer, 0 if none
+	 * @param since The sequence number of the last answer
+	 * @param waitMillis How long to park the follow if there are no records yet, at most {@link LongPoll#MAX_WAIT}
+	 * @param snapshot Takes the whole state if the standby can not carry on from the history
+	 * @return The answer, completed now or when there are records or the wait is up
+	 */
+	public CompletableFuture<ReplicationBatch> follow(long followEpoch, long since, long waitMillis, Snapshot snapshot) {
+		synchronized(this) {
+			if( followEpoch == epoch && since <= sequence && since >= sequence - history.size() ) {
+				if( since < sequence || waitMillis <= 0 )
+					return CompletableFuture.completedFuture(recordsSince(since));
+				return followers.park(since, waitMillis);
+			}
+		}
+		// not under our monitor, the snapshot holds off changes and changes append to us
+		if( DEBUG )
+			log.debug("ReplicationLog "+name+" snapshot for follow of epoch "+followEpoch+" from "+since);
+		return CompletableFuture.completedFuture(snapshot.take());
+	}
+
+	private synchronized ReplicationBatch recordsSince(long since) {
+		long first = sequence - history.size() + 1;
+		if( since < first - 1 ) // fell out of the history while parked, the standby asks again and gets a snapshot
+			return new ReplicationBatch(epoch, since, false, Collections.<byte[]>emptyList());
+		List<byte[]> records = new ArrayList<byte[]>();
+		long at = first;
+		for(byte[] record : history) {
+			if( at > since )
+				records.add(record);
+			if( records.size() == MAX_BATCH )
+				break;
+			++at;
+		}
+		return new ReplicationBatch(epoch, since + records.size(), false, records);
+	}
+
+	/**
+	 * Answer the parked standbys with no records and stop.
+	 */
+	public void shutdown() {
+		followers.shutdown();
+	}
+}
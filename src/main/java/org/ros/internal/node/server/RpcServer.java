@@ -8,6 +8,7 @@ import org.ros.exception.RosRuntimeException;
 import org.ros.internal.system.Process;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.concurrent.CountDownLatch;
@@ -17,6 +18,8 @@ import java.util.concurrent.TimeUnit;
  * Base class for an RPC server.
  * Starts the TCP request processor that maintains master/slave communications at top level registration.
  * Constructs a BaseServer.
+ * Connections and requests are bounded by the {@link RpcServerConfig}, requests run on a {@link RpcWorkerPool}
+ * whose counters, with those of the connections, say how loaded the server is.
  * 
  * @author jg
  */
@@ -25,9 +28,14 @@ public abstract class RpcServer {
   private static final boolean DEBUG = false;
   private static final Log log = LogFactory.getLog(RpcServer.class);
 
+  // the client whose request the current thread is invoking
+  private static final ThreadLocal<InetAddress> caller = new ThreadLocal<InetAddress>();
+
   private final AdvertiseAddress advertiseAddress;
   private final CountDownLatch startLatch = new CountDownLatch(1);
   private BaseServer server;
+  private RpcServerConfig serverConfig = new RpcServerConfig();
+  private RpcWorkerPool workerPool;
 
   public RpcServer(BindAddress bindAddress, AdvertiseAddress advertiseAddress) throws IOException {
     this.advertiseAddress = advertiseAddress;
@@ -40,7 +48,67 @@ public abstract class RpcServer {
    * @throws Exception
    */
   public abstract Object invokeMethod(RemoteRequestInterface rri) throws Exception;
+
+  /**
+   * Set by the {@link TCPWorker} around each invocation.
+   */
+  static void setCallerAddress(InetAddress address) {
+    if (address == null) {
+      caller.remove();
+    } else {
+      caller.set(address);
+    }
+  }
+
+  /**
+   * @return The address of the client whose request the current thread is invoking, null if it is not invoking
+   *         one for a remote client
+   */
+  public static InetAddress getCallerAddress() {
+    return caller.get();
+  }
+
+  /**
+   * @return The table of methods sent to a client in the connection handshake,
+   *         so it can send {@link CompactRequest}s, or null if this server only
+   *         takes requests by method name
+   */
+  public MethodNamesAndParams getMethodNamesAndParams() {
+    return null;
+  }
   
+  /**
+   * @param serverConfig How many connections and requests the server takes on, used from {@link #start()}
+   */
+  public void setServerConfig(RpcServerConfig serverConfig) {
+    this.serverConfig = serverConfig;
+  }
+
+  public RpcServerConfig getServerConfig() {
+    return serverConfig;
+  }
+
+  /**
+   * @return The pool requests run on, null until started
+   */
+  public RpcWorkerPool getWorkerPool() {
+    return workerPool;
+  }
+
+  /**
+   * @return Connections open now
+   */
+  public int getOpenConnections() {
+    return server == null ? 0 : server.getOpenConnections();
+  }
+
+  /**
+   * @return Connections closed on accept because {@link RpcServerConfig#getMaxConnections()} were open
+   */
+  public long getRefusedConnections() {
+    return server == null ? 0 : server.getRefusedConnections();
+  }
+
   /**
    * Start up the remote calling server.
    * 
@@ -51,6 +119,7 @@ public abstract class RpcServer {
    *          an instance of the remoting server class
    */
   public void start() {
+    workerPool = new RpcWorkerPool("RPCWORKER", serverConfig);
     try {
       server = new BaseServer(this);
       server.startServer();
@@ -69,6 +138,7 @@ public abstract class RpcServer {
    */
   public void shutdown() throws IOException {
     server.stopServer();
+    workerPool.shutdown();
   }
 
   /**
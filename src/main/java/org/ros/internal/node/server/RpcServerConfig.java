@@ -0,0 +1,76 @@
+package org.ros.internal.node.server;
+
+/**
+ * How an {@link RpcServer} takes connections and runs requests.
+ * Each connection has a {@link TCPWorker} reading it, up to {@link #getMaxConnections()}, further connections
+ * are closed as they are accepted. Requests carrying an id run on a {@link RpcWorkerPool} of
+ * {@link #getWorkerThreads()} threads with a queue of {@link #getQueueCapacity()} behind them, a request arriving
+ * when both are full is answered busy rather than queued.<p/>
+ * Set it on the server before {@link RpcServer#start()}.
+ * @author jg
+ *
+ */
+public class RpcServerConfig {
+	public static final int DEFAULT_WORKER_THREADS = 16;
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	public static final int DEFAULT_MAX_CONNECTIONS = 1024;
+	public static final int DEFAULT_BACKLOG = 1000;
+
+	private int workerThreads = DEFAULT_WORKER_THREADS;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private int backlog = DEFAULT_BACKLOG;
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	/**
+	 * @param workerThreads The most requests invoked at once
+	 */
+	public void setWorkerThreads(int workerThreads) {
+		assert(workerThreads > 0) : "RpcServerConfig needs at least one worker thread";
+		this.workerThreads = workerThreads;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @param queueCapacity The most requests waiting for a worker, 0 to answer busy whenever every worker is taken
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		assert(queueCapacity >= 0) : "RpcServerConfig queue capacity can not be negative";
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * @param maxConnections The most client connections open at once
+	 */
+	public void setMaxConnections(int maxConnections) {
+		assert(maxConnections > 0) : "RpcServerConfig needs at least one connection";
+		this.maxConnections = maxConnections;
+	}
+
+	public int getBacklog() {
+		return backlog;
+	}
+
+	/**
+	 * @param backlog The listen backlog of the server socket, connections not yet accepted
+	 */
+	public void setBacklog(int backlog) {
+		this.backlog = backlog;
+	}
+
+	@Override
+	public String toString() {
+		return "RpcServerConfig worker threads:"+workerThreads+" queue capacity:"+queueCapacity+
+				" max connections:"+maxConnections+" backlog:"+backlog;
+	}
+}
@@ -0,0 +1,171 @@
+package org.ros.internal.node.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The threads an {@link RpcServer} invokes requests on, a fixed number of workers with a bounded queue behind them.
+ * Where the cached pool took a new thread for every request in flight, so a storm of registrations could run the
+ * server out of threads and memory, this one refuses a request it has no room for and the {@link TCPWorker}
+ * answers it busy. The caller sees a {@link org.ros.exception.RpcBusyException} and may try again later.<p/>
+ * It counts what it was given and what it did with it, and how long requests waited for a worker and ran, for
+ * anyone watching the server.
+ * @author jg
+ *
+ */
+public class RpcWorkerPool {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(RpcWorkerPool.class);
+	private static final long IDLE_SECONDS = 60;
+
+	private final ThreadPoolExecutor executor;
+	private final int queueCapacity;
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong queueNanos = new AtomicLong();
+	private final AtomicLong runNanos = new AtomicLong();
+	private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+	public RpcWorkerPool(final String name, RpcServerConfig config) {
+		queueCapacity = config.getQueueCapacity();
+		BlockingQueue<Runnable> queue = queueCapacity == 0 ?
+				new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueCapacity);
+		executor = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(),
+				IDLE_SECONDS, TimeUnit.SECONDS, queue, new ThreadFactory() {
+					private final AtomicInteger threadNum = new AtomicInteger();
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name+threadNum.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// an idle server gives its threads back
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Run the request on a worker, or queue it for one.
+	 * @param request
+	 * @return false if every worker is taken and the queue is full, or the pool is shut down, the request will not run
+	 */
+	public boolean execute(final Runnable request) {
+		final long queued = System.nanoTime();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					long started = System.nanoTime();
+					queueNanos.addAndGet(started - queued);
+					try {
+						request.run();
+					} finally {
+						runNanos.addAndGet(System.nanoTime() - started);
+						completed.incrementAndGet();
+					}
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			if( DEBUG )
+				log.debug("RpcWorkerPool full, shedding request "+this);
+			return false;
+		}
+		submitted.incrementAndGet();
+		int depth = executor.getQueue().size();
+		int peak;
+		while( depth > (peak = peakQueueDepth.get()) && !peakQueueDepth.compareAndSet(peak, depth) );
+		return true;
+	}
+
+	/**
+	 * Stop taking requests, those queued are dropped and their callers time out.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return Requests accepted, run or waiting
+	 */
+	public long getSubmitted() {
+		return submitted.get();
+	}
+
+	/**
+	 * @return Requests refused because the pool was full
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return Requests that have run
+	 */
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * @return Workers running a request now
+	 */
+	public int getActive() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return Requests waiting for a worker now
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return The most requests seen waiting at once
+	 */
+	public int getPeakQueueDepth() {
+		return peakQueueDepth.get();
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public int getWorkerThreads() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * @return The mean time a completed request waited for a worker, in milliseconds
+	 */
+	public double getMeanQueueMillis() {
+		long n = completed.get();
+		return n == 0 ? 0 : queueNanos.get() / 1000000.0 / n;
+	}
+
+	/**
+	 * @return The mean time a completed request ran, in milliseconds
+	 */
+	public double getMeanRunMillis() {
+		long n = completed.get();
+		return n == 0 ? 0 : runNanos.get() / 1000000.0 / n;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RpcWorkerPool workers:%d active:%d queued:%d/%d peak:%d submitted:%d completed:%d rejected:%d wait:%.3fms run:%.3fms",
+				getWorkerThreads(), getActive(), getQueueDepth(), queueCapacity, getPeakQueueDepth(),
+				getSubmitted(), getCompleted(), getRejected(), getMeanQueueMillis(), getMeanRunMillis());
+	}
+}
@@ -1,6 +1,16 @@
 package org.ros.internal.node.server;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -12,7 +22,13 @@ import org.apache.commons.logging.LogFactory;
 * This class handles reflection of the user requests to call designated methods in the server side classes,
 * It starts by populating a table of those methods, and at runtime, creates a method call transport for client,
 * and provides for server-side invocation of those methods.
-* Option to skip leading arguments for whatever reason is provided.
+* Option to skip leading arguments for whatever reason is provided.<p/>
+* At construction the methods are compiled into a dispatch table keyed by name, then arity, of
+* {@link MethodHandle}s adapted to take the target object and the argument array, so a request costs a
+* hash lookup, a check of its arguments against the few overloads of that name and arity, and a direct invoke.
+* A {@link CompactRequest} skips the hash lookup, its method id indexes the table directly.<p/>
+* Public methods the server calls on itself, named as local only at construction, are left out of the table
+* and can not be invoked remotely.
 * @author Groff Copyright (C) NeoCoreTechs 1998-2000, 2015, 2017
 */
 public final class ServerInvokeMethod {
@@ -22,6 +38,42 @@ public final class ServerInvokeMethod {
     int skipArgIndex;
     private Method[] methods;
     private MethodNamesAndParams pkmnap = new MethodNamesAndParams();
+    // method name to the overloads of each arity, indexed by arity
+    private final Map<String, Overload[][]> dispatch = new HashMap<String, Overload[][]>();
+    // the same, indexed by the method id of a CompactRequest, the position of the method in pkmnap.methodNames
+    private Overload[][][] byMethodId;
+    private static final Overload[] NONE = new Overload[0];
+
+    /**
+     * A method of a given name and arity, ready to invoke.
+     */
+    private static final class Overload {
+        final Method method;
+        final Class<?>[] types;
+        final Class<?>[] params; // primitives boxed, as the arguments arrive
+        final MethodHandle handle; // (Object target, Object[] args)Object, null to invoke reflectively
+        Overload(Method method, MethodHandle handle) {
+            this.method = method;
+            this.handle = handle;
+            types = method.getParameterTypes();
+            params = new Class<?>[types.length];
+            for(int i = 0; i < types.length; i++)
+                params[i] = MethodType.methodType(types[i]).wrap().returnType();
+        }
+        /**
+         * @return true if each argument, from the first not skipped, can be passed as its parameter
+         */
+        boolean accepts(Object[] args, int skip) {
+            for(int i = 0; i < args.length; i++) {
+                if( args[i] == null ) {
+                    if( types[i+skip].isPrimitive() )
+                        return false;
+                } else if( !params[i+skip].isInstance(args[i]) )
+                    return false;
+            }
+            return true;
+        }
+    }
 
     public MethodNamesAndParams getMethodNamesAndParams() { return pkmnap; }
     /**
@@ -30,15 +82,16 @@ public final class ServerInvokeMethod {
     * overload) and look for methods
     * @param tclass The class name we are targeting
     * @param tskipArgs > 0 if we want to skip first args.
+    * @param localOnly Names of public methods kept out of the table, for in process use only
     */
-    public ServerInvokeMethod(String tclass, int tskipArgs) throws ClassNotFoundException {      
+    public ServerInvokeMethod(String tclass, int tskipArgs, String... localOnly) throws ClassNotFoundException {      
                 pkmnap.classClass = Class.forName(tclass);
                 //pkmnap.classClass = theClassLoader.loadClass(tclass, true);
                 pkmnap.className = pkmnap.classClass.getName();
                 skipArgs = tskipArgs;
                 skipArgIndex = skipArgs;
                 Method m[];
-                m = pkmnap.classClass.getMethods();
+                m = remotable(pkmnap.classClass.getMethods(), localOnly);
                 for(int i = m.length-1; i >= 0 ; i--) {
                         //if( m[i].getName().startsWith("Reflect_") ) {
                                 pkmnap.methodNames.add(m[i].getName()/*.substring(8)*/);
@@ -75,6 +128,73 @@ public final class ServerInvokeMethod {
                                 methods[methCnt++] = m[i];
                        // }
                 }
+                buildDispatch();
+       }
+
+       /**
+        * @return The methods not named local only
+        */
+       private static Method[] remotable(Method[] all, String[] localOnly) {
+                if( localOnly.length == 0 )
+                        return all;
+                Set<String> excluded = new HashSet<String>(Arrays.asList(localOnly));
+                List<Method> kept = new ArrayList<Method>();
+                for(Method method : all) {
+                        if( !excluded.contains(method.getName()) )
+                                kept.add(method);
+                }
+                return kept.toArray(new Method[kept.size()]);
+       }
+
+       /**
+        * Compile the reflected methods into the dispatch table. The overloads of a name and arity keep
+        * the order of the method table, so the first to accept the arguments is the one reflection would pick.
+        */
+       private void buildDispatch() {
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                Map<String, List<List<Overload>>> overloads = new HashMap<String, List<List<Overload>>>();
+                for(Method method : methods) {
+                        int arity = method.getParameterTypes().length;
+                        List<List<Overload>> byArity = overloads.get(method.getName());
+                        if( byArity == null ) {
+                                byArity = new ArrayList<List<Overload>>();
+                                overloads.put(method.getName(), byArity);
+                        }
+                        while( byArity.size() <= arity )
+                                byArity.add(new ArrayList<Overload>());
+                        byArity.get(arity).add(new Overload(method, toHandle(lookup, method)));
+                }
+                for(Map.Entry<String, List<List<Overload>>> entry : overloads.entrySet()) {
+                        Overload[][] byArity = new Overload[entry.getValue().size()][];
+                        for(int arity = 0; arity < byArity.length; arity++) {
+                                List<Overload> same = entry.getValue().get(arity);
+                                byArity[arity] = same.isEmpty() ? NONE : same.toArray(new Overload[same.size()]);
+                        }
+                        dispatch.put(entry.getKey(), byArity);
+                }
+                byMethodId = new Overload[pkmnap.methodNames.size()][][];
+                for(int i = 0; i < byMethodId.length; i++)
+                        byMethodId[i] = dispatch.get(pkmnap.methodNames.get(i));
+       }
+
+       /**
+        * @return A handle of type (Object, Object[])Object invoking the method on the first argument with the
+        * second spread as its arguments, or null if the method is not accessible as a handle
+        */
+       private static MethodHandle toHandle(MethodHandles.Lookup lookup, Method method) {
+                int arity = method.getParameterTypes().length;
+                try {
+                        MethodHandle handle = lookup.unreflect(method);
+                        if( Modifier.isStatic(method.getModifiers()) )
+                                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                        return handle.asType(MethodType.genericMethodType(arity + 1))
+                                        .asSpreader(Object[].class, arity)
+                                        .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+                } catch (IllegalAccessException e) {
+                        if( DEBUG )
+                                log.debug("Method "+method+" will be invoked by reflection, "+e);
+                        return null;
+                }
        }
     
        /**
@@ -96,50 +216,37 @@ public final class ServerInvokeMethod {
        * @return Object of result of method invocation
        */
        public Object invokeMethod(RemoteRequestInterface tmc, Object localObject) throws Exception {
-                //NoSuchMethodException, InvocationTargetException, IllegalAccessException  {               
                 String targetMethod = tmc.getMethodName();
-                int methodIndex = pkmnap.methodNames.indexOf(targetMethod);
-                String whyNotFound = "No such method";
-                while( methodIndex != -1 && methodIndex < pkmnap.methodNames.size()) {
-                        Class[] params = tmc.getParams();
-                        //
-                        //
-                        if (DEBUG) {
-                        	for(int iparm1 = 0; iparm1 < params.length ; iparm1++) {        
-                                log.info("Calling param: "+params[iparm1]);
-                        	}
-                        	for(int iparm2 = skipArgIndex ; iparm2 < pkmnap.methodParams[methodIndex].length; iparm2++) {
-                                log.info("Method param: "+pkmnap.methodParams[methodIndex][iparm2]);
-                        	}
-                        }
-                        //
-                        //
-                        if( params.length == pkmnap.methodParams[methodIndex].length-skipArgIndex ) {
-                                boolean found = true;
-                                // if skipArgs, don't compare first 2
-                                for(int paramIndex = 0 ; paramIndex < params.length; paramIndex++) {
-                                        // can we cast it?
-                                        if( params[paramIndex] != null && !pkmnap.methodParams[methodIndex][paramIndex+skipArgIndex].isAssignableFrom(params[paramIndex]) ) {
-                                                found = false;
-                                                whyNotFound = "Parameters do not match";
-                                                break;
-                                        }
-                                }
-                                if( found ) {
-                                        if( skipArgs > 0) {
-                                                Object o1[] = tmc.getParamArray(); 
-                                                return methods[methodIndex].invoke( localObject, o1 );
-                                        } 
-                                        // invoke it for return
-                                        return methods[methodIndex].invoke( localObject, tmc.getParamArray() );
-                               }
-                        } else
-                               // tag for later if we find nothing matching
-                               whyNotFound = "Wrong number of parameters";
-                        methodIndex = pkmnap.methodNames.indexOf(targetMethod,methodIndex+1);
+                Object[] args = tmc.getParamArray();
+                if( args == null )
+                        args = new Object[0];
+                int methodId = tmc.getMethodId();
+                Overload[][] byArity = methodId >= 0 && methodId < byMethodId.length ? byMethodId[methodId] : dispatch.get(targetMethod);
+                if( byArity == null )
+                        throw new NoSuchMethodException("Method "+targetMethod+" not found in "+pkmnap.className+" No such method");
+                // if skipArgs, the first parameters of the method are not among the arguments compared
+                int arity = args.length + skipArgIndex;
+                if( arity >= byArity.length || byArity[arity].length == 0 )
+                        throw new NoSuchMethodException("Method "+targetMethod+" not found in "+pkmnap.className+" Wrong number of parameters");
+                for(Overload overload : byArity[arity]) {
+                        if( DEBUG )
+                                log.info("Calling "+overload.method+" with "+tmc);
+                        if( overload.accepts(args, skipArgIndex) )
+                                return invoke(overload, localObject, args);
                 }
-                throw new NoSuchMethodException("Method "+targetMethod+" not found in "+pkmnap.className+" "+whyNotFound);
+                throw new NoSuchMethodException("Method "+targetMethod+" not found in "+pkmnap.className+" Parameters do not match");
         }
 
-}
+        private static Object invoke(Overload overload, Object localObject, Object[] args) throws Exception {
+                if( overload.handle == null )
+                        return overload.method.invoke(localObject, args);
+                try {
+                        return overload.handle.invokeExact(localObject, args);
+                } catch(Exception | Error e) {
+                        throw e;
+                } catch(Throwable t) {
+                        throw new InvocationTargetException(t);
+                }
+        }
 
+}
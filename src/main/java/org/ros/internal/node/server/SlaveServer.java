@@ -1,5 +1,7 @@
 package org.ros.internal.node.server;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.ros.address.AdvertiseAddress;
 import org.ros.address.BindAddress;
 import org.ros.internal.node.client.MasterClient;
@@ -12,25 +14,37 @@ import org.ros.internal.node.topic.SubscriberIdentifier;
 import org.ros.internal.node.topic.TopicDeclaration;
 import org.ros.internal.node.topic.TopicParticipantManager;
 import org.ros.internal.system.Process;
-import org.ros.internal.transport.ChannelHandlerContext;
 import org.ros.internal.transport.ProtocolDescription;
 import org.ros.internal.transport.ProtocolNames;
+import org.ros.internal.transport.intraprocess.IntraProcessProtocolDescription;
+import org.ros.internal.transport.intraprocess.IntraProcessRegistry;
+import org.ros.internal.transport.shm.SharedMemoryProtocolDescription;
+import org.ros.internal.transport.shm.SharedMemoryRing;
+import org.ros.internal.transport.shm.SharedMemoryTransport;
+import org.ros.internal.transport.queue.TopicRoutingTable;
+import org.ros.internal.transport.tcp.ChannelGroup;
+import org.ros.internal.transport.tcp.SelectorEventLoopGroup;
 import org.ros.internal.transport.tcp.TcpRosProtocolDescription;
 import org.ros.internal.transport.tcp.TcpRosServer;
+import org.ros.internal.transport.udp.UdpRosProtocolDescription;
+import org.ros.internal.transport.udp.UdpRosSender;
 import org.ros.namespace.GraphName;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * @author jg
  */
 public class SlaveServer extends RpcServer {
+  private static final Log log = LogFactory.getLog(SlaveServer.class);
 
   private final GraphName nodeName;
   private final MasterClient masterClient;
@@ -38,12 +52,28 @@ public class SlaveServer extends RpcServer {
   private final ParameterManager parameterManager;
   private final TcpRosServer tcpRosServer;
   private ServerInvokeMethod invokableMethods;
+  private volatile int sharedMemoryRingCapacity = 0;
 
   public SlaveServer(GraphName nodeName, BindAddress tcpRosBindAddress,
       AdvertiseAddress tcpRosAdvertiseAddress, BindAddress rpcBindAddress,
       AdvertiseAddress rpcAdvertiseAddress, MasterClient master,
       TopicParticipantManager topicParticipantManager, ServiceManager serviceManager,
       ParameterManager parameterManager, ScheduledExecutorService executorService) throws IOException {
+    this(nodeName, tcpRosBindAddress, tcpRosAdvertiseAddress, rpcBindAddress, rpcAdvertiseAddress, master,
+        topicParticipantManager, serviceManager, parameterManager, executorService, 0);
+  }
+
+  /**
+   * @param tcpRosSelectorThreads
+   *          the number of selector threads for the {@link TcpRosServer}, 0
+   *          for a worker thread per connection
+   */
+  public SlaveServer(GraphName nodeName, BindAddress tcpRosBindAddress,
+      AdvertiseAddress tcpRosAdvertiseAddress, BindAddress rpcBindAddress,
+      AdvertiseAddress rpcAdvertiseAddress, MasterClient master,
+      TopicParticipantManager topicParticipantManager, ServiceManager serviceManager,
+      ParameterManager parameterManager, ScheduledExecutorService executorService,
+      int tcpRosSelectorThreads) throws IOException {
     super(rpcBindAddress, rpcAdvertiseAddress);
     this.nodeName = nodeName;
     this.masterClient = master;
@@ -56,19 +86,34 @@ public class SlaveServer extends RpcServer {
 	}
    
     this.tcpRosServer =
-        new TcpRosServer(tcpRosBindAddress, tcpRosAdvertiseAddress, topicParticipantManager, serviceManager, executorService);
+        new TcpRosServer(tcpRosBindAddress, tcpRosAdvertiseAddress, topicParticipantManager, serviceManager, executorService,
+            tcpRosSelectorThreads);
   }
 
   public AdvertiseAddress getTcpRosAdvertiseAddress() {
     return tcpRosServer.getAdvertiseAddress();
   }
   /**
-   * Return the ChannelHandlerContext array of subscribers
-   * @return
+   * @return the routes from this node's published topics to their subscriber connections
+   */
+  public TopicRoutingTable getTopicRoutingTable() {
+    return tcpRosServer.getTopicRoutingTable();
+  }
+
+  public TcpRosServer getTcpRosServer() {
+    return tcpRosServer;
+  }
+
+  /**
+   * @return the {@link SelectorEventLoopGroup} of the {@link TcpRosServer} for
+   *         the outbound connections of this node to share, or null if each
+   *         connection is serviced by its own worker
    */
-  public ArrayBlockingQueue<ChannelHandlerContext> getSubscribers() {
-	  return tcpRosServer.getSubscribers();
+  public ChannelGroup getTcpRosSelectorGroup() {
+    ChannelGroup group = tcpRosServer.getChannelGroup();
+    return group instanceof SelectorEventLoopGroup ? group : null;
   }
+
   /**
    * Start the RPC server. This start() routine requires that the
    * {@link TcpRosServer} is initialized first so that the slave server returns
@@ -77,12 +122,14 @@ public class SlaveServer extends RpcServer {
   public void start() {
     super.start();
     tcpRosServer.start();
+    IntraProcessRegistry.register(tcpRosServer.getAdvertiseAddress(), topicParticipantManager);
   }
 
   // TODO(damonkohler): This should also shut down the Node.
   @Override
   public void shutdown() throws IOException {
     super.shutdown();
+    IntraProcessRegistry.unregister(tcpRosServer.getAdvertiseAddress());
     tcpRosServer.shutdown();
   }
 
@@ -180,6 +227,22 @@ public class SlaveServer extends RpcServer {
    * @throws ServerException
    */
   public ProtocolDescription requestTopic(String topicName, Collection<String> protocols) throws ServerException {
+    return requestTopic(topicName, protocols, new HashMap<String, ArrayList<Object>>());
+  }
+
+  /**
+   * Request a topic from the protocols a subscriber offers along with the parameters
+   * of each. The cheapest protocol the subscriber can actually use is selected: in process
+   * if it runs in this JVM, a shared memory ring if it runs on this host and rings are
+   * enabled, datagrams if it asked for them, TCPROS otherwise.
+   * @param topicName
+   * @param protocols
+   * @param protocolParams the parameters following each protocol name in the offer, by name
+   * @return the selected protocol, or null if there is no publisher of the topic
+   * @throws ServerException
+   */
+  public ProtocolDescription requestTopic(String topicName, Collection<String> protocols,
+      Map<String, ArrayList<Object>> protocolParams) throws ServerException {
     // TODO(damonkohler): Use NameResolver.
     // Canonicalize topic name.
     GraphName graphName = GraphName.of(topicName).toGlobal();
@@ -187,6 +250,39 @@ public class SlaveServer extends RpcServer {
       //throw new ServerException("No publishers for topic: " + graphName);
     	return null;
     }
+    // An in process answer carries our TCPROS address too, so a subscriber that did not say
+    // where it runs and turns out to live in another process still gets connected.
+    if (protocols.contains(ProtocolNames.INTRAPROCESS) &&
+        offeredFrom(protocolParams.get(ProtocolNames.INTRAPROCESS), IntraProcessRegistry.PROCESS_ID, true)) {
+      return new IntraProcessProtocolDescription(tcpRosServer.getAdvertiseAddress(), IntraProcessRegistry.PROCESS_ID);
+    }
+    if (protocols.contains(ProtocolNames.SHMROS) && sharedMemoryRingCapacity > 0 && SharedMemoryTransport.isAvailable() &&
+        offeredFrom(protocolParams.get(ProtocolNames.SHMROS), SharedMemoryTransport.HOST_ID, false)) {
+      DefaultPublisher<?> publisher = topicParticipantManager.getPublisher(graphName);
+      try {
+        SharedMemoryRing ring = publisher.openSharedMemoryRing(sharedMemoryRingCapacity, tcpRosServer.getCodecSelector());
+        return new SharedMemoryProtocolDescription(tcpRosServer.getAdvertiseAddress(), SharedMemoryTransport.HOST_ID,
+            ring.getFile().getPath(), publisher.getSharedMemoryCodec().getName());
+      } catch (IOException e) {
+        log.error("Shared memory ring for " + graphName + " failed, falling back to TCPROS due to " + e);
+      }
+    }
+    List<Object> udpParams = protocolParams.get(ProtocolNames.UDPROS);
+    if (protocols.contains(ProtocolNames.UDPROS) && udpParams != null && udpParams.size() > 2) {
+      // the subscriber's socket host and port, and the largest datagram it takes. Datagrams go only to the host
+      // that asked for them, whatever host it names, so no caller can aim our stream at a third party.
+      InetAddress caller = RpcServer.getCallerAddress();
+      InetSocketAddress subscriber = caller != null ? new InetSocketAddress(caller, (Integer) udpParams.get(1)) :
+          new InetSocketAddress((String) udpParams.get(0), (Integer) udpParams.get(1));
+      try {
+        UdpRosSender sender = topicParticipantManager.getPublisher(graphName).addUdpRosSubscriber(subscriber,
+            (Integer) udpParams.get(2), tcpRosServer.getCodecSelector());
+        return new UdpRosProtocolDescription(tcpRosServer.getAdvertiseAddress(), sender.getConnectionId(),
+            sender.getMaxDatagramSize(), sender.getCodec().getName());
+      } catch (IOException e) {
+        log.error("Datagrams to " + subscriber + " for " + graphName + " failed, falling back to TCPROS due to " + e);
+      }
+    }
     for (String protocol : protocols) {
       if (protocol.equals(ProtocolNames.TCPROS)) {
         try {
@@ -199,6 +295,34 @@ public class SlaveServer extends RpcServer {
     throw new ServerException("No supported protocols specified.");
   }
 
+  /**
+   * @param params the parameters of an offered protocol, the first identifying where the subscriber runs
+   * @param ours our own identity
+   * @param unknown the answer when the subscriber gave no identity
+   */
+  private static boolean offeredFrom(List<Object> params, String ours, boolean unknown) {
+    if (params == null || params.isEmpty()) {
+      return unknown;
+    }
+    return ours.equals(params.get(0));
+  }
+
+  /**
+   * @return the size of the shared memory ring of a published topic, 0 if same host
+   *         subscribers are served over TCPROS
+   */
+  public int getSharedMemoryRingCapacity() {
+    return sharedMemoryRingCapacity;
+  }
+
+  /**
+   * @param sharedMemoryRingCapacity the bytes of shared memory ring for each published topic
+   *          a subscriber on this host asks for, 0 to serve them over TCPROS
+   */
+  public void setSharedMemoryRingCapacity(int sharedMemoryRingCapacity) {
+    this.sharedMemoryRingCapacity = sharedMemoryRingCapacity;
+  }
+
   /**
    * @return a {@link NodeIdentifier} for this {@link SlaveServer}
    */
@@ -206,6 +330,11 @@ public class SlaveServer extends RpcServer {
     return new NodeIdentifier(nodeName, getUri());
   }
 
+  @Override
+  public MethodNamesAndParams getMethodNamesAndParams() {
+	  return invokableMethods.getMethodNamesAndParams();
+  }
+
   @Override
   public Object invokeMethod(RemoteRequestInterface rri) throws Exception {
 	  synchronized(invokableMethods) {
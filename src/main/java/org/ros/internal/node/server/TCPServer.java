@@ -24,10 +24,19 @@ public abstract class TCPServer implements Cloneable, Runnable {
 		}
 	}
 	public synchronized void startServer(int port, InetAddress binder) throws IOException {
+		startServer(port, binder, 1000);
+	}
+	/**
+	 * @param port
+	 * @param binder
+	 * @param backlog The connections the socket holds until they are accepted
+	 * @throws IOException
+	 */
+	public synchronized void startServer(int port, InetAddress binder, int backlog) throws IOException {
 		if( server == null ) {
 			if( DEBUG )
-				log.info("TCPServer attempt local bind "+binder+" port "+port);
-			server = new ServerSocket(port, 1000, binder);
+				log.info("TCPServer attempt local bind "+binder+" port "+port+" backlog "+backlog);
+			server = new ServerSocket(port, backlog, binder);
 			//runner = new Thread(this);
 			//runner.start();
 			ThreadPoolManager.init(new String[]{"TCPSERVER"}, false);
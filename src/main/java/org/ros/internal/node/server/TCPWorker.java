@@ -6,9 +6,12 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ros.exception.NotMasterException;
 
 /**
  * This TCPWorker is spawned for servicing traffic from a master or slave node and invoking methods thereupon.
@@ -23,6 +26,8 @@ public class TCPWorker implements Runnable {
 	private Socket dataSocket;
 	private Object waitHalt = new Object(); 
 	private RpcServer server; // the server we are servicing
+	private Object writeLock = new Object(); // responses complete on many threads, one writes at a time
+	private MethodNamesAndParams methodTable = null; // sent in the handshake, names the methods of CompactRequests
 	
     public TCPWorker(Socket datasocket, RpcServer server) throws IOException {
     	this.dataSocket = datasocket;
@@ -45,10 +50,12 @@ public class TCPWorker implements Runnable {
 		}
 		try {
 			// Write response to master for forwarding to client
-			OutputStream os = dataSocket.getOutputStream();
-			ObjectOutputStream oos = new ObjectOutputStream(os);
-			oos.writeObject(res);
-			oos.flush();
+			synchronized(writeLock) {
+				OutputStream os = dataSocket.getOutputStream();
+				ObjectOutputStream oos = new ObjectOutputStream(os);
+				oos.writeObject(res);
+				oos.flush();
+			}
 		} catch (IOException e) {
 				log.error("Exception writing socket to remote master port "+e);
 				throw new RuntimeException(e);
@@ -56,7 +63,87 @@ public class TCPWorker implements Runnable {
 	}
 
 	/**
-	 * Client (Slave port) sends data to our master in the following loop
+	 * Invoke a request carrying an id on the server's worker pool and answer it with a {@link RemoteResponse} when it completes,
+	 * so a slow method does not hold up the requests behind it on the connection.
+	 * If the caller has given up by the time a thread takes the request, it is answered with an error instead,
+	 * and if the server's {@link RpcWorkerPool} has no room for it, it is answered busy without being invoked.
+	 * A standby master that will not take it is answered not master.
+	 * A method may return a {@link CompletionStage} rather than its result, the request is then answered when
+	 * that completes.
+	 * @param rri
+	 * @param deadline The time the caller gives up, from its timeout and our clock, 0 for none
+	 */
+	private void invokeAsync(final RemoteRequestInterface rri, final long deadline) {
+		boolean accepted = server.getWorkerPool().execute(new Runnable() {
+			@Override
+			public void run() {
+				if( deadline != 0 && System.currentTimeMillis() > deadline ) {
+					if( DEBUG )
+						log.debug("Deadline passed before invocation of "+rri);
+					answer(new RemoteResponse(rri.getId(), "Deadline of "+rri.getTimeout()+" ms passed before invocation"));
+					return;
+				}
+				Object result;
+				RpcServer.setCallerAddress(dataSocket.getInetAddress());
+				try {
+					result = server.invokeMethod(rri);
+				} catch(NotMasterException e) {
+					if( DEBUG )
+						log.debug("Not master for "+rri+": "+e.getMessage());
+					answer(RemoteResponse.newNotMaster(rri.getId(), e.getMessage()));
+					return;
+				} catch(Exception e) {
+					log.error("Remote invocation failure for "+rri, e);
+					answer(new RemoteResponse(rri.getId(), String.valueOf(e)));
+					return;
+				} finally {
+					RpcServer.setCallerAddress(null);
+				}
+				if( result instanceof CompletionStage ) {
+					// answered when the method completes it, the worker goes back to the pool meanwhile
+					((CompletionStage<?>) result).whenComplete(new BiConsumer<Object, Throwable>() {
+						@Override
+						public void accept(Object deferred, Throwable failure) {
+							if( failure != null ) {
+								log.error("Remote invocation failure for "+rri, failure);
+								answer(new RemoteResponse(rri.getId(), String.valueOf(failure)));
+							} else {
+								answer(new RemoteResponse(rri.getId(), deferred));
+							}
+						}
+					});
+				} else {
+					answer(new RemoteResponse(rri.getId(), result));
+				}
+			}
+		});
+		if( !accepted ) {
+			if( DEBUG )
+				log.debug("Shedding "+rri+" "+server.getWorkerPool());
+			queueResponse(RemoteResponse.newBusy(rri.getId(), server+" busy, "+server.getWorkerPool().getQueueDepth()+" requests queued"));
+		}
+	}
+
+	/**
+	 * Answer a request carrying an id, if the connection has gone the read loop sees it go.
+	 * @param response
+	 */
+	private void answer(RemoteResponse response) {
+		try {
+			queueResponse(response);
+		} catch(RuntimeException e) {
+			try {
+				dataSocket.close();
+			} catch (IOException e1) {}
+		}
+	}
+
+	/**
+	 * Client (Slave port) sends data to our master in the following loop.
+	 * Requests with an id are answered out of order as they complete, those without are answered in order,
+	 * as a client that does not correlate responses expects. A client asking for the method table with a
+	 * {@link MethodNamesAndParams#HANDSHAKE} gets it, null if the server has none, and may then send
+	 * {@link CompactRequest}s.
 	 */
 	@Override
 	public void run() {
@@ -67,8 +154,29 @@ public class TCPWorker implements Runnable {
 					RemoteRequestInterface o = (RemoteRequestInterface) ois.readObject();
 					if( DEBUG )
 						log.debug("ROS TCPWorker for "+server+" at address "+dataSocket+" command received:"+o);
-					Object res = server.invokeMethod(o);
-					queueResponse(res);
+					if( o.getId() == 0 && MethodNamesAndParams.HANDSHAKE.equals(o.getMethodName()) ) {
+						methodTable = server.getMethodNamesAndParams();
+						queueResponse(methodTable);
+						continue;
+					}
+					if( o instanceof CompactRequest && !((CompactRequest)o).resolve(methodTable) ) {
+						queueResponse(new RemoteResponse(o.getId(), "No method "+o.getMethodId()+" in the method table of "+server));
+						continue;
+					}
+					if( o.getId() != 0 ) {
+						invokeAsync(o, o.getTimeout() > 0 ? System.currentTimeMillis() + o.getTimeout() : 0);
+					} else {
+						Object res;
+						RpcServer.setCallerAddress(dataSocket.getInetAddress());
+						try {
+							res = server.invokeMethod(o);
+						} finally {
+							RpcServer.setCallerAddress(null);
+						}
+						if( res instanceof CompletionStage )
+							res = ((CompletionStage<?>) res).toCompletableFuture().get();
+						queueResponse(res);
+					}
 				}
 				dataSocket.close();
 			} catch(Exception se) {
@@ -53,7 +53,8 @@ public class ThreadPoolManager {
 	public static void init(String[] threadGroupNames, boolean overWrite) {
 		for(String tgn : threadGroupNames) {
 			if(!overWrite) {
-				if( executor.containsKey(tgn))
+				// a group shut down, such as that of a stopped server, is started afresh
+				if( executor.containsKey(tgn) && !executor.get(tgn).isShutdown())
 					continue;
 			}
 			executor.put(tgn, Executors.newCachedThreadPool(getInstance().new LocalThreadFactory(tgn))); 
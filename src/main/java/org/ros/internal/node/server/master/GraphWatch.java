@@ -0,0 +1,147 @@
+package org.ros.internal.node.server.master;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.internal.node.server.LongPoll;
+import org.ros.master.client.GraphEvent;
+import org.ros.master.client.GraphEvents;
+
+/**
+ * The recent changes to the graph, for clients that keep their own copy of it rather than polling
+ * {@link MasterServer#getSystemState()}.<p/>
+ * The {@link MasterRegistrationManagerImpl} records each change under the registration write lock, numbered in
+ * order, and publishes them as it releases the lock, so a watcher sees the changes of a registration together
+ * or not at all. A watcher asks for the changes after the last one it has. If there are some it is answered at once,
+ * if not its call is parked in a {@link LongPoll} until there are or its wait is up, so a watcher always has a call
+ * outstanding on its connection and changes reach it as they happen.<p/>
+ * The last {@link #DEFAULT_HISTORY} changes are kept. A watcher further behind than that, or new, or one that
+ * watched an earlier run of the master, gets the {@link SystemStateSnapshot} of the whole graph to start from.
+ * The same history answers {@link MasterServer#getSystemStateSince} without waiting.
+ * @author jg
+ *
+ */
+public class GraphWatch {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(GraphWatch.class);
+	public static final int DEFAULT_HISTORY = 4096;
+
+	private final long epoch = System.currentTimeMillis();
+	private final int historySize;
+	private final LongPoll<GraphEvents> watchers = new LongPoll<GraphEvents>("GraphWatch") {
+		@Override
+		protected GraphEvents answer(long since) {
+			return eventsSince(since);
+		}
+
+		@Override
+		protected GraphEvents nothingSince(long since) {
+			return new GraphEvents(epoch, since, false, Collections.<GraphEvent>emptyList());
+		}
+	};
+	// all guarded by this
+	private final ArrayDeque<GraphEvent> history = new ArrayDeque<GraphEvent>();
+	private long sequence = 0; // recorded
+	private long published = 0; // seen by watchers, those of completed registrations
+
+	public GraphWatch() {
+		this(DEFAULT_HISTORY);
+	}
+
+	/**
+	 * @param historySize The most changes kept for watchers catching up
+	 */
+	public GraphWatch(int historySize) {
+		assert(historySize > 0) : "GraphWatch history must hold at least one change";
+		this.historySize = historySize;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return The sequence number of the last change recorded, published or not
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Record a change, seen by watchers once it is {@link #publish published}.
+	 */
+	synchronized void record(GraphEvent.Type type, String name, String nodeName, InetSocketAddress uri, String messageType) {
+		GraphEvent event = new GraphEvent(++sequence, type, name, nodeName, uri, messageType);
+		if( DEBUG )
+			log.debug("Recording "+event);
+		history.addLast(event);
+		if( history.size() > historySize )
+			history.removeFirst();
+	}
+
+	/**
+	 * Publish the changes recorded up to a sequence number and wake the parked watchers behind it.
+	 * @param upTo The sequence number of the last change of a completed registration
+	 */
+	synchronized void publish(long upTo) {
+		if( upTo <= published )
+			return;
+		published = upTo;
+		watchers.wake(published);
+	}
+
+	/**
+	 * The changes after those seen, or the snapshot if the watcher is new, too far behind or from another epoch.
+	 * @param watchEpoch The epoch of the last answer, 0 if none
+	 * @param since The sequence number of the last answer
+	 * @param snapshot A recent snapshot, the watcher carries on from its version
+	 * @return The answer, with no events if there have been no changes
+	 */
+	public synchronized GraphEvents changesSince(long watchEpoch, long since, SystemStateSnapshot snapshot) {
+		if( watchEpoch != epoch || since > sequence || since < sequence - history.size() ) {
+			if( DEBUG )
+				log.debug("GraphWatch snapshot at "+snapshot.getVersion()+" for watch of epoch "+watchEpoch+" from "+since);
+			return snapshot.getGraph();
+		}
+		return eventsSince(since);
+	}
+
+	/**
+	 * Watch for the changes after those seen, as {@link #changesSince}, waiting for some if there are none yet.
+	 * @param watchEpoch The epoch of the last answer, 0 if none
+	 * @param since The sequence number of the last answer
+	 * @param waitMillis How long to park the watch if there are no changes yet, at most {@link LongPoll#MAX_WAIT}
+	 * @param snapshot A recent snapshot, the watcher carries on from its version
+	 * @return The answer, completed now or when there are changes or the wait is up
+	 */
+	public synchronized CompletableFuture<GraphEvents> watch(long watchEpoch, long since, long waitMillis,
+			SystemStateSnapshot snapshot) {
+		// parked only while there is nothing published after what the watcher has
+		if( watchEpoch != epoch || since < published || since > sequence || since < sequence - history.size() ||
+				waitMillis <= 0 )
+			return CompletableFuture.completedFuture(changesSince(watchEpoch, since, snapshot));
+		return watchers.park(since, waitMillis);
+	}
+
+	private synchronized GraphEvents eventsSince(long since) {
+		List<GraphEvent> events = new ArrayList<GraphEvent>();
+		for(GraphEvent event : history) {
+			if( event.getSequence() > since && event.getSequence() <= published )
+				events.add(event);
+		}
+		return new GraphEvents(epoch, Math.max(since, published), false, events);
+	}
+
+	/**
+	 * Answer the parked watchers with no changes and stop.
+	 */
+	public void shutdown() {
+		watchers.shutdown();
+	}
+}
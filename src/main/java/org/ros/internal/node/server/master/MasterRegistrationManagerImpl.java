@@ -3,15 +3,22 @@ package org.ros.internal.node.server.master;
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.ros.internal.node.service.ServiceIdentifier;
+import org.ros.master.client.GraphEvent;
 import org.ros.master.client.TopicSystemState;
 import org.ros.namespace.GraphName;
 import org.ros.node.service.ServiceServer;
@@ -21,7 +28,22 @@ import org.ros.node.service.ServiceServer;
  * Manages all registration logic for the {@link MasterServer}.
  * 
  * <p>
- * This class is not thread-safe.
+ * The maps are concurrent, so a single lookup by name needs no lock. Anything
+ * that changes a registration, or reads across several of them and wants a
+ * consistent view, must hold the matching side of {@link #writeLock()} or
+ * {@link #readLock()}. A registration touches the node, the topic and often
+ * every other topic of a replaced node, so one read-write lock rather than a
+ * lock per topic or node: registrations are in memory and short, lookups are
+ * the bulk of the traffic.
+ * 
+ * <p>
+ * Every change is recorded with the {@link GraphWatch}, if there is one, for
+ * the clients watching the graph, and published to them when the outermost
+ * hold of the write lock is released, so they see whole registrations. It is
+ * also handed as a {@link RegistrationRecords} record to each
+ * {@link RegistrationRecorder}: the {@link RegistrationJournal} for a
+ * restarted master and the replication log shipped to a
+ * {@link MasterStandby}.
  * 
  * @author jg
  */
@@ -51,12 +73,105 @@ public class MasterRegistrationManagerImpl {
    */
   private final MasterRegistrationListener listener;
 
+  /**
+   * Guards changes to the registrations, see the class documentation.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * The write side of the lock, publishing the changes to the
+   * {@link GraphWatch} as it is released.
+   */
+  private final Lock writeLock = new Lock() {
+    @Override
+    public void lock() {
+      lock.writeLock().lock();
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+      lock.writeLock().lockInterruptibly();
+    }
+
+    @Override
+    public boolean tryLock() {
+      return lock.writeLock().tryLock();
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      return lock.writeLock().tryLock(time, unit);
+    }
+
+    @Override
+    public void unlock() {
+      // the last change of this registration, read while no other can be recording
+      long upTo = graphWatch != null && lock.getWriteHoldCount() == 1 ? graphWatch.getSequence() : -1;
+      lock.writeLock().unlock();
+      if (upTo >= 0) {
+        graphWatch.publish(upTo);
+      }
+    }
+
+    @Override
+    public Condition newCondition() {
+      return lock.writeLock().newCondition();
+    }
+  };
+
+  /**
+   * Told of every change, may be null.
+   */
+  private final GraphWatch graphWatch;
+
+  /**
+   * Handed every change once added, usually none.
+   */
+  private final List<RegistrationRecorder> recorders = new CopyOnWriteArrayList<RegistrationRecorder>();
 
   public MasterRegistrationManagerImpl(MasterRegistrationListener listener) {
+    this(listener, null);
+  }
+
+  public MasterRegistrationManagerImpl(MasterRegistrationListener listener, GraphWatch graphWatch) {
     this.listener = listener;
-    nodes = new HashMap<GraphName, NodeRegistrationInfo>();
+    this.graphWatch = graphWatch;
+    nodes = new ConcurrentHashMap<GraphName, NodeRegistrationInfo>();
     services = new ConcurrentHashMap<GraphName, ServiceRegistrationInfo>();
-    topics = new HashMap<GraphName, TopicRegistrationInfo>();
+    topics = new ConcurrentHashMap<GraphName, TopicRegistrationInfo>();
+  }
+
+  /**
+   * @param recorder
+   *          handed every change from now on; add a journal after it has
+   *          been replayed into us
+   */
+  void addRecorder(RegistrationRecorder recorder) {
+    recorders.add(recorder);
+  }
+
+  void removeRecorder(RegistrationRecorder recorder) {
+    recorders.remove(recorder);
+  }
+
+  private void recordChange(byte[] record) {
+    for (RegistrationRecorder recorder : recorders) {
+      recorder.record(record);
+    }
+  }
+
+  /**
+   * @return the lock to hold while reading across registrations
+   */
+  public Lock readLock() {
+    return lock.readLock();
+  }
+
+  /**
+   * @return the lock to hold while changing registrations
+   */
+  public Lock writeLock() {
+    return writeLock;
   }
 
   /**
@@ -83,8 +198,22 @@ public class MasterRegistrationManagerImpl {
 
     TopicRegistrationInfo topic = obtainTopicRegistrationInfo(topicName, true);
     NodeRegistrationInfo node = obtainNodeRegistrationInfo(nodeName, nodeSlaveUri);
+    boolean topicRegistered = topic.hasRegistrations();
+    boolean publisherRegistered = topic.getPublishers().contains(node);
+    String previousMessageType = topic.getMessageType();
     topic.addPublisher(node, topicMessageType);
     node.addPublisher(topic);
+    if (!topicRegistered) {
+      record(GraphEvent.Type.TOPIC_ADDED, topicName, null, null, topic.getMessageType());
+    } else if (!Objects.equals(topic.getMessageType(), previousMessageType)) {
+      record(GraphEvent.Type.TOPIC_TYPE_CHANGED, topicName, null, null, topic.getMessageType());
+    }
+    if (!publisherRegistered) {
+      record(GraphEvent.Type.PUBLISHER_ADDED, topicName, node, null, null);
+    }
+    if (!recorders.isEmpty()) {
+      recordChange(RegistrationRecords.registerPublisher(nodeName, nodeSlaveUri, topicName, topicMessageType));
+    }
 
     return topic;
   }
@@ -111,9 +240,14 @@ public class MasterRegistrationManagerImpl {
       NodeRegistrationInfo node = nodes.get(nodeName);
       if (node != null) {
         node.removePublisher(topic);
-        topic.removePublisher(node);
+        if (topic.removePublisher(node)) {
+          recordRemoval(GraphEvent.Type.PUBLISHER_REMOVED, topic, node);
+        }
 
         potentiallyDeleteNode(node);
+        if (!recorders.isEmpty()) {
+          recordChange(RegistrationRecords.unregisterPublisher(nodeName, topicName));
+        }
 
         return true;
       } else {
@@ -160,8 +294,22 @@ public class MasterRegistrationManagerImpl {
 
     TopicRegistrationInfo topic = obtainTopicRegistrationInfo(topicName, true);
     NodeRegistrationInfo node = obtainNodeRegistrationInfo(nodeName, nodeSlaveUri);
+    boolean topicRegistered = topic.hasRegistrations();
+    boolean subscriberRegistered = topic.getSubscribers().contains(node);
+    String previousMessageType = topic.getMessageType();
     topic.addSubscriber(node, topicMessageType);
     node.addSubscriber(topic);
+    if (!topicRegistered) {
+      record(GraphEvent.Type.TOPIC_ADDED, topicName, null, null, topic.getMessageType());
+    } else if (!Objects.equals(topic.getMessageType(), previousMessageType)) {
+      record(GraphEvent.Type.TOPIC_TYPE_CHANGED, topicName, null, null, topic.getMessageType());
+    }
+    if (!subscriberRegistered) {
+      record(GraphEvent.Type.SUBSCRIBER_ADDED, topicName, node, null, null);
+    }
+    if (!recorders.isEmpty()) {
+      recordChange(RegistrationRecords.registerSubscriber(nodeName, nodeSlaveUri, topicName, topicMessageType));
+    }
 
     return topic;
   }
@@ -188,8 +336,13 @@ public class MasterRegistrationManagerImpl {
       NodeRegistrationInfo node = nodes.get(nodeName);
       if (node != null) {
         node.removeSubscriber(topic);
-        topic.removeSubscriber(node);
+        if (topic.removeSubscriber(node)) {
+          recordRemoval(GraphEvent.Type.SUBSCRIBER_REMOVED, topic, node);
+        }
         potentiallyDeleteNode(node);
+        if (!recorders.isEmpty()) {
+          recordChange(RegistrationRecords.unregisterSubscriber(nodeName, topicName));
+        }
         return true;
       } else {
         // never was a node with that name
@@ -248,6 +401,7 @@ public class MasterRegistrationManagerImpl {
       } else {
         // The service's node is changing.
         previousServiceNode.removeService(service);
+        record(GraphEvent.Type.SERVICE_REMOVED, serviceName, previousServiceNode, service.getServiceUri(), null);
         potentiallyDeleteNode(previousServiceNode);
       }
     }
@@ -257,6 +411,10 @@ public class MasterRegistrationManagerImpl {
     node.addService(service);
 
     services.put(serviceName, service);
+    record(GraphEvent.Type.SERVICE_ADDED, serviceName, node, inetSocketAddress, null);
+    if (!recorders.isEmpty()) {
+      recordChange(RegistrationRecords.registerService(nodeName, nodeSlaveUri, serviceName, inetSocketAddress));
+    }
 
     return service;
   }
@@ -285,9 +443,13 @@ public class MasterRegistrationManagerImpl {
       if (node != null) {
         // No need to keep service around.
         services.remove(serviceName);
+        record(GraphEvent.Type.SERVICE_REMOVED, serviceName, service.getNode(), service.getServiceUri(), null);
 
         node.removeService(service);
         potentiallyDeleteNode(node);
+        if (!recorders.isEmpty()) {
+          recordChange(RegistrationRecords.unregisterService(nodeName, serviceName, inetSocketAddress));
+        }
 
         return true;
       } else {
@@ -313,6 +475,43 @@ public class MasterRegistrationManagerImpl {
     }
   }
 
+  /**
+   * Drop a node and everything it has registered, as when it can no longer be
+   * reached.
+   * 
+   * @param nodeName
+   *          the node
+   * @param nodeSlaveUri
+   *          the slave URI it was registered at, if it has registered again at
+   *          another since it is left alone
+   * @return {@code true} if the node was dropped
+   */
+  public boolean unregisterNode(GraphName nodeName, InetSocketAddress nodeSlaveUri) {
+    NodeRegistrationInfo node = nodes.get(nodeName);
+    if (node == null || !node.getNodeSlaveUri().equals(nodeSlaveUri)) {
+      return false;
+    }
+    if (log.isDebugEnabled()) {
+      log.debug(String.format("Unregistering node %s with slave URI %s", nodeName, nodeSlaveUri));
+    }
+    nodes.remove(nodeName);
+    cleanupNode(node);
+    record(GraphEvent.Type.NODE_REMOVED, nodeName, null, nodeSlaveUri, null);
+    if (!recorders.isEmpty()) {
+      recordChange(RegistrationRecords.unregisterNode(nodeName, nodeSlaveUri));
+    }
+    return true;
+  }
+
+  /**
+   * Get all nodes registered.
+   * 
+   * @return An immutable collection of nodes.
+   */
+  public Collection<NodeRegistrationInfo> getAllNodes() {
+    return Collections.unmodifiableCollection(nodes.values());
+  }
+
   /**
    * Get all topics registered.
    * 
@@ -415,8 +614,10 @@ public class MasterRegistrationManagerImpl {
       //potentiallyDeleteNode(node);
       nodes.remove(nodeName);
       cleanupNode(node);
+      record(GraphEvent.Type.NODE_REMOVED, nodeName, null, node.getNodeSlaveUri(), null);
       NodeRegistrationInfo newNode = new NodeRegistrationInfo(nodeName, nodeSlaveUri);
       nodes.put(nodeName, newNode);
+      record(GraphEvent.Type.NODE_ADDED, nodeName, null, nodeSlaveUri, null);
       // Try to reach old node via SlaveClient to shut it down
       /*
       try {
@@ -431,6 +632,7 @@ public class MasterRegistrationManagerImpl {
     	// no existing node
     	node = new NodeRegistrationInfo(nodeName, nodeSlaveUri);
     	nodes.put(nodeName, node);
+    	record(GraphEvent.Type.NODE_ADDED, nodeName, null, nodeSlaveUri, null);
     	return node;
     }
   }
@@ -444,15 +646,20 @@ public class MasterRegistrationManagerImpl {
    */
   private void cleanupNode(NodeRegistrationInfo node) {
     for (TopicRegistrationInfo topic : node.getPublishers()) {
-      topic.removePublisher(node);
+      if (topic.removePublisher(node)) {
+        recordRemoval(GraphEvent.Type.PUBLISHER_REMOVED, topic, node);
+      }
     }
 
     for (TopicRegistrationInfo topic : node.getSubscribers()) {
-      topic.removeSubscriber(node);
+      if (topic.removeSubscriber(node)) {
+        recordRemoval(GraphEvent.Type.SUBSCRIBER_REMOVED, topic, node);
+      }
     }
 
     for (ServiceRegistrationInfo service : node.getServices()) {
       services.remove(service.getServiceName());
+      record(GraphEvent.Type.SERVICE_REMOVED, service.getServiceName(), node, service.getServiceUri(), null);
     }
   }
 
@@ -498,6 +705,32 @@ public class MasterRegistrationManagerImpl {
   private void potentiallyDeleteNode(NodeRegistrationInfo node) {
     if (!node.hasRegistrations()) {
       nodes.remove(node.getNodeName());
+      record(GraphEvent.Type.NODE_REMOVED, node.getNodeName(), null, node.getNodeSlaveUri(), null);
+    }
+  }
+
+  /**
+   * Tell the {@link GraphWatch} of a change.
+   * 
+   * @param node
+   *          the node of a publisher, subscriber or service, otherwise null
+   */
+  private void record(GraphEvent.Type type, GraphName name, NodeRegistrationInfo node, InetSocketAddress uri,
+      String messageType) {
+    if (graphWatch != null) {
+      graphWatch.record(type, name.toString(), node == null ? null : node.getNodeName().toString(), uri,
+          messageType);
+    }
+  }
+
+  /**
+   * Record a publisher or subscriber gone, and the topic with it if it was the
+   * last.
+   */
+  private void recordRemoval(GraphEvent.Type type, TopicRegistrationInfo topic, NodeRegistrationInfo node) {
+    record(type, topic.getTopicName(), node, null, null);
+    if (!topic.hasRegistrations()) {
+      record(GraphEvent.Type.TOPIC_REMOVED, topic.getTopicName(), null, null, null);
     }
   }
 
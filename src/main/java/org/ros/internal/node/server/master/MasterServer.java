@@ -5,14 +5,20 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ros.address.AdvertiseAddress;
 import org.ros.address.BindAddress;
+import org.ros.exception.NotMasterException;
 import org.ros.exception.RosRuntimeException;
 import org.ros.internal.node.client.SlaveClient;
+import org.ros.internal.node.client.SlaveClientPool;
+import org.ros.internal.node.server.MethodNamesAndParams;
 import org.ros.internal.node.server.NodeIdentifier;
 import org.ros.internal.node.server.RemoteRequestInterface;
+import org.ros.internal.node.server.ReplicationBatch;
+import org.ros.internal.node.server.ReplicationLog;
 import org.ros.internal.node.server.ServerInvokeMethod;
 import org.ros.internal.node.server.SlaveServer;
 import org.ros.internal.node.server.RpcServer;
 import org.ros.internal.node.topic.TopicParticipant;
+import org.ros.master.client.GraphEvents;
 import org.ros.master.client.TopicSystemState;
 import org.ros.namespace.GraphName;
 import org.ros.node.Node;
@@ -20,14 +26,19 @@ import org.ros.node.service.ServiceServer;
 import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
 
 /**
  * The {@link MasterServer} provides naming and registration services to the
@@ -36,6 +47,22 @@ import java.util.List;
  * {@link ServiceServer}s. The role of the {@link MasterServer} is to enable
  * individual ROS {@link Node}s to locate one another. Once these {@link Node}s
  * have located each other they communicate with each other peer-to-peer.
+ * <p>
+ * Remote calls are not serialized. Registrations take the write side of the
+ * {@link MasterRegistrationManagerImpl} lock, calls reporting on the whole graph
+ * the read side, and lookups of a single node or service take no lock at all.
+ * <p>
+ * Clients that follow the graph need not poll {@link #getSystemState()}, they
+ * can {@link #watchGraph} for the changes as they happen.
+ * <p>
+ * With {@link #enableJournal} the registrations are kept on disk and a
+ * restarted master starts with the graph it had. The nodes it had are checked
+ * in the background once it is up and those that do not answer are dropped.
+ * <p>
+ * A {@link MasterStandby} can {@link #replicate} the registrations to another
+ * master, which takes over when this one goes away. Nothing is kept for it
+ * until it first asks. Until it takes over the standby refuses calls, so
+ * nothing is registered with it the primary does not have.
  * 
  * @see <a href="http://www.ros.org/wiki/Master">Master documentation</a>
  * 
@@ -73,11 +100,78 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
    */
   private final MasterRegistrationManagerImpl masterRegistrationManager;
 
+  /**
+   * Delivers publisher updates to subscribers off the registration lock.
+   */
+  private final PublisherUpdateNotifier publisherUpdateNotifier;
+
+  /**
+   * The recent changes to the graph, for watchers.
+   */
+  private final GraphWatch graphWatch;
+
+  /**
+   * The registrations as of the last change, see
+   * {@link #getSystemStateSnapshot()}.
+   */
+  private volatile SystemStateSnapshot systemStateSnapshot;
+
+  /**
+   * Held while rebuilding the snapshot, taken before the registration read
+   * lock and never by a registration.
+   */
+  private final Object snapshotLock = new Object();
+
+  /**
+   * Keeps the registrations on disk, null unless enabled.
+   */
+  private RegistrationJournal journal;
+
+  /**
+   * The nodes replayed from the journal, checked once the server is up.
+   */
+  private final List<NodeRegistrationInfo> replayedNodes = new ArrayList<NodeRegistrationInfo>();
+
+  /**
+   * Nodes from the journal are checked this many at a time.
+   */
+  private static final int VERIFY_PARALLELISM = 4;
+
+  /**
+   * The registration changes for a standby to follow, fed once one asks.
+   */
+  private final ReplicationLog replicationLog = new ReplicationLog("master");
+
+  /**
+   * Whether the {@link #replicationLog} is fed, set under the write lock.
+   */
+  private volatile boolean replicating = false;
+
+  /**
+   * True while changes made elsewhere are applied, from the journal or a
+   * primary, so they are not acted on again. Guarded by the write lock.
+   */
+  private boolean applying = false;
+
+  /**
+   * True while we are a standby following a primary, see
+   * {@link #setFollowing}.
+   */
+  private volatile boolean following = false;
+
   public MasterServer(BindAddress bindAddress, AdvertiseAddress advertiseAddress) throws IOException {
     super(bindAddress, advertiseAddress);
-    masterRegistrationManager = new MasterRegistrationManagerImpl(this);
+    graphWatch = new GraphWatch();
+    masterRegistrationManager = new MasterRegistrationManagerImpl(this, graphWatch);
+    publisherUpdateNotifier = new PublisherUpdateNotifier(new PublisherUpdateNotifier.Sender() {
+      @Override
+      public void publisherUpdate(InetSocketAddress subscriberSlaveUri, GraphName topicName, List<InetSocketAddress> publisherUris) {
+        contactSubscriberForPublisherUpdate(subscriberSlaveUri, topicName, publisherUris);
+      }
+    });
     try {
-		invokableMethods = new ServerInvokeMethod(this.getClass().getName(), 0);
+		// the journal is configured in process, a remote caller must not open files on the master's disk
+		invokableMethods = new ServerInvokeMethod(this.getClass().getName(), 0, "enableJournal");
 	} catch (ClassNotFoundException e) {
 		throw new IOException(e);
 	}
@@ -91,6 +185,189 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
       log.info("Starting master server.");
     }
     super.start();
+    verifyReplayedNodes();
+  }
+
+  /**
+   * Keep the registrations in a {@link RegistrationJournal} in the directory,
+   * replaying what is there first. Call before {@link #start()}. Set up by
+   * {@link org.ros.RosCore#setJournal}, it is not in the dispatch table.
+   * 
+   * @param directory
+   *          where the journal is kept
+   * @return the journal, to configure compaction and syncing
+   * @throws IOException
+   *           if the directory can not be used
+   */
+  public RegistrationJournal enableJournal(File directory) throws IOException {
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
+      journal = new RegistrationJournal(directory, masterRegistrationManager);
+      applying = true;
+      try {
+        journal.open();
+      } finally {
+        applying = false;
+      }
+      replayedNodes.addAll(masterRegistrationManager.getAllNodes());
+      masterRegistrationManager.addRecorder(journal);
+      return journal;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Ask each node replayed from the journal for its pid, and drop those that do
+   * not answer, unless they have registered again at another URI meanwhile.
+   * Nodes that are up carry on as if the master had never gone away.
+   */
+  private void verifyReplayedNodes() {
+    if (replayedNodes.isEmpty()) {
+      return;
+    }
+    ExecutorService verifiers = Executors.newFixedThreadPool(VERIFY_PARALLELISM, new ThreadFactory() {
+      private int threadNum = 0;
+
+      @Override
+      public synchronized Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "MasterVerify-" + (++threadNum));
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    for (final NodeRegistrationInfo node : replayedNodes) {
+      verifiers.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            SlaveClientPool.getInstance().get(MASTER_NODE_NAME, node.getNodeSlaveUri()).getPid();
+            if (DEBUG) {
+              log.info("Node " + node.getNodeName() + " from the journal is up at " + node.getNodeSlaveUri());
+            }
+          } catch (Exception e) {
+            log.warn("Node " + node.getNodeName() + " from the journal did not answer at " + node.getNodeSlaveUri()
+                + ", dropping it: " + e);
+            SlaveClientPool.getInstance().invalidate(node.getNodeSlaveUri());
+            Lock lock = masterRegistrationManager.writeLock();
+            lock.lock();
+            try {
+              masterRegistrationManager.unregisterNode(node.getNodeName(), node.getNodeSlaveUri());
+            } finally {
+              lock.unlock();
+            }
+          }
+        }
+      });
+    }
+    replayedNodes.clear();
+    verifiers.shutdown();
+  }
+
+  /**
+   * @return the {@link RegistrationJournal}, or null if not enabled
+   */
+  public RegistrationJournal getJournal() {
+    return journal;
+  }
+
+  /**
+   * Follow the registration changes after those the standby has, as
+   * {@link ReplicationLog#follow}. The first follow starts the log.
+   * 
+   * @param caller
+   *          the standby following
+   * @param epoch
+   *          the epoch of the last answer, 0 if none
+   * @param since
+   *          the sequence number of the last answer
+   * @param waitMillis
+   *          how long to wait for changes if there are none yet
+   * @return the answer, completed now or when there are changes or the wait is
+   *         up
+   */
+  public CompletableFuture<ReplicationBatch> replicate(GraphName caller, long epoch, long since, long waitMillis) {
+    if (!replicating) {
+      Lock lock = masterRegistrationManager.writeLock();
+      lock.lock();
+      try {
+        if (!replicating) {
+          if (DEBUG) {
+            log.info("Replicating registrations to " + caller);
+          }
+          masterRegistrationManager.addRecorder(new RegistrationRecorder() {
+            @Override
+            public void record(byte[] record) {
+              replicationLog.append(record);
+            }
+          });
+          replicating = true;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return replicationLog.follow(epoch, since, waitMillis, new ReplicationLog.Snapshot() {
+      @Override
+      public ReplicationBatch take() {
+        Lock lock = masterRegistrationManager.readLock();
+        lock.lock();
+        try {
+          return replicationLog.snapshot(RegistrationRecords.snapshot(masterRegistrationManager));
+        } finally {
+          lock.unlock();
+        }
+      }
+    });
+  }
+
+  /**
+   * Make the registration changes a primary replicated, a snapshot replacing
+   * what we have. Subscribers are not told, the primary told them.
+   * 
+   * @throws IOException
+   *           if a record is not one of ours
+   */
+  void applyReplicated(ReplicationBatch batch) throws IOException {
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    applying = true;
+    try {
+      if (batch.isSnapshot()) {
+        for (NodeRegistrationInfo node : new ArrayList<NodeRegistrationInfo>(masterRegistrationManager.getAllNodes())) {
+          masterRegistrationManager.unregisterNode(node.getNodeName(), node.getNodeSlaveUri());
+        }
+      }
+      for (byte[] record : batch.getRecords()) {
+        RegistrationRecords.apply(record, masterRegistrationManager);
+      }
+    } finally {
+      applying = false;
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Shut the {@link MasterServer} down, dropping undelivered publisher updates
+   * and answering parked watches and standbys.
+   */
+  @Override
+  public void shutdown() throws IOException {
+    publisherUpdateNotifier.shutdown();
+    graphWatch.shutdown();
+    replicationLog.shutdown();
+    if (journal != null) {
+      journal.close();
+    }
+    super.shutdown();
+  }
+
+  /**
+   * @return the {@link PublisherUpdateNotifier} delivering publisher updates to subscribers
+   */
+  public PublisherUpdateNotifier getPublisherUpdateNotifier() {
+    return publisherUpdateNotifier;
   }
 
   /**
@@ -107,8 +384,38 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
    */
   public void registerService(GraphName nodeName, InetSocketAddress nodeSlaveUri, GraphName serviceName,
       InetSocketAddress inetSocketAddress) {
-    synchronized (masterRegistrationManager) {
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
       masterRegistrationManager.registerService(nodeName, nodeSlaveUri, serviceName, inetSocketAddress);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Register many services of one node at once, as one registration.
+   * 
+   * @param nodeName
+   *          the {@link GraphName} of the {@link Node} offering the services
+   * @param nodeSlaveUri
+   *          the {@link URI} of the {@link Node}'s {@link SlaveServer}
+   * @param serviceNames
+   *          the {@link GraphName}s of the services
+   * @param serviceUris
+   *          the {@link URI}s of the services, in the same order
+   */
+  public void registerServices(GraphName nodeName, InetSocketAddress nodeSlaveUri, List<GraphName> serviceNames,
+      List<InetSocketAddress> serviceUris) {
+    assert(serviceNames.size() == serviceUris.size()) : "MasterServer registerServices needs a URI for each service";
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
+      for (int i = 0; i < serviceNames.size(); i++) {
+        masterRegistrationManager.registerService(nodeName, nodeSlaveUri, serviceNames.get(i), serviceUris.get(i));
+      }
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -124,8 +431,12 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
    * @return {@code true} if the service was registered
    */
   public boolean unregisterService(GraphName nodeName, GraphName serviceName, InetSocketAddress inetSocketAddress) {
-    synchronized (masterRegistrationManager) {
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
       return masterRegistrationManager.unregisterService(nodeName, serviceName, inetSocketAddress);
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -153,17 +464,65 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
           topicMessageType, nodeName, nodeSlaveUri));
     }
 
-    synchronized (masterRegistrationManager) {
-      TopicRegistrationInfo topicInfo =
-          masterRegistrationManager.registerSubscriber(nodeName, nodeSlaveUri, topicName, topicMessageType);
-      List<InetSocketAddress> publisherUris = new ArrayList<InetSocketAddress>();
-      for (NodeRegistrationInfo publisherNodeInfo : topicInfo.getPublishers()) {
-        publisherUris.add(publisherNodeInfo.getNodeSlaveUri());
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
+      return subscribe(nodeName, nodeSlaveUri, topicName, topicMessageType);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Subscribe the caller to many topics at once, as one registration.
+   * 
+   * @param nodeName
+   *          the {@link GraphName} of the subscribing {@link Node}
+   * @param nodeSlaveUri
+   *          the {@link URI} of the {@link Node}'s {@link SlaveServer}
+   * @param topicNames
+   *          the {@link GraphName}s of the topics
+   * @param topicMessageTypes
+   *          the message types of the topics, in the same order
+   * @return for each topic, in order, the addresses of the nodes currently
+   *         publishing it
+   */
+  public List<List<InetSocketAddress>> registerSubscribers(GraphName nodeName, InetSocketAddress nodeSlaveUri,
+      List<GraphName> topicNames, List<String> topicMessageTypes) {
+    assert(topicNames.size() == topicMessageTypes.size()) : "MasterServer registerSubscribers needs a type for each topic";
+    if (DEBUG) {
+      log.info(String.format("Registering %d subscribers on node %s with Address %s", topicNames.size(), nodeName,
+          nodeSlaveUri));
+    }
+    List<List<InetSocketAddress>> result = new ArrayList<List<InetSocketAddress>>();
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
+      for (int i = 0; i < topicNames.size(); i++) {
+        result.add(subscribe(nodeName, nodeSlaveUri, topicNames.get(i), topicMessageTypes.get(i)));
       }
-      return publisherUris;
+      return result;
+    } finally {
+      lock.unlock();
     }
   }
 
+  /**
+   * Register a subscriber, under the write lock.
+   * 
+   * @return the current publishers of the topic
+   */
+  private List<InetSocketAddress> subscribe(GraphName nodeName, InetSocketAddress nodeSlaveUri, GraphName topicName,
+      String topicMessageType) {
+    TopicRegistrationInfo topicInfo =
+        masterRegistrationManager.registerSubscriber(nodeName, nodeSlaveUri, topicName, topicMessageType);
+    List<InetSocketAddress> publisherUris = new ArrayList<InetSocketAddress>();
+    for (NodeRegistrationInfo publisherNodeInfo : topicInfo.getPublishers()) {
+      publisherUris.add(publisherNodeInfo.getNodeSlaveUri());
+    }
+    return publisherUris;
+  }
+
   /**
    * Unregister a {@link Subscriber}.
    * 
@@ -177,8 +536,12 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
     if (DEBUG) {
       log.info(String.format("Unregistering subscriber for %s on node %s.", topicName, nodeName));
     }
-    synchronized (masterRegistrationManager) {
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
       return masterRegistrationManager.unregisterSubscriber(nodeName, topicName);
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -205,24 +568,76 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
           topicMessageType, nodeName, nodeSlaveUri));
     }
 
-    synchronized (masterRegistrationManager) {
-      TopicRegistrationInfo topicInfo =
-          masterRegistrationManager.registerPublisher(nodeName, nodeSlaveUri, topicName, topicMessageType);
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
+      return publish(nodeName, nodeSlaveUri, topicName, topicMessageType);
+    } finally {
+      lock.unlock();
+    }
+  }
 
-      List<InetSocketAddress> subscriberSlaveUris = new ArrayList<InetSocketAddress>();
-      for (NodeRegistrationInfo publisherNodeInfo : topicInfo.getSubscribers()) {
-        subscriberSlaveUris.add(publisherNodeInfo.getNodeSlaveUri());
+  /**
+   * Register the caller as a {@link Publisher} of many topics at once, as one
+   * registration. Each topic's subscribers get one publisher update.
+   * 
+   * @param nodeName
+   *          the {@link GraphName} of the publishing {@link Node}
+   * @param nodeSlaveUri
+   *          the {@link URI} of the {@link Node}'s {@link SlaveServer}
+   * @param topicNames
+   *          the {@link GraphName}s of the topics
+   * @param topicMessageTypes
+   *          the message types of the topics, in the same order
+   * @return for each topic, in order, the addresses of the
+   *         {@link SlaveServer}s of its current {@link Subscriber}s
+   */
+  public List<List<InetSocketAddress>> registerPublishers(GraphName nodeName, InetSocketAddress nodeSlaveUri,
+      List<GraphName> topicNames, List<String> topicMessageTypes) {
+    assert(topicNames.size() == topicMessageTypes.size()) : "MasterServer registerPublishers needs a type for each topic";
+    if (DEBUG) {
+      log.info(String.format("Registering %d publishers on node %s with URI %s.", topicNames.size(), nodeName,
+          nodeSlaveUri));
+    }
+    List<List<InetSocketAddress>> result = new ArrayList<List<InetSocketAddress>>();
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
+      for (int i = 0; i < topicNames.size(); i++) {
+        result.add(publish(nodeName, nodeSlaveUri, topicNames.get(i), topicMessageTypes.get(i)));
       }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
 
-      publisherUpdate(topicInfo, subscriberSlaveUris);
+  /**
+   * Register a publisher and queue the update to the topic's subscribers,
+   * under the write lock.
+   * 
+   * @return the current subscribers of the topic
+   */
+  private List<InetSocketAddress> publish(GraphName nodeName, InetSocketAddress nodeSlaveUri, GraphName topicName,
+      String topicMessageType) {
+    TopicRegistrationInfo topicInfo =
+        masterRegistrationManager.registerPublisher(nodeName, nodeSlaveUri, topicName, topicMessageType);
 
-      return subscriberSlaveUris;
+    List<InetSocketAddress> subscriberSlaveUris = new ArrayList<InetSocketAddress>();
+    for (NodeRegistrationInfo publisherNodeInfo : topicInfo.getSubscribers()) {
+      subscriberSlaveUris.add(publisherNodeInfo.getNodeSlaveUri());
     }
+
+    publisherUpdate(topicInfo, subscriberSlaveUris);
+
+    return subscriberSlaveUris;
   }
 
   /**
    * Something has happened to the publishers for a topic. Tell every subscriber
-   * about the current set of publishers.
+   * about the current set of publishers. The calls are queued on the
+   * {@link PublisherUpdateNotifier}, this is called under the registration lock
+   * so that the lists are queued in the order they changed.
    * 
    * @param topicInfo
    *          the topic information for the update
@@ -238,14 +653,12 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
       publisherUris.add(publisherNodeInfo.getNodeSlaveUri());
     }
 
-    GraphName topicName = topicInfo.getTopicName();
-    for (InetSocketAddress subscriberSlaveUri : subscriberSlaveUris) {
-      contactSubscriberForPublisherUpdate(subscriberSlaveUri, topicName, publisherUris);
-    }
+    publisherUpdateNotifier.publisherUpdate(topicInfo.getTopicName(), subscriberSlaveUris, publisherUris);
   }
 
   /**
-   * Contact a subscriber and send it a publisher update.
+   * Contact a subscriber and send it a publisher update. Called by the
+   * {@link PublisherUpdateNotifier}, throws if the update was not delivered.
    * 
    * @param subscriberSlaveUri
    *          the slave URI of the subscriber to contact
@@ -257,7 +670,7 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
   protected void contactSubscriberForPublisherUpdate(InetSocketAddress subscriberSlaveUri, GraphName topicName, List<InetSocketAddress> publisherUris) {
     SlaveClient client;
 	try {
-		client = new SlaveClient(MASTER_NODE_NAME, subscriberSlaveUri);
+		client = SlaveClientPool.getInstance().get(MASTER_NODE_NAME, subscriberSlaveUri);
 	} catch (IOException e) {
 		log.error("MasterServer cannot construct slave client to unknown host "+subscriberSlaveUri,e);
 		throw new RosRuntimeException(e);
@@ -278,8 +691,12 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
     if (DEBUG) {
       log.info(String.format("Unregistering publisher for %s on %s.", topicName, nodeName));
     }
-    synchronized (masterRegistrationManager) {
+    Lock lock = masterRegistrationManager.writeLock();
+    lock.lock();
+    try {
       return masterRegistrationManager.unregisterPublisher(nodeName, topicName);
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -296,13 +713,11 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
    *         name
    */
   public InetSocketAddress lookupNode(GraphName nodeName) {
-    synchronized (masterRegistrationManager) {
-      NodeRegistrationInfo node = masterRegistrationManager.getNodeRegistrationInfo(nodeName);
-      if (node != null) {
-        return node.getNodeSlaveUri();
-      } else {
-        return null;
-      }
+    NodeRegistrationInfo node = masterRegistrationManager.getNodeRegistrationInfo(nodeName);
+    if (node != null) {
+      return node.getNodeSlaveUri();
+    } else {
+      return null;
     }
   }
 
@@ -315,16 +730,7 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
    *         name, topic 2 message type], ...]
    */
   public List<List<String>> getTopicTypes(GraphName calledId) {
-    synchronized (masterRegistrationManager) {
-      List<List<String>> result = new ArrayList<List<String>>();
-      for (TopicRegistrationInfo topic : masterRegistrationManager.getAllTopics()) {
-    	 ArrayList<String> l1 = new ArrayList<String>();
-    	 l1.add(topic.getTopicName().toString());
-    	 l1.add(topic.getMessageType());
-        result.add(l1);
-      }
-      return result;
-    }
+    return getSystemStateSnapshot().getTopicTypes();
   }
 
   /**
@@ -332,98 +738,67 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
    * 
    * <p>
    * This includes information about publishers, subscribers, and services.
+   * The lists are those of the current {@link SystemStateSnapshot}, shared
+   * with every other caller, and can not be modified.
    * 
-   * @return TODO(keith): Fill in.
+   * @return a {@link List} of the form [publishers, subscribers, services]
+   *         where publishers is of the form [ [topic1,
+   *         [topic1Publisher1...topic1PublisherN]] ... ], subscribers likewise
+   *         and services [ [service1, [service1Provider]] ... ], the topic
+   *         publishers, subscribers and service providers being {@link Node}
+   *         names
    */
   public List<Object> getSystemState() {
-    synchronized (masterRegistrationManager) {
-      List<Object> result = new ArrayList<Object>();
-
-      Collection<TopicRegistrationInfo> topics = masterRegistrationManager.getAllTopics();
-      result.add(getSystemStatePublishers(topics));
-      result.add(getSystemStateSubscribers(topics));
-      result.add(getSystemStateServices());
-      return result;
-    }
+    return getSystemStateSnapshot().getSystemState();
   }
 
   /**
-   * Get the system state for {@link Publisher}s.
+   * Get the changes to the state of the ROS graph since a version the caller
+   * has, rather than all of it.
    * 
-   * @param topics
-   *          all topics known by the master
-   * 
-   * @return a {@link List} of the form [ [topic1,
-   *         [topic1Publisher1...topic1PublisherN]] ... ] where the
-   *         topicPublisherI instances are {@link Node} names
-   */
-  private List<Object> getSystemStatePublishers(Collection<TopicRegistrationInfo> topics) {
-    List<Object> result = new ArrayList<Object>();
-    for (TopicRegistrationInfo topic : topics) {
-      if (topic.hasPublishers()) {
-        List<Object> topicInfo = new ArrayList<Object>();
-        topicInfo.add(topic.getTopicName().toString());
-
-        List<String> publist = new ArrayList<String>();
-        for (NodeRegistrationInfo node : topic.getPublishers()) {
-          publist.add(node.getNodeName().toString());
-        }
-        topicInfo.add(publist);
-
-        result.add(topicInfo);
-      }
-    }
-    return result;
+   * @param caller
+   *          name of the caller
+   * @param epoch
+   *          the epoch of the caller's version, 0 if it has none
+   * @param version
+   *          the version the caller has, the sequence number of its last
+   *          {@link GraphEvents}
+   * @return the changes after the version, none if it is current, or the
+   *         whole graph as a snapshot if the version is not one the master
+   *         still has the changes since
+   */
+  public GraphEvents getSystemStateSince(GraphName caller, long epoch, long version) {
+    return graphWatch.changesSince(epoch, version, getSystemStateSnapshot());
   }
 
   /**
-   * Get the system state for {@link Subscriber}s.
+   * The registrations as of the last change. Built on the first call after a
+   * change and shared by every call until the next, so reading the state of
+   * the graph costs nothing while it is not changing.
    * 
-   * @param topics
-   *          all topics known by the master
-   * 
-   * @return a {@link List} of the form [ [topic1,
-   *         [topic1Subscriber1...topic1SubscriberN]] ... ] where the
-   *         topicSubscriberI instances are {@link Node} names
-   */
-  private List<Object> getSystemStateSubscribers(Collection<TopicRegistrationInfo> topics) {
-    List<Object> result = new ArrayList<Object>();
-    for (TopicRegistrationInfo topic : topics) {
-      if (topic.hasSubscribers()) {
-        List<Object> topicInfo = new ArrayList<Object>();
-        topicInfo.add(topic.getTopicName().toString());
-
-        List<Object> sublist = new ArrayList<Object>();
-        for (NodeRegistrationInfo node : topic.getSubscribers()) {
-          sublist.add(node.getNodeName().toString());
+   * @return the current {@link SystemStateSnapshot}
+   */
+  public SystemStateSnapshot getSystemStateSnapshot() {
+    SystemStateSnapshot snapshot = systemStateSnapshot;
+    if (snapshot != null && snapshot.getVersion() == graphWatch.getSequence()) {
+      return snapshot;
+    }
+    // one caller rebuilds, the others wait for it rather than each building their own
+    synchronized (snapshotLock) {
+      Lock lock = masterRegistrationManager.readLock();
+      lock.lock();
+      try {
+        snapshot = systemStateSnapshot;
+        if (snapshot == null || snapshot.getVersion() != graphWatch.getSequence()) {
+          snapshot = new SystemStateSnapshot(graphWatch.getEpoch(), graphWatch.getSequence(),
+              masterRegistrationManager);
+          systemStateSnapshot = snapshot;
         }
-        topicInfo.add(sublist);
-
-        result.add(topicInfo);
+        return snapshot;
+      } finally {
+        lock.unlock();
       }
     }
-    return result;
-  }
-
-  /**
-   * Get the system state for {@link ServiceServer}s.
-   * 
-   * @return a {@link List} of the form [ [service1,
-   *         [serviceProvider1...serviceProviderN]] ... ] where the
-   *         serviceProviderI instances are {@link Node} names
-   */
-  private List<Object> getSystemStateServices() {
-    List<Object> result = new ArrayList<Object>();
-
-    for (ServiceRegistrationInfo service : masterRegistrationManager.getAllServices()) {
-      List<Object> topicInfo = new ArrayList<Object>();
-      topicInfo.add(service.getServiceName().toString());
-      topicInfo.add(new ArrayList<String>().add(service.getServiceName().toString()));
-
-      result.add(topicInfo);
-    }
-
-    return result;
   }
 
   /**
@@ -435,14 +810,12 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
    *         {@code null} if there is no such service.
    */
   public InetSocketAddress lookupService(GraphName serviceName) {
-    synchronized (masterRegistrationManager) {
-      ServiceRegistrationInfo service =
-          masterRegistrationManager.getServiceRegistrationInfo(serviceName);
-      if (service != null) {
-        return service.getServiceUri();
-      } else {
-        return null;
-      }
+    ServiceRegistrationInfo service =
+        masterRegistrationManager.getServiceRegistrationInfo(serviceName);
+    if (service != null) {
+      return service.getServiceUri();
+    } else {
+      return null;
     }
   }
 
@@ -459,26 +832,47 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
    *         {@link TopicSystemState} message type
    */
   public List<Object> getPublishedTopics(GraphName caller, GraphName subgraph) {
-    synchronized (masterRegistrationManager) {
-      // TODO(keith): Filter topics according to subgraph.
-      List<Object> result = new ArrayList<Object>();
-      for (TopicRegistrationInfo topic : masterRegistrationManager.getAllTopics()) {
-        if (topic.hasPublishers()) {
-        	ArrayList<String> l1 = new ArrayList<String>();
-        	l1.add(topic.getTopicName().toString());
-        	l1.add(topic.getMessageType());
-            result.add(l1);
-        }
-      }
-      return result;
-    }
+    // TODO(keith): Filter topics according to subgraph.
+    return getSystemStateSnapshot().getPublishedTopics();
   }
+
   /**
-   * Create a new SlaveClient with passed NodeRegistrationInfo
+   * Watch the graph for changes. The answer is the changes after those the
+   * caller has seen, or a snapshot of the whole graph if it has seen none or
+   * is too far behind. If there are no changes yet the call is parked until
+   * there are or the wait is up, without holding a thread.
+   * 
+   * @param caller
+   *          name of the caller
+   * @param epoch
+   *          the epoch of the caller's last {@link GraphEvents}, 0 if none
+   * @param since
+   *          the sequence number of the caller's last {@link GraphEvents}
+   * @param waitMillis
+   *          how long to wait for a change, at most {@link org.ros.internal.node.server.LongPoll#MAX_WAIT}
+   * @return the {@link GraphEvents}, when there are some or the wait is up
+   */
+  public CompletableFuture<GraphEvents> watchGraph(GraphName caller, long epoch, long since, long waitMillis) {
+    return graphWatch.watch(epoch, since, waitMillis, getSystemStateSnapshot());
+  }
+
+  /**
+   * @return the {@link GraphWatch} recording changes to the graph
+   */
+  public GraphWatch getGraphWatch() {
+    return graphWatch;
+  }
+
+  /**
+   * Get a pooled SlaveClient for the passed NodeRegistrationInfo
    * Triggered after shutdown and removal of publishers and subscribers from old slave node
    */
   @Override
   public void onNodeReplacement(NodeRegistrationInfo nodeInfo) {
+    if (applying) {
+      // replaced where the change was made, the node has been told
+      return;
+    }
     // A node in the registration manager is being replaced. Contact the node
     // and tell it to shut down.
     if (log.isWarnEnabled()) {
@@ -487,8 +881,10 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
     }
 
 	try {
-		SlaveClient client = new SlaveClient(MASTER_NODE_NAME, nodeInfo.getNodeSlaveUri());
+		SlaveClient client = SlaveClientPool.getInstance().get(MASTER_NODE_NAME, nodeInfo.getNodeSlaveUri());
 		client.shutdown("Replaced by new slave");
+		// the old slave is on its way down, nothing more will be said to it
+		SlaveClientPool.getInstance().invalidate(nodeInfo.getNodeSlaveUri());
 	} catch (Exception e) {
 		log.warn("MasterServer attempt to signal remote shutdown failed for node "+nodeInfo.getNodeSlaveUri()+" due to "+e);
 		//e.printStackTrace();
@@ -498,10 +894,32 @@ public class MasterServer extends RpcServer implements MasterRegistrationListene
   }
 
 
+  @Override
+  public MethodNamesAndParams getMethodNamesAndParams() {
+	  return invokableMethods.getMethodNamesAndParams();
+  }
+
+  /**
+   * @param following
+   *          true while we are a standby following a primary, every call but
+   *          {@link #replicate} is then refused with a
+   *          {@link NotMasterException} and its caller goes to the primary.
+   *          Set in process by the {@link MasterStandby}, never remotely.
+   */
+  void setFollowing(boolean following) {
+    this.following = following;
+  }
+
+  public boolean isFollowing() {
+    return following;
+  }
+
   @Override
   public Object invokeMethod(RemoteRequestInterface rri) throws Exception {
-	  synchronized(invokableMethods) {
-		  return invokableMethods.invokeMethod(rri, this);
+	  if (following && !"replicate".equals(rri.getMethodName())) {
+		  throw new NotMasterException("Master " + getUri() + " is a standby following its primary");
 	  }
+	  // the dispatch table is immutable, the registration methods do their own locking
+	  return invokableMethods.invokeMethod(rri, this);
   }
 }
@@ -0,0 +1,253 @@
+package org.ros.internal.node.server.master;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.exception.RpcTimeoutException;
+import org.ros.internal.node.client.RemoteClient;
+import org.ros.internal.node.server.ParameterServer;
+import org.ros.internal.node.server.RemoteRequest;
+import org.ros.internal.node.server.ReplicationBatch;
+import org.ros.internal.node.server.ReplicationLog;
+import org.ros.namespace.GraphName;
+
+/**
+ * Keeps a {@link MasterServer} and {@link ParameterServer} a warm copy of a primary's, to take over when the
+ * primary goes away. Clients given both addresses move to us when they lose the primary, see
+ * {@link org.ros.node.NodeConfiguration#setMasterUris}.<p/>
+ * One thread each follows the primary master's and parameter server's {@link ReplicationLog}, a call always
+ * parked there so changes arrive in batches as they are made, and applies them. The primary sends nothing while
+ * it registers, so what it had not yet shipped when it died is lost; the nodes it concerned register again or
+ * re-publish their parameters as they would with any restarted master.<p/>
+ * Until we take over our servers refuse every call with a {@link org.ros.exception.NotMasterException}, so
+ * nothing is registered or set with us that the primary does not have, and a client that reached us while the
+ * primary was briefly out of reach goes back to it. Once the primary has not answered for
+ * {@link #getTakeoverMillis()} we stop following, our servers take calls and we are the master. Only a connection
+ * that can not be made or is lost, or a call that times out, counts as not answering; a primary that answers busy
+ * or with an error is alive and is asked again after a backoff. A primary that comes back later is not followed
+ * again, it is a new master in its own right.
+ * @author jg
+ *
+ */
+public class MasterStandby {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(MasterStandby.class);
+	private static final String MASTER_CLASS = MasterServer.class.getName();
+	private static final String PARAMETER_CLASS = ParameterServer.class.getName();
+	public static final long DEFAULT_TAKEOVER = 5000; // milliseconds
+	private static final long FOLLOW_WAIT = 10000; // milliseconds a follow is parked on the primary
+	private static final long RETRY = 250; // milliseconds between attempts to reach a lost primary
+	private static final long MAX_BACKOFF = 4000; // milliseconds at most between attempts on a primary refusing us
+	private static final int CONNECT_TIMEOUT = 2000; // milliseconds
+	private static final long REPLY_TIMEOUT = 5000; // milliseconds beyond the follow wait
+
+	private final MasterServer masterServer;
+	private final ParameterServer parameterServer;
+	private final InetSocketAddress primary;
+	private final GraphName caller;
+	private final CountDownLatch takenOver = new CountDownLatch(1);
+	private volatile long takeoverMillis = DEFAULT_TAKEOVER;
+	private volatile boolean following = false;
+	private Follower masterFollower;
+	private Follower parameterFollower;
+
+	/**
+	 * @param masterServer Our master, applied the primary's registrations
+	 * @param parameterServer Our parameter server, applied the primary's parameters, null for none
+	 * @param primary The address of the primary master, its parameter server is one port higher
+	 */
+	public MasterStandby(MasterServer masterServer, ParameterServer parameterServer, InetSocketAddress primary) {
+		this.masterServer = masterServer;
+		this.parameterServer = parameterServer;
+		this.primary = primary;
+		caller = GraphName.of("/master_standby");
+		// fenced from the start, before our servers take their first call
+		masterServer.setFollowing(true);
+		if( parameterServer != null )
+			parameterServer.setFollowing(true);
+	}
+
+	public long getTakeoverMillis() {
+		return takeoverMillis;
+	}
+
+	/**
+	 * @param takeoverMillis How long the primary may be unreachable before we take over
+	 */
+	public void setTakeoverMillis(long takeoverMillis) {
+		assert(takeoverMillis >= 0) : "MasterStandby takeover delay must not be negative";
+		this.takeoverMillis = takeoverMillis;
+	}
+
+	/**
+	 * Start following the primary.
+	 * @throws IOException if the primary's address can not be resolved
+	 */
+	public synchronized void start() throws IOException {
+		assert(!following) : "MasterStandby started twice";
+		following = true;
+		masterFollower = new Follower("master", MASTER_CLASS, new RemoteClient(primary.getHostString(), primary.getPort())) {
+			@Override
+			void apply(ReplicationBatch batch) throws IOException {
+				masterServer.applyReplicated(batch);
+			}
+		};
+		masterFollower.start();
+		if( parameterServer != null ) {
+			parameterFollower = new Follower("parameters", PARAMETER_CLASS,
+					new RemoteClient(primary.getHostString(), primary.getPort() + 1)) {
+				@Override
+				void apply(ReplicationBatch batch) throws IOException {
+					parameterServer.applyReplicated(batch);
+				}
+			};
+			parameterFollower.start();
+		}
+		log.info("MasterStandby following primary "+primary);
+	}
+
+	/**
+	 * @return true until we have taken over or been stopped
+	 */
+	public boolean isFollowing() {
+		return following;
+	}
+
+	/**
+	 * Wait for the primary to be lost and us to take over.
+	 * @return true if we have taken over, false if the wait was up first
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTakeover(long timeout, TimeUnit unit) throws InterruptedException {
+		return takenOver.await(timeout, unit);
+	}
+
+	/**
+	 * Stop following without taking over, our servers go on refusing calls.
+	 */
+	public synchronized void stop() {
+		following = false;
+		if( masterFollower != null )
+			masterFollower.halt();
+		if( parameterFollower != null )
+			parameterFollower.halt();
+	}
+
+	/**
+	 * The followers each decide the primary is lost, the first to do so takes over for both.
+	 */
+	private void takeOver() {
+		synchronized(this) {
+			if( !following )
+				return;
+			following = false;
+			if( masterFollower != null )
+				masterFollower.halt();
+			if( parameterFollower != null )
+				parameterFollower.halt();
+		}
+		masterServer.setFollowing(false);
+		if( parameterServer != null )
+			parameterServer.setFollowing(false);
+		log.warn("MasterStandby lost primary "+primary+" for "+takeoverMillis+" ms, taking over as master at "+
+				masterServer.getUri());
+		takenOver.countDown();
+	}
+
+	private abstract class Follower extends Thread {
+		private final String className;
+		private final RemoteClient remote;
+		private long epoch = 0;
+		private long sequence = 0;
+
+		Follower(String name, String className, RemoteClient remote) {
+			super("MasterStandby-"+name);
+			setDaemon(true);
+			this.className = className;
+			this.remote = remote;
+			// a primary that hangs is as lost as one that is down
+			remote.setTimeouts(CONNECT_TIMEOUT, REPLY_TIMEOUT);
+		}
+
+		abstract void apply(ReplicationBatch batch) throws IOException;
+
+		void halt() {
+			remote.close();
+			interrupt();
+		}
+
+		/**
+		 * The primary did not answer, rather than answering busy or with an error: the connection could not be made
+		 * or was lost, or the call timed out.
+		 */
+		private boolean isPrimaryLost(Throwable failure) {
+			for(Throwable cause = failure; cause != null; cause = cause.getCause()) {
+				if( cause instanceof IOException || cause instanceof RpcTimeoutException )
+					return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void run() {
+			long lostAt = 0;
+			long backoff = RETRY;
+			while( following ) {
+				try {
+					ReplicationBatch batch = (ReplicationBatch) remote.submit(
+							new RemoteRequest(className, "replicate", caller, epoch, sequence, FOLLOW_WAIT),
+							remote.getReplyTimeout() + FOLLOW_WAIT).get();
+					lostAt = 0;
+					backoff = RETRY;
+					if( !following )
+						break;
+					apply(batch);
+					if( DEBUG )
+						log.debug("MasterStandby "+getName()+" applied "+batch);
+					epoch = batch.getEpoch();
+					sequence = batch.getSequence();
+				} catch(InterruptedException e) {
+					break;
+				} catch(IOException | RuntimeException e) {
+					// we can not follow what we can not apply, start over from a snapshot
+					log.error("MasterStandby "+getName()+" could not apply the primary's changes, resynchronizing", e);
+					epoch = 0;
+				} catch(ExecutionException e) {
+					if( !isPrimaryLost(e.getCause()) ) {
+						// the primary answered, it is alive but would not serve us now
+						lostAt = 0;
+						if( DEBUG )
+							log.debug("MasterStandby "+getName()+" refused by primary "+primary+", retrying in "+backoff+" ms: "+e.getCause());
+						try {
+							Thread.sleep(backoff);
+						} catch(InterruptedException ie) {
+							break;
+						}
+						backoff = Math.min(backoff * 2, MAX_BACKOFF);
+						continue;
+					}
+					long now = System.currentTimeMillis();
+					if( lostAt == 0 ) {
+						lostAt = now;
+						log.warn("MasterStandby "+getName()+" lost primary "+primary+": "+e.getCause());
+					}
+					if( now - lostAt >= takeoverMillis ) {
+						takeOver();
+						break;
+					}
+					try {
+						Thread.sleep(RETRY);
+					} catch(InterruptedException ie) {
+						break;
+					}
+				}
+			}
+			remote.close();
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package org.ros.internal.node.server.master;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.namespace.GraphName;
+
+/**
+ * Delivers publisherUpdate calls to subscribers off the registration path.<p/>
+ * Registration only queues the new publisher list for each subscriber and returns. A bounded number of threads
+ * make the calls, so one unreachable subscriber ties up one of them rather than every registration. Updates for the
+ * same subscriber and topic are coalesced, the newest publisher list replaces any not yet sent, and a subscriber
+ * receives its updates for a topic one at a time, in order.<p/>
+ * A failed call goes on a retry queue and is tried again after a backoff, unless a newer list for that subscriber
+ * and topic has come along in the meantime. After {@link #MAX_ATTEMPTS} it is dropped.
+ * @author jg
+ *
+ */
+public class PublisherUpdateNotifier {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(PublisherUpdateNotifier.class);
+	public static final int DEFAULT_PARALLELISM = 8;
+	public static final int MAX_ATTEMPTS = 5;
+	public static final long INITIAL_RETRY_DELAY = 500; // milliseconds, doubled for each further attempt
+
+	/**
+	 * Makes the call to the subscriber, throwing if it fails.
+	 */
+	public interface Sender {
+		void publisherUpdate(InetSocketAddress subscriberSlaveUri, GraphName topicName, List<InetSocketAddress> publisherUris);
+	}
+
+	private static class Key {
+		final InetSocketAddress subscriberSlaveUri;
+		final GraphName topicName;
+		Key(InetSocketAddress subscriberSlaveUri, GraphName topicName) {
+			this.subscriberSlaveUri = subscriberSlaveUri;
+			this.topicName = topicName;
+		}
+		@Override
+		public int hashCode() {
+			return 31 * subscriberSlaveUri.hashCode() + topicName.hashCode();
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if( !(obj instanceof Key) )
+				return false;
+			Key other = (Key) obj;
+			return subscriberSlaveUri.equals(other.subscriberSlaveUri) && topicName.equals(other.topicName);
+		}
+		@Override
+		public String toString() {
+			return topicName+" to "+subscriberSlaveUri;
+		}
+	}
+
+	private static class Update {
+		final Key key;
+		final List<InetSocketAddress> publisherUris;
+		int attempts = 0;
+		Update(Key key, List<InetSocketAddress> publisherUris) {
+			this.key = key;
+			this.publisherUris = publisherUris;
+		}
+	}
+
+	private final Sender sender;
+	private final ExecutorService senders;
+	private final ScheduledExecutorService retries;
+	// all guarded by this
+	private final Map<Key, Update> pending = new HashMap<Key, Update>(); // waiting to be sent
+	private final Set<Key> inFlight = new HashSet<Key>(); // a sender is working through this key
+	private final Map<Key, Update> latest = new HashMap<Key, Update>(); // newest update not yet delivered, per key
+
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong retried = new AtomicLong();
+	private final AtomicLong abandoned = new AtomicLong();
+
+	public PublisherUpdateNotifier(Sender sender) {
+		this(sender, DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * @param sender Makes the calls
+	 * @param parallelism The most calls in progress at once
+	 */
+	public PublisherUpdateNotifier(Sender sender, int parallelism) {
+		assert(parallelism > 0) : "PublisherUpdateNotifier parallelism must be positive";
+		this.sender = sender;
+		senders = Executors.newFixedThreadPool(parallelism, new NamedThreadFactory("PublisherUpdate"));
+		retries = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("PublisherUpdateRetry"));
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String name;
+		private int threadNum = 0;
+		NamedThreadFactory(String name) {
+			this.name = name;
+		}
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name+"-"+(++threadNum));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Queue the current publishers of a topic for each of its subscribers. Does not wait for any call.
+	 * @param topicName
+	 * @param subscriberSlaveUris
+	 * @param publisherUris
+	 */
+	public void publisherUpdate(GraphName topicName, List<InetSocketAddress> subscriberSlaveUris, List<InetSocketAddress> publisherUris) {
+		for(InetSocketAddress subscriberSlaveUri : subscriberSlaveUris) {
+			submit(new Update(new Key(subscriberSlaveUri, topicName), publisherUris), false);
+		}
+	}
+
+	/**
+	 * Queue an update for its key. The check against {@link #latest} and the put into {@link #pending} are made
+	 * under the one lock, so an older update can never replace a newer one there.
+	 * @param update The update
+	 * @param retry Whether this is a retry of a failed call, dropped if a newer update has come along since
+	 * @return Whether the update was queued
+	 */
+	private boolean submit(Update update, boolean retry) {
+		synchronized(this) {
+			if( retry ) {
+				// superseded, the newer list is on its way or went
+				if( latest.get(update.key) != update )
+					return false;
+			} else
+				latest.put(update.key, update);
+			if( pending.put(update.key, update) != null )
+				coalesced.incrementAndGet();
+			// a sender already on the key picks it up when it finishes the call in progress
+			if( !inFlight.add(update.key) )
+				return true;
+		}
+		senders.execute(new Delivery(update.key));
+		return true;
+	}
+
+	/**
+	 * Works through the updates for one key until there are none left.
+	 */
+	private class Delivery implements Runnable {
+		private final Key key;
+		Delivery(Key key) {
+			this.key = key;
+		}
+		@Override
+		public void run() {
+			while(true) {
+				Update update;
+				synchronized(PublisherUpdateNotifier.this) {
+					update = pending.remove(key);
+					if( update == null ) {
+						inFlight.remove(key);
+						return;
+					}
+				}
+				++update.attempts;
+				try {
+					sender.publisherUpdate(key.subscriberSlaveUri, key.topicName, update.publisherUris);
+					synchronized(PublisherUpdateNotifier.this) {
+						latest.remove(key, update);
+					}
+					delivered.incrementAndGet();
+					if( DEBUG )
+						log.debug("Publisher update delivered for "+key);
+				} catch(Exception e) {
+					retry(update, e);
+				}
+			}
+		}
+	}
+
+	private void retry(final Update update, Exception cause) {
+		if( update.attempts >= MAX_ATTEMPTS ) {
+			synchronized(this) {
+				latest.remove(update.key, update);
+			}
+			abandoned.incrementAndGet();
+			log.error("Publisher update for "+update.key+" abandoned after "+update.attempts+" attempts, last failure "+cause);
+			return;
+		}
+		long delay = INITIAL_RETRY_DELAY << (update.attempts - 1);
+		if( DEBUG )
+			log.debug("Publisher update for "+update.key+" failed with "+cause+", retry in "+delay+" ms");
+		retries.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if( submit(update, true) )
+					retried.incrementAndGet();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return The number of updates waiting to be sent, not counting those waiting on a retry
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/**
+	 * @return The number of updates replaced by a newer one before being sent
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	public long getRetriedCount() {
+		return retried.get();
+	}
+
+	public long getAbandonedCount() {
+		return abandoned.get();
+	}
+
+	/**
+	 * Stop sending, updates not yet delivered are dropped.
+	 */
+	public void shutdown() {
+		retries.shutdownNow();
+		senders.shutdownNow();
+	}
+
+}
@@ -0,0 +1,381 @@
+package org.ros.internal.node.server.master;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An append-only record of the registrations of a {@link MasterServer} on local disk, so a restarted master has
+ * the graph back at once rather than waiting for every node to notice and register again.<p/>
+ * The {@link MasterRegistrationManagerImpl} appends each registration and unregistration as it makes it, under the
+ * registration write lock, so the journal is in the order the changes were made. Every {@link #getCompactEvery()}
+ * records the journal is compacted in the background: under the read lock the registrations as they stand are
+ * copied and a new journal is started, the old one kept aside as the previous journal, then the copy is written to
+ * a snapshot file outside the lock, so registrations carry on while it goes to disk, and the previous journal is
+ * deleted. Replaying is loading the snapshot then applying the previous journal, should it still be there, and the
+ * journal written after it.<p/>
+ * Each record carries its length and checksum. A record cut short or damaged, as by a crash in the middle of
+ * writing it, ends the replay and is cut off the journal before appending resumes. Each file starts with a
+ * generation, a journal is only replayed over the snapshot of the generation before it, so a crash between writing
+ * a snapshot and starting the next journal does not apply the old journal twice. Snapshots are synced to disk and
+ * renamed into place. Records are buffered and flushed to the file one whole record at a time as they are appended,
+ * which survives the process dying; {@link #setSync(boolean)} syncs each to the disk as well, to survive the machine going down.
+ * @author jg
+ *
+ */
+public class RegistrationJournal implements RegistrationRecorder {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(RegistrationJournal.class);
+	public static final String JOURNAL_FILE = "registrations.journal";
+	public static final String PREVIOUS_JOURNAL_FILE = "registrations.journal.prev";
+	public static final String SNAPSHOT_FILE = "registrations.snapshot";
+	public static final int DEFAULT_COMPACT_EVERY = 10000;
+	private static final int MAGIC = 0x524a4e4c;
+	private static final int FORMAT = 1;
+	private static final int MAX_RECORD = 1 << 20;
+
+	private final File directory;
+	private final MasterRegistrationManagerImpl registrations;
+	private final ExecutorService compactor;
+	private final CRC32 crc = new CRC32();
+	private int compactEvery = DEFAULT_COMPACT_EVERY;
+	private boolean sync = false;
+	// all guarded by this
+	private FileOutputStream journal;
+	private DataOutputStream journalOut;
+	private long generation;
+	private int appended; // since the last compaction
+	private boolean compacting;
+
+	/**
+	 * @param directory Where the journal and snapshot are kept, made if need be
+	 * @param registrations The registrations recorded, and replayed into by {@link #open()}
+	 */
+	public RegistrationJournal(File directory, MasterRegistrationManagerImpl registrations) {
+		this.directory = directory;
+		this.registrations = registrations;
+		compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "RegistrationJournal");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public int getCompactEvery() {
+		return compactEvery;
+	}
+
+	/**
+	 * @param compactEvery Records appended between compactions
+	 */
+	public void setCompactEvery(int compactEvery) {
+		assert(compactEvery > 0) : "RegistrationJournal must compact after at least one record";
+		this.compactEvery = compactEvery;
+	}
+
+	/**
+	 * @param sync Whether each record is synced to the disk before the registration returns
+	 */
+	public void setSync(boolean sync) {
+		this.sync = sync;
+	}
+
+	/**
+	 * Replay the snapshot and journal into the registrations, which should be empty and not yet recording to us,
+	 * then open the journal for appending.
+	 * @return The number of records replayed
+	 * @throws IOException if the directory can not be used
+	 */
+	public synchronized int open() throws IOException {
+		if( !directory.isDirectory() && !directory.mkdirs() )
+			throw new IOException("RegistrationJournal can not make directory "+directory);
+		long start = System.currentTimeMillis();
+		int replayed = 0;
+		long appliedGeneration = 0;
+		File snapshotFile = new File(directory, SNAPSHOT_FILE);
+		if( snapshotFile.exists() ) {
+			Replay replay = replay(snapshotFile, 0);
+			appliedGeneration = replay.generation;
+			replayed += replay.records;
+		}
+		// there if we went down compacting before the snapshot of it was in place
+		File previousFile = new File(directory, PREVIOUS_JOURNAL_FILE);
+		if( previousFile.exists() ) {
+			Replay replay = replay(previousFile, appliedGeneration + 1);
+			if( replay.generation > appliedGeneration ) {
+				appliedGeneration = replay.generation;
+				replayed += replay.records;
+			}
+		}
+		File journalFile = new File(directory, JOURNAL_FILE);
+		Replay replay = journalFile.exists() ? replay(journalFile, appliedGeneration + 1) : null;
+		if( replay != null && replay.generation > appliedGeneration ) {
+			replayed += replay.records;
+			generation = replay.generation;
+			// cut off a record left unfinished and carry on after the last whole one
+			RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+			try {
+				file.setLength(replay.length);
+			} finally {
+				file.close();
+			}
+			openJournal(journalFile);
+		} else {
+			startJournal(appliedGeneration + 1);
+		}
+		log.info("RegistrationJournal replayed "+replayed+" records from "+directory+" in "+
+				(System.currentTimeMillis() - start)+" ms, generation "+generation);
+		return replayed;
+	}
+
+	private static class Replay {
+		long generation;
+		int records;
+		long length; // of the whole records
+	}
+
+	/**
+	 * Apply the records of the file, if it is of at least the given generation.
+	 * @param file The snapshot or journal
+	 * @param minGeneration A file of an older generation is left unapplied, as a journal the snapshot already holds
+	 * @return The generation of the file, and the records applied and their length
+	 * @throws IOException if the file does not start with a header of this format
+	 */
+	private Replay replay(File file, long minGeneration) throws IOException {
+		Replay replay = new Replay();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if( in.readInt() != MAGIC || in.readInt() != FORMAT )
+				throw new IOException("RegistrationJournal "+file+" is not a journal of this format");
+			replay.generation = in.readLong();
+			replay.length = 16;
+			if( replay.generation < minGeneration ) {
+				log.info("RegistrationJournal "+file+" is of generation "+replay.generation+", older than the snapshot, not replayed");
+				return replay;
+			}
+			CRC32 check = new CRC32();
+			while(true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch(EOFException e) {
+					break;
+				}
+				try {
+					long checksum = in.readLong();
+					if( length <= 0 || length > MAX_RECORD )
+						throw new IOException("record length "+length);
+					byte[] bytes = new byte[length];
+					in.readFully(bytes);
+					check.reset();
+					check.update(bytes);
+					if( check.getValue() != checksum )
+						throw new IOException("record checksum");
+					RegistrationRecords.apply(bytes, registrations);
+				} catch(IOException e) {
+					log.warn("RegistrationJournal "+file+" ends in a damaged record after "+replay.records+" records, "+e);
+					break;
+				}
+				replay.records++;
+				replay.length += 12 + length;
+			}
+		} finally {
+			in.close();
+		}
+		if( DEBUG )
+			log.debug("RegistrationJournal replayed "+replay.records+" records of generation "+replay.generation+" from "+file);
+		return replay;
+	}
+
+	private static void writeHeader(DataOutputStream out, long generation) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT);
+		out.writeLong(generation);
+	}
+
+	/**
+	 * Frame the record onto the stream.
+	 */
+	private static void writeRecord(DataOutputStream out, CRC32 crc, byte[] record) throws IOException {
+		crc.reset();
+		crc.update(record);
+		out.writeInt(record.length);
+		out.writeLong(crc.getValue());
+		out.write(record);
+	}
+
+	private void startJournal(long newGeneration) throws IOException {
+		File file = new File(directory, JOURNAL_FILE);
+		File temp = new File(directory, JOURNAL_FILE+".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			DataOutputStream dout = new DataOutputStream(out);
+			writeHeader(dout, newGeneration);
+			dout.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		openJournal(file);
+		generation = newGeneration;
+		appended = 0;
+	}
+
+	/**
+	 * Open the journal for appending, buffered as {@link #record(byte[])} flushes it once per record.
+	 */
+	private void openJournal(File file) throws IOException {
+		journal = new FileOutputStream(file, true);
+		journalOut = new DataOutputStream(new BufferedOutputStream(journal));
+	}
+
+	/**
+	 * Append the record to the journal, and compact if it is time.
+	 */
+	@Override
+	public synchronized void record(byte[] record) {
+		try {
+			if( journalOut == null )
+				return; // closed
+			writeRecord(journalOut, crc, record);
+			journalOut.flush();
+			if( sync )
+				journal.getFD().sync();
+		} catch(IOException e) {
+			log.error("RegistrationJournal failed to append to "+directory+", the registration is not journaled", e);
+			return;
+		}
+		if( ++appended >= compactEvery && !compacting ) {
+			compacting = true;
+			compactor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						compact();
+					} catch(IOException e) {
+						log.error("RegistrationJournal failed to compact "+directory, e);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Write the registrations as they stand to a new snapshot and start a new journal after it.
+	 * Holds the registration read lock only to copy the registrations and start the journal, the snapshot is
+	 * written and synced after, the journal it replaces kept until it is in place.
+	 * @throws IOException
+	 */
+	public void compact() throws IOException {
+		long start = System.currentTimeMillis();
+		List<byte[]> records;
+		long snapshotGeneration;
+		try {
+			Lock lock = registrations.readLock();
+			lock.lock();
+			try {
+				synchronized(this) {
+					if( journalOut == null )
+						return; // closed
+					records = RegistrationRecords.snapshot(registrations);
+					snapshotGeneration = generation;
+					journalOut.close();
+					journal = null;
+					journalOut = null;
+					File journalFile = new File(directory, JOURNAL_FILE);
+					File previousFile = new File(directory, PREVIOUS_JOURNAL_FILE);
+					Files.move(journalFile.toPath(), previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+					try {
+						startJournal(snapshotGeneration + 1);
+					} catch(IOException e) {
+						// carry on appending to the old journal
+						Files.move(previousFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+								StandardCopyOption.ATOMIC_MOVE);
+						openJournal(journalFile);
+						throw e;
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			writeSnapshot(records, snapshotGeneration);
+			Files.deleteIfExists(new File(directory, PREVIOUS_JOURNAL_FILE).toPath());
+		} finally {
+			synchronized(this) {
+				compacting = false;
+			}
+		}
+		if( DEBUG )
+			log.debug("RegistrationJournal compacted "+records.size()+" registrations in "+
+					(System.currentTimeMillis() - start)+" ms, generation "+snapshotGeneration);
+	}
+
+	/**
+	 * The snapshot is of the generation of the journal it replaces, the journal after it is one on.
+	 */
+	private void writeSnapshot(List<byte[]> records, long snapshotGeneration) throws IOException {
+		File file = new File(directory, SNAPSHOT_FILE);
+		File temp = new File(directory, SNAPSHOT_FILE+".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+			writeHeader(dout, snapshotGeneration);
+			CRC32 check = new CRC32();
+			for(byte[] record : records)
+				writeRecord(dout, check, record);
+			dout.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Stop appending, what has been appended is on disk.
+	 */
+	public void close() {
+		compactor.shutdown();
+		synchronized(this) {
+			try {
+				if( journalOut != null )
+					journalOut.close();
+			} catch(IOException e) {
+				log.warn("RegistrationJournal close of "+directory+" failed "+e);
+			}
+			journal = null;
+			journalOut = null;
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public synchronized long getGeneration() {
+		return generation;
+	}
+}
@@ -0,0 +1,11 @@
+package org.ros.internal.node.server.master;
+
+/**
+ * Takes each registration change a {@link MasterRegistrationManagerImpl} makes, as a {@link RegistrationRecords}
+ * record. Called under the registration write lock in the order the changes are made, so it should be quick.
+ * @author jg
+ *
+ */
+interface RegistrationRecorder {
+	void record(byte[] record);
+}
@@ -0,0 +1,227 @@
+package org.ros.internal.node.server.master;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ros.namespace.GraphName;
+
+/**
+ * The registration changes of a {@link MasterRegistrationManagerImpl} as records of bytes, the form the
+ * {@link RegistrationJournal} keeps on disk and a {@link MasterStandby} is shipped. A record is an op byte, the
+ * node name and the op's own fields. Applying the records of a master in order to empty registrations gives
+ * the same registrations.
+ * @author jg
+ *
+ */
+final class RegistrationRecords {
+	static final byte REGISTER_PUBLISHER = 1;
+	static final byte UNREGISTER_PUBLISHER = 2;
+	static final byte REGISTER_SUBSCRIBER = 3;
+	static final byte UNREGISTER_SUBSCRIBER = 4;
+	static final byte REGISTER_SERVICE = 5;
+	static final byte UNREGISTER_SERVICE = 6;
+	static final byte UNREGISTER_NODE = 7;
+
+	private RegistrationRecords() {}
+
+	/**
+	 * The records are built in memory, nothing can fail writing them.
+	 */
+	private static abstract class Writer {
+		abstract void write(DataOutputStream out) throws IOException;
+
+		byte[] toBytes() {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			try {
+				write(new DataOutputStream(bytes));
+			} catch(IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return bytes.toByteArray();
+		}
+	}
+
+	static byte[] registerPublisher(GraphName nodeName, InetSocketAddress nodeSlaveUri, GraphName topicName,
+			String topicMessageType) {
+		return topic(REGISTER_PUBLISHER, nodeName, nodeSlaveUri, topicName, topicMessageType);
+	}
+
+	static byte[] registerSubscriber(GraphName nodeName, InetSocketAddress nodeSlaveUri, GraphName topicName,
+			String topicMessageType) {
+		return topic(REGISTER_SUBSCRIBER, nodeName, nodeSlaveUri, topicName, topicMessageType);
+	}
+
+	private static byte[] topic(final byte op, final GraphName nodeName, final InetSocketAddress nodeSlaveUri,
+			final GraphName topicName, final String topicMessageType) {
+		return new Writer() {
+			@Override
+			void write(DataOutputStream out) throws IOException {
+				out.writeByte(op);
+				out.writeUTF(nodeName.toString());
+				writeAddress(out, nodeSlaveUri);
+				out.writeUTF(topicName.toString());
+				writeType(out, topicMessageType);
+			}
+		}.toBytes();
+	}
+
+	static byte[] unregisterPublisher(GraphName nodeName, GraphName topicName) {
+		return unregister(UNREGISTER_PUBLISHER, nodeName, topicName);
+	}
+
+	static byte[] unregisterSubscriber(GraphName nodeName, GraphName topicName) {
+		return unregister(UNREGISTER_SUBSCRIBER, nodeName, topicName);
+	}
+
+	private static byte[] unregister(final byte op, final GraphName nodeName, final GraphName topicName) {
+		return new Writer() {
+			@Override
+			void write(DataOutputStream out) throws IOException {
+				out.writeByte(op);
+				out.writeUTF(nodeName.toString());
+				out.writeUTF(topicName.toString());
+			}
+		}.toBytes();
+	}
+
+	static byte[] registerService(final GraphName nodeName, final InetSocketAddress nodeSlaveUri,
+			final GraphName serviceName, final InetSocketAddress serviceUri) {
+		return new Writer() {
+			@Override
+			void write(DataOutputStream out) throws IOException {
+				out.writeByte(REGISTER_SERVICE);
+				out.writeUTF(nodeName.toString());
+				writeAddress(out, nodeSlaveUri);
+				out.writeUTF(serviceName.toString());
+				writeAddress(out, serviceUri);
+			}
+		}.toBytes();
+	}
+
+	static byte[] unregisterService(final GraphName nodeName, final GraphName serviceName,
+			final InetSocketAddress serviceUri) {
+		return new Writer() {
+			@Override
+			void write(DataOutputStream out) throws IOException {
+				out.writeByte(UNREGISTER_SERVICE);
+				out.writeUTF(nodeName.toString());
+				out.writeUTF(serviceName.toString());
+				writeAddress(out, serviceUri);
+			}
+		}.toBytes();
+	}
+
+	static byte[] unregisterNode(final GraphName nodeName, final InetSocketAddress nodeSlaveUri) {
+		return new Writer() {
+			@Override
+			void write(DataOutputStream out) throws IOException {
+				out.writeByte(UNREGISTER_NODE);
+				out.writeUTF(nodeName.toString());
+				writeAddress(out, nodeSlaveUri);
+			}
+		}.toBytes();
+	}
+
+	/**
+	 * The records that make the registrations as they stand, the caller holds the read lock.
+	 * Publishers go first so a subscriber's message type does not override theirs when applied.
+	 */
+	static List<byte[]> snapshot(MasterRegistrationManagerImpl registrations) {
+		List<byte[]> records = new ArrayList<byte[]>();
+		for(NodeRegistrationInfo node : registrations.getAllNodes()) {
+			for(TopicRegistrationInfo topic : node.getPublishers()) {
+				records.add(registerPublisher(node.getNodeName(), node.getNodeSlaveUri(), topic.getTopicName(),
+						topic.getMessageType()));
+			}
+		}
+		for(NodeRegistrationInfo node : registrations.getAllNodes()) {
+			for(TopicRegistrationInfo topic : node.getSubscribers()) {
+				records.add(registerSubscriber(node.getNodeName(), node.getNodeSlaveUri(), topic.getTopicName(),
+						topic.getMessageType()));
+			}
+		}
+		for(ServiceRegistrationInfo service : registrations.getAllServices()) {
+			NodeRegistrationInfo node = service.getNode();
+			records.add(registerService(node.getNodeName(), node.getNodeSlaveUri(), service.getServiceName(),
+					service.getServiceUri()));
+		}
+		return records;
+	}
+
+	/**
+	 * Make the change the record describes, the caller holds the write lock.
+	 * @throws IOException if the record is not one of ours
+	 */
+	static void apply(byte[] record, MasterRegistrationManagerImpl registrations) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		byte op = in.readByte();
+		GraphName nodeName = GraphName.of(in.readUTF());
+		switch(op) {
+			case REGISTER_PUBLISHER:
+				registrations.registerPublisher(nodeName, readAddress(in), GraphName.of(in.readUTF()), readType(in));
+				break;
+			case UNREGISTER_PUBLISHER:
+				registrations.unregisterPublisher(nodeName, GraphName.of(in.readUTF()));
+				break;
+			case REGISTER_SUBSCRIBER:
+				registrations.registerSubscriber(nodeName, readAddress(in), GraphName.of(in.readUTF()), readType(in));
+				break;
+			case UNREGISTER_SUBSCRIBER:
+				registrations.unregisterSubscriber(nodeName, GraphName.of(in.readUTF()));
+				break;
+			case REGISTER_SERVICE:
+				registrations.registerService(nodeName, readAddress(in), GraphName.of(in.readUTF()), readAddress(in));
+				break;
+			case UNREGISTER_SERVICE:
+				registrations.unregisterService(nodeName, GraphName.of(in.readUTF()), readAddress(in));
+				break;
+			case UNREGISTER_NODE:
+				registrations.unregisterNode(nodeName, readAddress(in));
+				break;
+			default:
+				throw new IOException("unknown record "+op);
+		}
+	}
+
+	private static String readType(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeType(DataOutputStream out, String type) throws IOException {
+		out.writeBoolean(type != null);
+		if( type != null )
+			out.writeUTF(type);
+	}
+
+	/**
+	 * The host as given and the address it resolved to, so applying looks nothing up and the address
+	 * is equal to the one the node registers with again.
+	 */
+	private static void writeAddress(DataOutputStream out, InetSocketAddress address) throws IOException {
+		out.writeUTF(address.getHostString());
+		if( address.isUnresolved() ) {
+			out.writeByte(0);
+		} else {
+			byte[] ip = address.getAddress().getAddress();
+			out.writeByte(ip.length);
+			out.write(ip);
+		}
+		out.writeShort(address.getPort());
+	}
+
+	private static InetSocketAddress readAddress(DataInputStream in) throws IOException {
+		String host = in.readUTF();
+		byte[] ip = new byte[in.readUnsignedByte()];
+		in.readFully(ip);
+		int port = in.readUnsignedShort();
+		return ip.length == 0 ? InetSocketAddress.createUnresolved(host, port) :
+				new InetSocketAddress(InetAddress.getByAddress(host, ip), port);
+	}
+}
@@ -0,0 +1,137 @@
+package org.ros.internal.node.server.master;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.ros.master.client.GraphEvent;
+import org.ros.master.client.GraphEvents;
+
+/**
+ * The registrations of the {@link MasterServer} at one version, in the forms its calls answer with.<p/>
+ * The version is the {@link GraphWatch} sequence number of the last change included, so a snapshot stays good
+ * until the next change and every reader shares it. The {@link MasterServer} builds a new one on the first read
+ * after a change, under the registration read lock, and hands the same lists to every caller until the next.
+ * Nothing in it may be modified, the lists are unmodifiable all the way down.
+ * @author jg
+ *
+ */
+public class SystemStateSnapshot {
+	private final long epoch;
+	private final long version;
+	private final List<Object> systemState;
+	private final List<List<String>> topicTypes;
+	private final List<Object> publishedTopics;
+	private final GraphEvents graph;
+
+	/**
+	 * Take the snapshot, with the registration read lock held.
+	 * @param epoch The {@link GraphWatch#getEpoch()}
+	 * @param version The {@link GraphWatch#getSequence()}
+	 * @param registrations
+	 */
+	public SystemStateSnapshot(long epoch, long version, MasterRegistrationManagerImpl registrations) {
+		this.epoch = epoch;
+		this.version = version;
+		Collection<TopicRegistrationInfo> topics = registrations.getAllTopics();
+		List<Object> publishers = new ArrayList<Object>();
+		List<Object> subscribers = new ArrayList<Object>();
+		List<Object> services = new ArrayList<Object>();
+		List<List<String>> types = new ArrayList<List<String>>();
+		List<Object> published = new ArrayList<Object>();
+		List<GraphEvent> events = new ArrayList<GraphEvent>();
+
+		for(NodeRegistrationInfo node : registrations.getAllNodes()) {
+			events.add(new GraphEvent(version, GraphEvent.Type.NODE_ADDED, node.getNodeName().toString(), null,
+					node.getNodeSlaveUri(), null));
+		}
+		for(TopicRegistrationInfo topic : topics) {
+			String topicName = topic.getTopicName().toString();
+			List<String> topicType = pair(topicName, topic.getMessageType());
+			types.add(topicType);
+			if( !topic.hasRegistrations() )
+				continue;
+			events.add(new GraphEvent(version, GraphEvent.Type.TOPIC_ADDED, topicName, null, null, topic.getMessageType()));
+			if( topic.hasPublishers() ) {
+				List<String> nodeNames = new ArrayList<String>();
+				for(NodeRegistrationInfo node : topic.getPublishers()) {
+					nodeNames.add(node.getNodeName().toString());
+					events.add(new GraphEvent(version, GraphEvent.Type.PUBLISHER_ADDED, topicName,
+							node.getNodeName().toString(), null, null));
+				}
+				publishers.add(entry(topicName, nodeNames));
+				published.add(topicType);
+			}
+			if( topic.hasSubscribers() ) {
+				List<String> nodeNames = new ArrayList<String>();
+				for(NodeRegistrationInfo node : topic.getSubscribers()) {
+					nodeNames.add(node.getNodeName().toString());
+					events.add(new GraphEvent(version, GraphEvent.Type.SUBSCRIBER_ADDED, topicName,
+							node.getNodeName().toString(), null, null));
+				}
+				subscribers.add(entry(topicName, nodeNames));
+			}
+		}
+		for(ServiceRegistrationInfo service : registrations.getAllServices()) {
+			String serviceName = service.getServiceName().toString();
+			String nodeName = service.getNode().getNodeName().toString();
+			services.add(entry(serviceName, Collections.singletonList(nodeName)));
+			events.add(new GraphEvent(version, GraphEvent.Type.SERVICE_ADDED, serviceName, nodeName,
+					service.getServiceUri(), null));
+		}
+
+		systemState = Collections.unmodifiableList(Arrays.<Object>asList(
+				Collections.unmodifiableList(publishers),
+				Collections.unmodifiableList(subscribers),
+				Collections.unmodifiableList(services)));
+		topicTypes = Collections.unmodifiableList(types);
+		publishedTopics = Collections.unmodifiableList(published);
+		graph = new GraphEvents(epoch, version, true, Collections.unmodifiableList(events));
+	}
+
+	private static List<String> pair(String name, String type) {
+		return Collections.unmodifiableList(Arrays.asList(name, type));
+	}
+
+	private static List<Object> entry(String name, List<String> nodeNames) {
+		return Collections.unmodifiableList(Arrays.<Object>asList(name, Collections.unmodifiableList(nodeNames)));
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return As {@link MasterServer#getSystemState()}, [publishers, subscribers, services]
+	 */
+	public List<Object> getSystemState() {
+		return systemState;
+	}
+
+	/**
+	 * @return As {@link MasterServer#getTopicTypes}, [topic, type] for every topic known
+	 */
+	public List<List<String>> getTopicTypes() {
+		return topicTypes;
+	}
+
+	/**
+	 * @return As {@link MasterServer#getPublishedTopics}, [topic, type] for every topic with a publisher
+	 */
+	public List<Object> getPublishedTopics() {
+		return publishedTopics;
+	}
+
+	/**
+	 * @return The whole graph as added events, the snapshot answer to a watch
+	 */
+	public GraphEvents getGraph() {
+		return graph;
+	}
+}
@@ -10,7 +10,18 @@ import org.ros.internal.system.Utility;
 import org.ros.internal.transport.ChannelHandlerContext;
 import org.ros.internal.transport.ConnectionHeader;
 import org.ros.internal.transport.ConnectionHeaderFields;
+import org.ros.internal.transport.codec.JavaSerializationCodec;
+import org.ros.internal.transport.codec.MessageCodec;
+import org.ros.internal.transport.codec.MessageCodecSelector;
+import org.ros.internal.transport.codec.MessageCodecs;
+import org.ros.internal.transport.queue.ChannelOutboundQueue;
+import org.ros.internal.transport.queue.IncomingMessageQueue;
 import org.ros.internal.transport.queue.OutgoingMessageQueue;
+import org.ros.internal.transport.queue.OverflowPolicy;
+import org.ros.internal.transport.queue.TopicRoutingTable;
+import org.ros.internal.transport.shm.SharedMemoryRing;
+import org.ros.internal.transport.shm.SharedMemoryTransport;
+import org.ros.internal.transport.udp.UdpRosSender;
 import org.ros.message.MessageFactory;
 import org.ros.node.topic.DefaultPublisherListener;
 import org.ros.node.topic.Publisher;
@@ -18,10 +29,11 @@ import org.ros.node.topic.PublisherListener;
 import org.ros.node.topic.Subscriber;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -55,16 +67,27 @@ public class DefaultPublisher<T> extends DefaultTopicParticipant implements Publ
   private final ListenerGroup<PublisherListener<T>> listeners;
   private final NodeIdentifier nodeIdentifier;
   private final MessageFactory messageFactory;
-  // List of channelHandlerContexts that represent subscribers connected through publisher socket
-  private final ArrayBlockingQueue<ChannelHandlerContext> subscribers;
+  // Routes of the node's topics, ours holds the subscribers connected through the publisher socket
+  private final TopicRoutingTable routingTable;
+  // The ring read by subscribers on this host, opened by the first of them to ask
+  private SharedMemoryRing sharedMemoryRing;
+  private MessageCodec sharedMemoryCodec;
 
   public DefaultPublisher(NodeIdentifier nodeIdentifier, TopicDeclaration topicDeclaration,
-		  MessageFactory messageFactory, ScheduledExecutorService executorService, ArrayBlockingQueue<ChannelHandlerContext> arrayBlockingQueue) throws IOException {
+		  MessageFactory messageFactory, ScheduledExecutorService executorService, TopicRoutingTable routingTable) throws IOException {
+    this(nodeIdentifier, topicDeclaration, messageFactory, executorService, routingTable,
+        ChannelOutboundQueue.DEFAULT_CAPACITY, ChannelOutboundQueue.DEFAULT_OVERFLOW_POLICY);
+  }
+
+  public DefaultPublisher(NodeIdentifier nodeIdentifier, TopicDeclaration topicDeclaration,
+		  MessageFactory messageFactory, ScheduledExecutorService executorService, TopicRoutingTable routingTable,
+		  int subscriberQueueCapacity, OverflowPolicy overflowPolicy) throws IOException {
     super(topicDeclaration);
     this.nodeIdentifier = nodeIdentifier;
     this.messageFactory = messageFactory;
-    this.subscribers = arrayBlockingQueue;
-    outgoingMessageQueue = new OutgoingMessageQueue<T>(executorService, arrayBlockingQueue);
+    this.routingTable = routingTable;
+    outgoingMessageQueue = new OutgoingMessageQueue<T>(executorService, routingTable.getRoute(getTopicName()),
+        subscriberQueueCapacity, overflowPolicy);
     listeners = new ListenerGroup<PublisherListener<T>>(executorService);
     listeners.add(new DefaultPublisherListener<T>() {
       @Override
@@ -89,6 +112,13 @@ public class DefaultPublisher<T> extends DefaultTopicParticipant implements Publ
     });
   }
 
+  /**
+   * @return the outbound queue of each subscriber connection, with its depth and its written and dropped counts
+   */
+  public Collection<ChannelOutboundQueue> getSubscriberQueues() {
+    return outgoingMessageQueue.getChannelQueues();
+  }
+
   @Override
   public void setLatchMode(boolean enabled) {
     outgoingMessageQueue.setLatchMode(enabled);
@@ -103,6 +133,71 @@ public class DefaultPublisher<T> extends DefaultTopicParticipant implements Publ
   public void shutdown(long timeout, TimeUnit unit) {
     signalOnShutdown(timeout, unit);
     outgoingMessageQueue.shutdown();
+    routingTable.removeRoute(getTopicName(), outgoingMessageQueue.getRoute());
+    synchronized (this) {
+      if (sharedMemoryRing != null) {
+        sharedMemoryRing.close();
+        sharedMemoryRing = null;
+      }
+    }
+  }
+
+  /**
+   * Open the shared memory ring of this topic for a subscriber on this host, or return the
+   * one already open.
+   * @param capacity the bytes of ring to create
+   * @param codecSelector selects the codec of the ring
+   * @return the ring, see {@link #getSharedMemoryCodec()} for its codec
+   * @throws IOException if the ring cannot be created
+   */
+  public synchronized SharedMemoryRing openSharedMemoryRing(int capacity, MessageCodecSelector codecSelector) throws IOException {
+    if (sharedMemoryRing == null) {
+      MessageCodec codec = newStatelessCodec(codecSelector);
+      sharedMemoryRing = new SharedMemoryRing(SharedMemoryTransport.ringFile(getTopicName(), codec.getName()), capacity);
+      sharedMemoryCodec = codec;
+      outgoingMessageQueue.setSharedMemoryRing(sharedMemoryRing, codec);
+    }
+    return sharedMemoryRing;
+  }
+
+  /**
+   * Send every message from now on to a subscriber's datagram socket.
+   * 
+   * @param subscriber the address of the subscriber's socket
+   * @param maxDatagramSize the largest datagram the subscriber takes
+   * @param codecSelector selects the codec of the messages, as for the shared memory ring
+   * @return the sender to the subscriber
+   * @throws IOException if the sender cannot be opened
+   */
+  public UdpRosSender addUdpRosSubscriber(InetSocketAddress subscriber, int maxDatagramSize,
+      MessageCodecSelector codecSelector) throws IOException {
+    UdpRosSender sender = new UdpRosSender(subscriber, maxDatagramSize, newStatelessCodec(codecSelector));
+    outgoingMessageQueue.addDatagramSubscriber(sender);
+    return sender;
+  }
+
+  /**
+   * @return a codec for transports whose readers decode each message on its
+   *         own: the one the selector picks for the topic, or plain java
+   *         serialization if that one keeps state between messages
+   */
+  private MessageCodec newStatelessCodec(MessageCodecSelector codecSelector) throws IOException {
+    String messageType = getTopicDeclaration().getMessageType();
+    ConnectionHeader header = new ConnectionHeader();
+    header.addField(ConnectionHeaderFields.TYPE, messageType);
+    codecSelector.addToReply(codecSelector.select(getTopicName().toString(), messageType, MessageCodecs.getOffer(messageType)), header);
+    MessageCodec codec = MessageCodecs.newCodec(header);
+    if (!codec.isStateless()) {
+      codec = new JavaSerializationCodec();
+    }
+    return codec;
+  }
+
+  /**
+   * @return the codec of the records in the shared memory ring, null if there is no ring
+   */
+  public synchronized MessageCodec getSharedMemoryCodec() {
+    return sharedMemoryCodec;
   }
 
   @Override
@@ -198,11 +293,36 @@ public ConnectionHeader finishHandshake(ConnectionHeader incomingHeader) {
       log.info(String.format("Adding subscriber %s channel %s to publisher %s.",
           subscriberIdentifer, ctx, this));
     }
-    //outgoingMessageQueue.addChannel(ctx);
-    subscribers.add(ctx);
+    outgoingMessageQueue.addChannel(ctx);
     signalOnNewSubscriber(subscriberIdentifer);
   }
 
+  /**
+   * Add a {@link Subscriber} in this process, which is handed each published
+   * message itself rather than through a connection.
+   * 
+   * @param subscriberIdentifer
+   *          the {@link SubscriberIdentifier} of the new subscriber
+   * @param incomingMessageQueue
+   *          the queue of the {@link Subscriber}
+   */
+  public void addIntraProcessSubscriber(SubscriberIdentifier subscriberIdentifer, IncomingMessageQueue<T> incomingMessageQueue) {
+    if (DEBUG) {
+      log.info(String.format("Adding intra process subscriber %s to publisher %s.",
+          subscriberIdentifer, this));
+    }
+    outgoingMessageQueue.addLocalSubscriber(incomingMessageQueue);
+    signalOnNewSubscriber(subscriberIdentifer);
+  }
+
+  /**
+   * @param incomingMessageQueue
+   *          the queue of a {@link Subscriber} in this process that has shut down
+   */
+  public void removeIntraProcessSubscriber(IncomingMessageQueue<T> incomingMessageQueue) {
+    outgoingMessageQueue.removeLocalSubscriber(incomingMessageQueue);
+  }
+
   @Override
   public void addListener(PublisherListener<T> listener) {
     listeners.add(listener);
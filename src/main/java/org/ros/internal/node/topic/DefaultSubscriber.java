@@ -6,19 +6,34 @@ import org.apache.commons.logging.LogFactory;
 import org.ros.concurrent.ListenerGroup;
 import org.ros.concurrent.SignalRunnable;
 import org.ros.internal.node.server.NodeIdentifier;
+import org.ros.internal.transport.ConnectionHeader;
+import org.ros.internal.transport.ConnectionHeaderFields;
 import org.ros.internal.transport.ProtocolNames;
+import org.ros.internal.transport.codec.MessageCodecs;
+import org.ros.internal.transport.intraprocess.IntraProcessProtocolDescription;
+import org.ros.internal.transport.intraprocess.IntraProcessRegistry;
 import org.ros.internal.transport.queue.IncomingMessageQueue;
+import org.ros.internal.transport.shm.SharedMemoryProtocolDescription;
+import org.ros.internal.transport.shm.SharedMemoryReceiver;
+import org.ros.internal.transport.shm.SharedMemoryRingReader;
+import org.ros.internal.transport.shm.SharedMemoryTransport;
+import org.ros.internal.transport.tcp.ChannelGroup;
 import org.ros.internal.transport.tcp.TcpClientManager;
+import org.ros.internal.transport.udp.UdpRosProtocolDescription;
+import org.ros.internal.transport.udp.UdpRosReceiver;
 import org.ros.message.MessageListener;
 import org.ros.node.topic.DefaultSubscriberListener;
 import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 import org.ros.node.topic.SubscriberListener;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -44,6 +59,16 @@ public class DefaultSubscriber<T> extends DefaultTopicParticipant implements Sub
   private final ScheduledExecutorService executorService;
   private final IncomingMessageQueue<T> incomingMessageQueue;
   private final Set<PublisherIdentifier> knownPublishers;
+  // publishers an UpdatePublisherRunnable is still requesting the topic from
+  private final Set<PublisherIdentifier> connectingPublishers;
+  // publishers in this process we are attached to
+  private final List<DefaultPublisher<T>> intraProcessPublishers;
+  // readers of the shared memory rings of publishers on this host
+  private final List<SharedMemoryReceiver<T>> sharedMemoryReceivers;
+  // the datagram sockets publishers send to
+  private final List<UdpRosReceiver<T>> udpRosReceivers;
+  // the largest datagram we offer to take, 0 to not offer UDPROS
+  private volatile int udpRosMaxDatagramSize = 0;
   private final TcpClientManager tcpClientManager;
   private final Object mutex;
 
@@ -54,19 +79,33 @@ public class DefaultSubscriber<T> extends DefaultTopicParticipant implements Sub
 
   public static <S> DefaultSubscriber<S> newDefault(NodeIdentifier nodeIdentifier,
       TopicDeclaration description, ScheduledExecutorService executorService) throws IOException {
-    return new DefaultSubscriber<S>(nodeIdentifier, description, executorService);
+    return new DefaultSubscriber<S>(nodeIdentifier, description, executorService, null);
   }
 
-  private DefaultSubscriber(NodeIdentifier nodeIdentifier, TopicDeclaration topicDeclaration, ScheduledExecutorService executorService) throws IOException {
+  public static <S> DefaultSubscriber<S> newDefault(NodeIdentifier nodeIdentifier,
+      TopicDeclaration description, ScheduledExecutorService executorService, ChannelGroup channelGroup) throws IOException {
+    return new DefaultSubscriber<S>(nodeIdentifier, description, executorService, channelGroup);
+  }
+
+  private DefaultSubscriber(NodeIdentifier nodeIdentifier, TopicDeclaration topicDeclaration, ScheduledExecutorService executorService,
+      ChannelGroup channelGroup) throws IOException {
     super(topicDeclaration);
     this.nodeIdentifier = nodeIdentifier;
     this.executorService = executorService;
     incomingMessageQueue = new IncomingMessageQueue<T>(executorService);
     knownPublishers = new HashSet<PublisherIdentifier>();
-    tcpClientManager = TcpClientManager.getInstance(executorService);
+    connectingPublishers = new HashSet<PublisherIdentifier>();
+    intraProcessPublishers = new ArrayList<DefaultPublisher<T>>();
+    sharedMemoryReceivers = new ArrayList<SharedMemoryReceiver<T>>();
+    udpRosReceivers = new ArrayList<UdpRosReceiver<T>>();
+    tcpClientManager = TcpClientManager.getInstance(executorService, channelGroup);
     mutex = new Object();
+    ConnectionHeader outgoingConnectionHeader = toDeclaration().toConnectionHeader();
+    // offer every codec we can decode the topic with, it is up to the publisher to pick one
+    outgoingConnectionHeader.addField(ConnectionHeaderFields.CODEC,
+        MessageCodecs.getOffer(topicDeclaration.getMessageType()));
     SubscriberHandshakeHandler<T> subscriberHandshakeHandler =
-        new SubscriberHandshakeHandler<T>(toDeclaration().toConnectionHeader(),
+        new SubscriberHandshakeHandler<T>(outgoingConnectionHeader,
             incomingMessageQueue, executorService);
     tcpClientManager.addNamedChannelHandler(subscriberHandshakeHandler);
     subscriberListeners = new ListenerGroup<SubscriberListener<T>>(executorService);
@@ -136,9 +175,180 @@ public class DefaultSubscriber<T> extends DefaultTopicParticipant implements Sub
     }
   }
 
+  /**
+   * Attach to a {@link Publisher} in this process, which then hands each
+   * message straight to our queue without a socket or serialization.
+   * 
+   * @param publisherIdentifier
+   *          the {@link PublisherIdentifier} of the publisher
+   * @param description
+   *          the {@link IntraProcessProtocolDescription} the publisher selected
+   * @return false if the publisher is not in this process or not of our
+   *         message type, in which case the caller connects over TCPROS
+   */
+  @SuppressWarnings("unchecked")
+  public boolean addIntraProcessPublisher(PublisherIdentifier publisherIdentifier,
+      IntraProcessProtocolDescription description) {
+    DefaultPublisher<?> publisher = IntraProcessRegistry.getPublisher(description, getTopicName());
+    if (publisher == null || !publisher.getTopicMessageType().equals(getTopicMessageType())) {
+      return false;
+    }
+    synchronized (mutex) {
+      if (knownPublishers.contains(publisherIdentifier)) {
+        return true;
+      }
+      ((DefaultPublisher<T>) publisher).addIntraProcessSubscriber(toIdentifier(), incomingMessageQueue);
+      intraProcessPublishers.add((DefaultPublisher<T>) publisher);
+      knownPublishers.add(publisherIdentifier);
+      signalOnNewPublisher(publisherIdentifier);
+    }
+    return true;
+  }
+
+  /**
+   * Read the messages of a {@link Publisher} on this host from the shared
+   * memory ring it opened for the topic.
+   * 
+   * @param publisherIdentifier
+   *          the {@link PublisherIdentifier} of the publisher
+   * @param description
+   *          the {@link SharedMemoryProtocolDescription} the publisher selected
+   * @return false if the ring is not on this host or cannot be read, in which
+   *         case the caller connects over TCPROS
+   */
+  public boolean addSharedMemoryPublisher(PublisherIdentifier publisherIdentifier,
+      SharedMemoryProtocolDescription description) {
+    if (!description.isLocal()) {
+      return false;
+    }
+    synchronized (mutex) {
+      if (knownPublishers.contains(publisherIdentifier)) {
+        return true;
+      }
+      SharedMemoryReceiver<T> receiver;
+      try {
+        ConnectionHeader header = new ConnectionHeader();
+        header.addField(ConnectionHeaderFields.CODEC, description.getCodecName());
+        header.addField(ConnectionHeaderFields.TYPE, getTopicMessageType());
+        receiver = new SharedMemoryReceiver<T>(new SharedMemoryRingReader(new File(description.getRingPath())),
+            MessageCodecs.newCodec(header), incomingMessageQueue);
+      } catch (IOException e) {
+        log.error("Cannot read shared memory ring " + description.getRingPath() + " due to " + e);
+        return false;
+      }
+      executorService.execute(receiver);
+      sharedMemoryReceivers.add(receiver);
+      knownPublishers.add(publisherIdentifier);
+      signalOnNewPublisher(publisherIdentifier);
+    }
+    return true;
+  }
+
+  /**
+   * Take the messages of a {@link Publisher} as datagrams on a socket we
+   * offered it.
+   * 
+   * @param publisherIdentifier
+   *          the {@link PublisherIdentifier} of the publisher
+   * @param description
+   *          the {@link UdpRosProtocolDescription} the publisher selected
+   * @param receiver
+   *          the receiver whose socket was offered, started here
+   * @return false if the publisher's codec is unknown here, in which case the
+   *         caller connects over TCPROS
+   */
+  public boolean addUdpRosPublisher(PublisherIdentifier publisherIdentifier,
+      UdpRosProtocolDescription description, UdpRosReceiver<T> receiver) {
+    synchronized (mutex) {
+      if (knownPublishers.contains(publisherIdentifier)) {
+        return false;
+      }
+      ConnectionHeader header = new ConnectionHeader();
+      header.addField(ConnectionHeaderFields.CODEC, description.getCodecName());
+      header.addField(ConnectionHeaderFields.TYPE, getTopicMessageType());
+      try {
+        receiver.setConnection(description.getConnectionId(), MessageCodecs.newCodec(header), incomingMessageQueue);
+      } catch (IOException e) {
+        log.error("Cannot decode datagrams of " + publisherIdentifier + " due to " + e);
+        return false;
+      }
+      executorService.execute(receiver);
+      udpRosReceivers.add(receiver);
+      knownPublishers.add(publisherIdentifier);
+      signalOnNewPublisher(publisherIdentifier);
+    }
+    return true;
+  }
+
+  /**
+   * Offer {@link ProtocolNames#UDPROS} to publishers from now on, for a topic
+   * that tolerates loss better than the stalls of retransmission.
+   * 
+   * @param maxDatagramSize
+   *          the largest datagram to take, 0 to connect over TCPROS
+   */
+  public void setUdpRosMaxDatagramSize(int maxDatagramSize) {
+    udpRosMaxDatagramSize = maxDatagramSize;
+  }
+
+  public int getUdpRosMaxDatagramSize() {
+    return udpRosMaxDatagramSize;
+  }
+
+  /**
+   * @param maxFrameSize
+   *          the largest message frame in bytes taken from a TCPROS publisher
+   *          connected from now on
+   */
+  public void setTcpRosMaxFrameSize(int maxFrameSize) {
+    tcpClientManager.setMaxFrameSize(maxFrameSize);
+  }
+
+  /**
+   * @return a receiver with a socket to offer a {@link Publisher}, or null if
+   *         we do not offer {@link ProtocolNames#UDPROS}
+   * @throws IOException
+   *           if the socket cannot be bound
+   */
+  public UdpRosReceiver<T> newUdpRosReceiver() throws IOException {
+    int maxDatagramSize = udpRosMaxDatagramSize;
+    return maxDatagramSize > 0 ? new UdpRosReceiver<T>(maxDatagramSize) : null;
+  }
+
+  /**
+   * @return the protocols offered to a {@link Publisher} in requestTopic, each
+   *         followed by what the publisher needs to decide whether it can use it
+   */
+  public Object[][] getProtocolOffers() {
+    return new Object[][] {
+        { ProtocolNames.INTRAPROCESS, IntraProcessRegistry.PROCESS_ID },
+        { ProtocolNames.SHMROS, SharedMemoryTransport.HOST_ID },
+        { ProtocolNames.TCPROS } };
+  }
+
+  /**
+   * @param receiver
+   *          the receiver from {@link #newUdpRosReceiver()}, or null
+   * @return the protocols offered to a {@link Publisher}, UDPROS with the
+   *         address of the receiver's socket ahead of TCPROS
+   * @throws IOException
+   */
+  public Object[][] getProtocolOffers(UdpRosReceiver<T> receiver) throws IOException {
+    if (receiver == null) {
+      return getProtocolOffers();
+    }
+    return new Object[][] {
+        { ProtocolNames.INTRAPROCESS, IntraProcessRegistry.PROCESS_ID },
+        { ProtocolNames.SHMROS, SharedMemoryTransport.HOST_ID },
+        { ProtocolNames.UDPROS, nodeIdentifier.getUri().getHostString(), receiver.getPort(), receiver.getMaxDatagramSize() },
+        { ProtocolNames.TCPROS } };
+  }
+
   /**
    * Updates the list of {@link Publisher}s for the topic that this
-   * {@link Subscriber} is interested in.
+   * {@link Subscriber} is interested in. The topic is only requested from
+   * {@link Publisher}s we are neither connected to nor already connecting to,
+   * so each update does not open another connection to the ones we have.
    * 
    * @param publisherIdentifiers
    *          {@link Collection} of {@link PublisherIdentifier}s for the
@@ -146,14 +356,55 @@ public class DefaultSubscriber<T> extends DefaultTopicParticipant implements Sub
    */
   public void updatePublishers(Collection<PublisherIdentifier> publisherIdentifiers) {
     for (final PublisherIdentifier publisherIdentifier : publisherIdentifiers) {
+      synchronized (mutex) {
+        if (knownPublishers.contains(publisherIdentifier) || !connectingPublishers.add(publisherIdentifier)) {
+          continue;
+        }
+      }
       executorService.execute(new UpdatePublisherRunnable<T>(this, nodeIdentifier,
           publisherIdentifier));
     }
   }
 
+  /**
+   * Called by the {@link UpdatePublisherRunnable} once it is done with a
+   * {@link Publisher}, connected or not, so a later update may try it again.
+   * 
+   * @param publisherIdentifier
+   *          the {@link Publisher} the topic was requested from
+   */
+  void doneConnecting(PublisherIdentifier publisherIdentifier) {
+    synchronized (mutex) {
+      connectingPublishers.remove(publisherIdentifier);
+    }
+  }
+
+  /**
+   * @return true if we already take messages from the {@link Publisher}
+   */
+  boolean isConnectedTo(PublisherIdentifier publisherIdentifier) {
+    synchronized (mutex) {
+      return knownPublishers.contains(publisherIdentifier);
+    }
+  }
+
   @Override
   public void shutdown(long timeout, TimeUnit unit) {
     signalOnShutdown(timeout, unit);
+    synchronized (mutex) {
+      for (DefaultPublisher<T> publisher : intraProcessPublishers) {
+        publisher.removeIntraProcessSubscriber(incomingMessageQueue);
+      }
+      intraProcessPublishers.clear();
+      for (SharedMemoryReceiver<T> receiver : sharedMemoryReceivers) {
+        receiver.close();
+      }
+      sharedMemoryReceivers.clear();
+      for (UdpRosReceiver<T> receiver : udpRosReceivers) {
+        receiver.close();
+      }
+      udpRosReceivers.clear();
+    }
     incomingMessageQueue.shutdown();
     tcpClientManager.shutdown();
     subscriberListeners.shutdown();
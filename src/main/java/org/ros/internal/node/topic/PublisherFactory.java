@@ -1,7 +1,9 @@
 package org.ros.internal.node.topic;
 
 import org.ros.internal.node.server.NodeIdentifier;
-import org.ros.internal.transport.ChannelHandlerContext;
+import org.ros.internal.transport.queue.ChannelOutboundQueue;
+import org.ros.internal.transport.queue.OverflowPolicy;
+import org.ros.internal.transport.queue.TopicRoutingTable;
 import org.ros.message.MessageFactory;
 import org.ros.namespace.GraphName;
 import org.ros.node.topic.DefaultPublisherListener;
@@ -9,7 +11,6 @@ import org.ros.node.topic.Publisher;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 
 /**
@@ -22,10 +23,27 @@ public class PublisherFactory {
   private final ScheduledExecutorService executorService;
   private final NodeIdentifier nodeIdentifier;
   private final Object mutex;
+  private final int subscriberQueueCapacity;
+  private final OverflowPolicy overflowPolicy;
 
   public PublisherFactory(NodeIdentifier nodeIdentifier,
       TopicParticipantManager topicParticipantManager, MessageFactory messageFactory,
       ScheduledExecutorService executorService) {
+    this(nodeIdentifier, topicParticipantManager, messageFactory, executorService,
+        ChannelOutboundQueue.DEFAULT_CAPACITY, ChannelOutboundQueue.DEFAULT_OVERFLOW_POLICY);
+  }
+
+  /**
+   * @param subscriberQueueCapacity
+   *          the messages each publisher holds per subscriber connection
+   * @param overflowPolicy
+   *          what a publisher does when a subscriber connection falls further behind
+   */
+  public PublisherFactory(NodeIdentifier nodeIdentifier,
+      TopicParticipantManager topicParticipantManager, MessageFactory messageFactory,
+      ScheduledExecutorService executorService, int subscriberQueueCapacity, OverflowPolicy overflowPolicy) {
+    this.subscriberQueueCapacity = subscriberQueueCapacity;
+    this.overflowPolicy = overflowPolicy;
     this.nodeIdentifier = nodeIdentifier;
     this.topicParticipantManager = topicParticipantManager;
     this.messageFactory = messageFactory;
@@ -42,21 +60,23 @@ public class PublisherFactory {
    *          the message type associated with the {@link Publisher}
    * @param topicDeclaration
    *          {@link TopicDeclaration} that is being published
- * @param arrayBlockingQueue 
+   * @param routingTable
+   *          the {@link TopicRoutingTable} the subscriber handshakes add to
    * @param messageSerializer
    *          the {@link MessageSerializer} used for published messages
    * @return a new or cached {@link Publisher} instance
    * @throws IOException 
    */
   @SuppressWarnings("unchecked")
-  public <T> Publisher<T> newOrExisting(TopicDeclaration topicDeclaration, ArrayBlockingQueue<ChannelHandlerContext> arrayBlockingQueue) throws IOException {
+  public <T> Publisher<T> newOrExisting(TopicDeclaration topicDeclaration, TopicRoutingTable routingTable) throws IOException {
     GraphName topicName = topicDeclaration.getName();
     synchronized (mutex) {
       if (topicParticipantManager.hasPublisher(topicName)) {
         return (DefaultPublisher<T>) topicParticipantManager.getPublisher(topicName);
       } else {
         DefaultPublisher<T> publisher =
-            new DefaultPublisher<T>(nodeIdentifier, topicDeclaration, messageFactory, executorService, arrayBlockingQueue);
+            new DefaultPublisher<T>(nodeIdentifier, topicDeclaration, messageFactory, executorService, routingTable,
+                subscriberQueueCapacity, overflowPolicy);
         publisher.addListener(new DefaultPublisherListener<T>() {
           @Override
           public void onNewSubscriber(Publisher<T> publisher, SubscriberIdentifier subscriberIdentifier) {
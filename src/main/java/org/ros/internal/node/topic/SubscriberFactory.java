@@ -17,11 +17,16 @@
 package org.ros.internal.node.topic;
 
 import org.ros.internal.node.server.NodeIdentifier;
+import org.ros.internal.transport.ChannelHandlerContext;
+import org.ros.internal.transport.tcp.ChannelGroup;
 import org.ros.namespace.GraphName;
 import org.ros.node.topic.DefaultSubscriberListener;
 import org.ros.node.topic.Subscriber;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 
 /**
@@ -34,15 +39,55 @@ public class SubscriberFactory {
   private final NodeIdentifier nodeIdentifier;
   private final TopicParticipantManager topicParticipantManager;
   private final ScheduledExecutorService executorService;
+  private final ChannelGroup channelGroup;
   private final Object mutex;
+  private final Set<String> udpRosTopics = new HashSet<String>();
+  private int udpRosMaxDatagramSize = 0;
+  private int tcpRosMaxFrameSize = ChannelHandlerContext.DEFAULT_MAX_FRAME_SIZE;
 
   public SubscriberFactory(NodeIdentifier nodeIdentifier, TopicParticipantManager topicParticipantManager, ScheduledExecutorService executorService) {
+    this(nodeIdentifier, topicParticipantManager, executorService, null);
+  }
+
+  /**
+   * @param channelGroup
+   *          the node's selector group shared by the subscriber connections, or
+   *          null for a worker thread per connection
+   */
+  public SubscriberFactory(NodeIdentifier nodeIdentifier, TopicParticipantManager topicParticipantManager,
+      ScheduledExecutorService executorService, ChannelGroup channelGroup) {
+    this.channelGroup = channelGroup;
     this.nodeIdentifier = nodeIdentifier;
     this.topicParticipantManager = topicParticipantManager;
     this.executorService = executorService;
     mutex = new Object();
   }
 
+  /**
+   * @param topicNames
+   *          the resolved names of the topics whose new subscribers offer
+   *          UDPROS
+   * @param maxDatagramSize
+   *          the largest datagram they take
+   */
+  public void setUdpRosTopics(Collection<String> topicNames, int maxDatagramSize) {
+    synchronized (mutex) {
+      udpRosTopics.addAll(topicNames);
+      udpRosMaxDatagramSize = maxDatagramSize;
+    }
+  }
+
+  /**
+   * @param maxFrameSize
+   *          the largest message frame in bytes new subscribers take from a
+   *          TCPROS publisher
+   */
+  public void setTcpRosMaxFrameSize(int maxFrameSize) {
+    synchronized (mutex) {
+      tcpRosMaxFrameSize = maxFrameSize;
+    }
+  }
+
   /**
    * Gets or creates a {@link Subscriber} instance. {@link Subscriber}s are
    * cached and reused per topic. When a new {@link Subscriber} is generated, it
@@ -65,7 +110,11 @@ public class SubscriberFactory {
         return (DefaultSubscriber<T>) topicParticipantManager.getSubscriber(topicName);
       } else {
         DefaultSubscriber<T> subscriber =
-            DefaultSubscriber.newDefault(nodeIdentifier, topicDeclaration, executorService);
+            DefaultSubscriber.newDefault(nodeIdentifier, topicDeclaration, executorService, channelGroup);
+        subscriber.setTcpRosMaxFrameSize(tcpRosMaxFrameSize);
+        if (udpRosTopics.contains(topicName.toString())) {
+          subscriber.setUdpRosMaxDatagramSize(udpRosMaxDatagramSize);
+        }
         subscriber.addSubscriberListener(new DefaultSubscriberListener<T>() {
           @Override
           public void onNewPublisher(Subscriber<T> subscriber, PublisherIdentifier publisherIdentifier) {
@@ -2,11 +2,13 @@ package org.ros.internal.node.topic;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ros.exception.RosRuntimeException;
 import org.ros.internal.transport.BaseClientHandshakeHandler;
 import org.ros.internal.transport.ChannelHandlerContext;
 import org.ros.internal.transport.ChannelPipeline;
 import org.ros.internal.transport.ConnectionHeader;
 import org.ros.internal.transport.ConnectionHeaderFields;
+import org.ros.internal.transport.codec.MessageCodecs;
 import org.ros.internal.transport.queue.IncomingMessageQueue;
 import org.ros.internal.transport.tcp.NamedChannelHandler;
 import org.ros.node.topic.Publisher;
@@ -47,6 +49,14 @@ class SubscriberHandshakeHandler<T> extends BaseClientHandshakeHandler {
   protected void onSuccess(ConnectionHeader incomingConnectionHeader, ChannelHandlerContext ctx) {
 	if( DEBUG )
 		log.info("SubscriberHandshakeHandler.onSuccess:"+ctx+" "+incomingConnectionHeader);
+    if (incomingConnectionHeader.hasField(ConnectionHeaderFields.CODEC)) {
+      // the frames following the handshake reply are in the codec the publisher picked
+      try {
+        ctx.setMessageCodec(MessageCodecs.newCodec(incomingConnectionHeader));
+      } catch (IOException e) {
+        throw new RosRuntimeException(e);
+      }
+    }
     ChannelPipeline pipeline = ctx.pipeline();
     pipeline.remove(getName());
     NamedChannelHandler namedChannelHandler = incomingMessageQueue.getMessageReceiver();
@@ -4,11 +4,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.ros.internal.node.client.SlaveClient;
+import org.ros.internal.node.client.SlaveClientPool;
 import org.ros.internal.node.response.Response;
 import org.ros.internal.node.server.NodeIdentifier;
 import org.ros.internal.node.server.SlaveServer;
 import org.ros.internal.transport.ProtocolDescription;
 import org.ros.internal.transport.ProtocolNames;
+import org.ros.internal.transport.intraprocess.IntraProcessProtocolDescription;
+import org.ros.internal.transport.shm.SharedMemoryProtocolDescription;
+import org.ros.internal.transport.udp.UdpRosProtocolDescription;
+import org.ros.internal.transport.udp.UdpRosReceiver;
 import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 
@@ -45,17 +50,34 @@ class UpdatePublisherRunnable<MessageType> implements Runnable {
   @Override
   public void run() {
     SlaveClient slaveClient;
+    UdpRosReceiver<MessageType> udpRosReceiver = null;
+    boolean udpRosConnected = false;
     try {
-      log.info("Attempting to create SlaveClient:"+nodeIdentifier.getName()+" pub:"+publisherIdentifier.getNodeUri());
-      slaveClient = new SlaveClient(nodeIdentifier.getName(), publisherIdentifier.getNodeUri());
-      log.info("Slave client created "+nodeIdentifier.getName()+" pub:"+publisherIdentifier.getNodeUri());
+      if (subscriber.isConnectedTo(publisherIdentifier)) {
+        return;
+      }
+      log.info("Attempting to get SlaveClient:"+nodeIdentifier.getName()+" pub:"+publisherIdentifier.getNodeUri());
+      slaveClient = SlaveClientPool.getInstance().get(nodeIdentifier.getName(), publisherIdentifier.getNodeUri());
+      log.info("Slave client obtained "+nodeIdentifier.getName()+" pub:"+publisherIdentifier.getNodeUri());
       log.info("Requesting topic name "+subscriber.getTopicName());
+      udpRosReceiver = subscriber.newUdpRosReceiver();
       Response<ProtocolDescription> response =
-          slaveClient.requestTopic(subscriber.getTopicName(), ProtocolNames.SUPPORTED);
+          slaveClient.requestTopic(subscriber.getTopicName(), subscriber.getProtocolOffers(udpRosReceiver));
       // If null there is no publisher for the requested topic
       if( response != null ) {
     	  ProtocolDescription selected = response.getResult();
-    	  if (ProtocolNames.SUPPORTED.contains(selected.getName())) {
+    	  if (selected instanceof IntraProcessProtocolDescription &&
+    			  subscriber.addIntraProcessPublisher(publisherIdentifier, (IntraProcessProtocolDescription) selected)) {
+    		  log.info("Subscriber attached in process to publisher " + publisherIdentifier);
+    	  } else if (selected instanceof SharedMemoryProtocolDescription &&
+    			  subscriber.addSharedMemoryPublisher(publisherIdentifier, (SharedMemoryProtocolDescription) selected)) {
+    		  log.info("Subscriber reading shared memory ring of publisher " + publisherIdentifier);
+    	  } else if (selected instanceof UdpRosProtocolDescription && udpRosReceiver != null &&
+    			  subscriber.addUdpRosPublisher(publisherIdentifier, (UdpRosProtocolDescription) selected, udpRosReceiver)) {
+    		  udpRosConnected = true;
+    		  log.info("Subscriber receiving datagrams from publisher " + publisherIdentifier);
+    	  } else if (ProtocolNames.SUPPORTED.contains(selected.getName())) {
+    		  // an intra process, shared memory or datagram answer we cannot use falls through to the TCPROS address it carries
     		  subscriber.addPublisher(publisherIdentifier, selected.getAddress());
     	  } else {
     		  log.error("Publisher returned unsupported protocol selection: " + response);
@@ -67,6 +89,12 @@ class UpdatePublisherRunnable<MessageType> implements Runnable {
       // TODO(damonkohler): Retry logic is needed at the RPC layer.
       log.error(e);
       e.printStackTrace();
+    } finally {
+      // an offered socket the publisher did not take
+      if (udpRosReceiver != null && !udpRosConnected) {
+        udpRosReceiver.close();
+      }
+      subscriber.doneConnecting(publisherIdentifier);
     }
   }
 }
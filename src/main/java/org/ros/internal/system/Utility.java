@@ -1,6 +1,7 @@
 package org.ros.internal.system;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -61,4 +62,39 @@ public class Utility {
 				
 	}
 
+	/**
+	 * Serialize the object to a standalone byte array, one complete object stream per call.
+	 * Used by the framed transports which prepend the length of the returned array on the wire.
+	 * @param value The object to serialize
+	 * @return The serialized bytes
+	 * @throws IOException
+	 */
+	public static byte[] serialize(Object value) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(value);
+		oos.flush();
+		oos.close();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Deserialize an object from a region of a byte array previously produced by {@link #serialize(Object)}.
+	 * @param buf The buffer
+	 * @param offset Offset of the serialized object in buf
+	 * @param length Length of the serialized object
+	 * @return The deserialized object
+	 * @throws IOException if the bytes are malformed or the class cannot be resolved
+	 */
+	public static Object deserialize(byte[] buf, int offset, int length) throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(buf, offset, length));
+		try {
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		} finally {
+			ois.close();
+		}
+	}
+
 }
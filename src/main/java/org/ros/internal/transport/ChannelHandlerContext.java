@@ -3,13 +3,14 @@ package org.ros.internal.transport;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 
 import java.nio.channels.Channel;
 import java.nio.channels.CompletionHandler;
 
-import java.util.Set;
 import java.util.concurrent.Executor;
 
+import org.ros.internal.transport.codec.MessageCodec;
 import org.ros.internal.transport.tcp.ChannelGroup;
 
 /**
@@ -19,6 +20,11 @@ import org.ros.internal.transport.tcp.ChannelGroup;
  *
  */
 public interface ChannelHandlerContext {
+	/**
+	 * The largest frame payload a channel accepts unless configured otherwise, 64 megabytes.
+	 */
+	int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
 	 /**
      * Return the {@link Socket} which is bound to the {@link ChannelHandlerContext}.
      */
@@ -91,6 +97,29 @@ public interface ChannelHandlerContext {
      */
     void write(Object msg) throws IOException;
 
+    /**
+     * Write a frame already encoded by a stateless codec of the same name as this channel's {@link MessageCodec}.
+     * Used to fan one encoding of a message out to many channels; the bytes of the frame are not modified and may be
+     * shared with other channels, only the position of the buffer passed in is advanced.
+     * @param frame The frame, length and payload
+     * @throws IOException
+     */
+    void writeFrame(ByteBuffer frame) throws IOException;
+
+    /**
+     * Determine if a write would be taken by the socket now. A blocking channel is always writable as its writes
+     * wait for the socket, a non blocking channel is not while it holds bytes the socket has not taken yet.
+     * @return true if nothing is waiting to go out on the channel
+     */
+    boolean isWritable();
+
+    /**
+     * Set the listener run when a channel that was not writable becomes writable again, from the thread
+     * that flushed it. A blocking channel never calls it.
+     * @param listener
+     */
+    void setWritabilityListener(Runnable listener);
+
     /**
      * Return the assigned {@link ChannelPipeline}
      */
@@ -122,12 +151,29 @@ public interface ChannelHandlerContext {
     Object getChannelCompletionMutex();
     
     /**
-     * Each successive handshake completion will add another message type to this synchronized set.
-     * This set is used to determine whether a message placed on the outbound queue will be sent to the
-     * channel in the context.
-     * @return The synchronized hash set of message type strings
+     * Switch the channel to the {@link MessageCodec} agreed in the handshake.
+     * Frames written and read after this call are encoded and decoded by it. Until then, which covers the
+     * handshake itself, a {@link org.ros.internal.transport.codec.JavaSerializationCodec} is used.
+     * @param codec The codec instance for this channel
+     */
+    void setMessageCodec(MessageCodec codec);
+
+    /**
+     * @return The {@link MessageCodec} of this channel
+     */
+    MessageCodec getMessageCodec();
+
+    /**
+     * Bound the frames this channel reads. The length of a frame comes from the peer, a frame announcing
+     * more than this many bytes fails the read with an IOException before any buffer is sized for it.
+     * @param maxFrameSize The largest payload in bytes, positive and leaving room for the 4 byte length
+     */
+    void setMaxFrameSize(int maxFrameSize);
+
+    /**
+     * @return The largest frame payload in bytes this channel reads
      */
-    Set<String> getMessageTypes();
+    int getMaxFrameSize();
 
     /**
      * Write with the named {@link CompletionHandler}
@@ -1,19 +1,20 @@
 package org.ros.internal.transport;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.CompletionHandler;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.concurrent.Executor;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ros.internal.transport.codec.JavaSerializationCodec;
+import org.ros.internal.transport.codec.MessageCodec;
 import org.ros.internal.transport.tcp.ChannelGroup;
 
 
@@ -28,7 +29,11 @@ import org.ros.internal.transport.tcp.ChannelGroup;
  * them in order in the pipeline deque.
  * The functions of the system move data through the pipeline, triggering the handlers in the sequence they were
  * added.
- * Traffic is filtered to subscriber channels via the hash set of requested message types
+ * Publishers reach subscriber channels through the {@link org.ros.internal.transport.queue.TopicRoutingTable}
+ * filled in as each handshake completes.
+ * Each message travels as a frame of a 4 byte length followed by that many bytes of payload encoded by the
+ * {@link MessageCodec} of the channel, the same wire format used by {@link org.ros.internal.transport.tcp.SelectorChannelHandlerContext}
+ * so either end may use the blocking or the selector transport.
  * @author jg
  *
  */
@@ -41,16 +46,17 @@ public class ChannelHandlerContextImpl implements ChannelHandlerContext {
 	ChannelPipeline pipeline;
 	boolean ready = false;
 	Object mutex = new Object();
-	Set<String> outboundMessageTypes;
-	InputStream is = null;
-	OutputStream os = null;
+	DataInputStream is = null;
+	DataOutputStream os = null;
+	private final Object writeLock = new Object();
+	private volatile MessageCodec codec = new JavaSerializationCodec();
+	private volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
 
 	public ChannelHandlerContextImpl(/*Asynchronous*/ChannelGroup channelGroup2, /*Asynchronous*/Socket channel2, Executor exc) {
 		channelGroup = channelGroup2;
 		channel = channel2;
 		executor = exc;
 		pipeline = new ChannelPipelineImpl(this);
-		outboundMessageTypes = (Set<String>) new HashSet<String>();
 	}
 	
 	public void setChannel(/*Asynchronous*/Socket/*Channel*/ sock) {
@@ -115,21 +121,38 @@ public class ChannelHandlerContextImpl implements ChannelHandlerContext {
 
 	@Override
 	public Object read() throws IOException {
-		is = channel.getInputStream();
-		ObjectInputStream ois = new ObjectInputStream(is);
-		try {
-			return ois.readObject();
-		} catch (ClassNotFoundException e) {
-			throw new IOException(e);
-		}
+		if( is == null )
+			is = new DataInputStream(new BufferedInputStream(channel.getInputStream()));
+		int length = is.readInt();
+		if( length < 0 )
+			throw new IOException("Invalid frame length "+length+" from "+channel);
+		if( length > maxFrameSize )
+			throw new IOException("Frame length "+length+" from "+channel+" exceeds maximum "+maxFrameSize);
+		byte[] frame = new byte[length];
+		is.readFully(frame);
+		return codec.decode(frame, 0, length);
 	}
 
 	@Override
 	public void write(Object msg) throws IOException {
-		os = channel.getOutputStream();
-		ObjectOutputStream oos = new ObjectOutputStream(os);
-		oos.writeObject(msg);
-		oos.flush();
+		synchronized(writeLock) {
+			if( os == null )
+				os = new DataOutputStream(new BufferedOutputStream(channel.getOutputStream()));
+			ByteBuffer frame = codec.encodeFrame(msg);
+			os.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+			os.flush();
+		}
+	}
+
+	@Override
+	public void writeFrame(ByteBuffer frame) throws IOException {
+		synchronized(writeLock) {
+			if( os == null )
+				os = new DataOutputStream(new BufferedOutputStream(channel.getOutputStream()));
+			os.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+			frame.position(frame.limit());
+			os.flush();
+		}
 	}
 
 	@Override
@@ -192,12 +215,35 @@ public class ChannelHandlerContextImpl implements ChannelHandlerContext {
 	 */
 	public Object getChannelCompletionMutex() { return mutex; }
 	
+
+	@Override
+	public void setMessageCodec(MessageCodec codec) {
+		synchronized(writeLock) {
+			this.codec = codec;
+		}
+	}
+
 	/**
-	 * Get the type of messages we want to send to the attached subscriber, based on the handshakes
-	 * received.
-	 * @return The HashSet of message type as String
+	 * Writes block until the socket takes them, so the channel is always writable.
 	 */
-	public Set<String> getMessageTypes() { return outboundMessageTypes; }
+	@Override
+	public boolean isWritable() { return true; }
+
+	@Override
+	public void setWritabilityListener(Runnable listener) {}
+
+	@Override
+	public MessageCodec getMessageCodec() { return codec; }
+
+	@Override
+	public void setMaxFrameSize(int maxFrameSize) {
+		if( maxFrameSize <= 0 || maxFrameSize > Integer.MAX_VALUE - 4 )
+			throw new IllegalArgumentException("Invalid maximum frame size "+maxFrameSize);
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	@Override
+	public int getMaxFrameSize() { return maxFrameSize; }
 	
 	
 }
@@ -34,4 +34,13 @@ public interface ConnectionHeaderFields {
   public static final String MESSAGE_DEFINITION = "message_definition";
   public static final String ERROR = "error";
   public static final String PROBE = "probe";
+  /**
+   * Sent by a publisher that encodes with an {@link ObjectStreamSession}, the reset interval as the value.
+   */
+  public static final String STREAM_SESSION = "stream_session";
+  /**
+   * The comma separated message codecs a subscriber offers, and the one the publisher picked in its reply.
+   * @see org.ros.internal.transport.codec.MessageCodecs
+   */
+  public static final String CODEC = "codec";
 }
@@ -0,0 +1,91 @@
+package org.ros.internal.transport;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.ros.internal.transport.codec.FrameInputStream;
+import org.ros.internal.transport.codec.FrameOutputStream;
+
+/**
+ * One long lived pair of object streams for a channel, carried over the length prefixed frames of the transport.
+ * Instead of a fresh ObjectOutputStream per message, which resends the stream header and every class descriptor,
+ * the encoder writes all messages into the same stream so each class descriptor crosses the wire once and later
+ * messages refer back to it by handle. Every resetInterval messages the stream is reset(), which bounds the handle
+ * table (and the objects it keeps reachable) on both ends; the reset marker travels in the frame of the next message.
+ * <p>
+ * Since objects already written are sent as back references, a message must not be modified after it has been
+ * published, which is already the case as the outgoing queue serializes asynchronously.
+ * <p>
+ * Encoding and decoding are independent halves, a publisher only encodes and a subscriber only decodes. Callers
+ * serialize access to each half, the contexts encode under their write lock and decode from their single reader.
+ * @author jg
+ *
+ */
+public class ObjectStreamSession {
+	public static final int DEFAULT_RESET_INTERVAL = 100;
+	private final int resetInterval;
+	private FrameOutputStream frameOut = null;
+	private ObjectOutputStream oos = null;
+	private int sinceReset = 0;
+	private FrameInputStream frameIn = null;
+	private ObjectInputStream ois = null;
+
+	/**
+	 * @param resetInterval The number of messages written between stream resets, at least 1
+	 */
+	public ObjectStreamSession(int resetInterval) {
+		if( resetInterval <= 0 )
+			throw new IllegalArgumentException("Reset interval must be positive, not "+resetInterval);
+		this.resetInterval = resetInterval;
+	}
+
+	public int getResetInterval() { return resetInterval; }
+
+	/**
+	 * Encode the message as a complete frame, 4 byte length and payload.
+	 * The returned buffer is a view of the session's buffer and is only valid until the next call.
+	 * @param msg The message
+	 * @return The frame, positioned to be written
+	 * @throws IOException
+	 */
+	public ByteBuffer encodeFrame(Object msg) throws IOException {
+		if( oos == null ) {
+			frameOut = new FrameOutputStream();
+			// the stream header goes out with the first frame
+			oos = new ObjectOutputStream(frameOut);
+		}
+		if( sinceReset >= resetInterval ) {
+			oos.reset();
+			sinceReset = 0;
+		}
+		oos.writeObject(msg);
+		oos.flush();
+		++sinceReset;
+		ByteBuffer frame = frameOut.toFrame();
+		frameOut.reset();
+		return frame;
+	}
+
+	/**
+	 * Decode the next message from a frame payload written by the peer's {@link #encodeFrame(Object)}.
+	 * @param buf
+	 * @param offset
+	 * @param length
+	 * @return The message
+	 * @throws IOException
+	 */
+	public Object decode(byte[] buf, int offset, int length) throws IOException {
+		if( frameIn == null )
+			frameIn = new FrameInputStream();
+		frameIn.setFrame(buf, offset, length);
+		try {
+			if( ois == null )
+				ois = new ObjectInputStream(frameIn);
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -11,11 +11,18 @@ public final class ProtocolNames implements Serializable {
   private static final long serialVersionUID = -7758680000961964374L;
   public static String TCPROS = "TCPROS";
   public static String UDPROS = "UDPROS";
+  // publisher and subscriber in the same JVM, messages are handed over by reference
+  public static String INTRAPROCESS = "INTRAPROCESS";
+  // publisher and subscriber on the same host, messages go through a memory mapped ring
+  public static String SHMROS = "SHMROS";
   public static Collection<String> SUPPORTED = new HashSet<String>();
   public static Collection<String> TCP = new HashSet<String>();
   public static Collection<String> UDP = new HashSet<String>();
   static {
 	  SUPPORTED.add(TCPROS);
+	  SUPPORTED.add(INTRAPROCESS);
+	  SUPPORTED.add(SHMROS);
+	  SUPPORTED.add(UDPROS);
 	  TCP.add(TCPROS);
 	  UDP.add(UDPROS);
   }
@@ -0,0 +1,18 @@
+package org.ros.internal.transport.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Implemented by generated message classes to be carried by the {@link FastMessageCodec}.
+ * The message writes and reads its own fields in declaration order, no class descriptors and no reflection.
+ * Nested messages call through to their own writeTo/readFrom.
+ * @author jg
+ *
+ */
+public interface FastMessage {
+	void writeTo(DataOutput out) throws IOException;
+
+	void readFrom(DataInput in) throws IOException;
+}
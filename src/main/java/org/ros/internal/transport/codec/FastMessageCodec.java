@@ -0,0 +1,114 @@
+package org.ros.internal.transport.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ros.internal.transport.ConnectionHeader;
+import org.ros.internal.transport.ConnectionHeaderFields;
+
+/**
+ * Reflection free codec for the generated message classes implementing {@link FastMessage}.
+ * The payload is exactly the fields the message writes, no stream header, class descriptors or handles,
+ * and decoding allocates the message through a registered {@link Factory} rather than by reflection.
+ * The message type is fixed per topic by the handshake so it is not repeated in the frames.
+ * <p>
+ * A message type is carried by this codec once its factory is registered, typically from the static
+ * initializer of the generated class:
+ * <pre>
+ * FastMessageCodec.register("sensor_msgs/Imu", new FastMessageCodec.Factory() {
+ *   public FastMessage newMessage() { return new Imu(); }
+ * });
+ * </pre>
+ * @author jg
+ *
+ */
+public class FastMessageCodec implements MessageCodec {
+	public static final String NAME = "fast";
+	private static final ConcurrentHashMap<String, Factory> factories = new ConcurrentHashMap<String, Factory>();
+
+	/**
+	 * Creates empty messages of one type for the decoder to fill in.
+	 */
+	public interface Factory {
+		FastMessage newMessage();
+	}
+
+	/**
+	 * @param messageType The ROS message type, such as sensor_msgs/Imu
+	 * @param factory Creates empty messages of the type
+	 */
+	public static void register(String messageType, Factory factory) {
+		factories.put(messageType, factory);
+	}
+
+	public static boolean isRegistered(String messageType) {
+		return messageType != null && factories.containsKey(messageType);
+	}
+
+	private final String messageType;
+	private final Factory factory;
+	private final FrameOutputStream frameOut = new FrameOutputStream();
+	private final DataOutputStream out = new DataOutputStream(frameOut);
+	private final FrameInputStream frameIn = new FrameInputStream();
+	private final DataInputStream in = new DataInputStream(frameIn);
+
+	public FastMessageCodec(String messageType) {
+		this.messageType = messageType;
+		this.factory = factories.get(messageType);
+		assert(factory != null) : "No fast message factory registered for "+messageType;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean isStateless() {
+		return true;
+	}
+
+	@Override
+	public ByteBuffer encodeFrame(Object msg) throws IOException {
+		if( !(msg instanceof FastMessage) )
+			throw new IOException("Message "+msg.getClass().getName()+" on "+messageType+" topic is not a FastMessage");
+		frameOut.reset();
+		((FastMessage)msg).writeTo(out);
+		out.flush();
+		return frameOut.toFrame();
+	}
+
+	@Override
+	public MessageCodec newEncoder() {
+		return new FastMessageCodec(messageType);
+	}
+
+	@Override
+	public Object decode(byte[] buf, int offset, int length) throws IOException {
+		frameIn.setFrame(buf, offset, length);
+		FastMessage msg = factory.newMessage();
+		msg.readFrom(in);
+		return msg;
+	}
+
+	static final class FastMessageCodecFactory implements MessageCodecFactory {
+		@Override
+		public String getName() {
+			return NAME;
+		}
+		@Override
+		public boolean supports(String messageType) {
+			return isRegistered(messageType);
+		}
+		@Override
+		public MessageCodec newCodec(ConnectionHeader header) throws IOException {
+			String messageType = header.getField(ConnectionHeaderFields.TYPE);
+			if( !isRegistered(messageType) )
+				throw new IOException("No fast message factory registered for "+messageType);
+			return new FastMessageCodec(messageType);
+		}
+	}
+}
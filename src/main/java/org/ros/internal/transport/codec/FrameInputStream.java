@@ -0,0 +1,43 @@
+package org.ros.internal.transport.codec;
+
+import java.io.InputStream;
+
+/**
+ * Input stream over the payload of the current frame, repositioned for each frame so decoders can keep
+ * one stream for the life of the channel. Reads past the end of the frame see end of stream.
+ * @author jg
+ *
+ */
+public final class FrameInputStream extends InputStream {
+	private byte[] buf;
+	private int pos;
+	private int limit;
+
+	public void setFrame(byte[] buf, int offset, int length) {
+		this.buf = buf;
+		this.pos = offset;
+		this.limit = offset + length;
+	}
+
+	@Override
+	public int read() {
+		return pos < limit ? (buf[pos++] & 0xff) : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if( len == 0 )
+			return 0;
+		int n = Math.min(len, limit - pos);
+		if( n <= 0 )
+			return -1;
+		System.arraycopy(buf, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return limit - pos;
+	}
+}
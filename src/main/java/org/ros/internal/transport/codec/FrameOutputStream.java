@@ -0,0 +1,40 @@
+package org.ros.internal.transport.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Output buffer for one frame at a time, reused across messages.
+ * The first 4 bytes are reserved for the frame length which {@link #toFrame()} fills in, so a codec writes the
+ * payload and hands the whole frame to the channel without another copy.
+ * @author jg
+ *
+ */
+public final class FrameOutputStream extends ByteArrayOutputStream {
+
+	public FrameOutputStream() {
+		this(4096);
+	}
+
+	public FrameOutputStream(int size) {
+		super(size + 4);
+		count = 4;
+	}
+
+	/**
+	 * Discard the payload, keeping the buffer.
+	 */
+	@Override
+	public synchronized void reset() {
+		count = 4;
+	}
+
+	/**
+	 * @return The frame, length and payload, as a view of this buffer valid until the next write or reset
+	 */
+	public ByteBuffer toFrame() {
+		ByteBuffer frame = ByteBuffer.wrap(buf, 0, count);
+		frame.putInt(0, count - 4);
+		return frame;
+	}
+}
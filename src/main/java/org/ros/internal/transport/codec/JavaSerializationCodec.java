@@ -0,0 +1,48 @@
+package org.ros.internal.transport.codec;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.ros.internal.system.Utility;
+
+/**
+ * The fallback codec, one standalone Java serialization stream per message.
+ * Works for any Serializable message and any peer, at the cost of resending the stream header and class
+ * descriptors with every message.
+ * @author jg
+ *
+ */
+public class JavaSerializationCodec implements MessageCodec {
+	public static final String NAME = "java";
+	private final FrameOutputStream frameOut = new FrameOutputStream();
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean isStateless() {
+		return true;
+	}
+
+	@Override
+	public ByteBuffer encodeFrame(Object msg) throws IOException {
+		frameOut.reset();
+		ObjectOutputStream oos = new ObjectOutputStream(frameOut);
+		oos.writeObject(msg);
+		oos.flush();
+		return frameOut.toFrame();
+	}
+
+	@Override
+	public MessageCodec newEncoder() {
+		return new JavaSerializationCodec();
+	}
+
+	@Override
+	public Object decode(byte[] buf, int offset, int length) throws IOException {
+		return Utility.deserialize(buf, offset, length);
+	}
+}
@@ -0,0 +1,47 @@
+package org.ros.internal.transport.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.ros.internal.transport.ObjectStreamSession;
+
+/**
+ * Java serialization over one long lived {@link ObjectStreamSession} per channel, so class descriptors cross
+ * the wire once. The publisher's reset interval travels in the handshake as
+ * {@link org.ros.internal.transport.ConnectionHeaderFields#STREAM_SESSION}.
+ * @author jg
+ *
+ */
+public class JavaStreamCodec implements MessageCodec {
+	public static final String NAME = "java_stream";
+	private final ObjectStreamSession session;
+
+	public JavaStreamCodec(int resetInterval) {
+		session = new ObjectStreamSession(resetInterval);
+	}
+
+	@Override
+	public MessageCodec newEncoder() {
+		return new JavaStreamCodec(session.getResetInterval());
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean isStateless() {
+		return false;
+	}
+
+	@Override
+	public ByteBuffer encodeFrame(Object msg) throws IOException {
+		return session.encodeFrame(msg);
+	}
+
+	@Override
+	public Object decode(byte[] buf, int offset, int length) throws IOException {
+		return session.decode(buf, offset, length);
+	}
+}
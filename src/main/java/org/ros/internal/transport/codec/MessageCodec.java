@@ -0,0 +1,53 @@
+package org.ros.internal.transport.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format of the messages on a channel. The codec is agreed per topic in the {@link org.ros.internal.transport.ConnectionHeader}
+ * handshake, see {@link MessageCodecs}, and each channel holds its own instance from then on.
+ * Every message travels as a frame, a 4 byte length followed by that many bytes of payload, so a reader
+ * sizes its buffer exactly before decoding.
+ * <p>
+ * An instance is used by one writer and one reader at a time; the channel contexts encode under their write lock.
+ * @author jg
+ *
+ */
+public interface MessageCodec {
+	/**
+	 * @return The name the codec is negotiated by in the handshake
+	 */
+	String getName();
+
+	/**
+	 * A stateless codec encodes a message to the same bytes whatever it encoded before, so a frame may be
+	 * written to any channel using a codec of the same name.
+	 * @return true if frames carry no state from previous frames
+	 */
+	boolean isStateless();
+
+	/**
+	 * Encode the message as a complete frame.
+	 * @param msg The message
+	 * @return The frame, length and payload, positioned to be written. Only valid until the next call.
+	 * @throws IOException If the message cannot be encoded
+	 */
+	ByteBuffer encodeFrame(Object msg) throws IOException;
+
+	/**
+	 * Decode a message from the payload of a frame.
+	 * @param buf
+	 * @param offset Start of the payload in buf
+	 * @param length Length of the payload
+	 * @return The message
+	 * @throws IOException If the payload is malformed
+	 */
+	Object decode(byte[] buf, int offset, int length) throws IOException;
+
+	/**
+	 * A fresh instance for encoding the same messages on another thread. For a stateless codec its frames are
+	 * interchangeable with this one's, which is what lets a publisher encode a message once for all its subscribers.
+	 * @return A new codec of the same name and parameters
+	 */
+	MessageCodec newEncoder();
+}
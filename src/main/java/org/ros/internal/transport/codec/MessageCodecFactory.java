@@ -0,0 +1,31 @@
+package org.ros.internal.transport.codec;
+
+import java.io.IOException;
+
+import org.ros.internal.transport.ConnectionHeader;
+
+/**
+ * Service provider for a {@link MessageCodec}, registered with {@link MessageCodecs}.
+ * @author jg
+ *
+ */
+public interface MessageCodecFactory {
+	/**
+	 * @return The name the codec is negotiated by in the handshake
+	 */
+	String getName();
+
+	/**
+	 * @param messageType The ROS message type of the topic, such as sensor_msgs/Imu
+	 * @return true if the codec can carry messages of the type
+	 */
+	boolean supports(String messageType);
+
+	/**
+	 * Create the codec for one channel.
+	 * @param header The publisher's handshake reply, carrying the message type and any codec parameters
+	 * @return A new codec instance
+	 * @throws IOException if the codec can not carry the message type the header names
+	 */
+	MessageCodec newCodec(ConnectionHeader header) throws IOException;
+}
@@ -0,0 +1,83 @@
+package org.ros.internal.transport.codec;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ros.internal.transport.ConnectionHeader;
+import org.ros.internal.transport.ConnectionHeaderFields;
+
+/**
+ * The publishing side of the codec negotiation for a node. Picks the codec of each subscriber connection
+ * from what the subscriber offers, the message type of the topic and the node's configuration:
+ * an explicit codec configured for the topic if the subscriber offers it and it carries the type, otherwise the
+ * most preferred registered codec both ends support. {@link JavaStreamCodec} is only chosen when a stream reset
+ * interval is configured, as it requires published messages to stay unmodified.
+ * @author jg
+ *
+ */
+public class MessageCodecSelector {
+	private volatile int streamResetInterval = 0;
+	private final Map<String, String> topicCodecs = new ConcurrentHashMap<String, String>();
+
+	public int getStreamResetInterval() { return streamResetInterval; }
+
+	/**
+	 * @param streamResetInterval Messages between resets of a {@link JavaStreamCodec}, 0 to never choose that codec
+	 */
+	public void setStreamResetInterval(int streamResetInterval) { this.streamResetInterval = streamResetInterval; }
+
+	/**
+	 * @param topicName The resolved topic name, such as /odom
+	 * @param codecName The name of the codec to prefer for the topic
+	 */
+	public void setTopicCodec(String topicName, String codecName) {
+		topicCodecs.put(topicName, codecName);
+	}
+
+	public void setTopicCodecs(Map<String, String> codecs) {
+		topicCodecs.putAll(codecs);
+	}
+
+	/**
+	 * @param topicName
+	 * @param messageType
+	 * @param offered The subscriber's {@link ConnectionHeaderFields#CODEC} field, may be null
+	 * @return The name of the codec for the connection
+	 */
+	public String select(String topicName, String messageType, String offered) {
+		if( offered == null )
+			return JavaSerializationCodec.NAME;
+		Set<String> offers = new HashSet<String>(Arrays.asList(offered.split(",")));
+		String preferred = topicCodecs.get(topicName);
+		if( preferred != null && acceptable(preferred, messageType, offers) )
+			return preferred;
+		for(MessageCodecFactory factory : MessageCodecs.getFactories()) {
+			if( acceptable(factory.getName(), messageType, offers) )
+				return factory.getName();
+		}
+		return JavaSerializationCodec.NAME;
+	}
+
+	private boolean acceptable(String name, String messageType, Set<String> offers) {
+		if( !offers.contains(name) )
+			return false;
+		if( name.equals(JavaStreamCodec.NAME) && streamResetInterval <= 0 )
+			return false;
+		MessageCodecFactory factory = MessageCodecs.get(name);
+		return factory != null && factory.supports(messageType);
+	}
+
+	/**
+	 * Name the selected codec, and its parameters, in the handshake reply.
+	 * @param codecName
+	 * @param reply
+	 */
+	public void addToReply(String codecName, ConnectionHeader reply) {
+		reply.addField(ConnectionHeaderFields.CODEC, codecName);
+		if( codecName.equals(JavaStreamCodec.NAME) )
+			reply.addField(ConnectionHeaderFields.STREAM_SESSION, String.valueOf(streamResetInterval));
+	}
+}
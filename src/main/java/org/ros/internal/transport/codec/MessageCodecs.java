@@ -0,0 +1,149 @@
+package org.ros.internal.transport.codec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.ros.internal.transport.ConnectionHeader;
+import org.ros.internal.transport.ConnectionHeaderFields;
+import org.ros.internal.transport.ObjectStreamSession;
+
+/**
+ * Registry of the {@link MessageCodecFactory}s known to this process, in order of preference.
+ * The built in codecs are {@link FastMessageCodec}, {@link JavaStreamCodec} and {@link JavaSerializationCodec},
+ * the last being the fallback every peer speaks. Codecs registered by the application are preferred to the built in ones.
+ * <p>
+ * The negotiation: a subscriber offers every registered codec name that can carry the topic's message type in the
+ * {@link ConnectionHeaderFields#CODEC} field of its handshake, the publisher picks one with its {@link MessageCodecSelector} and names it in its reply, and both
+ * ends switch to a new instance of that codec for the frames following the handshake. A peer that does not send
+ * the field gets plain Java serialization.
+ * @author jg
+ *
+ */
+public final class MessageCodecs {
+	private static final CopyOnWriteArrayList<MessageCodecFactory> factories = new CopyOnWriteArrayList<MessageCodecFactory>();
+
+	static {
+		factories.add(new FastMessageCodec.FastMessageCodecFactory());
+		factories.add(new MessageCodecFactory() {
+			@Override
+			public String getName() {
+				return JavaStreamCodec.NAME;
+			}
+			@Override
+			public boolean supports(String messageType) {
+				return true;
+			}
+			@Override
+			public MessageCodec newCodec(ConnectionHeader header) {
+				return new JavaStreamCodec(resetInterval(header.getField(ConnectionHeaderFields.STREAM_SESSION)));
+			}
+		});
+		factories.add(new MessageCodecFactory() {
+			@Override
+			public String getName() {
+				return JavaSerializationCodec.NAME;
+			}
+			@Override
+			public boolean supports(String messageType) {
+				return true;
+			}
+			@Override
+			public MessageCodec newCodec(ConnectionHeader header) {
+				return new JavaSerializationCodec();
+			}
+		});
+	}
+
+	private MessageCodecs() {}
+
+	/**
+	 * @param interval The peer's {@link ConnectionHeaderFields#STREAM_SESSION} field, may be null
+	 * @return The reset interval it names, or the default if it is missing, malformed or not positive
+	 */
+	static int resetInterval(String interval) {
+		if( interval == null )
+			return ObjectStreamSession.DEFAULT_RESET_INTERVAL;
+		try {
+			int resetInterval = Integer.parseInt(interval.trim());
+			return resetInterval > 0 ? resetInterval : ObjectStreamSession.DEFAULT_RESET_INTERVAL;
+		} catch (NumberFormatException e) {
+			return ObjectStreamSession.DEFAULT_RESET_INTERVAL;
+		}
+	}
+
+	/**
+	 * Register a codec, preferred over those already registered. A codec of the same name is replaced.
+	 * @param factory
+	 */
+	public static synchronized void register(MessageCodecFactory factory) {
+		MessageCodecFactory existing = get(factory.getName());
+		if( existing != null )
+			factories.remove(existing);
+		factories.add(0, factory);
+	}
+
+	/**
+	 * @param name
+	 * @return The factory registered under name, or null
+	 */
+	public static MessageCodecFactory get(String name) {
+		for(MessageCodecFactory factory : factories)
+			if( factory.getName().equals(name) )
+				return factory;
+		return null;
+	}
+
+	/**
+	 * @return The registered factories, most preferred first
+	 */
+	public static List<MessageCodecFactory> getFactories() {
+		return factories;
+	}
+
+	/**
+	 * @return The comma separated codec names a subscriber offers in its handshake
+	 */
+	public static String getOffer() {
+		StringBuilder sb = new StringBuilder();
+		for(MessageCodecFactory factory : factories) {
+			if( sb.length() > 0 )
+				sb.append(',');
+			sb.append(factory.getName());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param messageType The message type of the topic
+	 * @return The comma separated names of the codecs that can carry the type, for a subscriber to offer in its
+	 *         handshake, so a publisher never picks one we could not decode with
+	 */
+	public static String getOffer(String messageType) {
+		StringBuilder sb = new StringBuilder();
+		for(MessageCodecFactory factory : factories) {
+			if( !factory.supports(messageType) )
+				continue;
+			if( sb.length() > 0 )
+				sb.append(',');
+			sb.append(factory.getName());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Create the codec a publisher named in its handshake reply.
+	 * @param header The publisher's handshake reply
+	 * @return The codec, a {@link JavaSerializationCodec} if the reply names none
+	 * @throws IOException If the named codec is not registered here, or can not carry the message type
+	 */
+	public static MessageCodec newCodec(ConnectionHeader header) throws IOException {
+		String name = header.getField(ConnectionHeaderFields.CODEC);
+		if( name == null )
+			return new JavaSerializationCodec();
+		MessageCodecFactory factory = get(name);
+		if( factory == null )
+			throw new IOException("Unknown message codec "+name);
+		return factory.newCodec(header);
+	}
+}
@@ -0,0 +1,55 @@
+package org.ros.internal.transport.intraprocess;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.ros.address.AdvertiseAddress;
+import org.ros.internal.transport.ProtocolDescription;
+import org.ros.internal.transport.ProtocolNames;
+
+/**
+ * The publisher's answer to a subscriber that offered {@link ProtocolNames#INTRAPROCESS}.
+ * It names the process the publisher lives in along with the publisher node's TCPROS address. A subscriber in
+ * the same process attaches to the publisher directly, any other subscriber connects to the address as it would
+ * for {@link ProtocolNames#TCPROS}, so offering the protocol never costs another round trip.
+ * @author jg
+ *
+ */
+public class IntraProcessProtocolDescription extends ProtocolDescription implements Serializable {
+	private static final long serialVersionUID = 5215387746102355614L;
+	private String processId;
+
+	public IntraProcessProtocolDescription() { super(); }
+
+	/**
+	 * @param address The TCPROS address of the publisher's node
+	 * @param processId The {@link IntraProcessRegistry#PROCESS_ID} of the publisher's process
+	 */
+	public IntraProcessProtocolDescription(AdvertiseAddress address, String processId) {
+		super(ProtocolNames.INTRAPROCESS, address);
+		this.processId = processId;
+	}
+
+	public String getProcessId() {
+		return processId;
+	}
+
+	/**
+	 * @return true if the publisher lives in this process
+	 */
+	public boolean isLocal() {
+		return IntraProcessRegistry.PROCESS_ID.equals(processId);
+	}
+
+	@Override
+	public List<Object> toList() {
+		List<Object> l1 = super.toList();
+		l1.add(processId);
+		return l1;
+	}
+
+	@Override
+	public String toString() {
+		return "Protocol<" + getName() + ", " + getAdverstiseAddress() + ", " + processId + ">";
+	}
+}
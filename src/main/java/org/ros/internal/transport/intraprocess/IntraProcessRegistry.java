@@ -0,0 +1,59 @@
+package org.ros.internal.transport.intraprocess;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ros.address.AdvertiseAddress;
+import org.ros.internal.node.topic.DefaultPublisher;
+import org.ros.internal.node.topic.TopicParticipantManager;
+import org.ros.namespace.GraphName;
+
+/**
+ * The nodes running in this JVM, by the TCPROS address they advertise.
+ * A node's slave server registers its {@link TopicParticipantManager} when it starts, so a subscriber handed an
+ * {@link IntraProcessProtocolDescription} from this process can find the publisher behind the address and
+ * attach to it without a socket.
+ * @author jg
+ *
+ */
+public final class IntraProcessRegistry {
+	/**
+	 * Identifies this JVM to publishers and subscribers in others.
+	 */
+	public static final String PROCESS_ID = UUID.randomUUID().toString();
+
+	private static final ConcurrentHashMap<String, TopicParticipantManager> nodes =
+			new ConcurrentHashMap<String, TopicParticipantManager>();
+
+	private IntraProcessRegistry() {}
+
+	private static String key(AdvertiseAddress address) {
+		return address.getHost() + ":" + address.getPort();
+	}
+
+	/**
+	 * @param address The TCPROS address of the node
+	 * @param topicParticipantManager The publishers and subscribers of the node
+	 */
+	public static void register(AdvertiseAddress address, TopicParticipantManager topicParticipantManager) {
+		nodes.put(key(address), topicParticipantManager);
+	}
+
+	public static void unregister(AdvertiseAddress address) {
+		nodes.remove(key(address));
+	}
+
+	/**
+	 * @param description The protocol the publisher selected
+	 * @param topicName
+	 * @return The publisher of the topic if it lives in this process, otherwise null
+	 */
+	public static DefaultPublisher<?> getPublisher(IntraProcessProtocolDescription description, GraphName topicName) {
+		if( !description.isLocal() )
+			return null;
+		TopicParticipantManager topicParticipantManager = nodes.get(key(description.getAdverstiseAddress()));
+		if( topicParticipantManager == null || !topicParticipantManager.hasPublisher(topicName) )
+			return null;
+		return topicParticipantManager.getPublisher(topicName);
+	}
+}
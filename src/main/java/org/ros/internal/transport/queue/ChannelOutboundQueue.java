@@ -0,0 +1,221 @@
+package org.ros.internal.transport.queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.internal.transport.ChannelHandlerContext;
+
+/**
+ * The bounded outbound queue of one subscriber connection.
+ * The publisher's writer only enqueues here and never touches the socket, a drain task submitted to the executor
+ * when the queue goes from empty to non empty writes the entries out and returns when the queue is empty again, so
+ * no thread is held by an idle connection. A slow subscriber only backs up its own queue, and once that is full
+ * the {@link OverflowPolicy} decides what gives.
+ * <p>
+ * On a selector channel writes never block, the channel holds what the socket does not take. The drain stops
+ * while the channel is not writable and is resubmitted by the channel's writability listener, so the bound here
+ * also bounds what the channel holds.
+ * @author jg
+ *
+ */
+public class ChannelOutboundQueue implements Runnable {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(ChannelOutboundQueue.class);
+	public static final int DEFAULT_CAPACITY = 256;
+	public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_OLDEST;
+
+	private final ChannelHandlerContext ctx;
+	private final Executor executor;
+	private final int capacity;
+	private final OverflowPolicy overflowPolicy;
+	// an entry is either a shared frame of a stateless codec or a message the channel encodes itself
+	private final ArrayDeque<Object> entries;
+	private final AtomicBoolean draining = new AtomicBoolean(false);
+	private final AtomicLong enqueued = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean closed = false;
+
+	/**
+	 * @param ctx The subscriber connection
+	 * @param executor Where the drain task runs
+	 * @param capacity The most entries held, at least 1
+	 * @param overflowPolicy What to do when full
+	 */
+	public ChannelOutboundQueue(ChannelHandlerContext ctx, Executor executor, int capacity, OverflowPolicy overflowPolicy) {
+		assert(capacity > 0) : "ChannelOutboundQueue capacity must be positive";
+		this.ctx = ctx;
+		this.executor = executor;
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+		this.entries = new ArrayDeque<Object>(Math.min(capacity, 64));
+		ctx.setWritabilityListener(new Runnable() {
+			@Override
+			public void run() {
+				schedule();
+			}
+		});
+	}
+
+	/**
+	 * Queue a frame encoded by the channel's stateless codec, the bytes may be shared with other queues.
+	 * @param frame
+	 * @return false if the entry was dropped
+	 */
+	public boolean offerFrame(ByteBuffer frame) {
+		return offer(frame);
+	}
+
+	/**
+	 * Queue a message for the channel to encode with its stateful codec.
+	 * @param message
+	 * @return false if the entry was dropped
+	 */
+	public boolean offerMessage(Object message) {
+		return offer(new Message(message));
+	}
+
+	private boolean offer(Object entry) {
+		if( closed )
+			return false;
+		synchronized(entries) {
+			if( entries.size() >= capacity ) {
+				dropped.incrementAndGet();
+				switch(overflowPolicy) {
+					case DROP_OLDEST:
+						entries.pollFirst();
+						break;
+					case DROP_NEWEST:
+						if( DEBUG )
+							log.info("Dropping newest entry for full queue "+this);
+						return false;
+					case DISCONNECT:
+						log.info("Closing subscriber connection with full outbound queue "+this);
+						fail();
+						return false;
+				}
+			}
+			entries.addLast(entry);
+		}
+		enqueued.incrementAndGet();
+		schedule();
+		return true;
+	}
+
+	private void schedule() {
+		if( !closed && draining.compareAndSet(false, true) )
+			executor.execute(this);
+	}
+
+	/**
+	 * The drain task, writes until the queue is empty or the channel is not writable.
+	 */
+	@Override
+	public void run() {
+		for(;;) {
+			Object entry = null;
+			if( !closed && ctx.isWritable() ) {
+				synchronized(entries) {
+					entry = entries.pollFirst();
+				}
+			}
+			if( entry == null ) {
+				draining.set(false);
+				// an offer or writability change may have come in after we looked, if so take the drain back
+				if( closed || !ctx.isWritable() || isEmpty() || !draining.compareAndSet(false, true) )
+					return;
+				continue;
+			}
+			try {
+				if( entry instanceof Message )
+					ctx.write(((Message)entry).message);
+				else
+					ctx.writeFrame((ByteBuffer)entry);
+				written.incrementAndGet();
+			} catch (IOException e) {
+				log.info("Closing failed write context:"+ctx+" due to "+e);
+				fail();
+				draining.set(false);
+				return;
+			}
+		}
+	}
+
+	private boolean isEmpty() {
+		synchronized(entries) {
+			return entries.isEmpty();
+		}
+	}
+
+	private void fail() {
+		close();
+		try {
+			ctx.close();
+		} catch (IOException e) {}
+		// A write failure should render the context not ready for writes.
+		ctx.setReady(false);
+	}
+
+	/**
+	 * Discard the queued entries and accept no more, the channel itself is left alone.
+	 */
+	public void close() {
+		closed = true;
+		synchronized(entries) {
+			dropped.addAndGet(entries.size());
+			entries.clear();
+		}
+	}
+
+	public ChannelHandlerContext getChannelHandlerContext() { return ctx; }
+
+	public int getCapacity() { return capacity; }
+
+	public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+
+	/**
+	 * @return The entries waiting to be written
+	 */
+	public int getDepth() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return The entries accepted since the queue was created
+	 */
+	public long getEnqueuedCount() { return enqueued.get(); }
+
+	/**
+	 * @return The entries written to the channel
+	 */
+	public long getWrittenCount() { return written.get(); }
+
+	/**
+	 * @return The entries discarded by the overflow policy or on close
+	 */
+	public long getDroppedCount() { return dropped.get(); }
+
+	public boolean isClosed() { return closed; }
+
+	@Override
+	public String toString() {
+		return "ChannelOutboundQueue "+ctx+" depth:"+getDepth()+"/"+capacity+" "+overflowPolicy+
+				" enqueued:"+enqueued.get()+" written:"+written.get()+" dropped:"+dropped.get();
+	}
+
+	/**
+	 * Marks a message left for the channel's own codec, as opposed to a shared frame.
+	 */
+	private static final class Message {
+		final Object message;
+		Message(Object message) { this.message = message; }
+	}
+}
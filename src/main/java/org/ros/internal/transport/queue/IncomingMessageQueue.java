@@ -1,6 +1,7 @@
 package org.ros.internal.transport.queue;
 
-import org.ros.concurrent.CircularBlockingDeque;
+import org.ros.concurrent.CircularBlockingQueue;
+import org.ros.concurrent.MpscRingBuffer;
 import org.ros.internal.transport.tcp.NamedChannelHandler;
 
 import org.ros.message.MessageListener;
@@ -28,10 +29,11 @@ public class IncomingMessageQueue<T> {
 
   private final MessageReceiver<T> messageReceiver;
   private final MessageDispatcher<T> messageDispatcher;
+  private final CircularBlockingQueue<T> lazyMessages;
 
   public IncomingMessageQueue(ExecutorService executorService) {
-    CircularBlockingDeque<T> lazyMessages =
-        new CircularBlockingDeque<T>(DEQUE_CAPACITY);
+    // filled by every publisher connection, emptied by the dispatcher
+    lazyMessages = new MpscRingBuffer<T>(DEQUE_CAPACITY);
     messageReceiver = new MessageReceiver<T>(lazyMessages);
     messageDispatcher = new MessageDispatcher<T>(lazyMessages, executorService);
     executorService.execute(messageDispatcher);
@@ -62,6 +64,19 @@ public class IncomingMessageQueue<T> {
     messageDispatcher.cancel();
   }
 
+  /**
+   * Queue a message handed over by a publisher in this process, as the
+   * {@link #getMessageReceiver()} does for a message read from a channel.
+   * Like the channel, this never blocks the publisher, the oldest message is
+   * dropped if the queue is full.
+   * 
+   * @param message
+   *          the published message itself, which must not be modified
+   */
+  public void add(T message) {
+    lazyMessages.addLast(message);
+  }
+
   /**
    * @return a {@link NamedChannelHandler} that will receive messages and add
    *         them to the queue
@@ -3,7 +3,7 @@ package org.ros.internal.transport.queue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ros.concurrent.CancellableLoop;
-import org.ros.concurrent.CircularBlockingDeque;
+import org.ros.concurrent.CircularBlockingQueue;
 import org.ros.concurrent.EventDispatcher;
 import org.ros.concurrent.ListenerGroup;
 import org.ros.concurrent.SignalRunnable;
@@ -13,7 +13,7 @@ import java.util.concurrent.ExecutorService;
 
 /**
  * The IncomingMessageQueue creates this and spins it up via the ExecutorService.
- * It shares the CircularBlockingDeque with the MessageReceiver.
+ * It shares the CircularBlockingQueue with the MessageReceiver.
  * It services the MessageListeners with received messages from the queue.
  * @param <T> the message type
  * @author jg (C) NeoCoreTechs 2017
@@ -23,7 +23,7 @@ public class MessageDispatcher<T> extends CancellableLoop {
   private static final boolean DEBUG = false;
   private static final Log log = LogFactory.getLog(MessageDispatcher.class);
 
-  private final CircularBlockingDeque<T> lazyMessages;
+  private final CircularBlockingQueue<T> lazyMessages;
   private final ListenerGroup<MessageListener<T>> messageListeners;
 
   /**
@@ -35,9 +35,10 @@ public class MessageDispatcher<T> extends CancellableLoop {
   private boolean latchMode;
   private T latchedMessage;
 
-  public MessageDispatcher(CircularBlockingDeque<T> lazyMessages, ExecutorService executorService) {
+  public MessageDispatcher(CircularBlockingQueue<T> lazyMessages, ExecutorService executorService) {
     this.lazyMessages = lazyMessages;
-    messageListeners = new ListenerGroup<MessageListener<T>>(executorService);
+    // only signaled under the mutex
+    messageListeners = new ListenerGroup<MessageListener<T>>(executorService, true);
     mutex = new Object();
     latchMode = false;
   }
@@ -1,7 +1,7 @@
 package org.ros.internal.transport.queue;
 
 
-import org.ros.concurrent.CircularBlockingDeque;
+import org.ros.concurrent.CircularBlockingQueue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -11,7 +11,7 @@ import org.ros.internal.transport.tcp.AbstractNamedChannelHandler;
 
 /**
  * A type of ChannelHandler that takes channelRead events and queues them.
- * Contains the circular blocking deque shared by MessageDispatcher and managed by IncomingMessageQueue.
+ * Contains the circular blocking queue shared by MessageDispatcher and managed by IncomingMessageQueue.
  * It is placed in the stack after handshake to be activated on read events.
  * @author jg (C) NeoCoretechs 2017
  * @param <T> the message type
@@ -21,9 +21,9 @@ public class MessageReceiver<T> extends AbstractNamedChannelHandler {
   private static final boolean DEBUG = false;
   private static final Log log = LogFactory.getLog(MessageReceiver.class);
 
-  private final CircularBlockingDeque<T> lazyMessages;
+  private final CircularBlockingQueue<T> lazyMessages;
 
-  public MessageReceiver(CircularBlockingDeque<T> lazyMessages) {
+  public MessageReceiver(CircularBlockingQueue<T> lazyMessages) {
     this.lazyMessages = lazyMessages;
   }
 
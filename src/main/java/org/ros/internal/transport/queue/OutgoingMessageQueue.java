@@ -5,27 +5,42 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
 import java.nio.channels.CompletionHandler;
 import java.nio.channels.WritePendingException;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
+import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ros.concurrent.CancellableLoop;
-import org.ros.concurrent.CircularBlockingDeque;
+import org.ros.concurrent.CircularBlockingQueue;
+import org.ros.concurrent.MpscRingBuffer;
 import org.ros.exception.RosRuntimeException;
 import org.ros.internal.message.MessageBuffers;
 import org.ros.internal.system.Utility;
 import org.ros.internal.transport.ChannelHandlerContext;
+import org.ros.internal.transport.codec.MessageCodec;
+import org.ros.internal.transport.shm.SharedMemoryRing;
+import org.ros.internal.transport.udp.UdpRosSender;
 
 /**
  * The outgoing message queue of a publisher processing type T messages.
  * A writer will be spun up in the executor that processes a deque with message entries,
  * serializing them to a bytebuffer for outbound asynch channel transport.
- * Each publisher created generates this writer which addresses all channels in the context array
- * it was created with.
+ * A message is encoded once per stateless codec in use and those same bytes are written to every ready
+ * channel with that codec, so the serialization cost does not grow with the number of subscribers.
+ * Channels with a stateful codec, such as a long lived object stream, encode for themselves.
+ * Each publisher created generates this writer which addresses only the subscriber connections on the
+ * route of its topic in the {@link TopicRoutingTable}, added by the handshake through {@link #addChannel}.
+ * The writer never writes to a socket itself, each channel gets its own bounded {@link ChannelOutboundQueue}
+ * drained asynchronously, so a slow subscriber backs up only its own queue and not the other subscribers.
+ * Subscribers in the same process skip all of that, the message itself goes on their {@link IncomingMessageQueue}.
+ * Subscribers on the same host may instead read the encoded message from a shared memory ring of the topic,
+ * and loss tolerant subscribers may take it as datagrams with no retransmission.
  * @author jg
  */
 public class OutgoingMessageQueue<T> {
@@ -35,7 +50,7 @@ public class OutgoingMessageQueue<T> {
 
   private static final int DEQUE_CAPACITY = 8192;
 
-  private final CircularBlockingDeque<T> deque;
+  private final CircularBlockingQueue<T> deque;
   private final Writer writer;
   private final ByteBuffer latchedBuffer;
   private final Object mutex;
@@ -43,7 +58,18 @@ public class OutgoingMessageQueue<T> {
   private boolean latchMode;
   private T latchedMessage;
   
-  private ArrayBlockingQueue<ChannelHandlerContext> channels;
+  // the subscriber connections of our topic
+  private final List<ChannelOutboundQueue> route;
+  // the subscribers in this process, handed each message itself
+  private final List<IncomingMessageQueue<T>> localSubscribers = new CopyOnWriteArrayList<IncomingMessageQueue<T>>();
+  private final ExecutorService executorService;
+  private final int channelQueueCapacity;
+  private final OverflowPolicy overflowPolicy;
+  // the shared memory ring of our topic for subscribers on this host, and the codec of its records
+  private volatile SharedMemoryRing sharedMemoryRing;
+  private volatile MessageCodec sharedMemoryCodec;
+  // the subscribers taking our messages as datagrams
+  private final List<UdpRosSender> datagramRoute = new CopyOnWriteArrayList<UdpRosSender>();
   /**
    * This class is submitted to the executor to process the deque entries
    * and serialize them to the latched buffer for outbound publisher channel
@@ -51,80 +77,129 @@ public class OutgoingMessageQueue<T> {
    *
    */
   private final class Writer extends CancellableLoop {
+    // our own encoder per stateless codec name, and the frame of the current message in each
+    private final Map<String, MessageCodec> encoders = new HashMap<String, MessageCodec>();
+    private final Map<String, ByteBuffer> frames = new HashMap<String, ByteBuffer>();
+
+    /**
+     * Encode the message once per stateless codec in use, whatever the number of channels using it.
+     * The frame is copied out of the encoder, whose buffer is reused, as it waits in the channel queues.
+     * @return The frame for the codec of the channel, a view shared by all the channels with that codec
+     */
+    private ByteBuffer frameFor(MessageCodec codec, T message) throws IOException {
+      ByteBuffer frame = frames.get(codec.getName());
+      if (frame == null) {
+        MessageCodec encoder = encoders.get(codec.getName());
+        if (encoder == null) {
+          encoder = codec.newEncoder();
+          encoders.put(codec.getName(), encoder);
+        }
+        ByteBuffer encoded = encoder.encodeFrame(message);
+        frame = ByteBuffer.allocate(encoded.remaining());
+        frame.put(encoded);
+        frame.flip();
+        frames.put(codec.getName(), frame);
+      }
+      return frame.duplicate();
+    }
+
     @Override
     public void loop() throws InterruptedException {
       T message = deque.takeFirst();
+      frames.clear();
       //final ByteBuffer buffer = (ByteBuffer) latchedBuffer.clear();//messageBufferPool.acquire();
       //Utility.serialize(message, buffer);
       //if(DEBUG) {
       //  log.info(String.format("Writing %d bytes.", buffer.position()));
       //}
-      final Iterator<ChannelHandlerContext> it = channels.iterator();
-      while(it.hasNext()) {
-    	  final ChannelHandlerContext ctx = it.next();
-    	  //final CountDownLatch cdl = new CountDownLatch(1);
-    	  boolean sendMessage;
-    	  synchronized( ctx.getMessageTypes() ) {
-    		  sendMessage = ctx.getMessageTypes().contains(message.getClass().getName().replace('.', '/'));
+      for(IncomingMessageQueue<T> local : localSubscribers)
+    	  local.add(message);
+      SharedMemoryRing ring = sharedMemoryRing;
+      if( ring != null ) {
+    	  try {
+    		  // the ring records its own lengths, the payload goes in without the frame length
+    		  ByteBuffer frame = frameFor(sharedMemoryCodec, message);
+    		  frame.position(frame.position() + 4);
+    		  if( !ring.write(frame) && DEBUG )
+    			  log.info("Shared memory ring dropped oversized message "+message);
+    	  } catch (IOException e) {
+    		  log.info("Dropping message for shared memory ring that failed to encode due to "+e);
     	  }
-    	  if( ctx.isReady() && sendMessage ) {
+      }
+      for(UdpRosSender sender : datagramRoute) {
+    	  ByteBuffer frame;
+    	  try {
+    		  frame = frameFor(sender.getCodec(), message);
+    	  } catch (IOException e) {
+    		  log.info("Dropping message for "+sender+" that failed to encode due to "+e);
+    		  continue;
+    	  }
+    	  frame.position(frame.position() + 4);
+    	  try {
+    		  sender.send(frame);
+    	  } catch (IOException e) {
+    		  // the subscriber's socket is gone
+    		  if( DEBUG )
+    			  log.info("Removing datagram subscriber "+sender+" due to "+e);
+    		  datagramRoute.remove(sender);
+    		  sender.close();
+    	  }
+      }
+      for(ChannelOutboundQueue queue : route) {
+    	  final ChannelHandlerContext ctx = queue.getChannelHandlerContext();
+    	  if( ctx.isReady() && !queue.isClosed() ) {
     		  try {
     			if( DEBUG )
-    				log.info("Outgoing queue writing:"+message+" to "+ctx);
-				ctx.write(message);
+    				log.info("Outgoing queue queueing:"+message+" to "+queue);
+    			MessageCodec codec = ctx.getMessageCodec();
+    			if( codec.isStateless() )
+    				queue.offerFrame(frameFor(codec, message));
+    			else
+    				queue.offerMessage(message);
 			} catch (IOException e) {
-				log.info("Closing failed write context:"+ctx+" due to "+e);
-				e.printStackTrace();
-				try {
-					  ctx.close();
-			    } catch (IOException e1) {}
-				// A write failure should render the context not ready for writes.
-				ctx.setReady(false);
+				// the message cannot be encoded for this codec, other channels may still take it
+				log.info("Dropping message for "+queue+" that failed to encode due to "+e);
 			}
-    	  
-    		//buffer.position(0);
-    		  /*
-    		ctx.write(buffer, new CompletionHandler<Integer, Void>() {
-    				  @Override
-    				  public void completed(Integer arg0, Void arg1) {
-    					  if(DEBUG)
-    						  log.info("sent "+buffer+" result:"+arg0+","+arg1);
-    					  cdl.countDown();
-    				  //messageBufferPool.release(buffer);
-    				  }
-    				  @Override
-    				  public void failed(Throwable arg0, Void arg1) {
-    					  // Broken pipe here if we cant write to client as its dropped
-    					  //throw new RuntimeException(arg0);
-    					  log.info("Closing failed write context:"+ctx+" due to "+arg0);
-    					  arg0.printStackTrace();
-    					  try {
-    						  ctx.close();
-    					  } catch (IOException e) {}
-    					  // A write failure should render the context not ready for writes.
-    					  ctx.setReady(false);
-    					  cdl.countDown();
-    				  }  
-    		}); // completion handler
-    		cdl.await();
-    		*/
     	  } else {
 				if( DEBUG )
-					log.info("Skipping context:"+ctx+" for sendMessage:"+sendMessage+" for message "+message.getClass().getName().replace('.', '/'));
+					log.info("Removing closed subscriber connection "+queue);
+				route.remove(queue);
+				queue.close();
 		  }
-    	  
       } // ChannelhandlerContext iterator
     } // loop method
   }
 
-  public OutgoingMessageQueue(ExecutorService executorService, ArrayBlockingQueue<ChannelHandlerContext> arrayBlockingQueue) throws IOException {
-    deque = new CircularBlockingDeque<T>(DEQUE_CAPACITY);
+  /**
+   * A queue with a route of its own, for use without a {@link TopicRoutingTable}.
+   * @param executorService Runs the writer and the channel queue drains
+   * @throws IOException
+   */
+  public OutgoingMessageQueue(ExecutorService executorService) throws IOException {
+    this(executorService, new CopyOnWriteArrayList<ChannelOutboundQueue>(),
+        ChannelOutboundQueue.DEFAULT_CAPACITY, ChannelOutboundQueue.DEFAULT_OVERFLOW_POLICY);
+  }
+
+  /**
+   * @param executorService Runs the writer and the channel queue drains
+   * @param route The route of the publisher's topic from the {@link TopicRoutingTable}
+   * @param channelQueueCapacity The most messages held for one subscriber connection
+   * @param overflowPolicy What happens to a subscriber connection's messages beyond that
+   * @throws IOException
+   */
+  public OutgoingMessageQueue(ExecutorService executorService, List<ChannelOutboundQueue> route,
+		  int channelQueueCapacity, OverflowPolicy overflowPolicy) throws IOException {
+    this.executorService = executorService;
+    this.channelQueueCapacity = channelQueueCapacity;
+    this.overflowPolicy = overflowPolicy;
+    this.route = route;
+    // any thread may publish, only the writer takes
+    deque = new MpscRingBuffer<T>(DEQUE_CAPACITY);
     writer = new Writer();
     //messageBufferPool = new MessageBufferPool();
     latchedBuffer = MessageBuffers.dynamicBuffer();
     mutex = new Object();
     latchMode = false;
-    channels = arrayBlockingQueue;
     executorService.execute(writer);
   }
 
@@ -155,6 +230,82 @@ public class OutgoingMessageQueue<T> {
    */
   public void shutdown() {
     writer.cancel();
+    for(ChannelOutboundQueue queue : route)
+      queue.close();
+    localSubscribers.clear();
+    sharedMemoryRing = null;
+    for(UdpRosSender sender : datagramRoute)
+      sender.close();
+    datagramRoute.clear();
+  }
+
+  /**
+   * Add a subscriber connection whose handshake has completed, it gets its own bounded queue.
+   * @param ctx The ready subscriber connection
+   * @return The queue of the connection
+   */
+  public ChannelOutboundQueue addChannel(ChannelHandlerContext ctx) {
+    ChannelOutboundQueue queue = new ChannelOutboundQueue(ctx, executorService, channelQueueCapacity, overflowPolicy);
+    route.add(queue);
+    return queue;
+  }
+
+  /**
+   * Hand every message from now on to a subscriber in this process, without encoding or copying it.
+   * @param incomingMessageQueue The queue of the subscriber
+   */
+  public void addLocalSubscriber(IncomingMessageQueue<T> incomingMessageQueue) {
+    localSubscribers.add(incomingMessageQueue);
+  }
+
+  public void removeLocalSubscriber(IncomingMessageQueue<T> incomingMessageQueue) {
+    localSubscribers.remove(incomingMessageQueue);
+  }
+
+  /**
+   * Write every message from now on to a shared memory ring as well, for the subscribers on this host.
+   * @param ring The ring of the topic
+   * @param codec A stateless codec, the readers decode each record on its own
+   */
+  public void setSharedMemoryRing(SharedMemoryRing ring, MessageCodec codec) {
+    assert(codec.isStateless()) : "Shared memory ring requires a stateless codec";
+    sharedMemoryCodec = codec;
+    sharedMemoryRing = ring;
+  }
+
+  /**
+   * Send every message from now on to a subscriber as datagrams, the sender is closed when the subscriber is gone.
+   * A sender already going to the same socket is closed and replaced.
+   * @param sender The sender to the subscriber's socket
+   */
+  public void addDatagramSubscriber(UdpRosSender sender) {
+    for(UdpRosSender old : datagramRoute) {
+      if (old.getSubscriber().equals(sender.getSubscriber()) && datagramRoute.remove(old)) {
+        old.close();
+      }
+    }
+    datagramRoute.add(sender);
+  }
+
+  /**
+   * @return The sender to each datagram subscriber, with its sent and dropped counts
+   */
+  public Collection<UdpRosSender> getDatagramSubscribers() {
+    return datagramRoute;
+  }
+
+  /**
+   * @return The outbound queue of each subscriber connection, with its depth and its written and dropped counts
+   */
+  public Collection<ChannelOutboundQueue> getChannelQueues() {
+    return route;
+  }
+
+  /**
+   * @return The route this queue writes to
+   */
+  public List<ChannelOutboundQueue> getRoute() {
+    return route;
   }
 
 
@@ -163,11 +314,9 @@ private void writeLatchedMessage() {
     synchronized (mutex) {
       latchedBuffer.clear();
       Utility.serialize(latchedMessage, latchedBuffer);
-      Iterator<ChannelHandlerContext> it = channels.iterator();
-      while(it.hasNext()) {
-    	  ChannelHandlerContext ctx = it.next();
+      for(ChannelOutboundQueue queue : route) {
     	  try {
-			ctx.write(latchedBuffer);
+			queue.getChannelHandlerContext().write(latchedBuffer);
 		} catch (IOException e) {
 			throw new RosRuntimeException(e);
 		}
@@ -176,10 +325,11 @@ private void writeLatchedMessage() {
   }
 
   /**
-   * @return the number of {@link Channel}s which have been added to this queue
+   * @return the number of {@link Channel}s and subscribers in this process which have been added to this queue,
+   * an open shared memory ring counting as one
    */
   public int getNumberOfChannels() {
-    return channels.size();
+    return route.size() + localSubscribers.size() + datagramRoute.size() + (sharedMemoryRing != null ? 1 : 0);
   }
 
 }
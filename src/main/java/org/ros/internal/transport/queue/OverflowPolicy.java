@@ -0,0 +1,21 @@
+package org.ros.internal.transport.queue;
+
+/**
+ * What a {@link ChannelOutboundQueue} does with a message when its subscriber has fallen capacity messages behind.
+ * @author jg
+ *
+ */
+public enum OverflowPolicy {
+	/**
+	 * Discard the oldest queued message to make room, the subscriber sees the latest data as with a ROS queue_size.
+	 */
+	DROP_OLDEST,
+	/**
+	 * Discard the message being queued, the subscriber sees an uninterrupted run of older messages.
+	 */
+	DROP_NEWEST,
+	/**
+	 * Close the connection, for subscribers that must see every message or none.
+	 */
+	DISCONNECT
+}
@@ -0,0 +1,68 @@
+package org.ros.internal.transport.queue;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.ros.namespace.GraphName;
+
+/**
+ * The subscriber connections of a node's publishers, keyed by topic.
+ * The subscriber handshake adds the connection's {@link ChannelOutboundQueue} to the route of its topic and the
+ * topic's publisher walks only that route, so publishing touches neither the connections of other topics nor
+ * any lock. Routes are copy on write as subscribers come and go rarely compared to messages.
+ * @author jg
+ *
+ */
+public class TopicRoutingTable {
+	private final ConcurrentHashMap<GraphName, List<ChannelOutboundQueue>> routes =
+			new ConcurrentHashMap<GraphName, List<ChannelOutboundQueue>>();
+
+	/**
+	 * Get or create the route of a topic, the list stays the same for the life of the route.
+	 * @param topicName
+	 * @return The live list of subscriber connection queues of the topic
+	 */
+	public List<ChannelOutboundQueue> getRoute(GraphName topicName) {
+		List<ChannelOutboundQueue> route = routes.get(topicName);
+		if( route == null ) {
+			route = new CopyOnWriteArrayList<ChannelOutboundQueue>();
+			List<ChannelOutboundQueue> existing = routes.putIfAbsent(topicName, route);
+			if( existing != null )
+				route = existing;
+		}
+		return route;
+	}
+
+	/**
+	 * Drop the route of a topic whose publisher has shut down, closing the queues still on it.
+	 * A route that has since been replaced is left alone.
+	 * @param topicName
+	 * @param route The route the publisher was given
+	 */
+	public void removeRoute(GraphName topicName, List<ChannelOutboundQueue> route) {
+		if( routes.remove(topicName, route) ) {
+			for(ChannelOutboundQueue queue : route)
+				queue.close();
+			route.clear();
+		}
+	}
+
+	/**
+	 * @param topicName
+	 * @return The number of subscriber connections on the topic
+	 */
+	public int getNumberOfConnections(GraphName topicName) {
+		List<ChannelOutboundQueue> route = routes.get(topicName);
+		return route == null ? 0 : route.size();
+	}
+
+	public int getNumberOfRoutes() {
+		return routes.size();
+	}
+
+	@Override
+	public String toString() {
+		return "TopicRoutingTable routes:"+routes.keySet();
+	}
+}
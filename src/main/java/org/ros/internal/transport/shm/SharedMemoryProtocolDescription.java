@@ -0,0 +1,64 @@
+package org.ros.internal.transport.shm;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.ros.address.AdvertiseAddress;
+import org.ros.internal.transport.ProtocolDescription;
+import org.ros.internal.transport.ProtocolNames;
+
+/**
+ * The publisher's answer to a subscriber on the same host that offered {@link ProtocolNames#SHMROS}.
+ * It names the ring file of the topic and the codec of its messages, along with the publisher node's TCPROS
+ * address for a subscriber that cannot open the ring after all.
+ * @author jg
+ *
+ */
+public class SharedMemoryProtocolDescription extends ProtocolDescription implements Serializable {
+	private static final long serialVersionUID = -3032493826620165913L;
+	private String hostId;
+	private String ringPath;
+	private String codecName;
+
+	public SharedMemoryProtocolDescription() { super(); }
+
+	/**
+	 * @param address The TCPROS address of the publisher's node
+	 * @param hostId The {@link SharedMemoryTransport#HOST_ID} of the publisher's host
+	 * @param ringPath The {@link SharedMemoryRing} file of the topic
+	 * @param codecName The stateless codec the messages in the ring are encoded with
+	 */
+	public SharedMemoryProtocolDescription(AdvertiseAddress address, String hostId, String ringPath, String codecName) {
+		super(ProtocolNames.SHMROS, address);
+		this.hostId = hostId;
+		this.ringPath = ringPath;
+		this.codecName = codecName;
+	}
+
+	public String getHostId() { return hostId; }
+
+	public String getRingPath() { return ringPath; }
+
+	public String getCodecName() { return codecName; }
+
+	/**
+	 * @return true if the publisher is on this host
+	 */
+	public boolean isLocal() {
+		return SharedMemoryTransport.HOST_ID.equals(hostId);
+	}
+
+	@Override
+	public List<Object> toList() {
+		List<Object> l1 = super.toList();
+		l1.add(hostId);
+		l1.add(ringPath);
+		l1.add(codecName);
+		return l1;
+	}
+
+	@Override
+	public String toString() {
+		return "Protocol<" + getName() + ", " + getAdverstiseAddress() + ", " + ringPath + ", " + codecName + ">";
+	}
+}
@@ -0,0 +1,107 @@
+package org.ros.internal.transport.shm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.concurrent.CancellableLoop;
+import org.ros.internal.transport.codec.MessageCodec;
+import org.ros.internal.transport.queue.IncomingMessageQueue;
+
+/**
+ * Reads a subscriber's messages out of the publisher's {@link SharedMemoryRing} into its {@link IncomingMessageQueue}.
+ * There is no way for the writer in another process to wake us, so an idle reader spins briefly, then yields, then
+ * parks for a period that doubles up to a millisecond; a busy topic never gets past the spin.<p/>
+ * Each message is copied once out of its slot into a buffer the receiver reuses, and decoded from there. Listeners
+ * are not handed a view of the slot: the codecs decode from an array, a listener runs later on the queue's thread,
+ * and nothing holds the writer off a slot while it is read, so a view could change under the listener.<p/>
+ * The loop stops when the subscriber closes the receiver, or when an idle reader finds the publisher has removed
+ * its ring.
+ * @author jg
+ *
+ */
+public class SharedMemoryReceiver<T> extends CancellableLoop {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(SharedMemoryReceiver.class);
+	private static final int SPINS = 100;
+	private static final int YIELDS = 100;
+	private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	// parks of the longest period between looks for the ring file, about a second
+	private static final int RING_CHECK_PARKS = 1000;
+
+	private final SharedMemoryRingReader reader;
+	private final MessageCodec codec;
+	private final IncomingMessageQueue<T> incomingMessageQueue;
+	private byte[] buffer = new byte[4096];
+	private int idle = 0;
+	private long parkNanos = MIN_PARK_NANOS;
+	private int longParks = 0;
+	private volatile boolean closed = false;
+
+	public SharedMemoryReceiver(SharedMemoryRingReader reader, MessageCodec codec, IncomingMessageQueue<T> incomingMessageQueue) {
+		this.reader = reader;
+		this.codec = codec;
+		this.incomingMessageQueue = incomingMessageQueue;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void loop() throws InterruptedException {
+		if( closed )
+			throw new InterruptedException();
+		ByteBuffer view = reader.next();
+		if( view == null ) {
+			idle();
+			return;
+		}
+		idle = 0;
+		parkNanos = MIN_PARK_NANOS;
+		longParks = 0;
+		int length = view.remaining();
+		if( buffer.length < length )
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		// the one copy out of the ring, the codecs decode from an array
+		view.get(buffer, 0, length);
+		if( !reader.isValid() ) {
+			if( DEBUG )
+				log.info("SharedMemoryReceiver lapped while reading, message dropped "+reader.getLappedCount());
+			return;
+		}
+		try {
+			incomingMessageQueue.add((T) codec.decode(buffer, 0, length));
+		} catch (IOException e) {
+			log.error("SharedMemoryReceiver failed to decode message of "+length+" bytes due to "+e);
+		}
+	}
+
+	private void idle() throws InterruptedException {
+		if( idle < SPINS ) {
+			++idle;
+		} else if( idle < SPINS + YIELDS ) {
+			++idle;
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(parkNanos);
+			if( parkNanos < MAX_PARK_NANOS ) {
+				parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+			} else if( ++longParks % RING_CHECK_PARKS == 0 && !reader.getFile().exists() ) {
+				log.info("SharedMemoryReceiver ring "+reader.getFile()+" removed by its publisher, stopping");
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * Stop reading. Unlike {@link #cancel()} this also stops a receiver whose loop has not started yet.
+	 */
+	public void close() {
+		closed = true;
+		cancel();
+	}
+
+	public SharedMemoryRingReader getReader() { return reader; }
+}
@@ -0,0 +1,148 @@
+package org.ros.internal.transport.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A single writer, many reader ring of messages in a memory mapped file, for publisher and subscribers in separate
+ * processes on the same host. The publisher writes each message once and every reader walks the ring at its own pace
+ * with no feedback to the writer, so a reader that falls a whole ring behind loses the messages it was lapped on and
+ * continues from the newest, the same as a full subscriber queue dropping its oldest.
+ * <p>
+ * The file starts with a 64 byte header, magic and capacity then two absolute byte positions: claimed, how far the
+ * writer may be overwriting, and published, the end of the last complete record. Records are 16 byte aligned, a
+ * 16 byte record header carries the record's absolute position as a stamp and the payload length, -1 for the padding
+ * that fills the end of the ring when a record does not fit. A reader knows a record is intact if its stamp is the
+ * position it expected and, once it has finished with the payload, the claimed position has not passed it by the
+ * capacity.
+ * <p>
+ * Java 8 has no fence for memory shared between processes, a volatile write then read of a static stands in for one
+ * where stores and loads of the mapping must not be reordered.
+ * @author jg
+ *
+ */
+public class SharedMemoryRing {
+	static final int MAGIC = 0x524f5352; // ROSR
+	static final int HEADER_SIZE = 64;
+	static final int MAGIC_OFFSET = 0;
+	static final int CAPACITY_OFFSET = 4;
+	static final int CLAIMED_OFFSET = 8;
+	static final int PUBLISHED_OFFSET = 16;
+	static final int RECORD_HEADER_SIZE = 16;
+	static final int PADDING = -1;
+
+	private static volatile int fence;
+
+	private final File file;
+	private final int capacity;
+	private final MappedByteBuffer mapping;
+	private long position = 0;
+	private long written = 0;
+	private long dropped = 0;
+
+	static void fence() {
+		fence = 0;
+		if( fence != 0 )
+			throw new IllegalStateException();
+	}
+
+	static int align(int length) {
+		return (length + RECORD_HEADER_SIZE + 15) & ~15;
+	}
+
+	/**
+	 * Create the ring file, replacing any left at the path, and map it.
+	 * @param file The file, normally under /dev/shm so it never touches a disk
+	 * @param capacity The bytes of ring, rounded down to a multiple of 16; a message may use at most half
+	 * @throws IOException
+	 */
+	public SharedMemoryRing(File file, int capacity) throws IOException {
+		assert(capacity >= 1024) : "SharedMemoryRing capacity too small";
+		this.file = file;
+		this.capacity = capacity & ~15;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(HEADER_SIZE + this.capacity);
+			mapping = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + this.capacity);
+		} finally {
+			raf.close();
+		}
+		mapping.putInt(CAPACITY_OFFSET, this.capacity);
+		mapping.putLong(CLAIMED_OFFSET, 0L);
+		mapping.putLong(PUBLISHED_OFFSET, 0L);
+		fence();
+		mapping.putInt(MAGIC_OFFSET, MAGIC);
+		file.deleteOnExit();
+	}
+
+	/**
+	 * Append a message, the payload is copied from its position to its limit without changing either.
+	 * @param payload
+	 * @return false if the payload is too large for the ring, it is not written
+	 */
+	public synchronized boolean write(ByteBuffer payload) {
+		int length = payload.remaining();
+		int size = align(length);
+		if( size > capacity / 2 ) {
+			++dropped;
+			return false;
+		}
+		int index = (int)(position % capacity);
+		if( index + size > capacity ) {
+			int padding = capacity - index;
+			claim(position + padding + size);
+			mapping.putInt(HEADER_SIZE + index + 8, PADDING);
+			fence();
+			mapping.putLong(HEADER_SIZE + index, position);
+			position += padding;
+			index = 0;
+		} else {
+			claim(position + size);
+		}
+		ByteBuffer target = mapping.duplicate();
+		target.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+		target.put(payload.duplicate());
+		mapping.putInt(HEADER_SIZE + index + 8, length);
+		fence();
+		mapping.putLong(HEADER_SIZE + index, position);
+		position += size;
+		fence();
+		mapping.putLong(PUBLISHED_OFFSET, position);
+		++written;
+		return true;
+	}
+
+	private void claim(long claimed) {
+		mapping.putLong(CLAIMED_OFFSET, claimed);
+		// readers must see the claim before any of the bytes it covers change
+		fence();
+	}
+
+	public File getFile() { return file; }
+
+	public int getCapacity() { return capacity; }
+
+	public synchronized long getWrittenCount() { return written; }
+
+	/**
+	 * @return The messages too large for the ring
+	 */
+	public synchronized long getDroppedCount() { return dropped; }
+
+	/**
+	 * Remove the file, readers that have it mapped keep their mapping until they close.
+	 */
+	public void close() {
+		file.delete();
+	}
+
+	@Override
+	public String toString() {
+		return "SharedMemoryRing "+file+" capacity:"+capacity+" position:"+position;
+	}
+}
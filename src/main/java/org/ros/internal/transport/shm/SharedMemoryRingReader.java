@@ -0,0 +1,119 @@
+package org.ros.internal.transport.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One reader of a {@link SharedMemoryRing}, it maps the ring read only and starts from the newest message.
+ * {@link #next()} returns a read only view of the payload in the mapping itself; the view stays readable but its
+ * contents belong to the writer again once it laps the reader, so {@link #isValid()} must be checked after the
+ * payload is consumed and before anything derived from it is trusted. Not thread safe, one reader per thread.
+ * @author jg
+ *
+ */
+public class SharedMemoryRingReader {
+	private final File file;
+	private final MappedByteBuffer mapping;
+	private final int capacity;
+	private long position;
+	private long current = -1;
+	private long lapped = 0;
+
+	/**
+	 * @param file The ring file created by the publisher
+	 * @throws IOException If the file is missing or is not a ring
+	 */
+	public SharedMemoryRingReader(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			mapping = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		if( mapping.capacity() < SharedMemoryRing.HEADER_SIZE || mapping.getInt(SharedMemoryRing.MAGIC_OFFSET) != SharedMemoryRing.MAGIC )
+			throw new IOException("Not a shared memory ring "+file);
+		SharedMemoryRing.fence();
+		capacity = mapping.getInt(SharedMemoryRing.CAPACITY_OFFSET);
+		if( capacity <= 0 || capacity > mapping.capacity() - SharedMemoryRing.HEADER_SIZE )
+			throw new IOException("Invalid capacity "+capacity+" of shared memory ring "+file);
+		position = published();
+	}
+
+	private long published() {
+		long published = mapping.getLong(SharedMemoryRing.PUBLISHED_OFFSET);
+		// nothing of the records may be read before the position that publishes them
+		SharedMemoryRing.fence();
+		return published;
+	}
+
+	/**
+	 * @return A view of the payload of the next message, or null if the reader has caught up with the writer
+	 */
+	public ByteBuffer next() {
+		for(;;) {
+			long published = published();
+			if( position >= published )
+				return null;
+			if( published - position > capacity ) {
+				++lapped;
+				position = published;
+				continue;
+			}
+			int index = (int)(position % capacity);
+			long stamp = mapping.getLong(SharedMemoryRing.HEADER_SIZE + index);
+			SharedMemoryRing.fence();
+			int length = mapping.getInt(SharedMemoryRing.HEADER_SIZE + index + 8);
+			SharedMemoryRing.fence();
+			if( stamp != position || mapping.getLong(SharedMemoryRing.HEADER_SIZE + index) != stamp ) {
+				// overwritten since we read the published position, or while we read the length
+				++lapped;
+				position = published();
+				continue;
+			}
+			if( length == SharedMemoryRing.PADDING ) {
+				position += capacity - index;
+				continue;
+			}
+			// a length read as the writer laps us may be anything, it must not run past the end of the ring
+			if( length < 0 || length > capacity - index - SharedMemoryRing.RECORD_HEADER_SIZE ) {
+				++lapped;
+				position = published();
+				continue;
+			}
+			ByteBuffer view = mapping.asReadOnlyBuffer();
+			view.position(SharedMemoryRing.HEADER_SIZE + index + SharedMemoryRing.RECORD_HEADER_SIZE);
+			view.limit(view.position() + length);
+			current = position;
+			position += SharedMemoryRing.align(length);
+			return view.slice();
+		}
+	}
+
+	/**
+	 * @return true if the writer has not begun to overwrite the message last returned by {@link #next()}
+	 */
+	public boolean isValid() {
+		SharedMemoryRing.fence();
+		boolean valid = current >= 0 && mapping.getLong(SharedMemoryRing.CLAIMED_OFFSET) <= current + capacity;
+		if( !valid )
+			++lapped;
+		return valid;
+	}
+
+	/**
+	 * @return The times the writer lapped this reader, each losing one or more messages
+	 */
+	public long getLappedCount() { return lapped; }
+
+	public int getCapacity() { return capacity; }
+
+	/**
+	 * @return The ring file, removed by the publisher when it closes the ring
+	 */
+	public File getFile() { return file; }
+}
@@ -0,0 +1,68 @@
+package org.ros.internal.transport.shm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+
+import org.ros.internal.transport.intraprocess.IntraProcessRegistry;
+import org.ros.namespace.GraphName;
+
+/**
+ * Where the shared memory rings live and how a publisher and subscriber tell they share a host.
+ * @author jg
+ *
+ */
+public final class SharedMemoryTransport {
+	/**
+	 * tmpfs on Linux, so a ring is memory and never touches a disk.
+	 */
+	public static final File SHM_DIRECTORY = new File("/dev/shm");
+	/**
+	 * Identifies this host, the kernel boot id where there is one, the host name otherwise. Equal ids only say the
+	 * two ends may share /dev/shm: containers on one kernel share the boot id but usually not /dev/shm. That case is
+	 * covered by the subscriber falling back to TCPROS when it can not open the ring the publisher named.
+	 */
+	public static final String HOST_ID = hostId();
+
+	private SharedMemoryTransport() {}
+
+	private static String hostId() {
+		File bootId = new File("/proc/sys/kernel/random/boot_id");
+		if( bootId.canRead() ) {
+			try {
+				BufferedReader reader = new BufferedReader(new FileReader(bootId));
+				try {
+					String id = reader.readLine();
+					if( id != null )
+						return id.trim();
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {}
+		}
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (IOException e) {
+			return "localhost";
+		}
+	}
+
+	/**
+	 * @return true if rings can be created on this host
+	 */
+	public static boolean isAvailable() {
+		return SHM_DIRECTORY.isDirectory() && SHM_DIRECTORY.canWrite();
+	}
+
+	/**
+	 * @param topicName
+	 * @param codecName
+	 * @return The ring file of a topic published from this process
+	 */
+	public static File ringFile(GraphName topicName, String codecName) {
+		String topic = topicName.toString().replace('/', '_');
+		return new File(SHM_DIRECTORY, "rosjavalite_" + IntraProcessRegistry.PROCESS_ID + topic + "_" + codecName);
+	}
+}
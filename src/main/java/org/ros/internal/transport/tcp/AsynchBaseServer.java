@@ -51,8 +51,12 @@ public final class AsynchBaseServer extends AsynchTCPServer {
 				channel.setSendBufferSize(4096000);
 				channel.setReceiveBufferSize(4096000);
 				//channel.setTcpNoDelay(true);
+				if( channelGroup instanceof SelectorEventLoopGroup ) {
+					acceptSelector(channel);
+					continue;
+				}
 				ChannelHandlerContext ctx = new ChannelHandlerContextImpl(channelGroup, channel/*.get()*/, exc);
-				tcpserver.getSubscribers().add(ctx);
+				ctx.setMaxFrameSize(tcpserver.getMaxFrameSize());
 				// inject the handlers, start handshake
 			    // inject calls initChannel on each ChannelInitializer in the factoryStack
 				tcpserver.getFactoryStack().inject(ctx);
@@ -77,6 +81,24 @@ public final class AsynchBaseServer extends AsynchTCPServer {
 	
 	}
 	
+	/**
+	 * Accept path for the selector transport. Same sequence as the blocking path, but rather than spinning
+	 * an {@link AsynchTCPWorker} the context is handed to one of the event loops of the group.
+	 * @param channel The accepted socket, opened through a ServerSocketChannel
+	 * @throws Exception
+	 */
+	private void acceptSelector(Socket channel) throws Exception {
+		SelectorChannelHandlerContext ctx = new SelectorChannelHandlerContext((SelectorEventLoopGroup)channelGroup, channel.getChannel(), exc);
+		ctx.setMaxFrameSize(tcpserver.getMaxFrameSize());
+		tcpserver.getFactoryStack().inject(ctx);
+		ctx.pipeline().fireChannelRegistered();
+		ctx.register();
+		ctx.pipeline().fireChannelActive();
+		if( DEBUG ) {
+			log.info("ROS selector transport server registered context:"+ctx);
+		}
+	}
+
 	public Integer getPort() {
 		return WORKBOOTPORT;
 	}
@@ -36,7 +36,7 @@ public abstract class AsynchTCPServer implements Cloneable, Runnable {
 				log.info("AsynchTCPServer attempt local bind port "+port);
 			channelGroup = group;
 			//server = AsynchronousServerSocketChannel.open(channelGroup);
-			server = new ServerSocket();//channelGroup);
+			server = openServerSocket(group);//channelGroup);
 			server.bind(new InetSocketAddress(port));
 			exc.execute(this);
 		}
@@ -47,11 +47,20 @@ public abstract class AsynchTCPServer implements Cloneable, Runnable {
 			if( DEBUG )
 				log.info("AsynchTCPServer attempt bind "+binder);
 			channelGroup = group;
-			server = new ServerSocket();
+			server = openServerSocket(group);
 			server.bind(binder);
 			exc.execute(this);
 		}
 	}
+	/**
+	 * A selector based group needs accepted sockets that carry a SocketChannel, so open the server through
+	 * a ServerSocketChannel in that case. The accept loop stays blocking either way.
+	 */
+	private static ServerSocket openServerSocket(ChannelGroup group) throws IOException {
+		if( group instanceof SelectorEventLoopGroup )
+			return ServerSocketChannel.open().socket();
+		return new ServerSocket();
+	}
 	public synchronized void stopServer() throws IOException {
 		if( server != null ) {
 			shouldStop = true;
@@ -0,0 +1,364 @@
+package org.ros.internal.transport.tcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.internal.transport.ChannelHandlerContext;
+import org.ros.internal.transport.ChannelPipeline;
+import org.ros.internal.transport.ChannelPipelineImpl;
+import org.ros.internal.transport.codec.JavaSerializationCodec;
+import org.ros.internal.transport.codec.MessageCodec;
+
+/**
+ * ChannelHandlerContext backed by a non-blocking SocketChannel serviced by a {@link SelectorEventLoop}.
+ * Rather than a worker thread blocking in {@link #read()}, the event loop calls {@link #readReady()} when bytes
+ * arrive, the complete frames are decoded and pushed through the pipeline on the loop thread.
+ * Writes go straight to the channel when it will take them and are otherwise queued and flushed by the loop
+ * when the channel becomes writable, so a writer is never parked on a slow peer.
+ * Frames are a 4 byte length followed by the payload of the channel's {@link MessageCodec}, the same as {@link org.ros.internal.transport.ChannelHandlerContextImpl}.
+ * @author jg
+ *
+ */
+public class SelectorChannelHandlerContext implements ChannelHandlerContext {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(SelectorChannelHandlerContext.class);
+	private static final int INITIAL_READ_BUFFER = 65536;
+	private final SelectorEventLoopGroup channelGroup;
+	private SocketChannel channel;
+	private final Executor executor;
+	private final ChannelPipeline pipeline;
+	private final Object mutex = new Object();
+	private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<ByteBuffer>();
+	private volatile boolean ready = false;
+	private volatile boolean closed = false;
+	private volatile SelectorEventLoop eventLoop;
+	private volatile Runnable writabilityListener = null;
+	private volatile MessageCodec codec = new JavaSerializationCodec();
+	private volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	private SelectionKey key;
+	private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+
+	public SelectorChannelHandlerContext(SelectorEventLoopGroup channelGroup, SocketChannel channel, Executor exc) {
+		this.channelGroup = channelGroup;
+		this.channel = channel;
+		this.executor = exc;
+		this.pipeline = new ChannelPipelineImpl(this);
+	}
+
+	/**
+	 * Assign this context to one of the loops of the group, after which traffic flows through the pipeline.
+	 * The channel must be connected.
+	 */
+	public void register() {
+		eventLoop = channelGroup.next();
+		eventLoop.register(this);
+	}
+
+	SocketChannel getSocketChannel() { return channel; }
+
+	SelectionKey getSelectionKey() { return key; }
+
+	void setSelectionKey(SelectionKey key) { this.key = key; }
+
+	int getReadBufferCapacity() { return readBuffer.capacity(); }
+
+	/**
+	 * Called by the event loop when the channel is readable. Decode every complete frame and fire them down the pipeline.
+	 * @throws IOException if the peer closed the connection or sent a malformed frame
+	 */
+	void readReady() throws IOException {
+		int n = channel.read(readBuffer);
+		if( n < 0 )
+			throw new EOFException("Channel closed by peer "+channel);
+		readBuffer.flip();
+		while( readBuffer.remaining() >= 4 ) {
+			int length = readBuffer.getInt(readBuffer.position());
+			if( length < 0 )
+				throw new IOException("Invalid frame length "+length+" from "+channel);
+			if( length > maxFrameSize )
+				throw new IOException("Frame length "+length+" from "+channel+" exceeds maximum "+maxFrameSize);
+			if( readBuffer.remaining() < length + 4 ) {
+				if( length + 4 > readBuffer.capacity() ) {
+					ByteBuffer larger = ByteBuffer.allocate(length + 4);
+					larger.put(readBuffer);
+					readBuffer = larger;
+					return;
+				}
+				break;
+			}
+			readBuffer.position(readBuffer.position() + 4);
+			Object msg = codec.decode(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), length);
+			readBuffer.position(readBuffer.position() + length);
+			if( DEBUG )
+				log.info("SelectorChannelHandlerContext COMPLETED READ for "+this+" Object:"+msg);
+			try {
+				pipeline.fireChannelRead(msg);
+			} catch (Exception e) {
+				try {
+					pipeline.fireExceptionCaught(e);
+				} catch (Exception e1) {}
+			}
+			try {
+				pipeline.fireChannelReadComplete();
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
+		readBuffer.compact();
+		// a buffer grown for one large frame goes back to the initial size once the frame is consumed,
+		// unless the leftover bytes are the start of another frame that would not fit
+		if( readBuffer.capacity() > INITIAL_READ_BUFFER && readBuffer.position() <= INITIAL_READ_BUFFER &&
+			(readBuffer.position() < 4 || readBuffer.getInt(0) + 4 <= INITIAL_READ_BUFFER) ) {
+			ByteBuffer initial = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+			readBuffer.flip();
+			initial.put(readBuffer);
+			readBuffer = initial;
+		}
+	}
+
+	/**
+	 * Called by the event loop when the channel is writable.
+	 * @return true if all pending writes are flushed and write interest can be dropped
+	 * @throws IOException
+	 */
+	boolean writeReady() throws IOException {
+		synchronized(pendingWrites) {
+			if( pendingWrites.isEmpty() )
+				return true;
+			while( !pendingWrites.isEmpty() ) {
+				ByteBuffer buf = pendingWrites.peekFirst();
+				channel.write(buf);
+				if( buf.hasRemaining() )
+					return false;
+				pendingWrites.pollFirst();
+			}
+		}
+		// outside the lock, the listener will likely write again
+		Runnable listener = writabilityListener;
+		if( listener != null )
+			listener.run();
+		return true;
+	}
+
+	/**
+	 * Called by the event loop when servicing the channel has failed; notify the pipeline and close down,
+	 * as the {@link AsynchTCPWorker} does when its read loop terminates.
+	 * @param cause
+	 */
+	void failed(Throwable cause) {
+		if( !closed ) {
+			if( DEBUG )
+				log.info("SelectorChannelHandlerContext terminating "+this+" due to "+cause);
+			try {
+				pipeline.fireExceptionCaught(cause);
+			} catch (Exception e) {}
+		}
+		setReady(false);
+		try {
+			close();
+		} catch (IOException e) {}
+	}
+
+	@Override
+	public Socket channel() {
+		return channel.socket();
+	}
+
+	@Override
+	public Executor executor() {
+		return executor;
+	}
+
+	@Override
+	public String name() {
+		return "SelectorChannelHandlerContext";
+	}
+
+	@Override
+	public void bind(SocketAddress localAddress) throws IOException {
+		channel.bind(localAddress);
+	}
+
+	@Override
+	public void connect(SocketAddress remoteAddress) throws IOException {
+		int try_num = 1;
+		int secondsMax = 30;
+		int secondsToWait = 1;
+		while(secondsToWait < secondsMax) {
+			try {
+				channel.connect(remoteAddress);
+				return;
+			} catch(Exception e) {
+				// a failed connect closes the channel, start over with a fresh one
+				if( !channel.isOpen() )
+					channel = SocketChannel.open();
+			}
+			secondsToWait = (int) Math.min(secondsMax, Math.pow(2, try_num++));
+			log.info("Failed to connect to remote address "+remoteAddress+", waiting "+secondsToWait+" seconds for retry...");
+			try {
+				Thread.sleep(secondsToWait*1000);
+			} catch (InterruptedException e) {}
+		}
+		throw new IOException("failed to connect to remote address "+remoteAddress+" after maximum retries");
+	}
+
+	@Override
+	public void connect(SocketAddress remoteAddress, SocketAddress localAddress) throws IOException {
+		channel.bind(localAddress);
+		channel.connect(remoteAddress);
+	}
+
+	@Override
+	public void disconnect() throws IOException {
+		close();
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if( key != null )
+			key.cancel();
+		channel.close();
+	}
+
+	/**
+	 * Reads are driven by the {@link SelectorEventLoop}, there is no blocking read on this context.
+	 */
+	@Override
+	public Object read() throws IOException {
+		throw new IOException("Reads on "+this+" are driven by the selector event loop");
+	}
+
+	@Override
+	public void write(Object msg) throws IOException {
+		synchronized(pendingWrites) {
+			if( closed )
+				throw new IOException("Channel closed "+this);
+			send(codec.encodeFrame(msg));
+		}
+		if( eventLoop != null && !pendingWritesEmpty() )
+			eventLoop.requestWrite(this);
+	}
+
+	@Override
+	public void writeFrame(ByteBuffer frame) throws IOException {
+		synchronized(pendingWrites) {
+			if( closed )
+				throw new IOException("Channel closed "+this);
+			send(frame);
+		}
+		if( eventLoop != null && !pendingWritesEmpty() )
+			eventLoop.requestWrite(this);
+	}
+
+	/**
+	 * Write what the channel will take now and queue a copy of the rest, as the buffer passed in is
+	 * the codec's or shared with other channels. Called with the pendingWrites lock held.
+	 */
+	private void send(ByteBuffer buf) throws IOException {
+		if( pendingWrites.isEmpty() ) {
+			channel.write(buf);
+			if( !buf.hasRemaining() )
+				return;
+		}
+		ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+		copy.put(buf);
+		copy.flip();
+		pendingWrites.addLast(copy);
+	}
+
+	private boolean pendingWritesEmpty() {
+		synchronized(pendingWrites) {
+			return pendingWrites.isEmpty();
+		}
+	}
+
+	@Override
+	public void write(Object msg, CompletionHandler<Integer, Void> handler) {
+		try {
+			write(msg);
+			handler.completed(0, null);
+		} catch (IOException e) {
+			handler.failed(e, null);
+		}
+	}
+
+	@Override
+	public Object read(CompletionHandler<Integer, Void> handler) {
+		try {
+			Object o = read();
+			handler.completed(0, null);
+			return o;
+		} catch (IOException e) {
+			handler.failed(e, null);
+		}
+		return null;
+	}
+
+	@Override
+	public ChannelPipeline pipeline() {
+		return pipeline;
+	}
+
+	@Override
+	public ChannelGroup getChannelGroup() {
+		return channelGroup;
+	}
+
+	@Override
+	public boolean isReady() {
+		return ready;
+	}
+
+	@Override
+	public void setReady(boolean ready) { this.ready = ready; }
+
+	@Override
+	public Object getChannelCompletionMutex() { return mutex; }
+
+
+	@Override
+	public void setMessageCodec(MessageCodec codec) {
+		synchronized(pendingWrites) {
+			this.codec = codec;
+		}
+	}
+
+	@Override
+	public boolean isWritable() {
+		return pendingWritesEmpty();
+	}
+
+	@Override
+	public void setWritabilityListener(Runnable listener) {
+		this.writabilityListener = listener;
+	}
+
+	@Override
+	public MessageCodec getMessageCodec() { return codec; }
+
+	@Override
+	public void setMaxFrameSize(int maxFrameSize) {
+		if( maxFrameSize <= 0 || maxFrameSize > Integer.MAX_VALUE - 4 )
+			throw new IllegalArgumentException("Invalid maximum frame size "+maxFrameSize);
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	@Override
+	public int getMaxFrameSize() { return maxFrameSize; }
+
+	@Override
+	public String toString() {
+		return new String("SelectorChannelHandlerContext:"+channel+" "+eventLoop+" "+pipeline+" ready:"+ready);
+	}
+}
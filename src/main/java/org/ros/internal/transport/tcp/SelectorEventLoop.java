@@ -0,0 +1,138 @@
+package org.ros.internal.transport.tcp;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * One selector thread of a {@link SelectorEventLoopGroup}.
+ * Multiplexes the reads and the pending writes of every {@link SelectorChannelHandlerContext} registered to it,
+ * so the number of threads servicing traffic no longer grows with the number of connections as it does when an
+ * {@link AsynchTCPWorker} is spun per socket.
+ * Registrations and write interest changes coming from other threads are queued and picked up after waking the
+ * selector, since SelectableChannel.register blocks while a select is in progress.
+ * @author jg
+ *
+ */
+public class SelectorEventLoop implements Runnable {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(SelectorEventLoop.class);
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<SelectorChannelHandlerContext> registrations = new ConcurrentLinkedQueue<SelectorChannelHandlerContext>();
+	private final ConcurrentLinkedQueue<SelectorChannelHandlerContext> writeRequests = new ConcurrentLinkedQueue<SelectorChannelHandlerContext>();
+	private volatile boolean shouldRun = true;
+
+	public SelectorEventLoop() throws IOException {
+		selector = Selector.open();
+	}
+
+	/**
+	 * Hand a connected context to this loop. The channel is switched to non-blocking mode and
+	 * registered for reads by the loop thread.
+	 * @param ctx
+	 */
+	public void register(SelectorChannelHandlerContext ctx) {
+		registrations.add(ctx);
+		selector.wakeup();
+	}
+
+	/**
+	 * Ask the loop to flush the pending writes of the context when its channel becomes writable.
+	 * @param ctx
+	 */
+	public void requestWrite(SelectorChannelHandlerContext ctx) {
+		writeRequests.add(ctx);
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		if( DEBUG )
+			log.info("SelectorEventLoop starting "+this);
+		while(shouldRun) {
+			try {
+				selector.select();
+				processRegistrations();
+				processWriteRequests();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					SelectorChannelHandlerContext ctx = (SelectorChannelHandlerContext) key.attachment();
+					try {
+						if( key.isReadable() )
+							ctx.readReady();
+						if( key.isValid() && key.isWritable() && ctx.writeReady() )
+							key.interestOps(SelectionKey.OP_READ);
+					} catch(CancelledKeyException cke) {
+						// closed by another thread between select and dispatch
+					} catch(Exception e) {
+						ctx.failed(e);
+					}
+				}
+			} catch(IOException e) {
+				log.error("SelectorEventLoop select failure "+e,e);
+			}
+		}
+		for(SelectionKey key : selector.keys()) {
+			try {
+				((SelectorChannelHandlerContext)key.attachment()).close();
+			} catch (IOException e) {}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {}
+		if( DEBUG )
+			log.info("SelectorEventLoop terminated "+this);
+	}
+
+	private void processRegistrations() {
+		SelectorChannelHandlerContext ctx;
+		while((ctx = registrations.poll()) != null) {
+			try {
+				ctx.getSocketChannel().configureBlocking(false);
+				ctx.setSelectionKey(ctx.getSocketChannel().register(selector, SelectionKey.OP_READ, ctx));
+				// a write may have been queued while the channel was still in blocking mode
+				if( !ctx.writeReady() )
+					writeRequests.add(ctx);
+			} catch(Exception e) {
+				ctx.failed(e);
+			}
+		}
+	}
+
+	private void processWriteRequests() {
+		SelectorChannelHandlerContext ctx;
+		while((ctx = writeRequests.poll()) != null) {
+			SelectionKey key = ctx.getSelectionKey();
+			if( key != null && key.isValid() )
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * Stop the loop and close the channels registered to it.
+	 */
+	public void shutdown() {
+		shouldRun = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * @return the number of channels currently registered to this loop
+	 */
+	public int getChannelCount() {
+		return selector.keys().size();
+	}
+
+	@Override
+	public String toString() {
+		return "SelectorEventLoop channels:"+selector.keys().size();
+	}
+}
@@ -0,0 +1,64 @@
+package org.ros.internal.transport.tcp;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A fixed set of {@link SelectorEventLoop}s shared by all the channels of a node, al la the netty NioEventLoopGroup.
+ * Channels are assigned to the loops round robin as they are registered.
+ * Unlike {@link ChannelGroupImpl}, shutting down the group stops the loops and closes their channels but leaves
+ * the ExecutorService running, as that remains in the control of the overall application.
+ * @author jg
+ *
+ */
+public class SelectorEventLoopGroup implements ChannelGroup {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(SelectorEventLoopGroup.class);
+	private final SelectorEventLoop[] loops;
+	private final Executor executor;
+	private final AtomicInteger nextLoop = new AtomicInteger();
+
+	/**
+	 * Create and start the event loops.
+	 * @param threads The number of selector threads
+	 * @param executor The executor on which the loops run
+	 * @throws IOException If a selector cannot be opened
+	 */
+	public SelectorEventLoopGroup(int threads, Executor executor) throws IOException {
+		assert(threads > 0) : "SelectorEventLoopGroup requires at least one thread";
+		this.executor = executor;
+		loops = new SelectorEventLoop[threads];
+		for(int i = 0; i < threads; i++) {
+			loops[i] = new SelectorEventLoop();
+			executor.execute(loops[i]);
+		}
+		if( DEBUG )
+			log.info("SelectorEventLoopGroup started "+threads+" loops on "+executor);
+	}
+
+	/**
+	 * @return The loop that will service the next registered channel
+	 */
+	public SelectorEventLoop next() {
+		return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
+	public Executor getExecutor() { return executor; }
+
+	public int getThreadCount() { return loops.length; }
+
+	@Override
+	public void shutdown() {
+		for(SelectorEventLoop loop : loops)
+			loop.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		return "SelectorEventLoopGroup threads:"+loops.length;
+	}
+}
@@ -40,6 +40,7 @@ public class TcpClient {
   private /*Asynchronous*/ChannelGroup channelGroup;
   
   private ChannelInitializerFactoryStack factoryStack; // Stack of ChannelInitializer factories to load ChannelHandlers
+  private int maxFrameSize = ChannelHandlerContext.DEFAULT_MAX_FRAME_SIZE;
   
   public TcpClient( Executor executor, /*Asynchronous*/ChannelGroup channelGroup, List<NamedChannelHandler> namedChannelHandlers) {
 	this.executor = executor;
@@ -66,8 +67,15 @@ public class TcpClient {
   }
 
   public ChannelHandlerContext getContext() { return ctx; }
+
+  /**
+   * @param maxFrameSize the largest frame payload in bytes read from the connection, set before connecting
+   */
+  public void setMaxFrameSize(int maxFrameSize) { this.maxFrameSize = maxFrameSize; }
   
   public Socket connect(String connectionName, SocketAddress socketAddress) throws Exception {
+	if( channelGroup instanceof SelectorEventLoopGroup )
+		return connectSelector(connectionName, socketAddress);
 	//channel = /*Asynchronous*/SocketChannel.open(/*channelGroup*/);
 	  channel = new Socket();
 	  //channel.setTcpNoDelay(true);
@@ -77,6 +85,7 @@ public class TcpClient {
 	//((/*Asynchronous*/SocketChannel)channel).setOption(StandardSocketOptions.SO_SNDBUF, 4096000);
 	//((/*Asynchronous*/SocketChannel)channel).setOption(StandardSocketOptions.TCP_NODELAY, false);
 	ctx = new ChannelHandlerContextImpl(channelGroup, channel, executor);
+	ctx.setMaxFrameSize(maxFrameSize);
     TcpClientPipelineFactory tcpClientPipelineFactory = new TcpClientPipelineFactory(ctx.getChannelGroup(), namedChannelHandlers);
     // add handler pipeline factory to stack
     factoryStack.addLast(tcpClientPipelineFactory);
@@ -105,4 +114,28 @@ public class TcpClient {
   }
 
 
-}
\ No newline at end of file
+  /**
+   * Connect through the selector transport, the connected channel is serviced by one of the
+   * event loops of the {@link SelectorEventLoopGroup} rather than a dedicated {@link AsynchTCPWorker}.
+   */
+  private Socket connectSelector(String connectionName, SocketAddress socketAddress) throws Exception {
+	SocketChannel socketChannel = SocketChannel.open();
+	socketChannel.socket().setSendBufferSize(4096000);
+	socketChannel.socket().setReceiveBufferSize(4096000);
+	SelectorChannelHandlerContext sctx = new SelectorChannelHandlerContext((SelectorEventLoopGroup)channelGroup, socketChannel, executor);
+	ctx = sctx;
+	ctx.setMaxFrameSize(maxFrameSize);
+	factoryStack.addLast(new TcpClientPipelineFactory(ctx.getChannelGroup(), namedChannelHandlers));
+	factoryStack.inject(ctx);
+	ctx.pipeline().fireChannelRegistered();
+	ctx.connect(socketAddress);
+	sctx.register();
+	ctx.pipeline().fireChannelActive();
+	channel = ctx.channel();
+	if (DEBUG) {
+		log.info("TcpClient Connected to socket: " + socketAddress+" with selector context "+ctx);
+	}
+	return channel;
+  }
+
+}
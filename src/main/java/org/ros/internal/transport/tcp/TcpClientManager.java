@@ -13,6 +13,7 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ros.internal.transport.ChannelHandlerContext;
 
 
 /**
@@ -31,6 +32,8 @@ public class TcpClientManager {
   private final Collection<TcpClient> tcpClients;
   private final List<NamedChannelHandler> namedChannelHandlers;
   private final ExecutorService executor;
+  private final boolean sharedChannelGroup;
+  private volatile int maxFrameSize = ChannelHandlerContext.DEFAULT_MAX_FRAME_SIZE;
   
   private static ArrayBlockingQueue<ExecutorService> executors = new ArrayBlockingQueue<ExecutorService>(1024);
   private static ArrayBlockingQueue<TcpClientManager> instances = new ArrayBlockingQueue<TcpClientManager>(1024);
@@ -50,9 +53,28 @@ public class TcpClientManager {
 	  return tcp;
   }
   
+  /**
+   * Get a manager whose clients are serviced by the given node wide channel group, such as the
+   * {@link SelectorEventLoopGroup} of the node's {@link TcpRosServer}. If the group is null this is the same
+   * as {@link #getInstance(ExecutorService)}.
+   * @param exc
+   * @param channelGroup
+   * @return a new TcpClientManager whose clients share channelGroup
+   */
+  public static TcpClientManager getInstance(ExecutorService exc, ChannelGroup channelGroup) {
+	  if( channelGroup == null )
+		  return getInstance(exc);
+	  return new TcpClientManager(exc, channelGroup, true);
+  }
+
   private TcpClientManager(ExecutorService executor) {
+	this(executor, new ChannelGroupImpl(executor), false);/*AsynchronousChannelGroup.withThreadPool(executor);*/
+  }
+
+  private TcpClientManager(ExecutorService executor, ChannelGroup channelGroup, boolean sharedChannelGroup) {
 	this.executor = executor;
-    this.channelGroup = new ChannelGroupImpl(executor);/*AsynchronousChannelGroup.withThreadPool(executor);*/
+    this.channelGroup = channelGroup;
+    this.sharedChannelGroup = sharedChannelGroup;
     this.tcpClients = new ArrayList<TcpClient>();
     this.namedChannelHandlers = new ArrayList<NamedChannelHandler>();
     if( DEBUG )
@@ -67,6 +89,15 @@ public class TcpClientManager {
     this.namedChannelHandlers.addAll(namedChannelHandlers);
   }
 
+  /**
+   * @param maxFrameSize
+   *          the largest frame payload in bytes read from connections made
+   *          from now on, see {@link ChannelHandlerContext#setMaxFrameSize(int)}
+   */
+  public void setMaxFrameSize(int maxFrameSize) {
+    this.maxFrameSize = maxFrameSize;
+  }
+
   /**
    * Connects to a server.
    * <p>
@@ -83,6 +114,7 @@ public class TcpClientManager {
 	if( DEBUG )
 	    	log.info("TcpClient connect:"+connectionName+" "+socketAddress);
     TcpClient tcpClient = new TcpClient(executor, channelGroup, namedChannelHandlers);
+    tcpClient.setMaxFrameSize(maxFrameSize);
     tcpClient.connect(connectionName, socketAddress);
     tcpClients.add(tcpClient);
     return tcpClient;
@@ -95,7 +127,16 @@ public class TcpClientManager {
   public void shutdown() {
 	if( DEBUG )
 	    	log.info("TcpClient shutdown:");
-    channelGroup.shutdown();
+    if( sharedChannelGroup ) {
+    	// the group belongs to the node, only take down our own connections
+    	for(TcpClient tcpClient : tcpClients) {
+    		try {
+    			if( tcpClient.getContext() != null )
+    				tcpClient.getContext().close();
+    		} catch (IOException e) {}
+    	}
+    } else
+    	channelGroup.shutdown();
     tcpClients.clear();
     // We don't call channelFactory.releaseExternalResources() or
     // bootstrap.releaseExternalResources() since the only external resource is
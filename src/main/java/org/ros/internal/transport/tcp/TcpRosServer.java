@@ -18,6 +18,8 @@ import org.ros.internal.transport.ChannelHandlerContext;
 import org.ros.internal.transport.ChannelHandlerContextImpl;
 import org.ros.internal.transport.ChannelPipeline;
 import org.ros.internal.transport.ChannelPipelineImpl;
+import org.ros.internal.transport.codec.MessageCodecSelector;
+import org.ros.internal.transport.queue.TopicRoutingTable;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -29,7 +31,6 @@ import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -64,31 +65,50 @@ public class TcpRosServer implements Serializable {
   private transient ChannelGroup incomingChannelGroup; // subscriber connected to publishers
   private transient TcpServerPipelineFactory serverPipelineFactory;
   private transient ChannelInitializerFactoryStack factoryStack; // Stack of ChannelInitializer factories to load ChannelHandlers
-  private transient ArrayBlockingQueue<ChannelHandlerContext> contexts;
+  private transient TopicRoutingTable routingTable;
   
   private transient AsynchBaseServer server = null;
+  private int selectorThreads = 0; // 0 is a worker thread per connection, otherwise the size of the selector group
+  private volatile int maxFrameSize = ChannelHandlerContext.DEFAULT_MAX_FRAME_SIZE;
+  private transient MessageCodecSelector codecSelector = new MessageCodecSelector();
   
   public TcpRosServer() {}
 
   public TcpRosServer(BindAddress bindAddress, AdvertiseAddress advertiseAddress,
       TopicParticipantManager topicParticipantManager, ServiceManager serviceManager,
       ScheduledExecutorService executorService) {
+    this(bindAddress, advertiseAddress, topicParticipantManager, serviceManager, executorService, 0);
+  }
+
+  /**
+   * @param selectorThreads
+   *          if greater than zero, the connections are multiplexed over a
+   *          {@link SelectorEventLoopGroup} of this many threads rather than
+   *          spinning an {@link AsynchTCPWorker} per connection
+   */
+  public TcpRosServer(BindAddress bindAddress, AdvertiseAddress advertiseAddress,
+      TopicParticipantManager topicParticipantManager, ServiceManager serviceManager,
+      ScheduledExecutorService executorService, int selectorThreads) {
+    this.selectorThreads = selectorThreads;
     this.bindAddress = bindAddress;
     this.advertiseAddress = advertiseAddress;
     this.topicParticipantManager = topicParticipantManager;
     this.serviceManager = serviceManager;
     this.executorService = executorService;
-    this.contexts = new ArrayBlockingQueue<ChannelHandlerContext>(1024);
+    this.routingTable = new TopicRoutingTable();
   }
 
   public void start() {
     //assert(outgoingChannel == null);
 	  try {
-		  incomingChannelGroup = new ChannelGroupImpl(executorService);//AsynchronousChannelGroup.withThreadPool(executorService);
+		  if( selectorThreads > 0 )
+			  incomingChannelGroup = new SelectorEventLoopGroup(selectorThreads, executorService);
+		  else
+			  incomingChannelGroup = new ChannelGroupImpl(executorService);//AsynchronousChannelGroup.withThreadPool(executorService);
 		  advertiseAddress.setPort(bindAddress.toInetSocketAddress().getPort());
 		  factoryStack = new ChannelInitializerFactoryStack();
 		  serverPipelineFactory =
-			        new TcpServerPipelineFactory(incomingChannelGroup, topicParticipantManager, serviceManager); 
+			        new TcpServerPipelineFactory(incomingChannelGroup, topicParticipantManager, serviceManager, codecSelector); 
 		  factoryStack.addLast(serverPipelineFactory);
 		    
 		  server = new AsynchBaseServer(this);
@@ -148,11 +168,10 @@ public class TcpRosServer implements Serializable {
     return advertiseAddress;
   }
   /**
-   * 
-   * @return the array of contexts from the remote connections that have attached for subscription
+   * @return the routes from the node's published topics to the subscriber connections whose handshake completed
    */
-  public ArrayBlockingQueue<ChannelHandlerContext> getSubscribers() {
-	  return contexts;
+  public TopicRoutingTable getTopicRoutingTable() {
+	  return routingTable;
   }
   
   public ChannelInitializerFactoryStack getFactoryStack() { return factoryStack; }
@@ -161,5 +180,28 @@ public class TcpRosServer implements Serializable {
   
   public /*Asynchronous*/ChannelGroup getChannelGroup() { return incomingChannelGroup; }
 
+  /**
+   * @return the number of selector threads servicing connections, 0 if each connection has its own worker
+   */
+  public int getSelectorThreads() { return selectorThreads; }
+
+  /**
+   * @return the {@link MessageCodecSelector} the publishers of this server
+   *         negotiate subscriber codecs with
+   */
+  public MessageCodecSelector getCodecSelector() { return codecSelector; }
+
+  /**
+   * @return the largest frame payload in bytes read from an accepted connection
+   */
+  public int getMaxFrameSize() { return maxFrameSize; }
+
+  /**
+   * @param maxFrameSize
+   *          the largest frame payload in bytes read from connections accepted
+   *          from now on, see {@link ChannelHandlerContext#setMaxFrameSize(int)}
+   */
+  public void setMaxFrameSize(int maxFrameSize) { this.maxFrameSize = maxFrameSize; }
+
 
 }
@@ -15,6 +15,8 @@ import org.ros.internal.transport.ChannelHandler;
 import org.ros.internal.transport.ChannelHandlerContext;
 import org.ros.internal.transport.ConnectionHeader;
 import org.ros.internal.transport.ConnectionHeaderFields;
+import org.ros.internal.transport.codec.MessageCodecSelector;
+import org.ros.internal.transport.codec.MessageCodecs;
 import org.ros.namespace.GraphName;
 
 /**
@@ -29,8 +31,15 @@ public class TcpServerHandshakeHandler implements ChannelHandler {
   private static final Log log = LogFactory.getLog(TcpServerHandshakeHandler.class);
   private final TopicParticipantManager topicParticipantManager;
   private final ServiceManager serviceManager;
+  private final MessageCodecSelector codecSelector;
 
   public TcpServerHandshakeHandler(TopicParticipantManager topicParticipantManager, ServiceManager serviceManager) {
+    this(topicParticipantManager, serviceManager, new MessageCodecSelector());
+  }
+
+  public TcpServerHandshakeHandler(TopicParticipantManager topicParticipantManager, ServiceManager serviceManager,
+		  MessageCodecSelector codecSelector) {
+    this.codecSelector = codecSelector;
     this.topicParticipantManager = topicParticipantManager;
     this.serviceManager = serviceManager;
     if( DEBUG ) {
@@ -108,23 +117,28 @@ public class TcpServerHandshakeHandler implements ChannelHandler {
     final DefaultPublisher<?> publisher = topicParticipantManager.getPublisher(topicName);
     //final ByteBuffer outgoingBuffer = publisher.finishHandshake(incomingConnectionHeader);
     final ConnectionHeader outgoingBuffer = publisher.finishHandshake(incomingConnectionHeader);
+    // Pick the codec for this topic from those the subscriber offers
+    String codecName = codecSelector.select(topicName.toString(), outgoingBuffer.getField(ConnectionHeaderFields.TYPE),
+    		incomingConnectionHeader.getField(ConnectionHeaderFields.CODEC));
+    boolean negotiated = incomingConnectionHeader.hasField(ConnectionHeaderFields.CODEC);
+    if( negotiated )
+    	codecSelector.addToReply(codecName, outgoingBuffer);
     // Write the handshake data back to client
    
     ctx.write(outgoingBuffer);
+    // The handshake reply went out in the default codec, everything after it uses the agreed one
+    if( negotiated )
+    	ctx.setMessageCodec(MessageCodecs.newCodec(outgoingBuffer));
     
-	String nodeName = incomingConnectionHeader.getField(ConnectionHeaderFields.CALLER_ID);
-	publisher.addSubscriber(new SubscriberIdentifier(NodeIdentifier.forName(nodeName), new TopicIdentifier(topicName)), ctx);
 	// Once the handshake is complete, there will be nothing incoming on the
 	// channel as we are only queueing outbound traffic to the subscriber, which is done by the OutgoingMessgequeue.
 	// So, we remove the handler
 	ctx.pipeline().remove(TcpServerPipelineFactory.HANDSHAKE_HANDLER);
-	// Set this context ready to receive the message type specified
-	synchronized(ctx.getMessageTypes()) {
-			    	ctx.getMessageTypes().add(incomingConnectionHeader.getField(ConnectionHeaderFields.TYPE));
-	}
-	// The handshake is complete and the only task is to set the context ready, which will allow
-	// the outbound queue to start sending messages.
+	// Set the context ready before it goes on the route of the topic, as the publisher's
+	// outbound queue drops connections on its route that are not ready.
 	ctx.setReady(true);
+	String nodeName = incomingConnectionHeader.getField(ConnectionHeaderFields.CALLER_ID);
+	publisher.addSubscriber(new SubscriberIdentifier(NodeIdentifier.forName(nodeName), new TopicIdentifier(topicName)), ctx);
 			    
 	if( DEBUG ) {
 			log.info("subscriber complete:"+outgoingBuffer);
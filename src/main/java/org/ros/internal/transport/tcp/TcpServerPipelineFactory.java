@@ -6,6 +6,7 @@ import org.ros.internal.node.service.ServiceManager;
 import org.ros.internal.node.topic.TopicParticipantManager;
 import org.ros.internal.transport.ChannelHandlerContext;
 import org.ros.internal.transport.ChannelPipeline;
+import org.ros.internal.transport.codec.MessageCodecSelector;
 
 /**
  * Factory to be injected into the pipeline manager to initialize the handlers for a particular function.
@@ -23,13 +24,23 @@ public class TcpServerPipelineFactory extends ChannelInitializer {
 
   private final TopicParticipantManager topicParticipantManager;
   private final ServiceManager serviceManager;
+  private final MessageCodecSelector codecSelector;
 
   public TcpServerPipelineFactory(ChannelGroup incomingChannelGroup,
       TopicParticipantManager topicParticipantManager, ServiceManager serviceManager) {
+    this(incomingChannelGroup, topicParticipantManager, serviceManager, new MessageCodecSelector());
+  }
+
+  /**
+   * @param codecSelector picks the {@link org.ros.internal.transport.codec.MessageCodec} of each subscriber connection
+   */
+  public TcpServerPipelineFactory(ChannelGroup incomingChannelGroup,
+      TopicParticipantManager topicParticipantManager, ServiceManager serviceManager, MessageCodecSelector codecSelector) {
     if( DEBUG )
     	log.info("TcpServerPipeLineFactory ctor:"+incomingChannelGroup+" "+topicParticipantManager+" "+serviceManager);
     this.topicParticipantManager = topicParticipantManager;
     this.serviceManager = serviceManager;
+    this.codecSelector = codecSelector;
   }
 
   @Override
@@ -39,6 +50,6 @@ public class TcpServerPipelineFactory extends ChannelInitializer {
     ChannelPipeline pipeline = ch.pipeline();
     //pipeline.addLast(LENGTH_FIELD_PREPENDER, new LengthFieldPrepender(4));
     //pipeline.addLast(LENGTH_FIELD_BASED_FRAME_DECODER, new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4));
-    pipeline.addLast(HANDSHAKE_HANDLER, new TcpServerHandshakeHandler(topicParticipantManager,serviceManager));
+    pipeline.addLast(HANDSHAKE_HANDLER, new TcpServerHandshakeHandler(topicParticipantManager,serviceManager,codecSelector));
   }
 }
@@ -0,0 +1,57 @@
+package org.ros.internal.transport.udp;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.ros.address.AdvertiseAddress;
+import org.ros.internal.transport.ProtocolDescription;
+import org.ros.internal.transport.ProtocolNames;
+
+/**
+ * The publisher's answer to a subscriber that offered {@link ProtocolNames#UDPROS} with the address of its
+ * datagram socket. It carries the connection id stamped on the datagrams, the datagram size the publisher will
+ * keep to, and the codec of the messages, along with the publisher node's TCPROS address.
+ * @author jg
+ *
+ */
+public class UdpRosProtocolDescription extends ProtocolDescription implements Serializable {
+	private static final long serialVersionUID = 5546034624870171270L;
+	private int connectionId;
+	private int maxDatagramSize;
+	private String codecName;
+
+	public UdpRosProtocolDescription() { super(); }
+
+	/**
+	 * @param address The TCPROS address of the publisher's node
+	 * @param connectionId The id of the {@link UdpRosSender}
+	 * @param maxDatagramSize The largest datagram it sends
+	 * @param codecName The stateless codec the messages are encoded with
+	 */
+	public UdpRosProtocolDescription(AdvertiseAddress address, int connectionId, int maxDatagramSize, String codecName) {
+		super(ProtocolNames.UDPROS, address);
+		this.connectionId = connectionId;
+		this.maxDatagramSize = maxDatagramSize;
+		this.codecName = codecName;
+	}
+
+	public int getConnectionId() { return connectionId; }
+
+	public int getMaxDatagramSize() { return maxDatagramSize; }
+
+	public String getCodecName() { return codecName; }
+
+	@Override
+	public List<Object> toList() {
+		List<Object> l1 = super.toList();
+		l1.add(connectionId);
+		l1.add(maxDatagramSize);
+		l1.add(codecName);
+		return l1;
+	}
+
+	@Override
+	public String toString() {
+		return "Protocol<" + getName() + ", " + getAdverstiseAddress() + ", " + connectionId + ", " + maxDatagramSize + ", " + codecName + ">";
+	}
+}
@@ -0,0 +1,103 @@
+package org.ros.internal.transport.udp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rebuilds the messages of one {@link UdpRosSender} from its datagrams. Fragments must arrive in order; a missing
+ * or reordered fragment drops the whole message, and a datagram of an older message than the one in progress is
+ * ignored. There is no waiting for stragglers, the next message's first fragment abandons an incomplete one, so a
+ * lossy link costs messages but never stalls the ones behind them.
+ * @author jg
+ *
+ */
+public class UdpRosReassembler {
+	private final int connectionId;
+	private byte[] buffer = new byte[4096];
+	private int length = 0;
+	private boolean started = false;
+	private int sequence;
+	// the next fragment of the message in progress, -1 when there is none
+	private int expectedFragment = -1;
+	private long received = 0;
+	private long dropped = 0;
+	private long lost = 0;
+
+	/**
+	 * @param connectionId The id the sender stamps on its datagrams, others are ignored
+	 */
+	public UdpRosReassembler(int connectionId) {
+		this.connectionId = connectionId;
+	}
+
+	/**
+	 * @param datagram One datagram, header and fragment
+	 * @return The length of the message it completed, in {@link #getBuffer()}, or -1
+	 */
+	public int add(ByteBuffer datagram) {
+		if( datagram.remaining() < UdpRosSender.HEADER_SIZE || datagram.getInt() != connectionId )
+			return -1;
+		int seq = datagram.getInt();
+		int fragment = datagram.getShort() & 0xffff;
+		int fragments = datagram.getShort() & 0xffff;
+		if( started && seq - sequence < 0 )
+			return -1;
+		if( !started || seq != sequence ) {
+			if( started ) {
+				if( expectedFragment >= 0 )
+					++dropped;
+				lost += seq - sequence - 1;
+			}
+			started = true;
+			sequence = seq;
+			length = 0;
+			if( fragment != 0 ) {
+				// the start of this one went missing too
+				++dropped;
+				expectedFragment = -1;
+				return -1;
+			}
+			expectedFragment = 0;
+		}
+		if( fragment != expectedFragment ) {
+			if( expectedFragment >= 0 )
+				++dropped;
+			expectedFragment = -1;
+			return -1;
+		}
+		int size = datagram.remaining();
+		if( buffer.length < length + size ) {
+			byte[] grown = new byte[Math.max(length + size, buffer.length * 2)];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+		datagram.get(buffer, length, size);
+		length += size;
+		if( ++expectedFragment < fragments )
+			return -1;
+		expectedFragment = -1;
+		++received;
+		return length;
+	}
+
+	/**
+	 * @return The last message completed by {@link #add(ByteBuffer)}, valid until the next call
+	 */
+	public byte[] getBuffer() { return buffer; }
+
+	public int getConnectionId() { return connectionId; }
+
+	/**
+	 * @return The messages rebuilt
+	 */
+	public long getReceivedCount() { return received; }
+
+	/**
+	 * @return The messages dropped for a missing or reordered fragment
+	 */
+	public long getDroppedCount() { return dropped; }
+
+	/**
+	 * @return The messages of which not a single fragment arrived
+	 */
+	public long getLostCount() { return lost; }
+}
@@ -0,0 +1,119 @@
+package org.ros.internal.transport.udp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.concurrent.CancellableLoop;
+import org.ros.internal.transport.codec.MessageCodec;
+import org.ros.internal.transport.queue.IncomingMessageQueue;
+
+/**
+ * The subscriber's end of a {@link org.ros.internal.transport.ProtocolNames#UDPROS} connection.
+ * The socket is bound before the subscriber asks the publisher for the topic, as its port goes in the offer; the
+ * connection is only known from the publisher's answer, after which the receiver is started on the executor.
+ * A receiver whose offer was not taken is just closed. The subscriber closes its receivers when it shuts down, and a
+ * receive waits at most {@link #RECEIVE_TIMEOUT} so a cancelled receiver gets out of its loop whatever its socket.
+ * @author jg
+ *
+ */
+public class UdpRosReceiver<T> extends CancellableLoop {
+	private static final boolean DEBUG = false;
+	private static final Log log = LogFactory.getLog(UdpRosReceiver.class);
+	// room for bursts of fragments while the receiver decodes
+	private static final int RECEIVE_BUFFER_SIZE = 1 << 20;
+	public static final int RECEIVE_TIMEOUT = 1000; // milliseconds
+
+	private final DatagramChannel channel;
+	private final ByteBuffer datagram;
+	private final DatagramPacket packet;
+	private UdpRosReassembler reassembler;
+	private MessageCodec codec;
+	private IncomingMessageQueue<T> incomingMessageQueue;
+
+	/**
+	 * Bind a socket on an ephemeral port of all interfaces.
+	 * @param maxDatagramSize The largest datagram the publisher may send
+	 * @throws IOException
+	 */
+	public UdpRosReceiver(int maxDatagramSize) throws IOException {
+		datagram = ByteBuffer.allocate(maxDatagramSize);
+		packet = new DatagramPacket(datagram.array(), maxDatagramSize);
+		channel = DatagramChannel.open();
+		channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+		channel.bind(new InetSocketAddress(0));
+		// the channel's own receive takes no timeout, its socket's does
+		channel.socket().setSoTimeout(RECEIVE_TIMEOUT);
+	}
+
+	/**
+	 * @return The port to offer the publisher
+	 * @throws IOException
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+	}
+
+	public int getMaxDatagramSize() { return datagram.capacity(); }
+
+	/**
+	 * Take the publisher's answer, call before the receiver is run.
+	 * @param connectionId The connection id the publisher selected
+	 * @param codec The codec of the publisher's messages
+	 * @param incomingMessageQueue The queue of the subscriber
+	 */
+	public void setConnection(int connectionId, MessageCodec codec, IncomingMessageQueue<T> incomingMessageQueue) {
+		this.reassembler = new UdpRosReassembler(connectionId);
+		this.codec = codec;
+		this.incomingMessageQueue = incomingMessageQueue;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void loop() throws InterruptedException {
+		packet.setLength(datagram.capacity());
+		try {
+			channel.socket().receive(packet);
+		} catch (SocketTimeoutException e) {
+			return; // nothing yet, see if we are cancelled
+		} catch (IOException e) {
+			if( !channel.isOpen() )
+				throw new InterruptedException(); // closed, or interrupted by cancel
+			log.error("UdpRosReceiver failed to receive due to "+e);
+			return;
+		}
+		datagram.clear();
+		datagram.limit(packet.getLength());
+		int length = reassembler.add(datagram);
+		if( length < 0 )
+			return;
+		try {
+			incomingMessageQueue.add((T) codec.decode(reassembler.getBuffer(), 0, length));
+		} catch (IOException e) {
+			log.error("UdpRosReceiver failed to decode message of "+length+" bytes due to "+e);
+		}
+		if( DEBUG )
+			log.info("UdpRosReceiver received:"+reassembler.getReceivedCount()+" dropped:"+reassembler.getDroppedCount()+" lost:"+reassembler.getLostCount());
+	}
+
+	/**
+	 * Stop receiving and release the socket.
+	 */
+	public void close() {
+		cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * @return The reassembler with the received, dropped and lost counts, null before {@link #setConnection}
+	 */
+	public UdpRosReassembler getReassembler() { return reassembler; }
+}
@@ -0,0 +1,113 @@
+package org.ros.internal.transport.udp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ros.internal.transport.codec.MessageCodec;
+
+/**
+ * The publisher's end of a {@link org.ros.internal.transport.ProtocolNames#UDPROS} connection to one subscriber.
+ * Each message is cut into datagrams of at most the size the subscriber asked for, each carrying a 12 byte header:
+ * the connection id, the message sequence number, the fragment index and the number of fragments, the last two
+ * unsigned shorts. Nothing is ever resent, the {@link UdpRosReassembler} at the other end drops a message that
+ * lost a fragment.
+ * <p>
+ * The channel is connected to the subscriber so that, once the subscriber's socket is gone, the ICMP port
+ * unreachable shows up as an IOException on a later send and the publisher can stop sending.
+ * Only the publisher's writer sends, so there is no locking.
+ * @author jg
+ *
+ */
+public class UdpRosSender {
+	public static final int HEADER_SIZE = 12;
+	// the ROS default, a message fragment per ethernet frame
+	public static final int DEFAULT_MAX_DATAGRAM_SIZE = 1500;
+	private static final int MAX_FRAGMENTS = 0xffff;
+	private static final AtomicInteger nextConnectionId = new AtomicInteger();
+
+	private final DatagramChannel channel;
+	private final InetSocketAddress subscriber;
+	private final int connectionId;
+	private final int maxDatagramSize;
+	private final MessageCodec codec;
+	private final ByteBuffer datagram;
+	private int sequence = 0;
+	private long sent = 0;
+	private long dropped = 0;
+
+	/**
+	 * @param subscriber The address of the subscriber's datagram socket
+	 * @param maxDatagramSize The largest datagram, header included, the subscriber takes
+	 * @param codec The stateless codec of the messages, each is decoded on its own
+	 * @throws IOException If the channel cannot be opened
+	 */
+	public UdpRosSender(InetSocketAddress subscriber, int maxDatagramSize, MessageCodec codec) throws IOException {
+		assert(maxDatagramSize > HEADER_SIZE) : "UdpRosSender datagram size too small "+maxDatagramSize;
+		assert(codec.isStateless()) : "UdpRosSender requires a stateless codec";
+		this.subscriber = subscriber;
+		this.maxDatagramSize = maxDatagramSize;
+		this.codec = codec;
+		connectionId = nextConnectionId.incrementAndGet();
+		datagram = ByteBuffer.allocate(maxDatagramSize);
+		channel = DatagramChannel.open();
+		channel.connect(subscriber);
+	}
+
+	/**
+	 * Send a message, in as many datagrams as it takes.
+	 * @param payload The encoded message, consumed
+	 * @return false if the message needs more fragments than a header can count and was dropped
+	 * @throws IOException If the subscriber is gone
+	 */
+	public boolean send(ByteBuffer payload) throws IOException {
+		int chunk = maxDatagramSize - HEADER_SIZE;
+		int fragments = Math.max(1, (payload.remaining() + chunk - 1) / chunk);
+		if( fragments > MAX_FRAGMENTS ) {
+			++dropped;
+			return false;
+		}
+		++sequence;
+		for(int fragment = 0; fragment < fragments; fragment++) {
+			datagram.clear();
+			datagram.putInt(connectionId);
+			datagram.putInt(sequence);
+			datagram.putShort((short) fragment);
+			datagram.putShort((short) fragments);
+			int length = Math.min(chunk, payload.remaining());
+			ByteBuffer slice = payload.duplicate();
+			slice.limit(slice.position() + length);
+			datagram.put(slice);
+			payload.position(payload.position() + length);
+			datagram.flip();
+			channel.write(datagram);
+		}
+		++sent;
+		return true;
+	}
+
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {}
+	}
+
+	public InetSocketAddress getSubscriber() { return subscriber; }
+
+	public int getConnectionId() { return connectionId; }
+
+	public int getMaxDatagramSize() { return maxDatagramSize; }
+
+	public MessageCodec getCodec() { return codec; }
+
+	public long getSentCount() { return sent; }
+
+	public long getDroppedCount() { return dropped; }
+
+	@Override
+	public String toString() {
+		return "UdpRosSender "+connectionId+" to "+subscriber+" sent:"+sent+" dropped:"+dropped;
+	}
+}
@@ -0,0 +1,89 @@
+package org.ros.master.client;
+
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+
+/**
+ * One change to the graph as the master saw it, numbered in the order the master made them.
+ * 
+ * @author jg
+ */
+public class GraphEvent implements Serializable {
+	private static final long serialVersionUID = 4126930415866231712L;
+
+	public enum Type {
+		/** A node registered its first publisher, subscriber or service, name and URI are those of the node */
+		NODE_ADDED,
+		/** A node has nothing left registered, or was replaced by one at another URI */
+		NODE_REMOVED,
+		/** A topic gained its first publisher or subscriber, the message type is given */
+		TOPIC_ADDED,
+		/** A topic lost its last publisher and subscriber */
+		TOPIC_REMOVED,
+		/** A registration gave the topic another message type */
+		TOPIC_TYPE_CHANGED,
+		/** The node publishes the topic */
+		PUBLISHER_ADDED,
+		PUBLISHER_REMOVED,
+		/** The node subscribes to the topic */
+		SUBSCRIBER_ADDED,
+		SUBSCRIBER_REMOVED,
+		/** The node serves the service, the URI is that of the service */
+		SERVICE_ADDED,
+		SERVICE_REMOVED
+	}
+
+	private final long sequence;
+	private final Type type;
+	private final String name;
+	private final String nodeName;
+	private final InetSocketAddress uri;
+	private final String messageType;
+
+	/**
+	 * @param sequence The number of the change, one more than the change before it
+	 * @param type
+	 * @param name The node, topic or service changed
+	 * @param nodeName The node a publisher, subscriber or service belongs to, otherwise null
+	 * @param uri The URI of a node or service, otherwise null
+	 * @param messageType The message type of a topic, otherwise null
+	 */
+	public GraphEvent(long sequence, Type type, String name, String nodeName, InetSocketAddress uri, String messageType) {
+		this.sequence = sequence;
+		this.type = type;
+		this.name = name;
+		this.nodeName = nodeName;
+		this.uri = uri;
+		this.messageType = messageType;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getNodeName() {
+		return nodeName;
+	}
+
+	public InetSocketAddress getUri() {
+		return uri;
+	}
+
+	public String getMessageType() {
+		return messageType;
+	}
+
+	@Override
+	public String toString() {
+		return "GraphEvent "+sequence+" "+type+" "+name+(nodeName == null ? "" : " node:"+nodeName)+
+				(uri == null ? "" : " uri:"+uri)+(messageType == null ? "" : " type:"+messageType);
+	}
+}
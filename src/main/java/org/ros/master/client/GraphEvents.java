@@ -0,0 +1,62 @@
+package org.ros.master.client;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The answer to a watch of the graph, the changes after the sequence number the watcher had seen up to the
+ * {@link #getSequence()} it should ask from next.<p/>
+ * Sequence numbers belong to one run of the master, named by its {@link #getEpoch()}. If the master no longer holds
+ * the changes the watcher asked from, or the watcher's epoch is not its own, it answers with a snapshot instead,
+ * the whole graph as added events, and the watcher starts over from it.
+ * 
+ * @author jg
+ */
+public class GraphEvents implements Serializable {
+	private static final long serialVersionUID = -6158336907131457921L;
+
+	private final long epoch;
+	private final long sequence;
+	private final boolean snapshot;
+	private final List<GraphEvent> events;
+
+	public GraphEvents(long epoch, long sequence, boolean snapshot, List<GraphEvent> events) {
+		this.epoch = epoch;
+		this.sequence = sequence;
+		this.snapshot = snapshot;
+		this.events = events;
+	}
+
+	/**
+	 * @return The run of the master the sequence numbers belong to, to watch with next
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return The sequence number of the last change covered, to watch from next
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return true if the events are the whole graph and replace what the watcher has
+	 */
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return The changes in order, empty if the watch timed out with none
+	 */
+	public List<GraphEvent> getEvents() {
+		return events;
+	}
+
+	@Override
+	public String toString() {
+		return "GraphEvents epoch "+epoch+" to "+sequence+(snapshot ? " snapshot " : " ")+events.size()+" events";
+	}
+}
@@ -0,0 +1,18 @@
+package org.ros.master.client;
+
+/**
+ * Told of changes to the graph a {@link GraphMirror} follows.
+ * 
+ * @author jg
+ */
+public interface GraphListener {
+
+  /**
+   * The mirror has applied the changes. Called one batch at a time on the
+   * thread reading the master's answers, so it should not block.
+   * 
+   * @param events
+   *          the changes, or a snapshot that replaced the whole mirror
+   */
+  void onGraphEvents(GraphEvents events);
+}
@@ -0,0 +1,299 @@
+package org.ros.master.client;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.internal.node.client.MasterClient;
+import org.ros.internal.node.response.Response;
+import org.ros.namespace.GraphName;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A copy of the graph kept up to date by watching the master, for tooling and
+ * supervisors that would otherwise poll {@link MasterClient#getSystemState}.
+ * <p>
+ * The mirror keeps one {@link MasterClient#watchGraphAsync} call outstanding.
+ * The first answer is a snapshot of the graph, each one after it the changes
+ * since the one before, and the master holds the call until there is a change,
+ * so the mirror follows the graph as it changes at the cost of one idle call.
+ * If the master restarts or the mirror falls too far behind, the next answer
+ * is a snapshot again. A failed call is retried after {@link #RETRY_DELAY}.
+ * 
+ * @author jg
+ */
+public class GraphMirror {
+
+  private static final boolean DEBUG = false;
+  private static final Log log = LogFactory.getLog(GraphMirror.class);
+  public static final long DEFAULT_WAIT = 30000; // milliseconds the master may hold a watch
+  public static final long RETRY_DELAY = 1000; // milliseconds
+
+  private final MasterClient masterClient;
+  private final GraphName caller;
+  private final long waitMillis;
+  private final ScheduledExecutorService retries;
+  private final Collection<GraphListener> listeners = new CopyOnWriteArrayList<GraphListener>();
+  private final CountDownLatch synced = new CountDownLatch(1);
+
+  // all guarded by this
+  private long epoch = 0;
+  private long sequence = 0;
+  private boolean running = false;
+  private final Map<String, InetSocketAddress> nodes = new HashMap<String, InetSocketAddress>();
+  private final Map<String, String> topicTypes = new HashMap<String, String>();
+  private final Map<String, Set<String>> publishers = new HashMap<String, Set<String>>();
+  private final Map<String, Set<String>> subscribers = new HashMap<String, Set<String>>();
+  private final Map<String, InetSocketAddress> services = new HashMap<String, InetSocketAddress>();
+
+  public GraphMirror(MasterClient masterClient, GraphName caller) {
+    this(masterClient, caller, DEFAULT_WAIT);
+  }
+
+  /**
+   * @param masterClient
+   *          the master to follow
+   * @param caller
+   *          the name to call the master with
+   * @param waitMillis
+   *          how long the master may hold each watch
+   */
+  public GraphMirror(MasterClient masterClient, GraphName caller, long waitMillis) {
+    this.masterClient = masterClient;
+    this.caller = caller;
+    this.waitMillis = waitMillis;
+    retries = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "GraphMirror");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Start following the master.
+   */
+  public void start() {
+    synchronized (this) {
+      if (running) {
+        return;
+      }
+      running = true;
+    }
+    watch();
+  }
+
+  /**
+   * Stop following the master, the watch outstanding is left to complete.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      running = false;
+    }
+    retries.shutdownNow();
+  }
+
+  /**
+   * @param listener
+   *          told of each batch of changes once applied
+   */
+  public void addListener(GraphListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Wait for the first snapshot of the graph.
+   * 
+   * @return false if it did not come within the timeout
+   */
+  public boolean awaitSync(long timeout, TimeUnit unit) throws InterruptedException {
+    return synced.await(timeout, unit);
+  }
+
+  private void watch() {
+    long watchEpoch;
+    long watchSequence;
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      watchEpoch = epoch;
+      watchSequence = sequence;
+    }
+    masterClient.watchGraphAsync(caller, watchEpoch, watchSequence, waitMillis).whenComplete(
+        new BiConsumer<Response<GraphEvents>, Throwable>() {
+          @Override
+          public void accept(Response<GraphEvents> response, Throwable failure) {
+            if (failure != null) {
+              if (DEBUG) {
+                log.debug("GraphMirror watch failed, retrying: " + failure);
+              }
+              retry();
+              return;
+            }
+            GraphEvents events = response.getResult();
+            apply(events);
+            if (!events.getEvents().isEmpty() || events.isSnapshot()) {
+              for (GraphListener listener : listeners) {
+                try {
+                  listener.onGraphEvents(events);
+                } catch (RuntimeException e) {
+                  log.error("GraphListener failed on " + events, e);
+                }
+              }
+            }
+            watch();
+          }
+        });
+  }
+
+  private void retry() {
+    try {
+      retries.schedule(new Runnable() {
+        @Override
+        public void run() {
+          watch();
+        }
+      }, RETRY_DELAY, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // shut down
+    }
+  }
+
+  private synchronized void apply(GraphEvents events) {
+    if (events.isSnapshot()) {
+      nodes.clear();
+      topicTypes.clear();
+      publishers.clear();
+      subscribers.clear();
+      services.clear();
+    }
+    for (GraphEvent event : events.getEvents()) {
+      switch (event.getType()) {
+        case NODE_ADDED:
+          nodes.put(event.getName(), event.getUri());
+          break;
+        case NODE_REMOVED:
+          nodes.remove(event.getName());
+          break;
+        case TOPIC_ADDED:
+        case TOPIC_TYPE_CHANGED:
+          topicTypes.put(event.getName(), event.getMessageType());
+          break;
+        case TOPIC_REMOVED:
+          topicTypes.remove(event.getName());
+          publishers.remove(event.getName());
+          subscribers.remove(event.getName());
+          break;
+        case PUBLISHER_ADDED:
+          add(publishers, event.getName(), event.getNodeName());
+          break;
+        case PUBLISHER_REMOVED:
+          remove(publishers, event.getName(), event.getNodeName());
+          break;
+        case SUBSCRIBER_ADDED:
+          add(subscribers, event.getName(), event.getNodeName());
+          break;
+        case SUBSCRIBER_REMOVED:
+          remove(subscribers, event.getName(), event.getNodeName());
+          break;
+        case SERVICE_ADDED:
+          services.put(event.getName(), event.getUri());
+          break;
+        case SERVICE_REMOVED:
+          services.remove(event.getName());
+          break;
+      }
+    }
+    epoch = events.getEpoch();
+    sequence = events.getSequence();
+    if (events.isSnapshot()) {
+      synced.countDown();
+    }
+  }
+
+  private static void add(Map<String, Set<String>> map, String topicName, String nodeName) {
+    Set<String> nodeNames = map.get(topicName);
+    if (nodeNames == null) {
+      nodeNames = new HashSet<String>();
+      map.put(topicName, nodeNames);
+    }
+    nodeNames.add(nodeName);
+  }
+
+  private static void remove(Map<String, Set<String>> map, String topicName, String nodeName) {
+    Set<String> nodeNames = map.get(topicName);
+    if (nodeNames != null) {
+      nodeNames.remove(nodeName);
+      if (nodeNames.isEmpty()) {
+        map.remove(topicName);
+      }
+    }
+  }
+
+  /**
+   * @return the slave URI of the node, or null if it is not registered
+   */
+  public synchronized InetSocketAddress lookupNode(String nodeName) {
+    return nodes.get(nodeName);
+  }
+
+  /**
+   * @return the URI of the service, or null if it is not registered
+   */
+  public synchronized InetSocketAddress lookupService(String serviceName) {
+    return services.get(serviceName);
+  }
+
+  /**
+   * @return the names of the registered nodes and their slave URIs
+   */
+  public synchronized Map<String, InetSocketAddress> getNodes() {
+    return new HashMap<String, InetSocketAddress>(nodes);
+  }
+
+  /**
+   * @return the names of the registered services and their URIs
+   */
+  public synchronized Map<String, InetSocketAddress> getServices() {
+    return new HashMap<String, InetSocketAddress>(services);
+  }
+
+  /**
+   * @return the names of the topics with a publisher or subscriber and their
+   *         message types
+   */
+  public synchronized Map<String, String> getTopicTypes() {
+    return new HashMap<String, String>(topicTypes);
+  }
+
+  /**
+   * @return the graph as {@link MasterClient#getSystemState} would give it
+   */
+  public synchronized SystemState getSystemState() {
+    Collection<TopicSystemState> topics = new ArrayList<TopicSystemState>();
+    for (String topicName : topicTypes.keySet()) {
+      topics.add(new TopicSystemState(topicName, copy(publishers.get(topicName)), copy(subscribers.get(topicName))));
+    }
+    return new SystemState(topics);
+  }
+
+  private static Set<String> copy(Set<String> nodeNames) {
+    return nodeNames == null ? new HashSet<String>() : new HashSet<String>(nodeNames);
+  }
+}
@@ -109,4 +109,14 @@ public class MasterStateClient {
     Response<SystemState> result = masterClient.getSystemState(caller.getName());
     return result.getResult();
   }
+
+  /**
+   * @return a started {@link GraphMirror} following the master, to use in
+   *         place of polling {@link #getSystemState()}
+   */
+  public GraphMirror newGraphMirror() {
+    GraphMirror graphMirror = new GraphMirror(masterClient, caller.getName());
+    graphMirror.start();
+    return graphMirror;
+  }
 }
@@ -29,6 +29,10 @@ import org.ros.internal.message.service.ServiceDescriptionFactory;
 import org.ros.internal.message.service.ServiceRequestMessageFactory;
 import org.ros.internal.message.service.ServiceResponseMessageFactory;
 import org.ros.internal.message.topic.TopicDescriptionFactory;
+import org.ros.internal.transport.ChannelHandlerContext;
+import org.ros.internal.transport.queue.ChannelOutboundQueue;
+import org.ros.internal.transport.queue.OverflowPolicy;
+import org.ros.internal.transport.udp.UdpRosSender;
 import org.ros.message.MessageDefinitionProvider;
 import org.ros.message.MessageFactory;
 import org.ros.namespace.GraphName;
@@ -39,7 +43,13 @@ import org.ros.time.WallTimeProvider;
 import java.io.File;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 
 /**
@@ -66,6 +76,8 @@ public class NodeConfiguration {
 
   private NameResolver parentResolver;
   private InetSocketAddress masterUri;
+  private List<InetSocketAddress> masterUris;
+  private Map<GraphName, List<InetSocketAddress>> masterShards = new HashMap<GraphName, List<InetSocketAddress>>();
   private File rosRoot;
   private List<File> rosPackagePath;
   private GraphName nodeName;
@@ -84,6 +96,15 @@ public class NodeConfiguration {
   private ScheduledExecutorService scheduledExecutorService;
   private TimeProvider timeProvider;
   private CommandLineLoader commandLineLoader = null;
+  private int tcpRosSelectorThreads = 0;
+  private int tcpRosStreamResetInterval = 0;
+  private Map<String, String> topicCodecs = new HashMap<String, String>();
+  private int tcpRosSubscriberQueueCapacity = ChannelOutboundQueue.DEFAULT_CAPACITY;
+  private OverflowPolicy tcpRosOverflowPolicy = ChannelOutboundQueue.DEFAULT_OVERFLOW_POLICY;
+  private int sharedMemoryRingCapacity = 0;
+  private Set<String> udpRosTopics = new HashSet<String>();
+  private int udpRosMaxDatagramSize = UdpRosSender.DEFAULT_MAX_DATAGRAM_SIZE;
+  private int tcpRosMaxFrameSize = ChannelHandlerContext.DEFAULT_MAX_FRAME_SIZE;
 
 
 /**
@@ -95,6 +116,8 @@ public class NodeConfiguration {
     NodeConfiguration copy = new NodeConfiguration();
     copy.parentResolver = nodeConfiguration.parentResolver;
     copy.masterUri = nodeConfiguration.masterUri;
+    copy.masterUris = nodeConfiguration.masterUris;
+    copy.masterShards = new HashMap<GraphName, List<InetSocketAddress>>(nodeConfiguration.masterShards);
     copy.rosRoot = nodeConfiguration.rosRoot;
     copy.rosPackagePath = nodeConfiguration.rosPackagePath;
     copy.nodeName = nodeConfiguration.nodeName;
@@ -110,6 +133,15 @@ public class NodeConfiguration {
     copy.scheduledExecutorService = nodeConfiguration.scheduledExecutorService;
     copy.timeProvider = nodeConfiguration.timeProvider;
     copy.commandLineLoader = nodeConfiguration.commandLineLoader;
+    copy.tcpRosSelectorThreads = nodeConfiguration.tcpRosSelectorThreads;
+    copy.tcpRosStreamResetInterval = nodeConfiguration.tcpRosStreamResetInterval;
+    copy.topicCodecs = new HashMap<String, String>(nodeConfiguration.topicCodecs);
+    copy.tcpRosSubscriberQueueCapacity = nodeConfiguration.tcpRosSubscriberQueueCapacity;
+    copy.tcpRosOverflowPolicy = nodeConfiguration.tcpRosOverflowPolicy;
+    copy.sharedMemoryRingCapacity = nodeConfiguration.sharedMemoryRingCapacity;
+    copy.udpRosTopics = new HashSet<String>(nodeConfiguration.udpRosTopics);
+    copy.udpRosMaxDatagramSize = nodeConfiguration.udpRosMaxDatagramSize;
+    copy.tcpRosMaxFrameSize = nodeConfiguration.tcpRosMaxFrameSize;
     return copy;
   }
 
@@ -226,6 +258,63 @@ public class NodeConfiguration {
    */
   public NodeConfiguration setMasterUri(InetSocketAddress defaultMasterUri) {
     this.masterUri = defaultMasterUri;
+    this.masterUris = null;
+    return this;
+  }
+
+  /**
+   * @return the master the {@link Node} registers with followed by its
+   *         standbys, the one master if there are none
+   */
+  public List<InetSocketAddress> getMasterUris() {
+    if (masterUris == null) {
+      return Collections.singletonList(masterUri);
+    }
+    return masterUris;
+  }
+
+  /**
+   * Give the master and its standbys. The {@link Node} registers with the
+   * first and moves on to the next when it loses the one it has, see
+   * {@link org.ros.internal.node.server.master.MasterStandby}.
+   * 
+   * @param masterUris
+   *          the masters in the order to use them, the first is the
+   *          {@link #getMasterUri()}
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setMasterUris(List<InetSocketAddress> masterUris) {
+    assert (!masterUris.isEmpty()) : "NodeConfiguration needs at least one master";
+    this.masterUri = masterUris.get(0);
+    this.masterUris = Collections.unmodifiableList(new ArrayList<InetSocketAddress>(masterUris));
+    return this;
+  }
+
+  /**
+   * @return the masters owning each namespace split off from the
+   *         {@link #getMasterUris()}, empty if the graph has one master
+   */
+  public Map<GraphName, List<InetSocketAddress>> getMasterShards() {
+    return masterShards;
+  }
+
+  /**
+   * Split a namespace off to masters of its own, for graphs too large for one
+   * master. The {@link Node} registers its topics and services and keeps its
+   * parameters under the namespace with these masters, and everything else
+   * with the {@link #getMasterUris()}. Every node of the graph should be given
+   * the same shards.
+   * 
+   * @param namespace
+   *          the global namespace, such as /arm, a name under a nested shard
+   *          such as /arm/left belongs to that one
+   * @param masterUris
+   *          the master of the namespace followed by its standbys
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setMasterShard(GraphName namespace, List<InetSocketAddress> masterUris) {
+    assert (!masterUris.isEmpty()) : "NodeConfiguration needs at least one master for " + namespace;
+    masterShards.put(namespace, Collections.unmodifiableList(new ArrayList<InetSocketAddress>(masterUris)));
     return this;
   }
 
@@ -465,6 +554,209 @@ public class NodeConfiguration {
 	  return tcpRosAdvertiseAddress;
   }
 
+  /**
+   * @return the number of selector threads servicing the {@link Node}'s TCPROS
+   *         connections, 0 if each connection has its own worker thread
+   */
+  public int getTcpRosSelectorThreads() {
+    return tcpRosSelectorThreads;
+  }
+
+  /**
+   * Selects the TCPROS transport. By default each connection is serviced by a
+   * dedicated worker thread. With a positive number of threads, all of the
+   * {@link Node}'s publisher and subscriber connections are multiplexed over
+   * that many selector threads, so the thread count stays constant as
+   * connections grow. The wire format is the same either way, nodes using
+   * either transport interoperate.
+   * 
+   * @param tcpRosSelectorThreads
+   *          the number of selector threads, 0 for a worker per connection
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setTcpRosSelectorThreads(int tcpRosSelectorThreads) {
+    this.tcpRosSelectorThreads = tcpRosSelectorThreads;
+    return this;
+  }
+
+  /**
+   * @return the number of messages between resets of the object stream kept
+   *         per subscriber connection, 0 if each message is a standalone stream
+   */
+  public int getTcpRosStreamResetInterval() {
+    return tcpRosStreamResetInterval;
+  }
+
+  /**
+   * Enables the stream session mode for the {@link Node}'s publishers. Each
+   * subscriber connection keeps one object stream, so class descriptors are
+   * sent once rather than with every message, and the stream is reset every
+   * tcpRosStreamResetInterval messages to bound the objects both ends hold on
+   * to. Published messages must not be modified after publishing. The mode is
+   * negotiated as the java_stream codec, see {@link #setTopicCodec}.
+   * 
+   * @param tcpRosStreamResetInterval
+   *          messages between stream resets, 0 for a standalone stream per
+   *          message
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setTcpRosStreamResetInterval(int tcpRosStreamResetInterval) {
+    this.tcpRosStreamResetInterval = tcpRosStreamResetInterval;
+    return this;
+  }
+
+  /**
+   * @return the codec names preferred for the {@link Node}'s published topics,
+   *         keyed by resolved topic name
+   */
+  public Map<String, String> getTopicCodecs() {
+    return topicCodecs;
+  }
+
+  /**
+   * Prefers a message codec for one of the {@link Node}'s published topics.
+   * The codec is used for the subscribers that offer it when it can carry the
+   * topic's message type. Other topics get the most preferred codec both ends
+   * support, which is the fast codec for message types registered with it and
+   * Java serialization otherwise.
+   * 
+   * @param topicName
+   *          the resolved topic name, such as /odom
+   * @param codecName
+   *          the codec name, such as fast, java_stream or java
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setTopicCodec(String topicName, String codecName) {
+    topicCodecs.put(topicName, codecName);
+    return this;
+  }
+
+  /**
+   * @return the number of messages a publisher holds for each subscriber
+   *         connection that has not taken them yet
+   */
+  public int getTcpRosSubscriberQueueCapacity() {
+    return tcpRosSubscriberQueueCapacity;
+  }
+
+  /**
+   * Each subscriber connection of the {@link Node}'s publishers is written
+   * from its own bounded queue, so a slow subscriber does not hold up the
+   * others.
+   * 
+   * @param tcpRosSubscriberQueueCapacity
+   *          the messages held per subscriber connection
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setTcpRosSubscriberQueueCapacity(int tcpRosSubscriberQueueCapacity) {
+    this.tcpRosSubscriberQueueCapacity = tcpRosSubscriberQueueCapacity;
+    return this;
+  }
+
+  /**
+   * @return the largest message frame in bytes the {@link Node} reads from a
+   *         TCPROS connection
+   */
+  public int getTcpRosMaxFrameSize() {
+    return tcpRosMaxFrameSize;
+  }
+
+  /**
+   * The length of each TCPROS frame is sent by the peer, a connection whose
+   * peer announces a larger frame is closed rather than sizing a buffer for
+   * it.
+   * 
+   * @param tcpRosMaxFrameSize
+   *          the largest message frame in bytes, 64 megabytes by default
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setTcpRosMaxFrameSize(int tcpRosMaxFrameSize) {
+    this.tcpRosMaxFrameSize = tcpRosMaxFrameSize;
+    return this;
+  }
+
+  /**
+   * @return what a publisher does when a subscriber connection's queue is full
+   */
+  public OverflowPolicy getTcpRosOverflowPolicy() {
+    return tcpRosOverflowPolicy;
+  }
+
+  /**
+   * @param tcpRosOverflowPolicy
+   *          what a publisher does when a subscriber connection's queue is
+   *          full, drop the oldest message by default
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setTcpRosOverflowPolicy(OverflowPolicy tcpRosOverflowPolicy) {
+    this.tcpRosOverflowPolicy = tcpRosOverflowPolicy;
+    return this;
+  }
+
+  /**
+   * @return the bytes of shared memory ring per published topic, 0 if
+   *         subscribers on the same host are served over TCPROS
+   */
+  public int getSharedMemoryRingCapacity() {
+    return sharedMemoryRingCapacity;
+  }
+
+  /**
+   * When set, a subscriber in another process on the same host reads a
+   * published topic from a ring in /dev/shm rather than a socket. The ring is
+   * lossy, a reader that falls a whole ring behind skips ahead to the newest
+   * messages. Disabled by default.
+   * 
+   * @param sharedMemoryRingCapacity
+   *          the bytes of ring per published topic, 0 to disable
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setSharedMemoryRingCapacity(int sharedMemoryRingCapacity) {
+    this.sharedMemoryRingCapacity = sharedMemoryRingCapacity;
+    return this;
+  }
+
+  /**
+   * @return the resolved names of the topics the {@link Node} subscribes to
+   *         over UDPROS
+   */
+  public Set<String> getUdpRosTopics() {
+    return udpRosTopics;
+  }
+
+  /**
+   * Subscribes to a topic over UDPROS where the publisher supports it. Each
+   * message is cut into datagrams and nothing is resent, a message missing a
+   * fragment is dropped, which suits high rate sensor topics where the next
+   * message is worth more than a late one.
+   * 
+   * @param topicName
+   *          the resolved topic name, such as /imu
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration addUdpRosTopic(String topicName) {
+    udpRosTopics.add(topicName);
+    return this;
+  }
+
+  /**
+   * @return the largest datagram, header included, a UDPROS subscriber takes
+   */
+  public int getUdpRosMaxDatagramSize() {
+    return udpRosMaxDatagramSize;
+  }
+
+  /**
+   * @param udpRosMaxDatagramSize
+   *          the largest datagram a UDPROS subscriber takes, 1500 by default
+   *          to fit an ethernet frame
+   * @return this {@link NodeConfiguration}
+   */
+  public NodeConfiguration setUdpRosMaxDatagramSize(int udpRosMaxDatagramSize) {
+    this.udpRosMaxDatagramSize = udpRosMaxDatagramSize;
+    return this;
+  }
+
   /**
    * @see <a href="http://www.ros.org/wiki/ROS/Technical%20Overview#Node">Node
    *      documentation</a>
@@ -16,11 +16,15 @@
 
 package org.ros.concurrent;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -131,4 +135,55 @@ public class ListenerGroupTest {
 
     assertTrue(latch.await(1, TimeUnit.SECONDS));
   }
+
+  private void keepsOnlyNewest(boolean singleProducer) throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch newest = new CountDownLatch(1);
+    final List<Integer> received = new ArrayList<Integer>();
+    ListenerGroup<CountingListener> listenerGroup =
+        new ListenerGroup<CountingListener>(executorService, singleProducer);
+    listenerGroup.add(new CountingListener() {
+      @Override
+      public void run(int count) {
+        synchronized (received) {
+          received.add(count);
+        }
+        if (count == 0) {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+          }
+        } else if (count == 5) {
+          newest.countDown();
+        }
+      }
+    }, 1);
+    for (int i = 0; i < 6; i++) {
+      final int count = i;
+      listenerGroup.signal(new SignalRunnable<CountingListener>() {
+        @Override
+        public void run(CountingListener listener) {
+          listener.run(count);
+        }
+      });
+      if (i == 0) {
+        // the listener holds the first while the rest queue behind it
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+      }
+    }
+    release.countDown();
+    assertTrue(newest.await(1, TimeUnit.SECONDS));
+    Thread.sleep(50);
+    synchronized (received) {
+      assertEquals(Arrays.asList(0, 5), received);
+    }
+  }
+
+  @Test
+  public void testQueueOfOneKeepsOnlyNewest() throws InterruptedException {
+    keepsOnlyNewest(false);
+    keepsOnlyNewest(true);
+  }
 }
@@ -0,0 +1,111 @@
+package org.ros.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Throughput of the {@link CircularBlockingDeque} against the {@link RingBuffer}s
+ * it was replaced with, one consumer taking from one or more producers. Not a
+ * test, run it from the test classpath:
+ * <pre>
+ * java -cp ... org.ros.concurrent.RingBufferBenchmark [entries per producer]
+ * </pre>
+ * Each configuration runs a few times to warm up and the best run is reported.
+ *
+ * @author jg
+ */
+public class RingBufferBenchmark {
+
+  private static final int CAPACITY = 8192;
+  private static final int RUNS = 5;
+
+  private interface QueueFactory {
+    CircularBlockingQueue<Integer> newQueue();
+  }
+
+  private static long run(final CircularBlockingQueue<Integer> queue, int producers, final int perProducer)
+      throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      threads[p] = new Thread() {
+        @Override
+        public void run() {
+          Integer entry = Integer.valueOf(1);
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < perProducer; i++) {
+            queue.addLast(entry);
+          }
+        }
+      };
+      threads[p].start();
+    }
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            queue.takeFirst();
+          }
+        } catch (InterruptedException e) {
+        }
+      }
+    };
+    consumer.start();
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // the queues drop rather than block, the run ends when the producers are done and the consumer has caught up
+    while (!queue.isEmpty()) {
+      Thread.yield();
+    }
+    long elapsed = System.nanoTime() - begin;
+    consumer.interrupt();
+    consumer.join();
+    return (long) producers * perProducer * 1000000000L / elapsed;
+  }
+
+  private static void report(String name, QueueFactory factory, int producers, int perProducer)
+      throws InterruptedException {
+    long best = 0;
+    for (int i = 0; i < RUNS; i++) {
+      best = Math.max(best, run(factory.newQueue(), producers, perProducer));
+    }
+    System.out.println(String.format("%-28s producers:%d %,15d entries/s", name, producers, best));
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int perProducer = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    QueueFactory deque = new QueueFactory() {
+      @Override
+      public CircularBlockingQueue<Integer> newQueue() {
+        return new CircularBlockingDeque<Integer>(CAPACITY);
+      }
+    };
+    for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+      report("SpscRingBuffer " + waitStrategy, new QueueFactory() {
+        @Override
+        public CircularBlockingQueue<Integer> newQueue() {
+          return new SpscRingBuffer<Integer>(CAPACITY, waitStrategy);
+        }
+      }, 1, perProducer);
+    }
+    report("CircularBlockingDeque", deque, 1, perProducer);
+    for (int producers = 2; producers <= 4; producers *= 2) {
+      for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+        report("MpscRingBuffer " + waitStrategy, new QueueFactory() {
+          @Override
+          public CircularBlockingQueue<Integer> newQueue() {
+            return new MpscRingBuffer<Integer>(CAPACITY, waitStrategy);
+          }
+        }, producers, perProducer);
+      }
+      report("CircularBlockingDeque", deque, producers, perProducer);
+    }
+  }
+}
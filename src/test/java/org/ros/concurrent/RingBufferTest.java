@@ -0,0 +1,106 @@
+package org.ros.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class RingBufferTest {
+
+  private ExecutorService executorService;
+
+  @Before
+  public void before() {
+    executorService = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void after() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testOverwriteDropsOldest() throws InterruptedException {
+    RingBuffer<Integer> ring = new SpscRingBuffer<Integer>(3);
+    // four slots, but no more entries than asked for
+    assertEquals(3, ring.getCapacity());
+    for (int i = 0; i < 6; i++) {
+      ring.addLast(i);
+    }
+    assertEquals(3, ring.length());
+    assertEquals(3, ring.getDroppedCount());
+    for (int i = 3; i < 6; i++) {
+      assertEquals(Integer.valueOf(i), ring.takeFirst());
+    }
+    assertTrue(ring.isEmpty());
+    assertNull(ring.poll());
+  }
+
+  private static void transfer(final RingBuffer<Long> ring, final int producers, final int perProducer,
+      ExecutorService executorService) throws InterruptedException {
+    for (int p = 0; p < producers; p++) {
+      final long base = (long) p << 32;
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < perProducer; i++) {
+            ring.addLast(base + i);
+          }
+        }
+      });
+    }
+    // each producer's entries arrive in its order, with none lost as the ring never fills
+    long[] next = new long[producers];
+    for (int i = 0; i < producers * perProducer; i++) {
+      long entry = ring.takeFirst();
+      int producer = (int) (entry >>> 32);
+      assertEquals(next[producer]++, entry & 0xffffffffL);
+    }
+    for (int p = 0; p < producers; p++) {
+      assertEquals(perProducer, next[p]);
+    }
+    assertEquals(0, ring.getDroppedCount());
+  }
+
+  @Test
+  public void testSingleProducerEachWaitStrategy() throws InterruptedException {
+    for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+      transfer(new SpscRingBuffer<Long>(1 << 17, waitStrategy), 1, 100000, executorService);
+    }
+  }
+
+  @Test
+  public void testManyProducers() throws InterruptedException {
+    transfer(new MpscRingBuffer<Long>(1 << 19), 4, 100000, executorService);
+  }
+
+  @Test
+  public void testTakeFirstIsInterruptible() throws InterruptedException {
+    final RingBuffer<String> ring = new MpscRingBuffer<String>(8);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          ring.takeFirst();
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+      }
+    };
+    consumer.start();
+    consumer.interrupt();
+    assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+  }
+}
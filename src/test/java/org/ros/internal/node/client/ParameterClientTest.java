@@ -0,0 +1,86 @@
+package org.ros.internal.node.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.address.BindAddress;
+import org.ros.internal.node.response.Response;
+import org.ros.internal.node.response.StatusCode;
+import org.ros.internal.node.server.NodeIdentifier;
+import org.ros.internal.node.server.RemoteRequestInterface;
+import org.ros.internal.node.server.RpcServer;
+import org.ros.namespace.GraphName;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class ParameterClientTest {
+
+  private static final ConcurrentHashMap<GraphName, Object> parameters = new ConcurrentHashMap<GraphName, Object>();
+  private static RpcServer server;
+  private static ParameterClient client;
+
+  @BeforeClass
+  public static void beforeClass() throws IOException {
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+    // the parameter server listens one port above the master
+    server = new RpcServer(BindAddress.newPrivate(port + 1), new AdvertiseAddress("127.0.0.1", port + 1)) {
+      @Override
+      public Object invokeMethod(RemoteRequestInterface rri) throws Exception {
+        GraphName name = (GraphName) rri.getParamArray()[0];
+        if (rri.getMethodName().equals("set")) {
+          parameters.put(name, rri.getParamArray()[1]);
+          return null;
+        }
+        return parameters.get(name);
+      }
+    };
+    server.start();
+    client = new ParameterClient(NodeIdentifier.forNameAndUri("/node", "127.0.0.1", 1),
+        new InetSocketAddress("127.0.0.1", port));
+  }
+
+  @AfterClass
+  public static void afterClass() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void testManyCallsInFlight() throws Exception {
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Response<Void>>[] sets = new CompletableFuture[50];
+    for (int i = 0; i < sets.length; i++) {
+      sets[i] = client.setParamAsync(GraphName.of("/p" + i), i);
+    }
+    CompletableFuture.allOf(sets).get(5, TimeUnit.SECONDS);
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Response<Object>>[] gets = new CompletableFuture[sets.length];
+    for (int i = 0; i < gets.length; i++) {
+      gets[i] = client.getParamAsync(GraphName.of("/p" + i));
+    }
+    for (int i = 0; i < gets.length; i++) {
+      assertEquals(Integer.valueOf(i), gets[i].get(5, TimeUnit.SECONDS).getResult());
+    }
+  }
+
+  @Test
+  public void testUnsetParameterIsAnError() throws Exception {
+    Response<Object> response = client.getParamAsync(GraphName.of("/unset")).get(5, TimeUnit.SECONDS);
+    assertFalse(response.isSuccess());
+    assertEquals(StatusCode.ERROR, response.getStatusCode());
+    assertEquals(StatusCode.ERROR, client.getParam(GraphName.of("/unset")).getStatusCode());
+  }
+}
@@ -0,0 +1,119 @@
+package org.ros.internal.node.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.concurrent.DefaultScheduledExecutorService;
+import org.ros.internal.message.topic.TopicDescription;
+import org.ros.internal.node.response.Response;
+import org.ros.internal.node.server.NodeIdentifier;
+import org.ros.internal.node.topic.DefaultSubscriber;
+import org.ros.internal.node.topic.TopicDeclaration;
+import org.ros.internal.node.topic.TopicParticipant;
+import org.ros.namespace.GraphName;
+import org.ros.node.topic.CountDownSubscriberListener;
+import org.ros.node.topic.Subscriber;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class RegistrarTest {
+
+  /**
+   * Counts the subscriber calls that reach the master.
+   */
+  private static class CountingMasterClient extends MasterClient {
+    private int registered;
+    private int unregistered;
+
+    CountingMasterClient() throws IOException {
+      super(new InetSocketAddress("127.0.0.1", 9), 1000, 1000);
+    }
+
+    @Override
+    public synchronized Response<List<List<InetSocketAddress>>> registerSubscribers(NodeIdentifier slave,
+        List<? extends TopicParticipant> subscribers) {
+      registered += subscribers.size();
+      List<List<InetSocketAddress>> publishers = new ArrayList<List<InetSocketAddress>>();
+      for (int i = 0; i < subscribers.size(); i++) {
+        publishers.add(new ArrayList<InetSocketAddress>());
+      }
+      return Response.newSuccess("Success", publishers);
+    }
+
+    @Override
+    public synchronized Response<Integer> unregisterSubscriber(NodeIdentifier slave, Subscriber<?> subscriber) {
+      ++unregistered;
+      return Response.newSuccess("Success", 1);
+    }
+  }
+
+  private ScheduledExecutorService executorService;
+  private CountingMasterClient masterClient;
+  private Registrar registrar;
+  private NodeIdentifier nodeIdentifier;
+
+  @Before
+  public void setup() throws IOException {
+    executorService = new DefaultScheduledExecutorService();
+    masterClient = new CountingMasterClient();
+    registrar = new Registrar(masterClient, executorService);
+    registrar.setBatchWindow(200, TimeUnit.MILLISECONDS);
+    nodeIdentifier = new NodeIdentifier(GraphName.of("/listener"), new InetSocketAddress("127.0.0.1", 40002));
+    registrar.start(nodeIdentifier);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  private DefaultSubscriber<Object> newSubscriber(String topic) throws IOException {
+    TopicDeclaration declaration = TopicDeclaration.newFromTopicName(GraphName.of(topic),
+        new TopicDescription("std_msgs/String", "", ""));
+    return DefaultSubscriber.<Object>newDefault(nodeIdentifier, declaration, executorService);
+  }
+
+  @Test
+  public void testRemovedWithinTheWindowNeverReachesTheMaster() throws Exception {
+    DefaultSubscriber<Object> kept = newSubscriber("/kept");
+    DefaultSubscriber<Object> removed = newSubscriber("/removed");
+    CountDownSubscriberListener<Object> keptListener = CountDownSubscriberListener.newDefault();
+    CountDownSubscriberListener<Object> removedListener = CountDownSubscriberListener.newDefault();
+    kept.addSubscriberListener(keptListener);
+    removed.addSubscriberListener(removedListener);
+    registrar.onSubscriberAdded(kept);
+    registrar.onSubscriberAdded(removed);
+    registrar.onSubscriberRemoved(removed);
+    assertTrue(removedListener.awaitMasterUnregistrationSuccess(1, TimeUnit.SECONDS));
+    assertTrue(keptListener.awaitMasterRegistrationSuccess(1, TimeUnit.SECONDS));
+    // removed before its registration went out, nothing of it on the master
+    registrar.shutdown();
+    synchronized (masterClient) {
+      assertEquals(1, masterClient.registered);
+      assertEquals(0, masterClient.unregistered);
+    }
+  }
+
+  @Test
+  public void testRemovedBeforeShutdownFlushNeverReachesTheMaster() throws Exception {
+    DefaultSubscriber<Object> subscriber = newSubscriber("/removed");
+    registrar.onSubscriberAdded(subscriber);
+    registrar.onSubscriberRemoved(subscriber);
+    registrar.shutdown();
+    synchronized (masterClient) {
+      assertEquals(0, masterClient.registered);
+      assertEquals(0, masterClient.unregistered);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package org.ros.internal.node.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.address.BindAddress;
+import org.ros.exception.RosRuntimeException;
+import org.ros.exception.RpcTimeoutException;
+import org.ros.internal.node.server.RemoteRequest;
+import org.ros.internal.node.server.RemoteRequestInterface;
+import org.ros.internal.node.server.RpcServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class RemoteClientTest {
+
+  private static volatile CountDownLatch release;
+  private static RpcServer server;
+  private static int port;
+  private RemoteClient client;
+
+  // the server is started once, a stopped TCPServer does not start again in the same process
+  @BeforeClass
+  public static void beforeClass() throws IOException {
+    ServerSocket probe = new ServerSocket(0);
+    port = probe.getLocalPort();
+    probe.close();
+    server = new RpcServer(BindAddress.newPrivate(port), new AdvertiseAddress("127.0.0.1", port)) {
+      @Override
+      public Object invokeMethod(RemoteRequestInterface rri) throws Exception {
+        if (rri.getMethodName().equals("slow")) {
+          release.await();
+        } else if (rri.getMethodName().equals("fail")) {
+          throw new IllegalStateException("failed on purpose");
+        }
+        return rri.getParamArray()[0];
+      }
+    };
+    server.start();
+  }
+
+  @AfterClass
+  public static void afterClass() throws IOException {
+    server.shutdown();
+  }
+
+  @Before
+  public void before() throws IOException {
+    release = new CountDownLatch(1);
+    client = new RemoteClient("127.0.0.1", port);
+  }
+
+  @After
+  public void after() {
+    release.countDown();
+    client.close();
+  }
+
+  @Test
+  public void testCallsCompleteOutOfOrder() throws Exception {
+    CompletableFuture<Object> slow = client.submit(new RemoteRequest("test", "slow", "first"));
+    // the slow call is still in flight, the next one on the same socket is not held up behind it
+    assertEquals("second", client.queue(new RemoteRequest("test", "echo", "second")));
+    assertFalse(slow.isDone());
+    release.countDown();
+    assertEquals("first", slow.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testManyCallersShareTheClient() throws Exception {
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Object>[] calls = new CompletableFuture[100];
+    for (int i = 0; i < calls.length; i++) {
+      calls[i] = client.submit(new RemoteRequest("test", "echo", i));
+    }
+    for (int i = 0; i < calls.length; i++) {
+      assertEquals(i, calls[i].get(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testRemoteFailureFailsOnlyThatCall() {
+    try {
+      client.queue(new RemoteRequest("test", "fail", "x"));
+      fail();
+    } catch (RosRuntimeException e) {
+      assertTrue(e.getMessage().contains("failed on purpose"));
+    }
+    assertEquals("y", client.queue(new RemoteRequest("test", "echo", "y")));
+  }
+
+  @Test
+  public void testUnansweredCallTimesOut() throws Exception {
+    CompletableFuture<Object> slow = client.submit(new RemoteRequest("test", "slow", "late"), 200);
+    try {
+      slow.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RpcTimeoutException);
+    }
+    assertEquals(0, client.getInFlight());
+    // the late answer is dropped, the connection carries on
+    release.countDown();
+    assertEquals("z", client.queue(new RemoteRequest("test", "echo", "z")));
+  }
+
+  @Test
+  public void testPeerThatNeverAnswersTimesOut() throws Exception {
+    // accepted by the system, never read
+    ServerSocket silent = new ServerSocket(0);
+    RemoteClient stuck = new RemoteClient("127.0.0.1", silent.getLocalPort());
+    stuck.setTimeouts(200, 200);
+    try {
+      stuck.queue(new RemoteRequest("test", "echo", "nobody"));
+      fail();
+    } catch (RpcTimeoutException e) {
+      assertEquals(1, stuck.getConnectionFailures());
+    } finally {
+      stuck.close();
+      silent.close();
+    }
+  }
+
+  @Test
+  public void testConnectingDoesNotHoldUpClose() throws Exception {
+    // accepted by the system, the handshake is never answered
+    ServerSocket silent = new ServerSocket(0);
+    final RemoteClient stuck = new RemoteClient("127.0.0.1", silent.getLocalPort());
+    stuck.setTimeouts(5000, 5000);
+    final CountDownLatch failed = new CountDownLatch(1);
+    try {
+      Thread caller = new Thread() {
+        @Override
+        public void run() {
+          try {
+            stuck.queue(new RemoteRequest("test", "echo", "nobody"));
+          } catch (RosRuntimeException e) {
+            // the connection made after the close is dropped
+            failed.countDown();
+          }
+        }
+      };
+      caller.start();
+      Thread.sleep(200);
+      long start = System.currentTimeMillis();
+      stuck.close();
+      // not held behind the handshake for its whole timeout
+      assertTrue(System.currentTimeMillis() - start < 2000);
+      assertTrue(failed.await(10, TimeUnit.SECONDS));
+    } finally {
+      stuck.close();
+      silent.close();
+    }
+  }
+
+  @Test
+  public void testInterruptedQueueKeepsTheInterrupt() {
+    Thread.currentThread().interrupt();
+    assertEquals(null, client.queue(new RemoteRequest("test", "slow", "interrupted")));
+    assertTrue(Thread.interrupted());
+  }
+}
@@ -0,0 +1,87 @@
+package org.ros.internal.node.client;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ros.internal.node.rpc.SlaveRpcEndpointImpl;
+import org.ros.namespace.GraphName;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+
+/**
+ * @author jg
+ */
+public class SlaveClientPoolTest {
+
+  private static final GraphName CALLER = GraphName.of("/caller");
+
+  private SlaveClientPool pool;
+
+  @After
+  public void after() {
+    pool.shutdown();
+  }
+
+  private static InetSocketAddress unusedAddress() throws IOException {
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+    return new InetSocketAddress("127.0.0.1", port);
+  }
+
+  @Test
+  public void testOneConnectionPerSlave() throws IOException {
+    pool = new SlaveClientPool(SlaveClientPool.DEFAULT_IDLE_TIMEOUT);
+    InetSocketAddress first = unusedAddress();
+    InetSocketAddress second = new InetSocketAddress("127.0.0.1", first.getPort() + 1);
+    pool.get(CALLER, first);
+    pool.get(GraphName.of("/other"), first);
+    assertEquals(1, pool.size());
+    pool.get(CALLER, second);
+    assertEquals(2, pool.size());
+    pool.invalidate(first);
+    assertEquals(1, pool.size());
+  }
+
+  @Test
+  public void testPooledConnectionsUseThePoolTimeouts() throws IOException {
+    pool = new SlaveClientPool(SlaveClientPool.DEFAULT_IDLE_TIMEOUT, 1234, 5678);
+    SlaveClient client = pool.get(CALLER, unusedAddress());
+    RemoteClient remoteClient = ((SlaveRpcEndpointImpl) client.rpcEndpoint).getRemoteClient();
+    assertEquals(1234, remoteClient.getConnectTimeout());
+    assertEquals(5678, remoteClient.getReplyTimeout());
+  }
+
+  @Test
+  public void testIdleConnectionsAreEvicted() throws Exception {
+    pool = new SlaveClientPool(SlaveClientPool.DEFAULT_IDLE_TIMEOUT);
+    pool.get(CALLER, unusedAddress());
+    assertEquals(0, pool.evict());
+    pool.shutdown();
+    pool = new SlaveClientPool(50);
+    pool.get(CALLER, unusedAddress());
+    Thread.sleep(200);
+    // the sweep has had its chance
+    pool.evict();
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testUnreachableSlaveFailsHealthCheck() throws IOException {
+    pool = new SlaveClientPool(SlaveClientPool.DEFAULT_IDLE_TIMEOUT);
+    InetSocketAddress slave = unusedAddress();
+    for (int i = 0; i < SlaveClientPool.MAX_CONNECTION_FAILURES; i++) {
+      try {
+        pool.get(CALLER, slave).publisherUpdate(GraphName.of("/topic"), new ArrayList<InetSocketAddress>());
+      } catch (RuntimeException e) {
+        // nothing listens there
+      }
+    }
+    assertEquals(1, pool.evict());
+    assertEquals(0, pool.size());
+  }
+}
@@ -0,0 +1,155 @@
+package org.ros.internal.node.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ros.RosCore;
+import org.ros.internal.node.response.StatusCode;
+import org.ros.namespace.GraphName;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class MasterShardsTest {
+
+  private static final InetSocketAddress ROOT = new InetSocketAddress("127.0.0.1", 8090);
+  private static final InetSocketAddress ARM = new InetSocketAddress("127.0.0.1", 8092);
+  private static final InetSocketAddress LEFT_ARM = new InetSocketAddress("127.0.0.1", 8094);
+
+  private RosCore[] cores = new RosCore[0];
+
+  @After
+  public void tearDown() {
+    for (RosCore core : cores) {
+      core.shutdown();
+    }
+  }
+
+  /**
+   * A free port with a free port above it, for a master and its parameter server.
+   */
+  private static int freePorts() throws IOException {
+    while (true) {
+      ServerSocket probe = new ServerSocket(0);
+      int port = probe.getLocalPort();
+      probe.close();
+      try {
+        new ServerSocket(port + 1).close();
+        return port;
+      } catch (IOException e) {
+        // taken, try another
+      }
+    }
+  }
+
+  @Test
+  public void testLongestNamespaceOwnsName() {
+    Map<GraphName, List<InetSocketAddress>> namespaces = new HashMap<GraphName, List<InetSocketAddress>>();
+    namespaces.put(GraphName.of("/arm"), Collections.singletonList(ARM));
+    namespaces.put(GraphName.of("/arm/left"), Collections.singletonList(LEFT_ARM));
+    MasterShards shards = new MasterShards(Collections.singletonList(ROOT), namespaces);
+    assertEquals(3, shards.size());
+    assertEquals(ROOT, shards.getMasters(shards.shardOf("/odom")).get(0));
+    assertEquals(ROOT, shards.getMasters(shards.shardOf("/armature")).get(0));
+    assertEquals(ARM, shards.getMasters(shards.shardOf("/arm")).get(0));
+    assertEquals(ARM, shards.getMasters(shards.shardOf("/arm/joints")).get(0));
+    assertEquals(LEFT_ARM, shards.getMasters(shards.shardOf("/arm/left/joints")).get(0));
+    assertEquals(ARM, shards.getMasters(shards.shardOf("/arm/leftover")).get(0));
+  }
+
+  @Test
+  public void testParameterNamespaceSpansShards() throws Exception {
+    cores = new RosCore[3];
+    for (int i = 0; i < cores.length; i++) {
+      cores[i] = RosCore.newPublic("127.0.0.1", freePorts());
+      cores[i].start();
+      assertTrue(cores[i].awaitStart(5, TimeUnit.SECONDS));
+    }
+    Map<GraphName, List<InetSocketAddress>> namespaces = new HashMap<GraphName, List<InetSocketAddress>>();
+    namespaces.put(GraphName.of("/robot/arm"), Collections.singletonList(cores[1].getUri()));
+    namespaces.put(GraphName.of("/robot/arm/left"), Collections.singletonList(cores[2].getUri()));
+    MasterRpcEndpointImpl endpoint =
+        new MasterRpcEndpointImpl(new MasterShards(Collections.singletonList(cores[0].getUri()), namespaces));
+
+    Map<String, Object> left = new HashMap<String, Object>();
+    left.put("grip", 1);
+    Map<String, Object> arm = new HashMap<String, Object>();
+    arm.put("gain", 3);
+    arm.put("left", left);
+    Map<String, Object> robot = new HashMap<String, Object>();
+    robot.put("rate", 10);
+    robot.put("arm", arm);
+    endpoint.setParam("/caller", "/robot", robot);
+    // each shard holds its own part of the tree
+    assertEquals((Object) 10, cores[0].getParameterServer().get(GraphName.of("/robot/rate")));
+    assertNull(cores[0].getParameterServer().get(GraphName.of("/robot/arm")));
+    assertEquals((Object) 3, cores[1].getParameterServer().get(GraphName.of("/robot/arm/gain")));
+    assertNull(cores[1].getParameterServer().get(GraphName.of("/robot/arm/left")));
+    assertEquals((Object) 1, cores[2].getParameterServer().get(GraphName.of("/robot/arm/left/grip")));
+    assertEquals(robot, endpoint.getParam("/caller", "/robot").get(2));
+    assertEquals(arm, endpoint.getParam("/caller", "/robot/arm").get(2));
+    assertEquals(true, endpoint.hasParam("/caller", "/robot/arm").get(2));
+
+    // a value in place of the namespace leaves nothing of it below
+    endpoint.setParam("/caller", "/robot/arm", 5);
+    assertEquals((Object) 5, endpoint.getParam("/caller", "/robot/arm").get(2));
+    assertNull(cores[2].getParameterServer().get(GraphName.of("/robot/arm/left/grip")));
+
+    endpoint.deleteParam("/caller", "/robot");
+    assertEquals(false, endpoint.hasParam("/caller", "/robot").get(2));
+    assertEquals(StatusCode.ERROR.toInt(), endpoint.getParam("/caller", "/robot").get(0));
+  }
+
+  @Test
+  public void testCallsGoToOwningMaster() throws Exception {
+    cores = new RosCore[3];
+    for (int i = 0; i < cores.length; i++) {
+      cores[i] = RosCore.newPublic("127.0.0.1", freePorts());
+      cores[i].start();
+      assertTrue(cores[i].awaitStart(5, TimeUnit.SECONDS));
+    }
+    Map<GraphName, List<InetSocketAddress>> namespaces = new HashMap<GraphName, List<InetSocketAddress>>();
+    namespaces.put(GraphName.of("/arm"), Collections.singletonList(cores[1].getUri()));
+    namespaces.put(GraphName.of("/base"), Collections.singletonList(cores[2].getUri()));
+    MasterRpcEndpointImpl endpoint =
+        new MasterRpcEndpointImpl(new MasterShards(Collections.singletonList(cores[0].getUri()), namespaces));
+
+    // one batch over every shard, answered in the batch's order
+    List<Object> response = endpoint.registerPublishers("/driver",
+        Arrays.asList("/arm/joints", "/odom", "/base/cmd_vel", "/arm/gripper"),
+        Arrays.asList("sensor_msgs/JointState", "nav_msgs/Odometry", "geometry_msgs/Twist", "std_msgs/Float32"),
+        "127.0.0.1", "40001");
+    assertEquals(4, ((List<?>) response.get(2)).size());
+    assertEquals(1, cores[0].getMasterServer().getTopicTypes(null).size());
+    assertEquals(2, cores[1].getMasterServer().getTopicTypes(null).size());
+    assertEquals(1, cores[2].getMasterServer().getTopicTypes(null).size());
+    assertEquals(4, ((List<?>) endpoint.getTopicTypes("/caller").get(2)).size());
+
+    endpoint.registerService("/driver", "/base/stop", "127.0.0.1", "50001", "127.0.0.1", "40001");
+    assertEquals(new InetSocketAddress("127.0.0.1", 50001),
+        cores[2].getMasterServer().lookupService(GraphName.of("/base/stop")));
+    assertNull(cores[0].getMasterServer().lookupService(GraphName.of("/base/stop")));
+    assertEquals(1, endpoint.lookupService("/caller", "/base/stop").get(0));
+    assertEquals(1, endpoint.lookupNode("/caller", "/driver").get(0));
+
+    endpoint.setParam("/caller", "/arm/gain", 3);
+    endpoint.setParam("/caller", "/rate", 10);
+    assertEquals((Object) 3, cores[1].getParameterServer().get(GraphName.of("/arm/gain")));
+    assertNull(cores[0].getParameterServer().get(GraphName.of("/arm/gain")));
+    assertEquals((Object) 3, endpoint.getParam("/caller", "/arm/gain").get(2));
+    assertEquals((Object) 10, endpoint.getParam("/caller", "/rate").get(2));
+  }
+}
@@ -0,0 +1,119 @@
+package org.ros.internal.node.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.address.BindAddress;
+import org.ros.internal.node.client.RemoteClient;
+import org.ros.namespace.GraphName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @author jg
+ */
+public class CompactRequestTest {
+
+  public static class Target {
+    public String describe(String value) {
+      return "string " + value;
+    }
+
+    public String describe(Integer value) {
+      return "integer " + value;
+    }
+  }
+
+  private static byte[] serialize(Object object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    oos.writeObject(object);
+    oos.flush();
+    return bytes.toByteArray();
+  }
+
+  private static Object deserialize(byte[] bytes) throws Exception {
+    return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+  }
+
+  @Test
+  public void testParametersSurviveTheWire() throws Exception {
+    Object[] params = new Object[] { GraphName.of("/node"), new InetSocketAddress("127.0.0.1", 11311),
+        InetSocketAddress.createUnresolved("elsewhere", 80), "std_msgs/String", 7, 8L, true, 1.5, null,
+        new ArrayList<String>(Arrays.asList("a", "b")) };
+    CompactRequest request = (CompactRequest) deserialize(serialize(new CompactRequest(42, 5000, 3, params)));
+    assertEquals(42, request.getId());
+    assertEquals(5000, request.getTimeout());
+    assertEquals(3, request.getMethodId());
+    assertArrayEquals(params, request.getParamArray());
+  }
+
+  @Test
+  public void testStringsLongerThan64K() throws Exception {
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 70000; i++) {
+      value.append(i % 2 == 0 ? 'a' : '\u00e9');
+    }
+    Object[] params = new Object[] { value.toString(), GraphName.of("/" + value.substring(0, 66000).replace('\u00e9', 'b')) };
+    CompactRequest request = (CompactRequest) deserialize(serialize(new CompactRequest(1, 1000, 0, params)));
+    assertArrayEquals(params, request.getParamArray());
+  }
+
+  @Test
+  public void testSmallerThanARequestByName() throws Exception {
+    Object[] params = new Object[] { GraphName.of("/talker"), new InetSocketAddress("127.0.0.1", 40001),
+        GraphName.of("/chatter"), "std_msgs/String" };
+    int byName = serialize(new RemoteRequest(SlaveServer.class.getName(), "registerSubscriber", params)).length;
+    int compact = serialize(new CompactRequest(1, 60000, 12, params)).length;
+    assertTrue(compact + " bytes against " + byName, compact * 2 < byName);
+  }
+
+  @Test
+  public void testClientSendsMethodIdsAfterHandshake() throws Exception {
+    final ServerInvokeMethod invokableMethods = new ServerInvokeMethod(Target.class.getName(), 0);
+    final Target target = new Target();
+    final int[] byId = new int[1];
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+    RpcServer server = new RpcServer(BindAddress.newPrivate(port), new AdvertiseAddress("127.0.0.1", port)) {
+      @Override
+      public MethodNamesAndParams getMethodNamesAndParams() {
+        return invokableMethods.getMethodNamesAndParams();
+      }
+
+      @Override
+      public Object invokeMethod(RemoteRequestInterface rri) throws Exception {
+        if (rri.getMethodId() != RemoteRequestInterface.NO_METHOD_ID) {
+          synchronized (byId) {
+            ++byId[0];
+          }
+        }
+        return invokableMethods.invokeMethod(rri, target);
+      }
+    };
+    server.start();
+    RemoteClient client = new RemoteClient("127.0.0.1", port);
+    try {
+      assertEquals("string x", client.queue(new RemoteRequest(Target.class.getName(), "describe", "x")));
+      assertEquals("integer 2", client.queue(new RemoteRequest(Target.class.getName(), "describe", 2)));
+      synchronized (byId) {
+        assertEquals(2, byId[0]);
+      }
+    } finally {
+      client.close();
+      server.shutdown();
+    }
+  }
+}
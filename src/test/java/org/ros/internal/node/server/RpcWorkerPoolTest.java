@@ -0,0 +1,103 @@
+package org.ros.internal.node.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.address.BindAddress;
+import org.ros.exception.RpcBusyException;
+import org.ros.internal.node.client.RemoteClient;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class RpcWorkerPoolTest {
+
+  private static RpcServerConfig config(int workerThreads, int queueCapacity) {
+    RpcServerConfig config = new RpcServerConfig();
+    config.setWorkerThreads(workerThreads);
+    config.setQueueCapacity(queueCapacity);
+    return config;
+  }
+
+  @Test
+  public void testShedsWhenWorkersAndQueueAreFull() throws Exception {
+    RpcWorkerPool pool = new RpcWorkerPool("TESTWORKER", config(1, 1));
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(2);
+    Runnable blocker = new Runnable() {
+      @Override
+      public void run() {
+        running.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+        }
+        done.countDown();
+      }
+    };
+    try {
+      assertTrue(pool.execute(blocker));
+      assertTrue(running.await(5, TimeUnit.SECONDS));
+      assertTrue(pool.execute(blocker));
+      assertFalse(pool.execute(blocker));
+      assertEquals(1, pool.getActive());
+      assertEquals(1, pool.getQueueDepth());
+      release.countDown();
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertEquals(2, pool.getSubmitted());
+      assertEquals(1, pool.getRejected());
+      assertEquals(1, pool.getPeakQueueDepth());
+    } finally {
+      release.countDown();
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testClientSeesBusy() throws Exception {
+    final CountDownLatch invoked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+    RpcServer server = new RpcServer(BindAddress.newPrivate(port), new AdvertiseAddress("127.0.0.1", port)) {
+      @Override
+      public Object invokeMethod(RemoteRequestInterface rri) throws Exception {
+        invoked.countDown();
+        release.await();
+        return "done";
+      }
+    };
+    server.setServerConfig(config(1, 0));
+    server.start();
+    RemoteClient client = new RemoteClient("127.0.0.1", port);
+    try {
+      Future<Object> first = client.submit(new RemoteRequest(RpcServer.class.getName(), "slow"));
+      assertTrue(invoked.await(5, TimeUnit.SECONDS));
+      try {
+        client.submit(new RemoteRequest(RpcServer.class.getName(), "slow")).get(5, TimeUnit.SECONDS);
+        fail("Call answered while the only worker was held");
+      } catch (ExecutionException e) {
+        assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof RpcBusyException);
+      }
+      assertEquals(1, server.getWorkerPool().getRejected());
+      release.countDown();
+      assertEquals("done", first.get(5, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+      client.close();
+      server.shutdown();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package org.ros.internal.node.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jg
+ */
+public class ServerInvokeMethodTest {
+
+  public static class Target {
+    private int calls = 0;
+
+    public String describe(String value) {
+      ++calls;
+      return "string " + value;
+    }
+
+    public String describe(Integer value) {
+      ++calls;
+      return "integer " + value;
+    }
+
+    public int add(int a, int b) {
+      return a + b;
+    }
+
+    public void touch() {
+      ++calls;
+    }
+
+    public int getCalls() {
+      return calls;
+    }
+
+    public static String constant() {
+      return "static";
+    }
+
+    public void fail(String message) {
+      throw new IllegalStateException(message);
+    }
+  }
+
+  private ServerInvokeMethod invokableMethods;
+  private Target target;
+
+  @Before
+  public void before() throws ClassNotFoundException {
+    invokableMethods = new ServerInvokeMethod(Target.class.getName(), 0);
+    target = new Target();
+  }
+
+  private Object invoke(String method, Object... params) throws Exception {
+    return invokableMethods.invokeMethod(new RemoteRequest(Target.class.getName(), method, params), target);
+  }
+
+  @Test
+  public void testOverloadsResolveByArgumentType() throws Exception {
+    assertEquals("string x", invoke("describe", "x"));
+    assertEquals("integer 1", invoke("describe", 1));
+    assertEquals(3, invoke("add", 1, 2));
+    assertNull(invoke("touch"));
+    assertEquals(3, invoke("getCalls"));
+    assertEquals("static", invokableMethods.invokeMethod(new RemoteRequest(Target.class.getName(), "constant")));
+  }
+
+  @Test
+  public void testMismatchesAreNoSuchMethod() throws Exception {
+    String[][] calls = { { "missing" }, { "describe", null, null }, { "add" } };
+    for (String[] call : calls) {
+      try {
+        Object[] params = new Object[call.length - 1];
+        System.arraycopy(call, 1, params, 0, params.length);
+        invoke(call[0], params);
+        fail(call[0]);
+      } catch (NoSuchMethodException e) {
+      }
+    }
+    try {
+      invoke("add", 1, 2.0);
+      fail();
+    } catch (NoSuchMethodException e) {
+    }
+  }
+
+  @Test
+  public void testMethodExceptionsPropagate() throws Exception {
+    try {
+      invoke("fail", "on purpose");
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("on purpose", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testLocalOnlyMethodsAreNotInvokable() throws Exception {
+    invokableMethods = new ServerInvokeMethod(Target.class.getName(), 0, "touch");
+    try {
+      invoke("touch");
+      fail();
+    } catch (NoSuchMethodException e) {
+    }
+    assertEquals(0, invoke("getCalls"));
+    assertFalse(invokableMethods.getMethodNamesAndParams().getMethodNames().contains("touch"));
+  }
+}
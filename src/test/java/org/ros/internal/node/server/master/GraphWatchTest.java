@@ -0,0 +1,116 @@
+package org.ros.internal.node.server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.address.BindAddress;
+import org.ros.internal.node.client.MasterClient;
+import org.ros.master.client.GraphEvent;
+import org.ros.master.client.GraphEvents;
+import org.ros.master.client.GraphMirror;
+import org.ros.namespace.GraphName;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class GraphWatchTest {
+
+  private static final GraphName CALLER = GraphName.of("/watcher");
+  private static final GraphName TALKER = GraphName.of("/talker");
+  private static final InetSocketAddress TALKER_URI = new InetSocketAddress("127.0.0.1", 40001);
+  private static final GraphName CHATTER = GraphName.of("/chatter");
+
+  private MasterServer master;
+
+  @Before
+  public void setup() throws Exception {
+    master = new MasterServer(BindAddress.newPrivate(0), new AdvertiseAddress("127.0.0.1", 0));
+  }
+
+  @After
+  public void tearDown() {
+    master.getPublisherUpdateNotifier().shutdown();
+    master.getGraphWatch().shutdown();
+  }
+
+  private static List<GraphEvent.Type> types(GraphEvents events) {
+    List<GraphEvent.Type> types = new ArrayList<GraphEvent.Type>();
+    for (GraphEvent event : events.getEvents()) {
+      types.add(event.getType());
+    }
+    return types;
+  }
+
+  @Test
+  public void testSnapshotThenChanges() throws Exception {
+    master.registerService(TALKER, TALKER_URI, GraphName.of("/add"), new InetSocketAddress("127.0.0.1", 50001));
+    GraphEvents snapshot = master.watchGraph(CALLER, 0, 0, 0).get(5, TimeUnit.SECONDS);
+    assertTrue(snapshot.isSnapshot());
+    assertEquals(Arrays.asList(GraphEvent.Type.NODE_ADDED, GraphEvent.Type.SERVICE_ADDED), types(snapshot));
+
+    CompletableFuture<GraphEvents> parked =
+        master.watchGraph(CALLER, snapshot.getEpoch(), snapshot.getSequence(), 5000);
+    assertFalse(parked.isDone());
+    master.registerPublisher(TALKER, TALKER_URI, CHATTER, "std_msgs/String");
+    GraphEvents added = parked.get(5, TimeUnit.SECONDS);
+    assertFalse(added.isSnapshot());
+    assertEquals(Arrays.asList(GraphEvent.Type.TOPIC_ADDED, GraphEvent.Type.PUBLISHER_ADDED), types(added));
+    assertEquals("std_msgs/String", added.getEvents().get(0).getMessageType());
+    assertEquals(TALKER.toString(), added.getEvents().get(1).getNodeName());
+
+    master.unregisterService(TALKER, GraphName.of("/add"), new InetSocketAddress("127.0.0.1", 50001));
+    master.unregisterPublisher(TALKER, CHATTER);
+    GraphEvents removed = master.watchGraph(CALLER, added.getEpoch(), added.getSequence(), 5000)
+        .get(5, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList(GraphEvent.Type.SERVICE_REMOVED, GraphEvent.Type.PUBLISHER_REMOVED,
+        GraphEvent.Type.TOPIC_REMOVED, GraphEvent.Type.NODE_REMOVED), types(removed));
+  }
+
+  @Test
+  public void testWatchTimesOutEmpty() throws Exception {
+    GraphEvents snapshot = master.watchGraph(CALLER, 0, 0, 0).get(5, TimeUnit.SECONDS);
+    GraphEvents none = master.watchGraph(CALLER, snapshot.getEpoch(), snapshot.getSequence(), 50)
+        .get(5, TimeUnit.SECONDS);
+    assertTrue(none.getEvents().isEmpty());
+    assertEquals(snapshot.getSequence(), none.getSequence());
+  }
+
+  @Test
+  public void testMirrorFollowsMaster() throws Exception {
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+    MasterServer remoteMaster = new MasterServer(BindAddress.newPrivate(port), new AdvertiseAddress("127.0.0.1", port));
+    remoteMaster.start();
+    GraphMirror mirror = new GraphMirror(new MasterClient(remoteMaster.getUri(), 10000, 10000), CALLER, 1000);
+    try {
+      remoteMaster.registerSubscriber(TALKER, TALKER_URI, CHATTER, "std_msgs/String");
+      mirror.start();
+      assertTrue(mirror.awaitSync(5, TimeUnit.SECONDS));
+      assertEquals(TALKER_URI, mirror.lookupNode(TALKER.toString()));
+      remoteMaster.registerService(TALKER, TALKER_URI, GraphName.of("/add"), new InetSocketAddress("127.0.0.1", 50001));
+      for (int i = 0; i < 50 && mirror.lookupService("/add") == null; i++) {
+        Thread.sleep(100);
+      }
+      assertEquals(new InetSocketAddress("127.0.0.1", 50001), mirror.lookupService("/add"));
+      assertEquals("std_msgs/String", mirror.getTopicTypes().get(CHATTER.toString()));
+      assertEquals(1, mirror.getSystemState().getTopics().size());
+    } finally {
+      mirror.shutdown();
+      remoteMaster.shutdown();
+    }
+  }
+}
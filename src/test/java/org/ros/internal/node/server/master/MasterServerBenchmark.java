@@ -0,0 +1,176 @@
+package org.ros.internal.node.server.master;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.RosCore;
+import org.ros.internal.node.client.RemoteClient;
+import org.ros.internal.node.server.RemoteRequest;
+import org.ros.internal.node.server.RemoteRequestInterface;
+import org.ros.namespace.GraphName;
+
+/**
+ * Throughput of a running {@link MasterServer} with several clients calling at
+ * once, each over its own {@link RemoteClient} connection, against the same
+ * clients taking turns so only one call is at the master at a time, as every
+ * call was serialized before the registration lock was split. The number
+ * includes the loopback connection and serialization, as a node sees it. Not a
+ * test, run it from the test classpath:
+ * <pre>
+ * java -cp ... org.ros.internal.node.server.master.MasterServerBenchmark [calls per client, 100 by default]
+ * </pre>
+ * One call in ten registers or unregisters a service, one looks at the whole
+ * system state and the rest look up a node or a service. Each configuration
+ * runs a few times to warm up and the best run is reported, with the calls
+ * that failed over all its runs.
+ *
+ * @author jg
+ */
+public class MasterServerBenchmark {
+
+  private static final Log log = LogFactory.getLog(MasterServerBenchmark.class);
+  private static final String MASTER_CLASS = MasterServer.class.getName();
+  private static final int NODES = 64;
+  private static final int RUNS = 5;
+
+  private static final AtomicLong failures = new AtomicLong();
+
+  /**
+   * A free port with a free port above it, for the master and its parameter server.
+   */
+  private static int freePorts() throws IOException {
+    while (true) {
+      ServerSocket probe = new ServerSocket(0);
+      int port = probe.getLocalPort();
+      probe.close();
+      try {
+        new ServerSocket(port + 1).close();
+        return port;
+      } catch (IOException e) {
+        // taken, try another
+      }
+    }
+  }
+
+  private static RosCore newCore() throws Exception {
+    RosCore core = RosCore.newPublic("127.0.0.1", freePorts());
+    core.start();
+    if (!core.awaitStart(10, TimeUnit.SECONDS)) {
+      throw new IllegalStateException("Master did not start");
+    }
+    MasterServer master = core.getMasterServer();
+    for (int i = 0; i < NODES; i++) {
+      master.registerService(GraphName.of("/node" + i), new InetSocketAddress("127.0.0.1", 10000 + i),
+          GraphName.of("/service" + i), new InetSocketAddress("127.0.0.1", 20000 + i));
+    }
+    return core;
+  }
+
+  private static RemoteRequestInterface request(int client, int i) {
+    int n = (client * 7 + i) % NODES;
+    GraphName clientNode = GraphName.of("/client" + client);
+    GraphName clientService = GraphName.of("/client" + client + "/service");
+    switch (i % 10) {
+      case 0:
+        // each client registers and unregisters a service of its own
+        if ((i / 10 & 1) == 0) {
+          return new RemoteRequest(MASTER_CLASS, "registerService", clientNode,
+              new InetSocketAddress("127.0.0.1", 30000 + client), clientService,
+              new InetSocketAddress("127.0.0.1", 40000 + client));
+        }
+        return new RemoteRequest(MASTER_CLASS, "unregisterService", clientNode, clientService,
+            new InetSocketAddress("127.0.0.1", 40000 + client));
+      case 1:
+        return new RemoteRequest(MASTER_CLASS, "getSystemState");
+      default:
+        if ((i & 1) == 0) {
+          return new RemoteRequest(MASTER_CLASS, "lookupNode", GraphName.of("/node" + n));
+        }
+        return new RemoteRequest(MASTER_CLASS, "lookupService", GraphName.of("/service" + n));
+    }
+  }
+
+  private static long run(final RemoteClient[] remotes, final Object turnLock, final int perClient)
+      throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[remotes.length];
+    for (int c = 0; c < remotes.length; c++) {
+      final int client = c;
+      threads[c] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < perClient; i++) {
+            RemoteRequestInterface rri = request(client, i);
+            try {
+              if (turnLock != null) {
+                synchronized (turnLock) {
+                  remotes[client].queue(rri);
+                }
+              } else {
+                remotes[client].queue(rri);
+              }
+            } catch (RuntimeException e) {
+              // the first says what is wrong, the count how often
+              if (failures.getAndIncrement() == 0) {
+                log.error("MasterServerBenchmark call " + rri + " failed", e);
+              }
+            }
+          }
+        }
+      };
+      threads[c].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    return (long) remotes.length * perClient * 1000000000L / elapsed;
+  }
+
+  private static void report(String name, InetSocketAddress master, boolean takeTurns, int clients, int perClient)
+      throws Exception {
+    RemoteClient[] remotes = new RemoteClient[clients];
+    for (int c = 0; c < clients; c++) {
+      remotes[c] = new RemoteClient(master.getHostString(), master.getPort());
+    }
+    long failed = failures.get();
+    long best = 0;
+    try {
+      for (int i = 0; i < RUNS; i++) {
+        best = Math.max(best, run(remotes, takeTurns ? new Object() : null, perClient));
+      }
+    } finally {
+      for (RemoteClient remote : remotes) {
+        remote.close();
+      }
+    }
+    System.out.println(String.format("%-14s clients:%d %,12d calls/s %,d failed", name, clients, best,
+        failures.get() - failed));
+  }
+
+  public static void main(String[] args) throws Exception {
+    int perClient = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    RosCore core = newCore();
+    try {
+      for (int clients = 1; clients <= 8; clients *= 2) {
+        report("one at a time", core.getUri(), true, clients, perClient);
+        report("concurrent", core.getUri(), false, clients, perClient);
+      }
+    } finally {
+      core.shutdown();
+    }
+  }
+}
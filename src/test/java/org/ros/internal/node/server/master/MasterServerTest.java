@@ -0,0 +1,102 @@
+package org.ros.internal.node.server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.address.BindAddress;
+import org.ros.master.client.GraphEvent;
+import org.ros.master.client.GraphEvents;
+import org.ros.namespace.GraphName;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author jg
+ */
+public class MasterServerTest {
+
+  private static final GraphName TALKER = GraphName.of("/talker");
+  private static final InetSocketAddress TALKER_URI = new InetSocketAddress("127.0.0.1", 40001);
+  private static final GraphName LISTENER = GraphName.of("/listener");
+  private static final InetSocketAddress LISTENER_URI = new InetSocketAddress("127.0.0.1", 40002);
+
+  private MasterServer master;
+
+  @Before
+  public void setup() throws Exception {
+    master = new MasterServer(BindAddress.newPrivate(0), new AdvertiseAddress("127.0.0.1", 0));
+  }
+
+  @After
+  public void tearDown() {
+    master.getPublisherUpdateNotifier().shutdown();
+  }
+
+  @Test
+  public void testBatchesMatchSingleRegistrations() {
+    List<GraphName> topics = Arrays.asList(GraphName.of("/chatter"), GraphName.of("/rosout"));
+    List<String> types = Arrays.asList("std_msgs/String", "rosgraph_msgs/Log");
+    List<List<InetSocketAddress>> publishers = master.registerSubscribers(LISTENER, LISTENER_URI, topics, types);
+    assertEquals(2, publishers.size());
+    assertTrue(publishers.get(0).isEmpty());
+    assertTrue(publishers.get(1).isEmpty());
+
+    List<List<InetSocketAddress>> subscribers = master.registerPublishers(TALKER, TALKER_URI, topics, types);
+    assertEquals(Arrays.asList(LISTENER_URI), subscribers.get(0));
+    assertEquals(Arrays.asList(LISTENER_URI), subscribers.get(1));
+    assertEquals(Arrays.asList(TALKER_URI),
+        master.registerSubscriber(GraphName.of("/other"), new InetSocketAddress("127.0.0.1", 40003),
+            GraphName.of("/rosout"), "rosgraph_msgs/Log"));
+
+    InetSocketAddress addUri = new InetSocketAddress("127.0.0.1", 50001);
+    InetSocketAddress clearUri = new InetSocketAddress("127.0.0.1", 50002);
+    master.registerServices(TALKER, TALKER_URI, Arrays.asList(GraphName.of("/add"), GraphName.of("/clear")),
+        Arrays.asList(addUri, clearUri));
+    assertEquals(addUri, master.lookupService(GraphName.of("/add")));
+    assertEquals(clearUri, master.lookupService(GraphName.of("/clear")));
+    assertEquals(TALKER_URI, master.lookupNode(TALKER));
+  }
+
+  @Test
+  public void testSnapshotSharedUntilChanged() {
+    master.registerPublisher(TALKER, TALKER_URI, GraphName.of("/chatter"), "std_msgs/String");
+    List<Object> systemState = master.getSystemState();
+    assertSame(systemState, master.getSystemState());
+    assertSame(master.getTopicTypes(LISTENER), master.getTopicTypes(LISTENER));
+    assertEquals(1, ((List<?>) systemState.get(MasterServer.SYSTEM_STATE_PUBLISHERS)).size());
+    assertEquals(0, ((List<?>) systemState.get(MasterServer.SYSTEM_STATE_SUBSCRIBERS)).size());
+
+    master.registerSubscriber(LISTENER, LISTENER_URI, GraphName.of("/chatter"), "std_msgs/String");
+    List<Object> changed = master.getSystemState();
+    assertNotSame(systemState, changed);
+    assertEquals(1, ((List<?>) changed.get(MasterServer.SYSTEM_STATE_SUBSCRIBERS)).size());
+    assertEquals(1, master.getPublishedTopics(LISTENER, GraphName.of("/")).size());
+  }
+
+  @Test
+  public void testSystemStateSinceVersion() {
+    master.registerPublisher(TALKER, TALKER_URI, GraphName.of("/chatter"), "std_msgs/String");
+    GraphEvents all = master.getSystemStateSince(LISTENER, 0, 0);
+    assertTrue(all.isSnapshot());
+    assertEquals(master.getSystemStateSnapshot().getVersion(), all.getSequence());
+
+    GraphEvents none = master.getSystemStateSince(LISTENER, all.getEpoch(), all.getSequence());
+    assertFalse(none.isSnapshot());
+    assertTrue(none.getEvents().isEmpty());
+
+    master.registerPublisher(TALKER, TALKER_URI, GraphName.of("/chatter"), "std_msgs/Header");
+    GraphEvents changed = master.getSystemStateSince(LISTENER, all.getEpoch(), all.getSequence());
+    assertEquals(1, changed.getEvents().size());
+    assertEquals(GraphEvent.Type.TOPIC_TYPE_CHANGED, changed.getEvents().get(0).getType());
+    assertEquals("std_msgs/Header", changed.getEvents().get(0).getMessageType());
+  }
+}
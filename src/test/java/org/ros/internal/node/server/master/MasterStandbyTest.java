@@ -0,0 +1,258 @@
+package org.ros.internal.node.server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.RosCore;
+import org.ros.address.AdvertiseAddress;
+import org.ros.address.BindAddress;
+import org.ros.exception.NotMasterException;
+import org.ros.exception.RosRuntimeException;
+import org.ros.internal.node.client.MasterClient;
+import org.ros.internal.node.client.ParameterClient;
+import org.ros.internal.node.client.RemoteClient;
+import org.ros.internal.node.server.NodeIdentifier;
+import org.ros.internal.node.server.ParameterServer;
+import org.ros.internal.node.server.RemoteRequest;
+import org.ros.internal.node.server.RemoteRequestInterface;
+import org.ros.internal.node.server.RemoteResponse;
+import org.ros.master.client.GraphEvent;
+import org.ros.master.client.GraphEvents;
+import org.ros.namespace.GraphName;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class MasterStandbyTest {
+
+  private static final GraphName CALLER = GraphName.of("/caller");
+  private static final GraphName TALKER = GraphName.of("/talker");
+  private static final InetSocketAddress TALKER_URI = new InetSocketAddress("127.0.0.1", 40001);
+  private static final GraphName CHATTER = GraphName.of("/chatter");
+  private static final GraphName ADD = GraphName.of("/add");
+  private static final InetSocketAddress ADD_URI = new InetSocketAddress("127.0.0.1", 50001);
+
+  private RosCore primary;
+  private RosCore standby;
+
+  /**
+   * A free port with a free port above it, for a master and its parameter server.
+   */
+  private static int freePorts() throws IOException {
+    while (true) {
+      ServerSocket probe = new ServerSocket(0);
+      int port = probe.getLocalPort();
+      probe.close();
+      try {
+        new ServerSocket(port + 1).close();
+        return port;
+      } catch (IOException e) {
+        // taken, try another
+      }
+    }
+  }
+
+  @Before
+  public void setup() throws Exception {
+    primary = RosCore.newPublic("127.0.0.1", freePorts());
+    primary.start();
+    assertTrue(primary.awaitStart(5, TimeUnit.SECONDS));
+    standby = RosCore.newPublic("127.0.0.1", freePorts());
+    standby.setStandbyOf(primary.getUri()).setTakeoverMillis(500);
+    standby.start();
+    assertTrue(standby.awaitStart(5, TimeUnit.SECONDS));
+  }
+
+  @After
+  public void tearDown() {
+    standby.shutdown();
+    primary.shutdown();
+  }
+
+  private void awaitReplicated() throws InterruptedException {
+    MasterServer master = standby.getMasterServer();
+    for (int i = 0; i < 100 && (master.lookupService(ADD) == null
+        || standby.getParameterServer().get(GraphName.of("/gain")) == null); i++) {
+      Thread.sleep(50);
+    }
+  }
+
+  @Test
+  public void testStandbyFollowsPrimary() throws Exception {
+    MasterServer master = primary.getMasterServer();
+    master.registerPublisher(TALKER, TALKER_URI, CHATTER, "std_msgs/String");
+    master.registerService(TALKER, TALKER_URI, ADD, ADD_URI);
+    primary.getParameterServer().set(GraphName.of("/gain"), 3);
+    awaitReplicated();
+    assertEquals(TALKER_URI, standby.getMasterServer().lookupNode(TALKER));
+    assertEquals(ADD_URI, standby.getMasterServer().lookupService(ADD));
+    assertEquals((Object) 3, standby.getParameterServer().get(GraphName.of("/gain")));
+
+    master.unregisterService(TALKER, ADD, ADD_URI);
+    primary.getParameterServer().delete(GraphName.of("/gain"));
+    for (int i = 0; i < 100 && standby.getMasterServer().lookupService(ADD) != null; i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(null, standby.getMasterServer().lookupService(ADD));
+    assertEquals(TALKER_URI, standby.getMasterServer().lookupNode(TALKER));
+    assertTrue(standby.getStandby().isFollowing());
+  }
+
+  @Test
+  public void testFollowingStandbyRefusesCalls() throws Exception {
+    List<InetSocketAddress> standbyFirst = Arrays.asList(standby.getUri(), primary.getUri());
+    MasterClient masterClient = new MasterClient(standbyFirst, 2000, 5000);
+    ParameterClient parameterClient =
+        new ParameterClient(new NodeIdentifier(CALLER, new InetSocketAddress("127.0.0.1", 40009)), standbyFirst);
+    // refused by the standby, made on the primary instead
+    parameterClient.setParam(GraphName.of("/gain"), 4);
+    primary.getMasterServer().registerPublisher(TALKER, TALKER_URI, CHATTER, "std_msgs/String");
+    GraphEvents graph = masterClient.getSystemStateSince(CALLER, 0, 0).getResult();
+    List<String> names = new ArrayList<String>();
+    for (GraphEvent event : graph.getEvents()) {
+      names.add(event.getName());
+    }
+    assertTrue(names.toString(), names.contains(CHATTER.toString()));
+    assertEquals((Object) 4, primary.getParameterServer().get(GraphName.of("/gain")));
+    for (int i = 0; i < 100 && standby.getParameterServer().get(GraphName.of("/gain")) == null; i++) {
+      Thread.sleep(50);
+    }
+    assertEquals((Object) 4, standby.getParameterServer().get(GraphName.of("/gain")));
+    assertTrue(standby.getStandby().isFollowing());
+    try {
+      new RemoteClient("127.0.0.1", standby.getUri().getPort()).queue(
+          new RemoteRequest(MasterServer.class.getName(), "lookupNode", TALKER));
+      fail();
+    } catch (NotMasterException e) {
+      // a standby takes no calls until it takes over
+    }
+  }
+
+  @Test
+  public void testClientsFailOverWhenPrimaryGoes() throws Exception {
+    primary.getMasterServer().registerPublisher(TALKER, TALKER_URI, CHATTER, "std_msgs/String");
+    primary.getMasterServer().registerService(TALKER, TALKER_URI, ADD, ADD_URI);
+    primary.getParameterServer().set(GraphName.of("/gain"), 3);
+    awaitReplicated();
+
+    List<InetSocketAddress> masters = Arrays.asList(primary.getUri(), standby.getUri());
+    MasterClient masterClient = new MasterClient(masters, 2000, 5000);
+    ParameterClient parameterClient =
+        new ParameterClient(new NodeIdentifier(CALLER, new InetSocketAddress("127.0.0.1", 40009)), masters);
+    assertEquals((Object) 3, parameterClient.getParam(GraphName.of("/gain")).getResult());
+
+    primary.shutdown();
+    assertTrue(standby.getStandby().awaitTakeover(10, TimeUnit.SECONDS));
+    assertFalse(standby.getStandby().isFollowing());
+
+    GraphEvents graph = masterClient.getSystemStateSince(CALLER, 0, 0).getResult();
+    assertTrue(graph.isSnapshot());
+    List<String> names = new ArrayList<String>();
+    for (GraphEvent event : graph.getEvents()) {
+      names.add(event.getName());
+    }
+    assertTrue(names.toString(), names.contains(CHATTER.toString()) && names.contains(ADD.toString()));
+    assertEquals((Object) 3, parameterClient.getParam(GraphName.of("/gain")).getResult());
+  }
+
+  @Test
+  public void testFencingIsNotRemote() throws Exception {
+    RemoteClient master = new RemoteClient("127.0.0.1", primary.getUri().getPort());
+    RemoteClient parameters = new RemoteClient("127.0.0.1", primary.getUri().getPort() + 1);
+    try {
+      for (RemoteClient client : Arrays.asList(master, parameters)) {
+        String className = client == master ? MasterServer.class.getName() : ParameterServer.class.getName();
+        try {
+          client.queue(new RemoteRequest(className, "setFollowing", true));
+          fail();
+        } catch (RosRuntimeException e) {
+          // not in the dispatch table
+        }
+      }
+      assertFalse(primary.getMasterServer().isFollowing());
+      primary.getMasterServer().registerPublisher(TALKER, TALKER_URI, CHATTER, "std_msgs/String");
+      assertEquals(TALKER_URI, master.queue(new RemoteRequest(MasterServer.class.getName(), "lookupNode", TALKER)));
+    } finally {
+      master.close();
+      parameters.close();
+    }
+  }
+
+  /**
+   * A primary that takes every call and answers it busy, as one whose worker pool is full.
+   */
+  private static class BusyPrimary extends Thread {
+    private final ServerSocket server;
+    private volatile Socket socket;
+
+    BusyPrimary() throws IOException {
+      server = new ServerSocket(0);
+      setDaemon(true);
+    }
+
+    InetSocketAddress getAddress() {
+      return new InetSocketAddress("127.0.0.1", server.getLocalPort());
+    }
+
+    @Override
+    public void run() {
+      try {
+        socket = server.accept();
+        while (true) {
+          RemoteRequestInterface request =
+              (RemoteRequestInterface) new ObjectInputStream(socket.getInputStream()).readObject();
+          ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+          // no method table, then busy for everything
+          oos.writeObject(request.getId() == 0 ? null : RemoteResponse.newBusy(request.getId(), "busy"));
+          oos.flush();
+        }
+      } catch (Exception e) {
+        // closed
+      }
+    }
+
+    void close() throws IOException {
+      server.close();
+      if (socket != null) {
+        socket.close();
+      }
+    }
+  }
+
+  @Test
+  public void testBusyPrimaryIsNotTakenOver() throws Exception {
+    BusyPrimary busyPrimary = new BusyPrimary();
+    busyPrimary.start();
+    MasterServer follower = new MasterServer(BindAddress.newPrivate(0), new AdvertiseAddress("127.0.0.1", 0));
+    MasterStandby busyStandby = new MasterStandby(follower, null, busyPrimary.getAddress());
+    busyStandby.setTakeoverMillis(200);
+    busyStandby.start();
+    try {
+      // refused for many times the takeover delay, but always answered
+      assertFalse(busyStandby.awaitTakeover(1500, TimeUnit.MILLISECONDS));
+      assertTrue(busyStandby.isFollowing());
+      busyPrimary.close();
+      // gone rather than busy, taken over
+      assertTrue(busyStandby.awaitTakeover(10, TimeUnit.SECONDS));
+    } finally {
+      busyStandby.stop();
+      busyPrimary.close();
+    }
+  }
+}
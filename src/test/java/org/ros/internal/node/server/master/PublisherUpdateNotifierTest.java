@@ -0,0 +1,117 @@
+package org.ros.internal.node.server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ros.exception.RosRuntimeException;
+import org.ros.namespace.GraphName;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author jg
+ */
+public class PublisherUpdateNotifierTest {
+
+  private static final GraphName TOPIC = GraphName.of("/topic");
+  private static final InetSocketAddress SLOW = new InetSocketAddress("127.0.0.1", 1);
+  private static final InetSocketAddress FAST = new InetSocketAddress("127.0.0.1", 2);
+
+  private PublisherUpdateNotifier notifier;
+
+  @After
+  public void after() {
+    notifier.shutdown();
+  }
+
+  private static List<InetSocketAddress> publishers(int count) {
+    List<InetSocketAddress> publishers = new ArrayList<InetSocketAddress>();
+    for (int i = 0; i < count; i++) {
+      publishers.add(new InetSocketAddress("127.0.0.1", 1000 + i));
+    }
+    return publishers;
+  }
+
+  @Test
+  public void testUpdatesCoalesceWhileOneIsInFlight() throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> sent = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch done = new CountDownLatch(2);
+    notifier = new PublisherUpdateNotifier(new PublisherUpdateNotifier.Sender() {
+      @Override
+      public void publisherUpdate(InetSocketAddress subscriberSlaveUri, GraphName topicName,
+          List<InetSocketAddress> publisherUris) {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+        }
+        sent.add(publisherUris.size());
+        done.countDown();
+      }
+    });
+    notifier.publisherUpdate(TOPIC, Arrays.asList(SLOW), publishers(1));
+    assertTrue(started.await(1, TimeUnit.SECONDS));
+    for (int i = 2; i <= 4; i++) {
+      notifier.publisherUpdate(TOPIC, Arrays.asList(SLOW), publishers(i));
+    }
+    release.countDown();
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    // only the newest list follows the one that was in flight
+    assertEquals(Arrays.asList(1, 4), sent);
+    assertEquals(2, notifier.getCoalescedCount());
+  }
+
+  @Test
+  public void testStalledSubscriberDoesNotHoldUpOthers() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch fastDone = new CountDownLatch(1);
+    notifier = new PublisherUpdateNotifier(new PublisherUpdateNotifier.Sender() {
+      @Override
+      public void publisherUpdate(InetSocketAddress subscriberSlaveUri, GraphName topicName,
+          List<InetSocketAddress> publisherUris) {
+        if (subscriberSlaveUri.equals(SLOW)) {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+          }
+        } else {
+          fastDone.countDown();
+        }
+      }
+    }, 2);
+    notifier.publisherUpdate(TOPIC, Arrays.asList(SLOW, FAST), publishers(1));
+    assertTrue(fastDone.await(1, TimeUnit.SECONDS));
+    release.countDown();
+  }
+
+  @Test
+  public void testFailedUpdateIsRetried() throws InterruptedException {
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch delivered = new CountDownLatch(1);
+    notifier = new PublisherUpdateNotifier(new PublisherUpdateNotifier.Sender() {
+      @Override
+      public void publisherUpdate(InetSocketAddress subscriberSlaveUri, GraphName topicName,
+          List<InetSocketAddress> publisherUris) {
+        if (calls.incrementAndGet() == 1) {
+          throw new RosRuntimeException("unreachable");
+        }
+        delivered.countDown();
+      }
+    });
+    notifier.publisherUpdate(TOPIC, Arrays.asList(SLOW), publishers(1));
+    assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    assertEquals(2, calls.get());
+    assertEquals(1, notifier.getRetriedCount());
+  }
+}
@@ -0,0 +1,168 @@
+package org.ros.internal.node.server.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.address.BindAddress;
+import org.ros.namespace.GraphName;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author jg
+ */
+public class RegistrationJournalTest {
+
+  private static final GraphName TALKER = GraphName.of("/talker");
+  private static final InetSocketAddress TALKER_URI = new InetSocketAddress("127.0.0.1", 40001);
+  private static final GraphName LISTENER = GraphName.of("/listener");
+  private static final InetSocketAddress LISTENER_URI = new InetSocketAddress("127.0.0.1", 40002);
+  private static final GraphName CHATTER = GraphName.of("/chatter");
+  private static final GraphName ADD = GraphName.of("/add");
+  private static final InetSocketAddress ADD_URI = new InetSocketAddress("127.0.0.1", 50001);
+
+  private File directory;
+  private final List<MasterServer> masters = new ArrayList<MasterServer>();
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("journal").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (MasterServer master : masters) {
+      master.getPublisherUpdateNotifier().shutdown();
+      master.getGraphWatch().shutdown();
+      master.getJournal().close();
+    }
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  private MasterServer newMaster() throws Exception {
+    MasterServer master = new MasterServer(BindAddress.newPrivate(0), new AdvertiseAddress("127.0.0.1", 0));
+    masters.add(master);
+    master.enableJournal(directory);
+    return master;
+  }
+
+  private static void register(MasterServer master) {
+    master.registerPublisher(TALKER, TALKER_URI, CHATTER, "std_msgs/String");
+    master.registerSubscriber(LISTENER, LISTENER_URI, CHATTER, "std_msgs/String");
+    master.registerService(TALKER, TALKER_URI, ADD, ADD_URI);
+    master.registerService(LISTENER, LISTENER_URI, GraphName.of("/clear"), new InetSocketAddress("127.0.0.1", 50002));
+    master.unregisterService(LISTENER, GraphName.of("/clear"), new InetSocketAddress("127.0.0.1", 50002));
+  }
+
+  private static void assertRegistered(MasterServer master) {
+    assertEquals(TALKER_URI, master.lookupNode(TALKER));
+    assertEquals(LISTENER_URI, master.lookupNode(LISTENER));
+    assertEquals(ADD_URI, master.lookupService(ADD));
+    assertNull(master.lookupService(GraphName.of("/clear")));
+    assertEquals(Arrays.asList(TALKER_URI),
+        master.registerSubscriber(GraphName.of("/other"), new InetSocketAddress("127.0.0.1", 40003), CHATTER,
+            "std_msgs/String"));
+  }
+
+  @Test
+  public void testRestartReplaysJournal() throws Exception {
+    register(newMaster());
+    assertRegistered(newMaster());
+  }
+
+  @Test
+  public void testRestartReplaysSnapshotAndJournalAfterIt() throws Exception {
+    MasterServer master = newMaster();
+    master.registerPublisher(TALKER, TALKER_URI, GraphName.of("/gone"), "std_msgs/String");
+    master.getJournal().compact();
+    master.unregisterPublisher(TALKER, GraphName.of("/gone"));
+    long generation = master.getJournal().getGeneration();
+    register(master);
+    master.getJournal().compact();
+    assertEquals(generation + 1, master.getJournal().getGeneration());
+    master.registerPublisher(GraphName.of("/late"), new InetSocketAddress("127.0.0.1", 40004),
+        GraphName.of("/late/status"), "std_msgs/String");
+
+    MasterServer restarted = newMaster();
+    assertRegistered(restarted);
+    assertEquals(new InetSocketAddress("127.0.0.1", 40004), restarted.lookupNode(GraphName.of("/late")));
+    assertEquals(2, restarted.getPublishedTopics(TALKER, GraphName.of("/")).size());
+  }
+
+  @Test
+  public void testStaleJournalIsNotReplayedOverNewerSnapshot() throws Exception {
+    MasterServer master = newMaster();
+    master.registerPublisher(TALKER, TALKER_URI, GraphName.of("/gone"), "std_msgs/String");
+    File journal = new File(directory, RegistrationJournal.JOURNAL_FILE);
+    File stale = new File(directory, "stale.journal");
+    Files.copy(journal.toPath(), stale.toPath());
+    master.unregisterPublisher(TALKER, GraphName.of("/gone"));
+    register(master);
+    master.getJournal().compact();
+    // as if the master died between writing the snapshot and starting the journal after it
+    master.getJournal().close();
+    Files.copy(stale.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    stale.delete();
+
+    MasterServer restarted = newMaster();
+    assertRegistered(restarted);
+    assertEquals(1, restarted.getPublishedTopics(TALKER, GraphName.of("/")).size());
+  }
+
+  @Test
+  public void testPreviousJournalIsReplayedWithoutItsSnapshot() throws Exception {
+    MasterServer master = newMaster();
+    register(master);
+    File journal = new File(directory, RegistrationJournal.JOURNAL_FILE);
+    File previous = new File(directory, RegistrationJournal.PREVIOUS_JOURNAL_FILE);
+    File kept = new File(directory, "kept.journal");
+    Files.copy(journal.toPath(), kept.toPath());
+    master.getJournal().compact();
+    assertFalse(previous.exists());
+    master.registerPublisher(GraphName.of("/late"), new InetSocketAddress("127.0.0.1", 40004),
+        GraphName.of("/late/status"), "std_msgs/String");
+    // as if the master died after starting the new journal but before the snapshot was in place
+    master.getJournal().close();
+    new File(directory, RegistrationJournal.SNAPSHOT_FILE).delete();
+    Files.move(kept.toPath(), previous.toPath());
+
+    MasterServer restarted = newMaster();
+    assertRegistered(restarted);
+    assertEquals(new InetSocketAddress("127.0.0.1", 40004), restarted.lookupNode(GraphName.of("/late")));
+  }
+
+  @Test
+  public void testDamagedTailIsCutOff() throws Exception {
+    register(newMaster());
+    FileOutputStream out = new FileOutputStream(new File(directory, RegistrationJournal.JOURNAL_FILE), true);
+    out.write(new byte[] { 0, 0, 0, 40, 1, 2, 3 });
+    out.close();
+    MasterServer restarted = newMaster();
+    assertRegistered(restarted);
+    restarted.registerService(LISTENER, LISTENER_URI, GraphName.of("/reset"), new InetSocketAddress("127.0.0.1", 50003));
+    assertTrue(newMaster().lookupService(GraphName.of("/reset")) != null);
+  }
+
+  @Test
+  public void testJournalIsNotEnabledRemotely() throws Exception {
+    MasterServer master = new MasterServer(BindAddress.newPrivate(0), new AdvertiseAddress("127.0.0.1", 0));
+    assertFalse(master.getMethodNamesAndParams().getMethodNames().contains("enableJournal"));
+    assertTrue(master.getMethodNamesAndParams().getMethodNames().contains("lookupNode"));
+  }
+}
@@ -51,7 +51,6 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -76,7 +75,6 @@ public class MessageQueueIntegrationTest {
   private IncomingMessageQueue<std_msgs.String> firstIncomingMessageQueue;
   private IncomingMessageQueue<std_msgs.String> secondIncomingMessageQueue;
   private std_msgs.String expectedMessage;
-  private ArrayBlockingQueue<ChannelHandlerContext> channelHandlerContexts = new ArrayBlockingQueue<ChannelHandlerContext>(1024);
   
   private InetSocketAddress isock = null;
 
@@ -149,7 +147,7 @@ public class MessageQueueIntegrationTest {
     expectedMessage = topicMessageFactory.newFromType(std_msgs.String._TYPE);
     expectedMessage.setData("Would you like to play a game?");
     outgoingMessageQueue =
-        new OutgoingMessageQueue<Message>( executorService, channelHandlerContexts);
+        new OutgoingMessageQueue<Message>(executorService);
     firstIncomingMessageQueue =
         new IncomingMessageQueue<std_msgs.String>(executorService);
     secondIncomingMessageQueue =
@@ -251,7 +249,7 @@ public class MessageQueueIntegrationTest {
   @Test
   public void testSendAndReceiveMessage() throws InterruptedException {
     startRepeatingPublisher();
-    channelHandlerContexts.add(buildServerChannel());
+    outgoingMessageQueue.addChannel(buildServerChannel());
     try {
     connect(firstTcpClientManager);
     connect(secondTcpClientManager);
@@ -274,7 +272,7 @@ public class MessageQueueIntegrationTest {
     // IncomingMessageQueues that connect in the future to receive the message.
     outgoingMessageQueue.setLatchMode(true);
     outgoingMessageQueue.add(expectedMessage);
-    channelHandlerContexts.add(buildServerChannel());
+    outgoingMessageQueue.addChannel(buildServerChannel());
     try {
     firstIncomingMessageQueue.setLatchMode(true);
     secondIncomingMessageQueue.setLatchMode(true);
@@ -304,7 +302,7 @@ public class MessageQueueIntegrationTest {
   @Test
   public void testSendAfterIncomingQueueShutdown() throws InterruptedException {
     startRepeatingPublisher();
-    channelHandlerContexts.add(buildServerChannel());
+    outgoingMessageQueue.addChannel(buildServerChannel());
     try {
     connect(firstTcpClientManager);
     firstTcpClientManager.shutdown();
@@ -327,7 +325,7 @@ public class MessageQueueIntegrationTest {
   @Test
   public void testSendAfterServerChannelClosed() throws Exception {
     startRepeatingPublisher();
-    channelHandlerContexts.add(buildServerChannel());
+    outgoingMessageQueue.addChannel(buildServerChannel());
     connect(firstTcpClientManager);
     //assertTrue(serverChannel.close().await(1, TimeUnit.SECONDS));
     // Start the server.
@@ -345,7 +343,7 @@ public class MessageQueueIntegrationTest {
   public void testSendAfterOutgoingQueueShutdown() throws Exception {
     startRepeatingPublisher();
     try {
-    channelHandlerContexts.add(buildServerChannel());
+    outgoingMessageQueue.addChannel(buildServerChannel());
     connect(firstTcpClientManager);
     outgoingMessageQueue.shutdown();
     outgoingMessageQueue.add(expectedMessage);
@@ -0,0 +1,62 @@
+package org.ros.internal.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.ros.internal.system.Utility;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * @author jg
+ */
+public class ObjectStreamSessionTest {
+
+  static class Imu implements Serializable {
+    private static final long serialVersionUID = 1L;
+    double x, y, z;
+    String frame;
+    Imu(double x, double y, double z, String frame) {
+      this.x = x; this.y = y; this.z = z; this.frame = frame;
+    }
+  }
+
+  private static Object roundTrip(ObjectStreamSession encoder, ObjectStreamSession decoder, Object msg) throws Exception {
+    ByteBuffer frame = encoder.encodeFrame(msg);
+    int length = frame.getInt(frame.position());
+    assertEquals(frame.remaining() - 4, length);
+    // copy as the transport would, the session buffer is reused
+    byte[] payload = new byte[length];
+    System.arraycopy(frame.array(), frame.position() + 4, payload, 0, length);
+    return decoder.decode(payload, 0, length);
+  }
+
+  @Test
+  public void testRoundTripAcrossResets() throws Exception {
+    ObjectStreamSession encoder = new ObjectStreamSession(3);
+    ObjectStreamSession decoder = new ObjectStreamSession(3);
+    for (int i = 0; i < 10; i++) {
+      Imu imu = (Imu) roundTrip(encoder, decoder, new Imu(i, i * 2, i * 3, "imu_link"));
+      assertEquals(i, imu.x, 0);
+      assertEquals(i * 3, imu.z, 0);
+      assertEquals("imu_link", imu.frame);
+    }
+  }
+
+  @Test
+  public void testClassDescriptorsAreNotResent() throws Exception {
+    ObjectStreamSession encoder = new ObjectStreamSession(ObjectStreamSession.DEFAULT_RESET_INTERVAL);
+    int first = encoder.encodeFrame(new Imu(1, 2, 3, "a")).remaining();
+    int second = encoder.encodeFrame(new Imu(4, 5, 6, "b")).remaining();
+    int standalone = Utility.serialize(new Imu(4, 5, 6, "b")).length + 4;
+    assertTrue(second < first);
+    assertTrue(second < standalone / 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveIntervalRejected() {
+    new ObjectStreamSession(0);
+  }
+}
@@ -0,0 +1,150 @@
+package org.ros.internal.transport.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ros.internal.transport.ConnectionHeader;
+import org.ros.internal.transport.ConnectionHeaderFields;
+import org.ros.internal.transport.ObjectStreamSession;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * @author jg
+ */
+public class MessageCodecsTest {
+
+  static class Odometry implements FastMessage, Serializable {
+    private static final long serialVersionUID = 1L;
+    double x, y, theta;
+    String childFrame = "";
+
+    public void writeTo(DataOutput out) throws IOException {
+      out.writeDouble(x);
+      out.writeDouble(y);
+      out.writeDouble(theta);
+      out.writeUTF(childFrame);
+    }
+
+    public void readFrom(DataInput in) throws IOException {
+      x = in.readDouble();
+      y = in.readDouble();
+      theta = in.readDouble();
+      childFrame = in.readUTF();
+    }
+  }
+
+  @BeforeClass
+  public static void registerFastType() {
+    FastMessageCodec.register("nav_msgs/Odometry", new FastMessageCodec.Factory() {
+      public FastMessage newMessage() {
+        return new Odometry();
+      }
+    });
+  }
+
+  private static ConnectionHeader reply(MessageCodecSelector selector, String topic, String type) {
+    ConnectionHeader header = new ConnectionHeader();
+    header.addField(ConnectionHeaderFields.TYPE, type);
+    selector.addToReply(selector.select(topic, type, MessageCodecs.getOffer()), header);
+    return header;
+  }
+
+  private static Object roundTrip(MessageCodec encoder, MessageCodec decoder, Object msg) throws IOException {
+    ByteBuffer frame = encoder.encodeFrame(msg);
+    int length = frame.getInt(frame.position());
+    assertEquals(frame.remaining() - 4, length);
+    return decoder.decode(frame.array(), frame.position() + 4, length);
+  }
+
+  @Test
+  public void testSelection() {
+    MessageCodecSelector selector = new MessageCodecSelector();
+    assertEquals(FastMessageCodec.NAME, selector.select("/odom", "nav_msgs/Odometry", MessageCodecs.getOffer()));
+    assertEquals(JavaSerializationCodec.NAME, selector.select("/imu", "sensor_msgs/Imu", MessageCodecs.getOffer()));
+    // peers that do not negotiate get the fallback
+    assertEquals(JavaSerializationCodec.NAME, selector.select("/odom", "nav_msgs/Odometry", null));
+    assertEquals(JavaSerializationCodec.NAME, selector.select("/odom", "nav_msgs/Odometry", "java"));
+    selector.setStreamResetInterval(50);
+    assertEquals(JavaStreamCodec.NAME, selector.select("/imu", "sensor_msgs/Imu", MessageCodecs.getOffer()));
+    selector.setTopicCodec("/odom", JavaSerializationCodec.NAME);
+    assertEquals(JavaSerializationCodec.NAME, selector.select("/odom", "nav_msgs/Odometry", MessageCodecs.getOffer()));
+  }
+
+  @Test
+  public void testOfferPerMessageType() {
+    assertTrue(MessageCodecs.getOffer("nav_msgs/Odometry").contains(FastMessageCodec.NAME));
+    // nothing registered for the type, the subscriber must not offer fast
+    String offer = MessageCodecs.getOffer("sensor_msgs/Imu");
+    assertFalse(offer.contains(FastMessageCodec.NAME));
+    assertEquals(JavaSerializationCodec.NAME,
+        new MessageCodecSelector().select("/imu", "sensor_msgs/Imu", offer));
+  }
+
+  @Test
+  public void testFastCodecForUnregisteredType() {
+    ConnectionHeader header = new ConnectionHeader();
+    header.addField(ConnectionHeaderFields.TYPE, "sensor_msgs/Imu");
+    header.addField(ConnectionHeaderFields.CODEC, FastMessageCodec.NAME);
+    try {
+      MessageCodecs.newCodec(header);
+      fail();
+    } catch (IOException e) {
+      // no fast message factory to decode with
+    }
+  }
+
+  @Test
+  public void testFastCodecRoundTrip() throws IOException {
+    ConnectionHeader header = reply(new MessageCodecSelector(), "/odom", "nav_msgs/Odometry");
+    MessageCodec encoder = MessageCodecs.newCodec(header);
+    MessageCodec decoder = MessageCodecs.newCodec(header);
+    assertEquals(FastMessageCodec.NAME, encoder.getName());
+    Odometry odom = new Odometry();
+    odom.x = 1.5;
+    odom.theta = -0.25;
+    odom.childFrame = "base_link";
+    ByteBuffer fast = encoder.encodeFrame(odom);
+    // 3 doubles and the string, no descriptors
+    assertEquals(4 + 24 + 2 + "base_link".length(), fast.remaining());
+    assertTrue(fast.remaining() < new JavaSerializationCodec().encodeFrame(odom).remaining());
+    Odometry decoded = (Odometry) roundTrip(encoder, decoder, odom);
+    assertEquals(1.5, decoded.x, 0);
+    assertEquals(-0.25, decoded.theta, 0);
+    assertEquals("base_link", decoded.childFrame);
+  }
+
+  @Test
+  public void testJavaStreamCodecParameters() throws IOException {
+    MessageCodecSelector selector = new MessageCodecSelector();
+    selector.setStreamResetInterval(7);
+    ConnectionHeader header = reply(selector, "/imu", "sensor_msgs/Imu");
+    assertEquals("7", header.getField(ConnectionHeaderFields.STREAM_SESSION));
+    MessageCodec encoder = MessageCodecs.newCodec(header);
+    MessageCodec decoder = MessageCodecs.newCodec(header);
+    for (int i = 0; i < 20; i++) {
+      assertEquals("imu" + i, roundTrip(encoder, decoder, "imu" + i));
+    }
+  }
+
+  @Test
+  public void testMalformedStreamSessionFallsBackToDefault() throws Exception {
+    assertEquals(25, MessageCodecs.resetInterval("25"));
+    for (String interval : new String[] { null, "", "garbage", "0", "-5", "99999999999" }) {
+      assertEquals(interval, ObjectStreamSession.DEFAULT_RESET_INTERVAL, MessageCodecs.resetInterval(interval));
+    }
+    ConnectionHeader header = new ConnectionHeader();
+    header.addField(ConnectionHeaderFields.CODEC, JavaStreamCodec.NAME);
+    header.addField(ConnectionHeaderFields.STREAM_SESSION, "not a number");
+    // the handshake goes on with the default rather than failing
+    assertTrue(MessageCodecs.newCodec(header) instanceof JavaStreamCodec);
+  }
+}
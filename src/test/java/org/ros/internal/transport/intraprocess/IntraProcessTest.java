@@ -0,0 +1,75 @@
+package org.ros.internal.transport.intraprocess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.internal.node.response.ProtocolDescriptionResultFactory;
+import org.ros.internal.transport.ProtocolDescription;
+import org.ros.internal.transport.ProtocolNames;
+import org.ros.internal.transport.queue.IncomingMessageQueue;
+import org.ros.internal.transport.queue.OutgoingMessageQueue;
+import org.ros.message.MessageListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class IntraProcessTest {
+  private ExecutorService executorService;
+
+  @Before
+  public void setup() {
+    executorService = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testDescriptionSurvivesResponseList() {
+    IntraProcessProtocolDescription description =
+        new IntraProcessProtocolDescription(new AdvertiseAddress("localhost", 1234), IntraProcessRegistry.PROCESS_ID);
+    ProtocolDescription decoded = new ProtocolDescriptionResultFactory().newFromValue(description.toList());
+    assertTrue(decoded instanceof IntraProcessProtocolDescription);
+    assertEquals(ProtocolNames.INTRAPROCESS, decoded.getName());
+    assertEquals(1234, decoded.getAdverstiseAddress().getPort());
+    assertTrue(((IntraProcessProtocolDescription) decoded).isLocal());
+    assertFalse(new IntraProcessProtocolDescription(new AdvertiseAddress("localhost", 1234), "elsewhere").isLocal());
+  }
+
+  @Test
+  public void testMessageIsHandedOverByReference() throws Exception {
+    OutgoingMessageQueue<List<Integer>> outgoing = new OutgoingMessageQueue<List<Integer>>(executorService);
+    IncomingMessageQueue<List<Integer>> incoming = new IncomingMessageQueue<List<Integer>>(executorService);
+    final BlockingQueue<List<Integer>> received = new LinkedBlockingQueue<List<Integer>>();
+    incoming.addListener(new MessageListener<List<Integer>>() {
+      @Override
+      public void onNewMessage(List<Integer> message) {
+        received.add(message);
+      }
+    }, 16);
+    outgoing.addLocalSubscriber(incoming);
+    assertEquals(1, outgoing.getNumberOfChannels());
+    List<Integer> message = new ArrayList<Integer>();
+    message.add(42);
+    outgoing.add(message);
+    assertSame(message, received.poll(5, TimeUnit.SECONDS));
+    outgoing.shutdown();
+    incoming.shutdown();
+  }
+}
@@ -0,0 +1,92 @@
+package org.ros.internal.transport.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.internal.transport.ChannelHandlerContextImpl;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A subscriber that stops reading must only back up its own queue.
+ * @author jg
+ */
+public class ChannelOutboundQueueTest {
+  private ExecutorService executorService;
+  private ServerSocket server;
+
+  @Before
+  public void setup() throws Exception {
+    executorService = Executors.newCachedThreadPool();
+    server = new ServerSocket();
+    server.bind(new InetSocketAddress("127.0.0.1", 0));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testSlowSubscriberDoesNotStallOthers() throws Exception {
+    Socket slowSubscriber = new Socket();
+    slowSubscriber.setReceiveBufferSize(4096);
+    slowSubscriber.connect(server.getLocalSocketAddress());
+    ChannelHandlerContextImpl slow = new ChannelHandlerContextImpl(null, server.accept(), executorService);
+    Socket fastSubscriber = new Socket();
+    fastSubscriber.connect(server.getLocalSocketAddress());
+    ChannelHandlerContextImpl fast = new ChannelHandlerContextImpl(null, server.accept(), executorService);
+    ChannelHandlerContextImpl fastReader = new ChannelHandlerContextImpl(null, fastSubscriber, executorService);
+
+    int capacity = 8;
+    ChannelOutboundQueue slowQueue = new ChannelOutboundQueue(slow, executorService, capacity, OverflowPolicy.DROP_OLDEST);
+    ChannelOutboundQueue fastQueue = new ChannelOutboundQueue(fast, executorService, 1000, OverflowPolicy.DROP_OLDEST);
+    StringBuilder payload = new StringBuilder();
+    for (int i = 0; i < 4000; i++) {
+      payload.append('x');
+    }
+    int messages = 500;
+    for (int i = 0; i < messages; i++) {
+      String msg = i + payload.toString();
+      slowQueue.offerMessage(msg);
+      fastQueue.offerMessage(msg);
+    }
+    // the slow subscriber never reads yet the fast one sees everything in order
+    for (int i = 0; i < messages; i++) {
+      assertTrue(((String) fastReader.read()).startsWith(i + "x"));
+    }
+    assertEquals(0, fastQueue.getDroppedCount());
+    assertTrue(slowQueue.getDepth() <= capacity);
+    assertTrue(slowQueue.getDroppedCount() > 0);
+    assertEquals(messages, slowQueue.getEnqueuedCount());
+    slowQueue.close();
+    fastQueue.close();
+    slowSubscriber.close();
+    fastReader.close();
+  }
+
+  @Test
+  public void testDisconnectPolicyClosesChannel() throws Exception {
+    Socket subscriber = new Socket();
+    subscriber.setReceiveBufferSize(4096);
+    subscriber.connect(server.getLocalSocketAddress());
+    ChannelHandlerContextImpl ctx = new ChannelHandlerContextImpl(null, server.accept(), executorService);
+    ctx.setReady(true);
+    ChannelOutboundQueue queue = new ChannelOutboundQueue(ctx, executorService, 4, OverflowPolicy.DISCONNECT);
+    byte[] payload = new byte[64 * 1024];
+    for (int i = 0; i < 100 && !queue.isClosed(); i++) {
+      queue.offerMessage(payload);
+    }
+    assertTrue(queue.isClosed());
+    assertTrue(!ctx.isReady());
+    subscriber.close();
+  }
+}
@@ -0,0 +1,192 @@
+package org.ros.internal.transport.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.internal.transport.ChannelHandlerContextImpl;
+import org.ros.internal.transport.codec.JavaSerializationCodec;
+import org.ros.internal.transport.codec.MessageCodec;
+import org.ros.namespace.GraphName;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author jg
+ */
+public class OutgoingMessageQueueTest {
+
+  /**
+   * Counts the messages encoded by it and every encoder made from it.
+   */
+  private static class CountingCodec extends JavaSerializationCodec {
+    private final AtomicInteger encoded;
+
+    CountingCodec(AtomicInteger encoded) {
+      this.encoded = encoded;
+    }
+
+    @Override
+    public ByteBuffer encodeFrame(Object msg) throws IOException {
+      encoded.incrementAndGet();
+      return super.encodeFrame(msg);
+    }
+
+    @Override
+    public MessageCodec newEncoder() {
+      return new CountingCodec(encoded);
+    }
+  }
+
+  /**
+   * Keeps the backing array of each frame written to the channel.
+   */
+  private static class RecordingContext extends ChannelHandlerContextImpl {
+    private final List<byte[]> frames = new ArrayList<byte[]>();
+
+    RecordingContext(Socket socket, ExecutorService executorService) {
+      super(null, socket, executorService);
+    }
+
+    @Override
+    public void writeFrame(ByteBuffer frame) throws IOException {
+      synchronized (frames) {
+        frames.add(frame.array());
+      }
+      super.writeFrame(frame);
+    }
+  }
+
+  private ExecutorService executorService;
+  private ServerSocket server;
+
+  @Before
+  public void setup() throws Exception {
+    executorService = Executors.newCachedThreadPool();
+    server = new ServerSocket();
+    server.bind(new InetSocketAddress("127.0.0.1", 0));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testStatelessFrameIsEncodedOnceForAllSubscribers() throws Exception {
+    AtomicInteger encoded = new AtomicInteger();
+    Socket firstSubscriber = new Socket();
+    firstSubscriber.connect(server.getLocalSocketAddress());
+    RecordingContext first = new RecordingContext(server.accept(), executorService);
+    Socket secondSubscriber = new Socket();
+    secondSubscriber.connect(server.getLocalSocketAddress());
+    RecordingContext second = new RecordingContext(server.accept(), executorService);
+    for (RecordingContext ctx : new RecordingContext[] { first, second }) {
+      ctx.setMessageCodec(new CountingCodec(encoded));
+      ctx.setReady(true);
+    }
+    ChannelHandlerContextImpl firstReader = new ChannelHandlerContextImpl(null, firstSubscriber, executorService);
+    ChannelHandlerContextImpl secondReader = new ChannelHandlerContextImpl(null, secondSubscriber, executorService);
+
+    OutgoingMessageQueue<String> outgoingMessageQueue = new OutgoingMessageQueue<String>(executorService);
+    outgoingMessageQueue.addChannel(first);
+    outgoingMessageQueue.addChannel(second);
+    int messages = 100;
+    for (int i = 0; i < messages; i++) {
+      outgoingMessageQueue.add("message" + i);
+    }
+    for (int i = 0; i < messages; i++) {
+      assertEquals("message" + i, firstReader.read());
+      assertEquals("message" + i, secondReader.read());
+    }
+    // one encoding per message, whatever the number of subscribers, and both were written the same bytes
+    assertEquals(messages, encoded.get());
+    synchronized (first.frames) {
+      synchronized (second.frames) {
+        assertEquals(messages, first.frames.size());
+        assertEquals(messages, second.frames.size());
+        for (int i = 0; i < messages; i++) {
+          assertSame(first.frames.get(i), second.frames.get(i));
+        }
+      }
+    }
+    outgoingMessageQueue.shutdown();
+    firstReader.close();
+    secondReader.close();
+  }
+
+  @Test
+  public void testRouteDropsForSlowSubscriberAndRemovesUnready() throws Exception {
+    TopicRoutingTable routingTable = new TopicRoutingTable();
+    GraphName topic = GraphName.of("/chatter");
+    Socket slowSubscriber = new Socket();
+    slowSubscriber.setReceiveBufferSize(4096);
+    slowSubscriber.connect(server.getLocalSocketAddress());
+    Socket slowPublisher = server.accept();
+    slowPublisher.setSendBufferSize(4096);
+    ChannelHandlerContextImpl slow = new ChannelHandlerContextImpl(null, slowPublisher, executorService);
+    slow.setReady(true);
+    // a connection whose handshake never completed
+    Socket unreadySubscriber = new Socket();
+    unreadySubscriber.connect(server.getLocalSocketAddress());
+    ChannelHandlerContextImpl unready = new ChannelHandlerContextImpl(null, server.accept(), executorService);
+    Socket fastSubscriber = new Socket();
+    fastSubscriber.connect(server.getLocalSocketAddress());
+    ChannelHandlerContextImpl fast = new ChannelHandlerContextImpl(null, server.accept(), executorService);
+    fast.setReady(true);
+    ChannelHandlerContextImpl fastReader = new ChannelHandlerContextImpl(null, fastSubscriber, executorService);
+
+    int capacity = 8;
+    List<ChannelOutboundQueue> route = routingTable.getRoute(topic);
+    OutgoingMessageQueue<String> outgoingMessageQueue =
+        new OutgoingMessageQueue<String>(executorService, route, capacity, OverflowPolicy.DROP_NEWEST);
+    ChannelOutboundQueue slowQueue = outgoingMessageQueue.addChannel(slow);
+    ChannelOutboundQueue unreadyQueue = outgoingMessageQueue.addChannel(unready);
+    ChannelOutboundQueue fastQueue = outgoingMessageQueue.addChannel(fast);
+    assertEquals(3, routingTable.getNumberOfConnections(topic));
+    StringBuilder payload = new StringBuilder();
+    for (int i = 0; i < 4000; i++) {
+      payload.append('x');
+    }
+    int messages = 500;
+    // published as fast as the fast subscriber reads, the slow one never reads yet the fast one,
+    // last on the route, sees everything in order
+    for (int i = 0; i < messages; i++) {
+      outgoingMessageQueue.add(i + payload.toString());
+      assertTrue(((String) fastReader.read()).startsWith(i + "x"));
+    }
+    assertEquals(0, fastQueue.getDroppedCount());
+    assertEquals(capacity, slowQueue.getCapacity());
+    assertTrue(slowQueue.getDepth() <= capacity);
+    assertTrue(slowQueue.getDroppedCount() > 0);
+    // the newest were dropped, every message was either taken or dropped
+    assertEquals(messages, slowQueue.getEnqueuedCount() + slowQueue.getDroppedCount());
+    // the unready connection left the route at the first message
+    assertTrue(unreadyQueue.isClosed());
+    assertEquals(0, unreadyQueue.getEnqueuedCount());
+    assertEquals(2, routingTable.getNumberOfConnections(topic));
+    assertTrue(!route.contains(unreadyQueue));
+
+    outgoingMessageQueue.shutdown();
+    routingTable.removeRoute(topic, route);
+    assertTrue(slowQueue.isClosed());
+    assertEquals(0, routingTable.getNumberOfConnections(topic));
+    assertEquals(0, routingTable.getNumberOfRoutes());
+    slowSubscriber.close();
+    unreadySubscriber.close();
+    fastReader.close();
+  }
+}
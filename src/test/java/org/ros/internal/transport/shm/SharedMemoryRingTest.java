@@ -0,0 +1,139 @@
+package org.ros.internal.transport.shm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.ros.internal.transport.codec.JavaSerializationCodec;
+import org.ros.internal.transport.queue.IncomingMessageQueue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class SharedMemoryRingTest {
+  private File file;
+  private SharedMemoryRing ring;
+
+  @Before
+  public void setup() throws Exception {
+    file = File.createTempFile("rosjavalite_ring", ".shm");
+    ring = new SharedMemoryRing(file, 4096);
+  }
+
+  @After
+  public void tearDown() {
+    ring.close();
+  }
+
+  private static ByteBuffer message(int i, int length) {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      buffer.put((byte) i);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  @Test
+  public void testRoundTripAcrossWrap() throws Exception {
+    SharedMemoryRingReader reader = new SharedMemoryRingReader(file);
+    assertNull(reader.next());
+    // odd lengths so records wrap at every offset and pad the end of the ring
+    for (int i = 0; i < 100; i++) {
+      assertTrue(ring.write(message(i, 100 + i)));
+      ByteBuffer view = reader.next();
+      assertEquals(100 + i, view.remaining());
+      assertTrue(view.isReadOnly());
+      while (view.hasRemaining()) {
+        assertEquals((byte) i, view.get());
+      }
+      assertTrue(reader.isValid());
+      assertNull(reader.next());
+    }
+    assertEquals(0, reader.getLappedCount());
+    assertEquals(100, ring.getWrittenCount());
+  }
+
+  @Test
+  public void testLappedReaderSkipsToNewest() throws Exception {
+    SharedMemoryRingReader reader = new SharedMemoryRingReader(file);
+    for (int i = 0; i < 100; i++) {
+      ring.write(message(i, 200));
+    }
+    ByteBuffer view = reader.next();
+    assertTrue(reader.getLappedCount() > 0);
+    // the reader resumes at the writer, the next message it sees is the next one written
+    assertNull(view);
+    ring.write(message(100, 200));
+    view = reader.next();
+    assertEquals((byte) 100, view.get(0));
+    assertTrue(reader.isValid());
+  }
+
+  @Test
+  public void testGarbageLengthTreatedAsLapped() throws Exception {
+    assertTrue(ring.write(message(1, 1900)));
+    SharedMemoryRingReader reader = new SharedMemoryRingReader(file);
+    assertTrue(ring.write(message(2, 100)));
+    // a length within the ring but running past its end, as read while the writer laps us
+    int index = SharedMemoryRing.align(1900);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.seek(SharedMemoryRing.HEADER_SIZE + index + 8);
+      raf.writeInt(4000);
+    } finally {
+      raf.close();
+    }
+    assertNull(reader.next());
+    assertEquals(1, reader.getLappedCount());
+    assertTrue(ring.write(message(3, 100)));
+    assertEquals((byte) 3, reader.next().get(0));
+  }
+
+  private static CountDownLatch runReceiver(final SharedMemoryReceiver<Object> receiver) {
+    final CountDownLatch stopped = new CountDownLatch(1);
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        receiver.run();
+        stopped.countDown();
+      }
+    }).start();
+    return stopped;
+  }
+
+  @Test
+  public void testReceiverStops() throws Exception {
+    IncomingMessageQueue<Object> incoming = new IncomingMessageQueue<Object>(Executors.newCachedThreadPool());
+    // closed before its loop got a thread
+    SharedMemoryReceiver<Object> receiver =
+        new SharedMemoryReceiver<Object>(new SharedMemoryRingReader(file), new JavaSerializationCodec(), incoming);
+    receiver.close();
+    assertTrue(runReceiver(receiver).await(1, TimeUnit.SECONDS));
+    // idle when the publisher removes its ring
+    receiver = new SharedMemoryReceiver<Object>(new SharedMemoryRingReader(file), new JavaSerializationCodec(), incoming);
+    CountDownLatch stopped = runReceiver(receiver);
+    assertFalse(stopped.await(100, TimeUnit.MILLISECONDS));
+    ring.close();
+    assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    incoming.shutdown();
+  }
+
+  @Test
+  public void testOversizedMessageDropped() throws Exception {
+    assertFalse(ring.write(message(1, 4000)));
+    assertEquals(1, ring.getDroppedCount());
+  }
+}
@@ -0,0 +1,237 @@
+package org.ros.internal.transport.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.internal.transport.ChannelHandler;
+import org.ros.internal.transport.ChannelHandlerContext;
+import org.ros.internal.transport.ChannelHandlerContextImpl;
+import org.ros.internal.transport.codec.JavaSerializationCodec;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercise the selector transport against the blocking one over loopback, both share the framed wire format.
+ * @author jg
+ */
+public class SelectorChannelHandlerContextTest {
+  private ExecutorService executorService;
+  private SelectorEventLoopGroup group;
+  private ServerSocketChannel server;
+
+  @Before
+  public void setup() throws Exception {
+    executorService = Executors.newCachedThreadPool();
+    group = new SelectorEventLoopGroup(2, executorService);
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress("127.0.0.1", 0));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    group.shutdown();
+    server.close();
+    executorService.shutdown();
+  }
+
+  private static class RecordingHandler implements ChannelHandler {
+    final BlockingQueue<Object> reads = new LinkedBlockingQueue<Object>();
+    final boolean echo;
+    RecordingHandler(boolean echo) { this.echo = echo; }
+    public void handlerAdded(ChannelHandlerContext ctx) {}
+    public void handlerRemoved(ChannelHandlerContext ctx) {}
+    public void channelActive(ChannelHandlerContext ctx) {}
+    public void channelInactive(ChannelHandlerContext ctx) {}
+    public Object channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+      reads.put(msg);
+      if (echo) {
+        ctx.write(msg);
+      }
+      return msg;
+    }
+    public void channelReadComplete(ChannelHandlerContext ctx) {}
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable msg) {}
+    public void userEventTriggered(ChannelHandlerContext ctx, Object event) {}
+  }
+
+  @Test
+  public void testBlockingClientToSelectorServer() throws Exception {
+    Socket socket = new Socket();
+    socket.connect(server.getLocalAddress());
+    ChannelHandlerContextImpl client = new ChannelHandlerContextImpl(null, socket, executorService);
+    SelectorChannelHandlerContext accepted = new SelectorChannelHandlerContext(group, server.accept(), executorService);
+    RecordingHandler serverHandler = new RecordingHandler(true);
+    accepted.pipeline().addLast("recorder", serverHandler);
+    accepted.register();
+
+    // Large enough to span several reads and force the read buffer to grow.
+    StringBuilder big = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      big.append(i);
+    }
+    client.write("hello");
+    client.write(big.toString());
+    client.write(Integer.valueOf(42));
+
+    assertEquals("hello", serverHandler.reads.poll(5, TimeUnit.SECONDS));
+    assertEquals(big.toString(), serverHandler.reads.poll(5, TimeUnit.SECONDS));
+    assertEquals(42, serverHandler.reads.poll(5, TimeUnit.SECONDS));
+    // and the echoes come back through the blocking read path
+    assertEquals("hello", client.read());
+    assertEquals(big.toString(), client.read());
+    assertEquals(42, client.read());
+    client.close();
+  }
+
+  @Test
+  public void testReadBufferShrinksAfterLargeFrame() throws Exception {
+    Socket socket = new Socket();
+    socket.connect(server.getLocalAddress());
+    ChannelHandlerContextImpl client = new ChannelHandlerContextImpl(null, socket, executorService);
+    SelectorChannelHandlerContext accepted = new SelectorChannelHandlerContext(group, server.accept(), executorService);
+    RecordingHandler serverHandler = new RecordingHandler(false);
+    accepted.pipeline().addLast("recorder", serverHandler);
+    int initial = accepted.getReadBufferCapacity();
+    accepted.register();
+
+    StringBuilder big = new StringBuilder();
+    for (int i = 0; i < 50000; i++) {
+      big.append(i);
+    }
+    client.write(big.toString());
+    assertEquals(big.toString(), serverHandler.reads.poll(5, TimeUnit.SECONDS));
+    client.write("hello");
+    assertEquals("hello", serverHandler.reads.poll(5, TimeUnit.SECONDS));
+    // the swap follows the last decode of the read
+    long deadline = System.currentTimeMillis() + 5000;
+    while (accepted.getReadBufferCapacity() != initial && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(initial, accepted.getReadBufferCapacity());
+    client.close();
+  }
+
+  @Test
+  public void testManyChannelsOnFewThreads() throws Exception {
+    int channels = 16;
+    RecordingHandler handler = new RecordingHandler(false);
+    ChannelHandlerContextImpl[] clients = new ChannelHandlerContextImpl[channels];
+    for (int i = 0; i < channels; i++) {
+      Socket socket = new Socket();
+      socket.connect(server.getLocalAddress());
+      clients[i] = new ChannelHandlerContextImpl(null, socket, executorService);
+      SelectorChannelHandlerContext accepted = new SelectorChannelHandlerContext(group, server.accept(), executorService);
+      accepted.pipeline().addLast("recorder", handler);
+      accepted.register();
+    }
+    for (int i = 0; i < channels; i++) {
+      clients[i].write(Integer.valueOf(i));
+    }
+    boolean[] seen = new boolean[channels];
+    for (int i = 0; i < channels; i++) {
+      seen[(Integer) handler.reads.poll(5, TimeUnit.SECONDS)] = true;
+    }
+    for (int i = 0; i < channels; i++) {
+      assertTrue(seen[i]);
+      clients[i].close();
+    }
+  }
+
+  @Test
+  public void testOversizedFrameClosesOnlyItsChannel() throws Exception {
+    Socket hostile = new Socket();
+    hostile.connect(server.getLocalAddress());
+    SelectorChannelHandlerContext hostileAccepted = new SelectorChannelHandlerContext(group, server.accept(), executorService);
+    hostileAccepted.setMaxFrameSize(1024);
+    RecordingHandler hostileHandler = new RecordingHandler(false);
+    hostileAccepted.pipeline().addLast("recorder", hostileHandler);
+    hostileAccepted.register();
+
+    Socket socket = new Socket();
+    socket.connect(server.getLocalAddress());
+    ChannelHandlerContextImpl client = new ChannelHandlerContextImpl(null, socket, executorService);
+    SelectorChannelHandlerContext accepted = new SelectorChannelHandlerContext(group, server.accept(), executorService);
+    accepted.setMaxFrameSize(1024);
+    RecordingHandler handler = new RecordingHandler(true);
+    accepted.pipeline().addLast("recorder", handler);
+    accepted.register();
+
+    // a length that would overflow length + 4, followed by nothing
+    DataOutputStream out = new DataOutputStream(hostile.getOutputStream());
+    out.writeInt(Integer.MAX_VALUE - 1);
+    out.flush();
+    hostile.setSoTimeout(5000);
+    assertEquals(-1, hostile.getInputStream().read());
+    hostile.close();
+
+    // the loops are still serving the other channels
+    client.write("hello");
+    assertEquals("hello", handler.reads.poll(5, TimeUnit.SECONDS));
+    assertEquals("hello", client.read());
+    assertTrue(hostileHandler.reads.isEmpty());
+    client.close();
+  }
+
+  @Test
+  public void testBlockingReadRejectsOversizedFrame() throws Exception {
+    Socket socket = new Socket();
+    socket.connect(server.getLocalAddress());
+    ChannelHandlerContextImpl reader = new ChannelHandlerContextImpl(null, socket, executorService);
+    reader.setMaxFrameSize(1024);
+    Socket peer = server.accept().socket();
+    DataOutputStream out = new DataOutputStream(peer.getOutputStream());
+    out.writeInt(2048);
+    out.flush();
+    try {
+      reader.read();
+      fail("Frame over the maximum was read");
+    } catch (IOException expected) {
+    }
+    peer.close();
+    reader.close();
+  }
+
+  /**
+   * Java serialization framed at an offset into a larger array, as a codec with a pooled buffer might return.
+   */
+  private static class SlicedCodec extends JavaSerializationCodec {
+    @Override
+    public ByteBuffer encodeFrame(Object msg) throws IOException {
+      ByteBuffer frame = super.encodeFrame(msg);
+      ByteBuffer backing = ByteBuffer.allocate(frame.remaining() + 7);
+      backing.position(7);
+      backing.put(frame);
+      backing.position(7);
+      return backing.slice();
+    }
+  }
+
+  @Test
+  public void testSlicedFrameWritten() throws Exception {
+    Socket socket = new Socket();
+    socket.connect(server.getLocalAddress());
+    ChannelHandlerContextImpl client = new ChannelHandlerContextImpl(null, socket, executorService);
+    client.setMessageCodec(new SlicedCodec());
+    SelectorChannelHandlerContext accepted = new SelectorChannelHandlerContext(group, server.accept(), executorService);
+    RecordingHandler handler = new RecordingHandler(false);
+    accepted.pipeline().addLast("recorder", handler);
+    accepted.register();
+    client.write("sliced");
+    assertEquals("sliced", handler.reads.poll(5, TimeUnit.SECONDS));
+    client.close();
+  }
+}
@@ -0,0 +1,150 @@
+package org.ros.internal.transport.udp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.address.AdvertiseAddress;
+import org.ros.internal.node.response.ProtocolDescriptionResultFactory;
+import org.ros.internal.transport.ProtocolDescription;
+import org.ros.internal.transport.codec.JavaSerializationCodec;
+import org.ros.internal.transport.queue.IncomingMessageQueue;
+import org.ros.internal.transport.queue.OutgoingMessageQueue;
+import org.ros.message.MessageListener;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author jg
+ */
+public class UdpRosTest {
+  private ExecutorService executorService;
+
+  @Before
+  public void setup() {
+    executorService = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  private static ByteBuffer fragment(int connectionId, int sequence, int fragment, int fragments, String payload) {
+    byte[] bytes = payload.getBytes();
+    ByteBuffer datagram = ByteBuffer.allocate(UdpRosSender.HEADER_SIZE + bytes.length);
+    datagram.putInt(connectionId).putInt(sequence).putShort((short) fragment).putShort((short) fragments).put(bytes);
+    datagram.flip();
+    return datagram;
+  }
+
+  @Test
+  public void testReassemblerDropsOnGap() {
+    UdpRosReassembler reassembler = new UdpRosReassembler(7);
+    assertEquals(-1, reassembler.add(fragment(7, 1, 0, 2, "ab")));
+    assertEquals(4, reassembler.add(fragment(7, 1, 1, 2, "cd")));
+    assertEquals("abcd", new String(reassembler.getBuffer(), 0, 4));
+    // fragment 1 of message 2 goes missing
+    assertEquals(-1, reassembler.add(fragment(7, 2, 0, 3, "ef")));
+    assertEquals(-1, reassembler.add(fragment(7, 2, 2, 3, "gh")));
+    // message 3 never arrives, message 4 does
+    assertEquals(2, reassembler.add(fragment(7, 4, 0, 1, "ij")));
+    // late and foreign datagrams are ignored
+    assertEquals(-1, reassembler.add(fragment(7, 3, 0, 1, "kl")));
+    assertEquals(-1, reassembler.add(fragment(8, 5, 0, 1, "mn")));
+    assertEquals(2, reassembler.getReceivedCount());
+    assertEquals(1, reassembler.getDroppedCount());
+    assertEquals(1, reassembler.getLostCount());
+  }
+
+  @Test
+  public void testFragmentedMessagesOverLoopback() throws Exception {
+    UdpRosReceiver<String> receiver = new UdpRosReceiver<String>(UdpRosSender.DEFAULT_MAX_DATAGRAM_SIZE);
+    UdpRosSender sender = new UdpRosSender(new InetSocketAddress("127.0.0.1", receiver.getPort()),
+        UdpRosSender.DEFAULT_MAX_DATAGRAM_SIZE, new JavaSerializationCodec());
+    IncomingMessageQueue<String> incoming = new IncomingMessageQueue<String>(executorService);
+    final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+    incoming.addListener(new MessageListener<String>() {
+      @Override
+      public void onNewMessage(String message) {
+        received.add(message);
+      }
+    }, 16);
+    receiver.setConnection(sender.getConnectionId(), sender.getCodec(), incoming);
+    executorService.execute(receiver);
+    OutgoingMessageQueue<String> outgoing = new OutgoingMessageQueue<String>(executorService);
+    outgoing.addDatagramSubscriber(sender);
+    StringBuilder big = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      big.append(i);
+    }
+    outgoing.add("small");
+    // several fragments
+    outgoing.add(big.toString());
+    assertEquals("small", received.poll(5, TimeUnit.SECONDS));
+    assertEquals(big.toString(), received.poll(5, TimeUnit.SECONDS));
+    assertEquals(2, sender.getSentCount());
+    assertEquals(0, receiver.getReassembler().getDroppedCount());
+    outgoing.shutdown();
+    receiver.close();
+    incoming.shutdown();
+  }
+
+  @Test
+  public void testCancelledReceiverStopsWithoutDatagrams() throws Exception {
+    final UdpRosReceiver<String> receiver = new UdpRosReceiver<String>(UdpRosSender.DEFAULT_MAX_DATAGRAM_SIZE);
+    IncomingMessageQueue<String> incoming = new IncomingMessageQueue<String>(executorService);
+    receiver.setConnection(1, new JavaSerializationCodec(), incoming);
+    final CountDownLatch stopped = new CountDownLatch(1);
+    executorService.execute(new Runnable() {
+      @Override
+      public void run() {
+        receiver.run();
+        stopped.countDown();
+      }
+    });
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!receiver.isRunning() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(receiver.isRunning());
+    receiver.cancel();
+    // nothing ever arrives, the receive times out and the loop sees it was cancelled
+    assertTrue(stopped.await(2 * UdpRosReceiver.RECEIVE_TIMEOUT + 1000, TimeUnit.MILLISECONDS));
+    receiver.close();
+    incoming.shutdown();
+  }
+
+  @Test
+  public void testSenderToSameSubscriberIsReplaced() throws Exception {
+    InetSocketAddress subscriber = new InetSocketAddress("127.0.0.1", 9);
+    OutgoingMessageQueue<String> outgoing = new OutgoingMessageQueue<String>(executorService);
+    UdpRosSender first = new UdpRosSender(subscriber, UdpRosSender.DEFAULT_MAX_DATAGRAM_SIZE, new JavaSerializationCodec());
+    UdpRosSender second = new UdpRosSender(subscriber, UdpRosSender.DEFAULT_MAX_DATAGRAM_SIZE, new JavaSerializationCodec());
+    outgoing.addDatagramSubscriber(first);
+    outgoing.addDatagramSubscriber(second);
+    assertEquals(1, outgoing.getDatagramSubscribers().size());
+    assertTrue(outgoing.getDatagramSubscribers().contains(second));
+    outgoing.shutdown();
+  }
+
+  @Test
+  public void testDescriptionSurvivesResponseList() {
+    UdpRosProtocolDescription description =
+        new UdpRosProtocolDescription(new AdvertiseAddress("localhost", 1234), 9, 1500, JavaSerializationCodec.NAME);
+    ProtocolDescription decoded = new ProtocolDescriptionResultFactory().newFromValue(description.toList());
+    assertTrue(decoded instanceof UdpRosProtocolDescription);
+    assertEquals(9, ((UdpRosProtocolDescription) decoded).getConnectionId());
+    assertEquals(1500, ((UdpRosProtocolDescription) decoded).getMaxDatagramSize());
+    assertEquals(JavaSerializationCodec.NAME, ((UdpRosProtocolDescription) decoded).getCodecName());
+  }
+}